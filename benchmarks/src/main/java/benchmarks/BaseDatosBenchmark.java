@@ -0,0 +1,145 @@
+package benchmarks;
+
+import config.ConexionDB;
+import config.Session;
+import dao.ResumenGastosDAO;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import models.Usuario;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Base de datos H2 en memoria (modo MySQL) con datos sintéticos para los
+ * benchmarks. Se crea una vez por prueba (cada prueba corre en su propia JVM,
+ * ver @Fork en los benchmarks) con el volumen indicado por los @Param.
+ *
+ * Los datos se generan con una semilla fija, así que dos ejecuciones con los
+ * mismos parámetros miden exactamente lo mismo.
+ *
+ * @author Milanes
+ */
+@State(Scope.Benchmark)
+public class BaseDatosBenchmark {
+
+    /*
+     * Base H2 embebida en memoria: ConexionDB crea el esquema real (sin los
+     * datos de ejemplo) al abrir el pool. El log solo registra errores para no
+     * medir la escritura de log.txt. Se fijan antes de cargar ConexionDB y
+     * Logger; con -jvmArgsAppend "-Dapp_compras.db.motor=mysql" y las demás
+     * app_compras.db.* se puede medir contra otra base.
+     */
+    static {
+        porDefecto("app_compras.db.motor", "h2");
+        porDefecto("app_compras.db.url",
+                "jdbc:h2:mem:benchmark;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1");
+        porDefecto("app_compras.db.datosIniciales", "false");
+        porDefecto("app_compras.log.nivel", "ERROR");
+    }
+
+    private static void porDefecto(String propiedad, String valor) {
+        if (System.getProperty(propiedad) == null) {
+            System.setProperty(propiedad, valor);
+        }
+    }
+
+    static final String NOMBRE_CARRITO = "Compra semanal";
+
+    @Param({"10"})
+    public int usuarios;
+
+    @Param({"1000", "20000"})
+    public int compras;
+
+    @Param({"5"})
+    public int lineasPorCompra;
+
+    @Param({"200"})
+    public int productos;
+
+    @Param({"42"})
+    public long semilla;
+
+    // Usuario con sesión iniciada (registrarCompra usa Session)
+    int idUsuarioSesion;
+    String nombreUsuarioSesion;
+
+    @Setup(Level.Trial)
+    public void crear() throws SQLException {
+        try (Connection conn = ConexionDB.getConexion()) {
+            if (conn == null) {
+                throw new SQLException("No se pudo abrir la base de datos (ver log.txt).");
+            }
+            conn.setAutoCommit(false);
+            poblar(conn, new Random(semilla));
+            conn.commit();
+            conn.setAutoCommit(true);
+        }
+
+        // Tablas de resumen de los informes: se crean y se rellenan antes de medir
+        if (!ResumenGastosDAO.preparar()) {
+            throw new IllegalStateException("No se pudieron preparar los resúmenes de gastos.");
+        }
+
+        idUsuarioSesion = 1;
+        nombreUsuarioSesion = "usuario1";
+        Session.iniciarSesion(new Usuario(idUsuarioSesion, nombreUsuarioSesion, "usuario1@benchmark.local", "x", 1));
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() throws SQLException {
+        try (Connection conn = ConexionDB.getConexion(); Statement st = conn.createStatement()) {
+            st.execute("DROP ALL OBJECTS");
+        }
+        ConexionDB.cerrarConexion();
+    }
+
+    // ============================================================
+    // DATOS SINTÉTICOS
+    // ============================================================
+    private void poblar(Connection conn, Random azar) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.executeUpdate("INSERT INTO roles (nombre, descripcion_rol) VALUES ('Administrador', 'Benchmark')");
+            st.executeUpdate("INSERT INTO repartidores (nombre) VALUES ('Repartidor benchmark')");
+        }
+
+        // Histórico con forma realista (ver GeneradorDatos); ids desde 1
+        try (GeneradorDatos.SalidaJDBC salida = new GeneradorDatos.SalidaJDBC(conn, 1000)) {
+            new GeneradorDatos()
+                    .usuarios(usuarios)
+                    .tiendas(5)
+                    .categorias(8)
+                    .productos(productos)
+                    .compras(compras)
+                    .lineasPorCompra(lineasPorCompra)
+                    .semilla(semilla)
+                    .generar(salida);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // Carrito con nombre para cada usuario (20 productos distintos)
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO carrito (id_usuario, nombre_compra, id_producto, cantidad) VALUES (?, ?, ?, ?)")) {
+            for (int u = 1; u <= usuarios; u++) {
+                for (int p = 1; p <= Math.min(20, productos); p++) {
+                    ps.setInt(1, u);
+                    ps.setString(2, NOMBRE_CARRITO);
+                    ps.setInt(3, p);
+                    ps.setInt(4, 1 + azar.nextInt(5));
+                    ps.addBatch();
+                }
+            }
+            ps.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package benchmarks;
+
+import config.ConexionDB;
+import config.Metricas;
+import dao.CarritoDAO;
+import dao.CompraDAO;
+import dao.MigracionesEsquema;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import models.Carrito;
+
+/**
+ * Generador de carga para la compra: N terminales simuladas llenan el carrito
+ * y confirman compras a la vez contra la capa DAO, como varias instancias de
+ * la aplicación sobre la misma base. Sirve para saber hasta cuántas
+ * terminales aguanta la base antes de que suban las latencias o aparezcan
+ * interbloqueos.
+ *
+ * Cada sesión simulada elige una tienda y una cesta (tamaño log-normal,
+ * productos con popularidad Zipf) y sigue uno de los caminos reales:
+ * <ul>
+ * <li>agregarAlCarrito producto a producto (INSERT ... ON DUPLICATE KEY
+ * UPDATE, a veces repitiendo producto) y realizarCompraDesdeCarrito;</li>
+ * <li>el carrito en memoria: guardarCambios cada pocos productos, con alguna
+ * corrección de cantidad o producto quitado, y realizarCompraDesdeCarrito;</li>
+ * <li>una fracción (--directas) confirma con registrarCompra y la lista en
+ * memoria, sin pasar por la tabla carrito.</li>
+ * </ul>
+ * Si hay más terminales que usuarios (--usuarios), varias comparten cuenta y
+ * compiten por las mismas filas del carrito, como una familia con la misma
+ * cuenta en dos equipos.
+ *
+ * Al terminar muestra el rendimiento (compras por segundo), los percentiles de
+ * latencia de cada operación de DAO y de la sesión completa, y los errores,
+ * conflictos (interbloqueos y esperas de bloqueo agotadas) y rollbacks, todo
+ * tomado de config.Metricas.
+ *
+ * Uso, contra la base configurada con app_compras.db.* (si faltan usuarios o
+ * productos se siembran con GeneradorDatos):
+ * <pre>
+ *   java -cp benchmarks/target/benchmarks.jar benchmarks.CargaCompras --terminales 16 --duracion 60
+ * </pre>
+ * Opciones: --terminales (8), --usuarios (0 = uno por terminal), --duracion
+ * y --calentamiento en segundos (30 y 5), --lineas (8, media de productos por
+ * compra), --pausa en ms entre acciones (0), --directas (0.2), --semilla (42).
+ *
+ * @author Milanes
+ */
+public final class CargaCompras {
+
+    private static final String PREFIJO_CARRITO = "Carga ";
+    private static final String OPERACION_SESION = "CargaCompras.sesion";
+
+    private final int terminales;
+    private final int usuarios;
+    private final double lineasPorCompra;
+    private final long pausaMs;
+    private final double directas;
+    private final long semilla;
+
+    private List<Integer> idsUsuario;
+    private List<Integer> idsTienda;
+    private int[] idsProducto;
+    private double[] popularidad;
+    private Map<Integer, Double> precios;
+
+    private final LongAdder confirmadas = new LongAdder();
+    private final LongAdder fallidas = new LongAdder();
+    private volatile boolean parar = false;
+
+    CargaCompras(int terminales, int usuarios, double lineasPorCompra, long pausaMs, double directas, long semilla) {
+        this.terminales = terminales;
+        this.usuarios = usuarios > 0 ? usuarios : terminales;
+        this.lineasPorCompra = lineasPorCompra;
+        this.pausaMs = pausaMs;
+        this.directas = directas;
+        this.semilla = semilla;
+    }
+
+    // ============================================================
+    // PREPARACIÓN
+    // ============================================================
+    /** Lee usuarios, tiendas y productos; siembra lo que falte y limpia carritos de otras cargas. */
+    private void preparar() throws Exception {
+        try (Connection conn = ConexionDB.getConexion()) {
+            if (conn == null) {
+                throw new SQLException("No se pudo abrir la base de datos (ver log.txt).");
+            }
+
+            int existentes = enteros(conn, "SELECT id_usuario FROM usuarios").size();
+            if (existentes < usuarios || enteros(conn, "SELECT id_producto FROM productos").isEmpty()) {
+                System.out.println("Sembrando usuarios, tiendas y productos con GeneradorDatos...");
+                conn.setAutoCommit(false);
+                try (GeneradorDatos.SalidaJDBC salida = new GeneradorDatos.SalidaJDBC(conn, 1000)) {
+                    new GeneradorDatos()
+                            .usuarios(Math.max(1, usuarios - existentes))
+                            .tiendas(10)
+                            .productos(2000)
+                            .compras(0)
+                            .semilla(semilla)
+                            .generar(salida);
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+
+            // Como al arrancar la aplicación: las migraciones antes de la carga
+            if (!MigracionesEsquema.aplicar()) {
+                throw new SQLException("No se pudo actualizar el esquema de la base de datos (ver log.txt).");
+            }
+
+            try (Statement st = conn.createStatement()) {
+                st.executeUpdate("DELETE FROM carrito WHERE nombre_compra LIKE '" + PREFIJO_CARRITO + "%'");
+            }
+
+            idsUsuario = enteros(conn, "SELECT id_usuario FROM usuarios ORDER BY id_usuario LIMIT " + usuarios);
+            idsTienda = enteros(conn, "SELECT id_tienda FROM tiendas ORDER BY id_tienda");
+
+            precios = new LinkedHashMap<>();
+            try (Statement st = conn.createStatement();
+                    ResultSet rs = st.executeQuery("SELECT id_producto, precio FROM productos ORDER BY id_producto")) {
+                while (rs.next()) {
+                    precios.put(rs.getInt(1), rs.getDouble(2));
+                }
+            }
+        }
+
+        // Popularidad Zipf sobre un orden barajado con la semilla
+        idsProducto = precios.keySet().stream().mapToInt(Integer::intValue).toArray();
+        SplittableRandom azar = new SplittableRandom(semilla);
+        for (int i = idsProducto.length - 1; i > 0; i--) {
+            int j = azar.nextInt(i + 1);
+            int t = idsProducto[i];
+            idsProducto[i] = idsProducto[j];
+            idsProducto[j] = t;
+        }
+        popularidad = new double[idsProducto.length];
+        double suma = 0;
+        for (int i = 0; i < idsProducto.length; i++) {
+            suma += 1.0 / Math.pow(i + 2, 0.9);
+            popularidad[i] = suma;
+        }
+    }
+
+    private static List<Integer> enteros(Connection conn, String sql) throws SQLException {
+        List<Integer> lista = new ArrayList<>();
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            while (rs.next()) {
+                lista.add(rs.getInt(1));
+            }
+        }
+        return lista;
+    }
+
+    // ============================================================
+    // TERMINAL SIMULADA
+    // ============================================================
+    private final class Terminal implements Runnable {
+
+        private final int numero;
+        private final int idUsuario;
+        private final SplittableRandom azar;
+        private final CarritoDAO carritoDAO = new CarritoDAO();
+        private final CompraDAO compraDAO = new CompraDAO();
+        private long sesiones = 0;
+
+        Terminal(int numero, SplittableRandom azar) {
+            this.numero = numero;
+            this.idUsuario = idsUsuario.get(numero % idsUsuario.size());
+            this.azar = azar;
+        }
+
+        @Override
+        public void run() {
+            while (!parar) {
+                boolean exito;
+                try (Metricas.Medicion medicion = Metricas.iniciar(OPERACION_SESION)) {
+                    exito = sesion();
+                    if (!exito) {
+                        medicion.error();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                (exito ? confirmadas : fallidas).increment();
+            }
+        }
+
+        /** Una compra completa; true si quedó registrada. */
+        private boolean sesion() throws InterruptedException {
+            String nombre = PREFIJO_CARRITO + numero + "-" + (++sesiones);
+            int idTienda = idsTienda.get(azar.nextInt(idsTienda.size()));
+            int[] cesta = cesta();
+            double camino = azar.nextDouble();
+
+            if (camino < directas) {
+                List<Carrito> lineas = new ArrayList<>();
+                for (int idProducto : cesta) {
+                    Carrito linea = new Carrito(idUsuario, idProducto, cantidad());
+                    linea.setNombreCompra(nombre);
+                    linea.setPrecioProducto(precios.get(idProducto));
+                    linea.setSubtotal(linea.getCantidad() * linea.getPrecioProducto());
+                    lineas.add(linea);
+                    pausa();
+                }
+                return compraDAO.registrarCompra(idUsuario, idTienda, nombre, lineas);
+            }
+
+            Map<Integer, Integer> cantidades = new LinkedHashMap<>();
+            if (camino < directas + (1 - directas) / 2) {
+                for (int idProducto : cesta) {
+                    int cantidad = cantidad();
+                    Carrito linea = new Carrito(idUsuario, idProducto, cantidad);
+                    linea.setNombreCompra(nombre);
+                    carritoDAO.agregarAlCarrito(linea);
+                    cantidades.merge(idProducto, cantidad, Integer::sum);
+                    // A veces se vuelve a añadir el mismo producto (rama ON DUPLICATE KEY)
+                    if (azar.nextDouble() < 0.15) {
+                        carritoDAO.agregarAlCarrito(linea);
+                        cantidades.merge(idProducto, cantidad, Integer::sum);
+                    }
+                    pausa();
+                }
+            } else {
+                // Carrito en memoria: se vuelca cada pocos cambios, con correcciones
+                Map<Integer, Integer> pendientes = new HashMap<>();
+                for (int idProducto : cesta) {
+                    int cantidad = cantidad();
+                    cantidades.put(idProducto, cantidad);
+                    pendientes.put(idProducto, cantidad);
+                    if (azar.nextDouble() < 0.1) {
+                        cantidades.put(idProducto, cantidad + 1);
+                        pendientes.put(idProducto, cantidad + 1);
+                    }
+                    if (pendientes.size() >= 4) {
+                        carritoDAO.guardarCambios(idUsuario, nombre, pendientes);
+                        pendientes.clear();
+                    }
+                    pausa();
+                }
+                if (cesta.length > 1 && azar.nextDouble() < 0.2) {
+                    cantidades.remove(cesta[0]);
+                    pendientes.put(cesta[0], 0);
+                }
+                carritoDAO.guardarCambios(idUsuario, nombre, pendientes);
+            }
+
+            if (compraDAO.realizarCompraDesdeCarrito(idUsuario, idTienda, nombre) != null) {
+                return true;
+            }
+
+            // Compra fallida: se quitan sus productos para no arrastrarlos a la siguiente
+            Map<Integer, Integer> quitar = new HashMap<>();
+            cantidades.keySet().forEach(idProducto -> quitar.put(idProducto, 0));
+            carritoDAO.guardarCambios(idUsuario, nombre, quitar);
+            return false;
+        }
+
+        private int[] cesta() {
+            int tamanio = (int) Math.max(1, Math.min(40,
+                    Math.round(lineasPorCompra / Math.exp(0.18) * Math.exp(0.6 * gauss()))));
+            tamanio = Math.min(tamanio, idsProducto.length);
+            int[] cesta = new int[tamanio];
+            int n = 0;
+            for (int intento = 0; n < tamanio && intento < tamanio * 4; intento++) {
+                int idProducto = idsProducto[buscar(azar.nextDouble() * popularidad[popularidad.length - 1])];
+                boolean repetido = false;
+                for (int i = 0; i < n && !repetido; i++) {
+                    repetido = cesta[i] == idProducto;
+                }
+                if (!repetido) {
+                    cesta[n++] = idProducto;
+                }
+            }
+            return n == tamanio ? cesta : Arrays.copyOf(cesta, n);
+        }
+
+        private int cantidad() {
+            double r = azar.nextDouble();
+            return r < 0.7 ? 1 : r < 0.9 ? 2 : 3 + azar.nextInt(4);
+        }
+
+        private void pausa() throws InterruptedException {
+            if (pausaMs > 0) {
+                Thread.sleep((long) (pausaMs * (0.5 + azar.nextDouble())));
+            }
+        }
+
+        private double gauss() {
+            double u = 1 - azar.nextDouble();
+            return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * azar.nextDouble());
+        }
+
+        private int buscar(double valor) {
+            int i = Arrays.binarySearch(popularidad, valor);
+            i = i >= 0 ? i + 1 : -i - 1;
+            return Math.min(i, popularidad.length - 1);
+        }
+    }
+
+    // ============================================================
+    // EJECUCIÓN E INFORME
+    // ============================================================
+    void ejecutar(int calentamientoSeg, int duracionSeg) throws Exception {
+        preparar();
+        System.out.printf("%d terminales sobre %d usuarios, %d productos, %d tiendas%n",
+                terminales, idsUsuario.size(), idsProducto.length, idsTienda.size());
+
+        SplittableRandom raiz = new SplittableRandom(semilla);
+        CountDownLatch terminadas = new CountDownLatch(terminales);
+        List<Thread> hilos = new ArrayList<>();
+        for (int t = 0; t < terminales; t++) {
+            Terminal terminal = new Terminal(t, raiz.split());
+            Thread hilo = new Thread(() -> {
+                try {
+                    terminal.run();
+                } finally {
+                    terminadas.countDown();
+                }
+            }, "terminal-" + t);
+            hilo.setDaemon(true);
+            hilos.add(hilo);
+        }
+        hilos.forEach(Thread::start);
+
+        if (calentamientoSeg > 0) {
+            System.out.printf("Calentando %d s...%n", calentamientoSeg);
+            TimeUnit.SECONDS.sleep(calentamientoSeg);
+        }
+        Metricas.reiniciar();
+        confirmadas.reset();
+        fallidas.reset();
+
+        System.out.printf("Midiendo %d s...%n", duracionSeg);
+        long inicio = System.nanoTime();
+        TimeUnit.SECONDS.sleep(duracionSeg);
+        List<Metricas.Resumen> operaciones = Metricas.instantanea();
+        long ok = confirmadas.sum();
+        long ko = fallidas.sum();
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+
+        parar = true;
+        if (!terminadas.await(30, TimeUnit.SECONDS)) {
+            System.out.println("Algunas terminales no terminaron su última sesión a tiempo.");
+        }
+
+        informe(operaciones, ok, ko, segundos);
+    }
+
+    private void informe(List<Metricas.Resumen> operaciones, long ok, long ko, double segundos) {
+        System.out.println();
+        System.out.printf(Locale.ROOT, "Compras confirmadas: %d (%.1f/s) | fallidas: %d (%.2f %%)%n",
+                ok, ok / segundos, ko, ok + ko == 0 ? 0 : 100.0 * ko / (ok + ko));
+
+        System.out.println();
+        System.out.printf("%-44s %9s %9s %8s %10s %9s %8s %8s %8s %8s %8s%n", "Operación", "Llamadas", "Por s",
+                "Errores", "Conflictos", "Rollbacks", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "Máx ms");
+        long conflictos = 0;
+        long rollbacks = 0;
+        for (Metricas.Resumen r : operaciones) {
+            if (r.getLlamadas() == 0) {
+                continue;
+            }
+            conflictos += r.getConflictos();
+            rollbacks += r.getRollbacks();
+            System.out.printf(Locale.ROOT, "%-44s %9d %9.1f %8d %10d %9d %8.2f %8.2f %8.2f %8.2f %8.2f%n",
+                    r.getOperacion(), r.getLlamadas(), r.getLlamadas() / segundos, r.getErrores(),
+                    r.getConflictos(), r.getRollbacks(), r.getP50Ms(), r.getP90Ms(), r.getP99Ms(),
+                    r.getP999Ms(), r.getMaxMs());
+        }
+        System.out.println();
+        System.out.printf("Conflictos (interbloqueos / esperas de bloqueo agotadas): %d | Rollbacks: %d%n",
+                conflictos, rollbacks);
+    }
+
+    // ============================================================
+    // LÍNEA DE COMANDOS
+    // ============================================================
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opciones = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Opción no válida: " + args[i]);
+            }
+            opciones.put(args[i].substring(2), args[i + 1]);
+        }
+        int terminales = Integer.parseInt(opciones.getOrDefault("terminales", "8"));
+
+        // Antes de cargar ConexionDB y Logger: una conexión por terminal y log solo de errores
+        porDefecto("app_compras.pool.maximo", String.valueOf(terminales + 2));
+        porDefecto("app_compras.log.nivel", "ERROR");
+
+        new CargaCompras(terminales,
+                Integer.parseInt(opciones.getOrDefault("usuarios", "0")),
+                Double.parseDouble(opciones.getOrDefault("lineas", "8")),
+                Long.parseLong(opciones.getOrDefault("pausa", "0")),
+                Double.parseDouble(opciones.getOrDefault("directas", "0.2")),
+                Long.parseLong(opciones.getOrDefault("semilla", "42")))
+                .ejecutar(Integer.parseInt(opciones.getOrDefault("calentamiento", "5")),
+                        Integer.parseInt(opciones.getOrDefault("duracion", "30")));
+
+        ConexionDB.cerrarConexion();
+    }
+
+    private static void porDefecto(String propiedad, String valor) {
+        if (System.getProperty(propiedad) == null) {
+            System.setProperty(propiedad, valor);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package benchmarks;
+
+import dao.CarritoDAO;
+import dao.CompraDAO;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import models.Carrito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Alta de compras y lectura del carrito.
+ *
+ * registrarCompra inserta de verdad (compra, líneas y resúmenes de gastos),
+ * así que la base crece durante la medición igual que en uso real.
+ *
+ * @author Milanes
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ComprasBenchmark {
+
+    private CompraDAO compraDAO;
+    private CarritoDAO carritoDAO;
+    private List<Carrito> carrito;
+
+    @Setup(Level.Trial)
+    public void preparar(BaseDatosBenchmark bd) {
+        compraDAO = new CompraDAO();
+        carritoDAO = new CarritoDAO();
+        carrito = carritoDAO.listarPorUsuarioYNombre(bd.idUsuarioSesion, BaseDatosBenchmark.NOMBRE_CARRITO);
+        if (carrito.isEmpty()) {
+            throw new IllegalStateException("El usuario del benchmark no tiene carrito.");
+        }
+    }
+
+    @Benchmark
+    public boolean registrarCompra() {
+        return compraDAO.registrarCompra(1, "Compra benchmark", carrito);
+    }
+
+    @Benchmark
+    public List<Carrito> listarCarritoPorUsuarioYNombre(BaseDatosBenchmark bd) {
+        return carritoDAO.listarPorUsuarioYNombre(bd.idUsuarioSesion, BaseDatosBenchmark.NOMBRE_CARRITO);
+    }
+}
@@ -0,0 +1,685 @@
+package benchmarks;
+
+import config.ConexionDB;
+import dao.MigracionesEsquema;
+import dao.ResumenGastosDAO;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.LongConsumer;
+
+/**
+ * Generador de histórico sintético con forma de datos reales, para medir la
+ * aplicación con volúmenes de producción (millones de compras).
+ *
+ * Con la misma semilla y los mismos volúmenes genera exactamente los mismos
+ * datos. Las distribuciones buscan parecerse a un uso real:
+ * <ul>
+ * <li>Usuarios con actividad muy desigual (Pareto): unos pocos compran mucho.
+ * Cada uno tiene una tienda habitual donde hace la mayoría de sus compras.</li>
+ * <li>Tiendas de distinto tamaño y productos con popularidad tipo Zipf dentro
+ * de cada tienda.</li>
+ * <li>Compras repartidas por días con estacionalidad semanal (más el viernes
+ * y el sábado, poco el domingo), más gasto en diciembre, menos en verano y
+ * un crecimiento suave a lo largo del periodo. Horas concentradas a mediodía
+ * y por la tarde.</li>
+ * <li>Cestas de tamaño log-normal (más grandes en fin de semana) y cantidades
+ * casi siempre de 1 o 2 unidades.</li>
+ * <li>Precios que suben con el tiempo (inflación distinta por producto) y
+ * ofertas puntuales; cada línea guarda el precio del día de la compra.</li>
+ * </ul>
+ *
+ * Los identificadores se asignan a partir del máximo que ya haya en cada
+ * tabla, así que se puede añadir a una base con datos. Las compras se
+ * generan en orden cronológico y nunca se guardan todas en memoria.
+ *
+ * Uso (con la aplicación instalada, ver pom.xml):
+ * <pre>
+ *   java -cp benchmarks/target/benchmarks.jar benchmarks.GeneradorDatos --compras 2000000 --usuarios 5000
+ * </pre>
+ * Carga por JDBC en lotes en la base configurada con app_compras.db.* y
+ * reconstruye los resúmenes de gastos al terminar. Con --csv DIR escribe un
+ * CSV por tabla y un cargar.sql con LOAD DATA LOCAL INFILE para MySQL, que es
+ * la forma más rápida de cargar varios millones de filas.
+ *
+ * Opciones: --usuarios, --tiendas, --categorias, --productos, --compras,
+ * --lineas (media de líneas por compra), --anios, --semilla, --lote, --csv.
+ *
+ * @author Milanes
+ */
+public final class GeneradorDatos {
+
+    private static final String[] CATEGORIAS = {
+        "Frutas", "Verduras", "Lácteos", "Carne", "Pescado", "Panadería",
+        "Bebidas", "Despensa", "Congelados", "Limpieza", "Higiene", "Mascotas"
+    };
+
+    private static final String[] TIPOS_TIENDA = {"Supermercado", "Mercado", "Hipermercado", "Tienda", "Frutería"};
+
+    /** Peso de cada día de la semana (lunes = 0). */
+    private static final double[] PESO_DIA_SEMANA = {0.90, 0.85, 0.90, 1.00, 1.30, 1.60, 0.45};
+
+    /** Peso de cada mes (enero = 0): rebajas, verano flojo y diciembre fuerte. */
+    private static final double[] PESO_MES = {0.95, 0.90, 1.00, 1.00, 1.00, 1.00, 0.90, 0.85, 1.00, 1.00, 1.05, 1.25};
+
+    private static final String[] NOMBRES_COMPRA = {"Compra semanal", "Compra semanal", "Reposición", "Caprichos"};
+
+    private int usuarios = 1_000;
+    private int tiendas = 20;
+    private int categorias = CATEGORIAS.length;
+    private int productos = 5_000;
+    private long compras = 1_000_000;
+    private double lineasPorCompra = 8;
+    private int anios = 3;
+    private long semilla = 42;
+    private LocalDate hasta = LocalDate.now();
+    private LongConsumer alAvanzar = n -> { };
+
+    // ============================================================
+    // CONFIGURACIÓN
+    // ============================================================
+    public GeneradorDatos usuarios(int usuarios) {
+        this.usuarios = usuarios;
+        return this;
+    }
+
+    public GeneradorDatos tiendas(int tiendas) {
+        this.tiendas = tiendas;
+        return this;
+    }
+
+    public GeneradorDatos categorias(int categorias) {
+        this.categorias = categorias;
+        return this;
+    }
+
+    public GeneradorDatos productos(int productos) {
+        this.productos = productos;
+        return this;
+    }
+
+    public GeneradorDatos compras(long compras) {
+        this.compras = compras;
+        return this;
+    }
+
+    /** Media de líneas por compra (la mediana queda algo por debajo). */
+    public GeneradorDatos lineasPorCompra(double lineasPorCompra) {
+        this.lineasPorCompra = lineasPorCompra;
+        return this;
+    }
+
+    /** Años de histórico, terminando el día anterior a la fecha final. */
+    public GeneradorDatos anios(int anios) {
+        this.anios = anios;
+        return this;
+    }
+
+    public GeneradorDatos semilla(long semilla) {
+        this.semilla = semilla;
+        return this;
+    }
+
+    /** Fecha final (excluida). Por defecto hoy; fijarla hace la salida reproducible entre días. */
+    public GeneradorDatos hasta(LocalDate hasta) {
+        this.hasta = hasta;
+        return this;
+    }
+
+    /** Se llama cada 100.000 compras generadas con las que van. */
+    public GeneradorDatos alAvanzar(LongConsumer alAvanzar) {
+        this.alAvanzar = alAvanzar;
+        return this;
+    }
+
+    // ============================================================
+    // TABLAS Y DESTINOS
+    // ============================================================
+    /** Tablas que se rellenan, en orden de claves ajenas. */
+    enum Tabla {
+        USUARIOS("usuarios", "id_usuario", "nombre", "email", "password", "id_rol"),
+        TIENDAS("tiendas", "id_tienda", "nombre", "direccion", "telefono"),
+        CATEGORIAS("categorias", "id_categoria", "nombre", "descripcion"),
+        PRODUCTOS("productos", "id_producto", "nombre", "descripcion", "precio", "id_tienda", "id_categoria"),
+        COMPRAS("compras", "id_compra", "id_usuario", "id_tienda", "nombre", "fecha_compra", "total"),
+        LISTADO("listado_de_compras", "id_compra", "id_producto", "cantidad", "precio_unitario");
+
+        final String nombre;
+        final String[] columnas;
+
+        Tabla(String nombre, String... columnas) {
+            this.nombre = nombre;
+            this.columnas = columnas;
+        }
+
+        /** Columna del identificador propio (listado_de_compras lo genera la base). */
+        String id() {
+            return this == LISTADO ? null : columnas[0];
+        }
+    }
+
+    /** Dónde van las filas generadas. */
+    interface Salida extends AutoCloseable {
+
+        /** Mayor identificador que ya existe en la tabla (0 si está vacía o no se sabe). */
+        int ultimoId(Tabla tabla) throws SQLException;
+
+        /** Rol que se asigna a los usuarios generados (puede ser null). */
+        Integer rolUsuarios() throws SQLException;
+
+        void fila(Tabla tabla, Object... valores) throws SQLException, IOException;
+
+        @Override
+        void close() throws SQLException, IOException;
+    }
+
+    /**
+     * Inserta por JDBC con un PreparedStatement en lote por tabla. Cuando una
+     * tabla llena su lote se vacían todas en orden de claves ajenas y, si la
+     * conexión no es autocommit, se confirma.
+     */
+    static final class SalidaJDBC implements Salida {
+
+        private final Connection conn;
+        private final int lote;
+        private final Map<Tabla, PreparedStatement> sentencias = new EnumMap<>(Tabla.class);
+        private final Map<Tabla, Integer> pendientes = new EnumMap<>(Tabla.class);
+
+        SalidaJDBC(Connection conn, int lote) {
+            this.conn = conn;
+            this.lote = lote;
+        }
+
+        @Override
+        public int ultimoId(Tabla tabla) throws SQLException {
+            try (Statement st = conn.createStatement();
+                    ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(" + tabla.id() + "), 0) FROM " + tabla.nombre)) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+
+        @Override
+        public Integer rolUsuarios() throws SQLException {
+            try (Statement st = conn.createStatement();
+                    ResultSet rs = st.executeQuery("SELECT id_rol FROM roles ORDER BY nombre = 'Usuario' DESC, id_rol LIMIT 1")) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+
+        @Override
+        public void fila(Tabla tabla, Object... valores) throws SQLException {
+            PreparedStatement ps = sentencias.get(tabla);
+            if (ps == null) {
+                String columnas = String.join(", ", tabla.columnas);
+                String marcas = String.join(", ", Arrays.stream(tabla.columnas).map(c -> "?").toArray(String[]::new));
+                ps = conn.prepareStatement("INSERT INTO " + tabla.nombre + " (" + columnas + ") VALUES (" + marcas + ")");
+                sentencias.put(tabla, ps);
+            }
+            for (int i = 0; i < valores.length; i++) {
+                ps.setObject(i + 1, valores[i]);
+            }
+            ps.addBatch();
+
+            if (pendientes.merge(tabla, 1, Integer::sum) >= lote) {
+                vaciar();
+            }
+        }
+
+        private void vaciar() throws SQLException {
+            for (Map.Entry<Tabla, PreparedStatement> sentencia : sentencias.entrySet()) {
+                if (pendientes.getOrDefault(sentencia.getKey(), 0) > 0) {
+                    sentencia.getValue().executeBatch();
+                }
+            }
+            pendientes.clear();
+            if (!conn.getAutoCommit()) {
+                conn.commit();
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                vaciar();
+            } finally {
+                for (PreparedStatement ps : sentencias.values()) {
+                    ps.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Escribe un CSV por tabla (con cabecera, NULL como \N) y un cargar.sql
+     * con las sentencias LOAD DATA LOCAL INFILE para MySQL. Los
+     * identificadores empiezan en 1: pensado para una base vacía.
+     */
+    static final class SalidaCSV implements Salida {
+
+        private static final DateTimeFormatter FECHA = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+        private final Path directorio;
+        private final Map<Tabla, Writer> ficheros = new EnumMap<>(Tabla.class);
+
+        SalidaCSV(Path directorio) throws IOException {
+            this.directorio = Files.createDirectories(directorio).toAbsolutePath();
+        }
+
+        @Override
+        public int ultimoId(Tabla tabla) {
+            return 0;
+        }
+
+        @Override
+        public Integer rolUsuarios() {
+            return null;
+        }
+
+        @Override
+        public void fila(Tabla tabla, Object... valores) throws IOException {
+            Writer w = ficheros.get(tabla);
+            if (w == null) {
+                w = Files.newBufferedWriter(fichero(tabla), StandardCharsets.UTF_8);
+                w.write(String.join(",", tabla.columnas));
+                w.write('\n');
+                ficheros.put(tabla, w);
+            }
+            for (int i = 0; i < valores.length; i++) {
+                if (i > 0) {
+                    w.write(',');
+                }
+                w.write(campo(valores[i]));
+            }
+            w.write('\n');
+        }
+
+        private static String campo(Object valor) {
+            if (valor == null) {
+                return "\\N";
+            }
+            if (valor instanceof Timestamp) {
+                return FECHA.format(((Timestamp) valor).toLocalDateTime());
+            }
+            if (valor instanceof BigDecimal) {
+                return ((BigDecimal) valor).toPlainString();
+            }
+            if (valor instanceof String) {
+                return "\"" + ((String) valor).replace("\"", "\"\"") + "\"";
+            }
+            return valor.toString();
+        }
+
+        private Path fichero(Tabla tabla) {
+            return directorio.resolve(tabla.nombre + ".csv");
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (Writer w : ficheros.values()) {
+                w.close();
+            }
+
+            try (BufferedWriter sql = Files.newBufferedWriter(directorio.resolve("cargar.sql"), StandardCharsets.UTF_8)) {
+                sql.write("-- Cargar con: mysql --local-infile=1 app_compras < cargar.sql\n");
+                sql.write("SET FOREIGN_KEY_CHECKS = 0;\n");
+                sql.write("SET UNIQUE_CHECKS = 0;\n");
+                for (Tabla tabla : ficheros.keySet()) {
+                    sql.write("LOAD DATA LOCAL INFILE '" + fichero(tabla).toString().replace("\\", "/").replace("'", "''")
+                            + "' INTO TABLE " + tabla.nombre + " CHARACTER SET utf8mb4"
+                            + " FIELDS TERMINATED BY ',' OPTIONALLY ENCLOSED BY '\"'"
+                            + " LINES TERMINATED BY '\\n' IGNORE 1 LINES"
+                            + " (" + String.join(", ", tabla.columnas) + ");\n");
+                }
+                sql.write("SET UNIQUE_CHECKS = 1;\n");
+                sql.write("SET FOREIGN_KEY_CHECKS = 1;\n");
+                // Las migraciones son idempotentes: al borrar su registro la
+                // aplicación las repite al arrancar y reconstruye los resúmenes
+                sql.write("-- Los resúmenes de gastos ya no cuadran: la aplicación los vuelve a crear al arrancar\n");
+                sql.write("DROP TABLE IF EXISTS resumen_gasto_dia, resumen_gasto_semana, resumen_gasto_mes, resumen_gasto_anual;\n");
+                sql.write("DROP TABLE IF EXISTS version_esquema;\n");
+            }
+        }
+    }
+
+    // ============================================================
+    // GENERACIÓN
+    // ============================================================
+    /** Catálogo de una tienda: productos por popularidad y su peso acumulado. */
+    private static final class Catalogo {
+
+        int[] productos = new int[16];
+        int tamanio;
+        double[] acumulado;
+
+        void agregar(int producto) {
+            if (tamanio == productos.length) {
+                productos = Arrays.copyOf(productos, tamanio * 2);
+            }
+            productos[tamanio++] = producto;
+        }
+
+        /** Popularidad Zipf según el orden en el que se añadieron. */
+        void cerrar() {
+            acumulado = new double[tamanio];
+            double suma = 0;
+            for (int i = 0; i < tamanio; i++) {
+                suma += 1.0 / Math.pow(i + 2, 0.9);
+                acumulado[i] = suma;
+            }
+        }
+
+        int elegir(SplittableRandom azar) {
+            return productos[buscar(acumulado, azar.nextDouble() * acumulado[tamanio - 1])];
+        }
+    }
+
+    /**
+     * Genera todos los datos en la salida indicada.
+     *
+     * @return número de líneas de compra generadas
+     */
+    public long generar(Salida salida) throws SQLException, IOException {
+        if (usuarios < 1 || tiendas < 1 || categorias < 1 || productos < tiendas || compras < 0 || anios < 1) {
+            throw new IllegalArgumentException("Volúmenes no válidos: hace falta al menos un usuario, una tienda,"
+                    + " una categoría, un año y tantos productos como tiendas.");
+        }
+
+        // Un generador por tabla: cambiar el número de compras no cambia el catálogo
+        SplittableRandom raiz = new SplittableRandom(semilla);
+        SplittableRandom azarTiendas = raiz.split();
+        SplittableRandom azarProductos = raiz.split();
+        SplittableRandom azarUsuarios = raiz.split();
+        SplittableRandom azarCompras = raiz.split();
+
+        int baseUsuario = salida.ultimoId(Tabla.USUARIOS);
+        int baseTienda = salida.ultimoId(Tabla.TIENDAS);
+        int baseCategoria = salida.ultimoId(Tabla.CATEGORIAS);
+        int baseProducto = salida.ultimoId(Tabla.PRODUCTOS);
+        int baseCompra = salida.ultimoId(Tabla.COMPRAS);
+        Integer idRol = salida.rolUsuarios();
+
+        // Categorías
+        for (int c = 1; c <= categorias; c++) {
+            String nombre = c <= CATEGORIAS.length ? CATEGORIAS[c - 1] : "Categoría " + c;
+            salida.fila(Tabla.CATEGORIAS, baseCategoria + c, nombre, "Generada");
+        }
+
+        // Tiendas de distinto tamaño (las primeras, las cadenas grandes)
+        double[] pesoTienda = new double[tiendas];
+        double sumaTiendas = 0;
+        for (int t = 0; t < tiendas; t++) {
+            sumaTiendas += 1.0 / Math.pow(t + 1, 0.7);
+            pesoTienda[t] = sumaTiendas;
+            salida.fila(Tabla.TIENDAS, baseTienda + t + 1,
+                    TIPOS_TIENDA[t % TIPOS_TIENDA.length] + " " + (t + 1),
+                    "Calle " + (1 + azarTiendas.nextInt(200)) + ", " + (1 + azarTiendas.nextInt(90)),
+                    String.valueOf(600_000_000 + azarTiendas.nextInt(399_999_999)));
+        }
+
+        // Productos: tienda, categoría, precio base e inflación propia
+        Catalogo[] catalogos = new Catalogo[tiendas];
+        for (int t = 0; t < tiendas; t++) {
+            catalogos[t] = new Catalogo();
+        }
+        double[] precioBase = new double[productos];
+        double[] inflacion = new double[productos];
+        for (int p = 0; p < productos; p++) {
+            int tienda = p < tiendas ? p : buscar(pesoTienda, azarProductos.nextDouble() * sumaTiendas);
+            int categoria = (int) (Math.pow(azarProductos.nextDouble(), 1.5) * categorias);
+            precioBase[p] = Math.min(150, Math.max(0.2, 2.2 * Math.exp(0.8 * gauss(azarProductos))));
+            inflacion[p] = 0.03 + 0.02 * gauss(azarProductos);
+            catalogos[tienda].agregar(p);
+
+            String nombreCategoria = categoria < CATEGORIAS.length ? CATEGORIAS[categoria] : "Categoría " + (categoria + 1);
+            salida.fila(Tabla.PRODUCTOS, baseProducto + p + 1, nombreCategoria + " " + (p + 1), "Producto generado",
+                    centimos(Math.round(precioBase[p] * Math.exp(inflacion[p] * anios) * 100)),
+                    baseTienda + tienda + 1, baseCategoria + categoria + 1);
+        }
+        for (Catalogo catalogo : catalogos) {
+            catalogo.cerrar();
+        }
+
+        // Usuarios: actividad de Pareto y tienda habitual
+        double[] actividad = new double[usuarios];
+        int[] tiendaHabitual = new int[usuarios];
+        double sumaActividad = 0;
+        for (int u = 0; u < usuarios; u++) {
+            sumaActividad += Math.min(50, Math.pow(1 - azarUsuarios.nextDouble(), -1 / 1.3));
+            actividad[u] = sumaActividad;
+            tiendaHabitual[u] = buscar(pesoTienda, azarUsuarios.nextDouble() * sumaTiendas);
+            int id = baseUsuario + u + 1;
+            salida.fila(Tabla.USUARIOS, id, "usuario" + id, "usuario" + id + "@ejemplo.local", "1234", idRol);
+        }
+
+        return generarCompras(salida, azarCompras, baseCompra, baseUsuario, baseTienda, baseProducto,
+                catalogos, pesoTienda, sumaTiendas, actividad, tiendaHabitual, precioBase, inflacion);
+    }
+
+    private long generarCompras(Salida salida, SplittableRandom azar, int baseCompra, int baseUsuario,
+            int baseTienda, int baseProducto, Catalogo[] catalogos, double[] pesoTienda, double sumaTiendas,
+            double[] actividad, int[] tiendaHabitual, double[] precioBase, double[] inflacion)
+            throws SQLException, IOException {
+
+        LocalDate desde = hasta.minusYears(anios);
+        int dias = (int) (hasta.toEpochDay() - desde.toEpochDay());
+
+        // Peso de cada día: semana, mes y crecimiento a lo largo del periodo
+        double[] pesoDia = new double[dias];
+        double sumaDias = 0;
+        for (int d = 0; d < dias; d++) {
+            LocalDate dia = desde.plusDays(d);
+            pesoDia[d] = PESO_DIA_SEMANA[dia.getDayOfWeek().getValue() - 1]
+                    * PESO_MES[dia.getMonthValue() - 1]
+                    * (1 + 0.15 * d / 365.0);
+            sumaDias += pesoDia[d];
+        }
+
+        // Reparto sistemático: suma exactamente "compras" y mantiene el orden cronológico
+        double desfase = azar.nextDouble();
+        double acumulado = 0;
+        long anterior = 0;
+        long idCompra = baseCompra;
+        long lineas = 0;
+        int[] segundos = new int[64];
+        int[] cesta = new int[64];
+
+        for (int d = 0; d < dias; d++) {
+            acumulado += pesoDia[d];
+            long hastaAqui = (long) Math.floor(acumulado * compras / sumaDias + desfase);
+            int delDia = (int) (hastaAqui - anterior);
+            anterior = hastaAqui;
+            if (delDia == 0) {
+                continue;
+            }
+
+            LocalDate dia = desde.plusDays(d);
+            boolean finDeSemana = dia.getDayOfWeek() == DayOfWeek.SATURDAY || dia.getDayOfWeek() == DayOfWeek.SUNDAY;
+            double anioDesdeInicio = d / 365.0;
+
+            if (segundos.length < delDia) {
+                segundos = new int[Math.max(delDia, segundos.length * 2)];
+            }
+            for (int i = 0; i < delDia; i++) {
+                segundos[i] = segundoDelDia(azar);
+            }
+            Arrays.sort(segundos, 0, delDia);
+
+            for (int i = 0; i < delDia; i++) {
+                idCompra++;
+                int usuario = buscar(actividad, azar.nextDouble() * actividad[actividad.length - 1]);
+                int tienda = azar.nextDouble() < 0.75
+                        ? tiendaHabitual[usuario]
+                        : buscar(pesoTienda, azar.nextDouble() * sumaTiendas);
+                Catalogo catalogo = catalogos[tienda];
+
+                // Cesta log-normal con la media pedida; sin repetir producto
+                double mediana = lineasPorCompra * (finDeSemana ? 1.3 : 1.0) / Math.exp(0.18);
+                int tamanio = (int) Math.max(1, Math.min(60, Math.round(mediana * Math.exp(0.6 * gauss(azar)))));
+                tamanio = Math.min(tamanio, catalogo.tamanio);
+                if (cesta.length < tamanio) {
+                    cesta = new int[tamanio * 2];
+                }
+                int enCesta = 0;
+                for (int intento = 0; enCesta < tamanio && intento < tamanio * 4; intento++) {
+                    int producto = catalogo.elegir(azar);
+                    if (!contiene(cesta, enCesta, producto)) {
+                        cesta[enCesta++] = producto;
+                    }
+                }
+
+                long totalCentimos = 0;
+                Object[][] lineasCompra = new Object[enCesta][];
+                for (int l = 0; l < enCesta; l++) {
+                    int producto = cesta[l];
+                    int cantidad = 1 + Math.min(11, geometrica(azar, 0.65));
+                    double precio = precioBase[producto] * Math.exp(inflacion[producto] * anioDesdeInicio);
+                    if (azar.nextDouble() < 0.08) {
+                        precio *= 0.7 + 0.2 * azar.nextDouble(); // oferta
+                    }
+                    long precioCentimos = Math.max(1, Math.round(precio * 100));
+                    totalCentimos += precioCentimos * cantidad;
+                    lineasCompra[l] = new Object[]{idCompra, baseProducto + producto + 1, cantidad, centimos(precioCentimos)};
+                }
+
+                String nombre = enCesta >= 20 ? "Compra grande"
+                        : enCesta <= 2 ? "Compra del día"
+                        : NOMBRES_COMPRA[azar.nextInt(NOMBRES_COMPRA.length)];
+                LocalDateTime fecha = dia.atStartOfDay().plusSeconds(segundos[i]);
+                salida.fila(Tabla.COMPRAS, idCompra, baseUsuario + usuario + 1, baseTienda + tienda + 1,
+                        nombre, Timestamp.valueOf(fecha), centimos(totalCentimos));
+                for (Object[] linea : lineasCompra) {
+                    salida.fila(Tabla.LISTADO, linea);
+                }
+                lineas += enCesta;
+
+                if ((idCompra - baseCompra) % 100_000 == 0) {
+                    alAvanzar.accept(idCompra - baseCompra);
+                }
+            }
+        }
+        return lineas;
+    }
+
+    // ============================================================
+    // UTILIDADES
+    // ============================================================
+    /** Primera posición cuyo acumulado supera el valor. */
+    private static int buscar(double[] acumulado, double valor) {
+        int i = Arrays.binarySearch(acumulado, valor);
+        i = i >= 0 ? i + 1 : -i - 1;
+        return Math.min(i, acumulado.length - 1);
+    }
+
+    private static boolean contiene(int[] valores, int tamanio, int valor) {
+        for (int i = 0; i < tamanio; i++) {
+            if (valores[i] == valor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Normal estándar (Box-Muller); SplittableRandom no la trae en Java 11. */
+    private static double gauss(SplittableRandom azar) {
+        double u = 1 - azar.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * azar.nextDouble());
+    }
+
+    /** Número de fracasos antes del primer acierto con probabilidad p. */
+    private static int geometrica(SplittableRandom azar, double p) {
+        return (int) (Math.log(1 - azar.nextDouble()) / Math.log(1 - p));
+    }
+
+    /** Hora de la compra: picos a mediodía y por la tarde, entre las 8 y las 22. */
+    private static int segundoDelDia(SplittableRandom azar) {
+        double r = azar.nextDouble();
+        double hora = r < 0.35 ? 12.5 + 1.5 * gauss(azar)
+                : r < 0.85 ? 19 + 1.5 * gauss(azar)
+                : 9 + 12 * azar.nextDouble();
+        hora = Math.max(8, Math.min(22, hora));
+        return (int) (hora * 3600);
+    }
+
+    private static BigDecimal centimos(long centimos) {
+        return BigDecimal.valueOf(centimos, 2);
+    }
+
+    // ============================================================
+    // LÍNEA DE COMANDOS
+    // ============================================================
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opciones = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Opción no válida: " + args[i]);
+            }
+            opciones.put(args[i].substring(2), args[i + 1]);
+        }
+
+        long inicio = System.nanoTime();
+        GeneradorDatos generador = new GeneradorDatos()
+                .usuarios(Integer.parseInt(opciones.getOrDefault("usuarios", "1000")))
+                .tiendas(Integer.parseInt(opciones.getOrDefault("tiendas", "20")))
+                .categorias(Integer.parseInt(opciones.getOrDefault("categorias", String.valueOf(CATEGORIAS.length))))
+                .productos(Integer.parseInt(opciones.getOrDefault("productos", "5000")))
+                .compras(Long.parseLong(opciones.getOrDefault("compras", "1000000")))
+                .lineasPorCompra(Double.parseDouble(opciones.getOrDefault("lineas", "8")))
+                .anios(Integer.parseInt(opciones.getOrDefault("anios", "3")))
+                .semilla(Long.parseLong(opciones.getOrDefault("semilla", "42")))
+                .alAvanzar(n -> System.out.printf("  %,d compras (%d s)%n", n, (System.nanoTime() - inicio) / 1_000_000_000L));
+        int lote = Integer.parseInt(opciones.getOrDefault("lote", "5000"));
+
+        long lineas;
+        if (opciones.containsKey("csv")) {
+            Path directorio = Paths.get(opciones.get("csv"));
+            try (SalidaCSV salida = new SalidaCSV(directorio)) {
+                lineas = generador.generar(salida);
+            }
+            System.out.println("CSV y cargar.sql escritos en " + directorio.toAbsolutePath());
+        } else {
+            // Esquema al día antes de cargar: así la migración de los resúmenes
+            // no tiene que recorrer el histórico recién generado
+            if (!MigracionesEsquema.aplicar()) {
+                throw new SQLException("No se pudo actualizar el esquema de la base de datos (ver log.txt).");
+            }
+            try (Connection conn = ConexionDB.getConexion()) {
+                if (conn == null) {
+                    throw new SQLException("No se pudo abrir la base de datos (ver log.txt).");
+                }
+                conn.setAutoCommit(false);
+                try (SalidaJDBC salida = new SalidaJDBC(conn, lote)) {
+                    lineas = generador.generar(salida);
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+            System.out.println("Reconstruyendo los resúmenes de gastos...");
+            if (!new ResumenGastosDAO().reconstruir()) {
+                System.out.println("No se pudieron reconstruir los resúmenes (ver log.txt).");
+            }
+            ConexionDB.cerrarConexion();
+        }
+
+        System.out.printf("Generadas %,d líneas de compra en %d s%n", lineas, (System.nanoTime() - inicio) / 1_000_000_000L);
+    }
+}
@@ -0,0 +1,79 @@
+package benchmarks;
+
+import dao.GastoSemanalDAO;
+import dao.GastosAnualesDAO;
+import dao.GastosDIADAO;
+import dao.GastosMesDAO;
+import dao.ResumenGastosDAO;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import models.GastoSemanal;
+import models.GastosAnual;
+import models.GastosDia;
+import models.GastosMes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Informes de gastos (día, semana, mes y año) sin filtros, como se abren las
+ * pantallas, y la reconstrucción completa de las tablas de resumen.
+ *
+ * @author Milanes
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InformesGastosBenchmark {
+
+    private GastosDIADAO gastosDiaDAO;
+    private GastoSemanalDAO gastoSemanalDAO;
+    private GastosMesDAO gastosMesDAO;
+    private GastosAnualesDAO gastosAnualesDAO;
+    private ResumenGastosDAO resumenDAO;
+
+    @Setup(Level.Trial)
+    public void preparar(BaseDatosBenchmark bd) {
+        gastosDiaDAO = new GastosDIADAO();
+        gastoSemanalDAO = new GastoSemanalDAO();
+        gastosMesDAO = new GastosMesDAO();
+        gastosAnualesDAO = new GastosAnualesDAO();
+        resumenDAO = new ResumenGastosDAO();
+    }
+
+    @Benchmark
+    public List<GastosDia> gastosPorDia() {
+        return gastosDiaDAO.listarPorDiaYUsuario(null, null);
+    }
+
+    @Benchmark
+    public List<GastoSemanal> gastosPorSemana() {
+        return gastoSemanalDAO.listarPorSemanaYUsuario(0, null);
+    }
+
+    @Benchmark
+    public List<GastosMes> gastosPorMes() {
+        return gastosMesDAO.listarPorMesYUsuario(0, null);
+    }
+
+    @Benchmark
+    public List<GastosAnual> gastosPorAnio() {
+        return gastosAnualesDAO.listarPorAnioYUsuario(0, null);
+    }
+
+    @Benchmark
+    public boolean reconstruirResumenes() {
+        return resumenDAO.reconstruir();
+    }
+}
@@ -0,0 +1,56 @@
+package benchmarks;
+
+import dao.ListadoDeCompraDAO;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import models.ListadoCompra;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Listado de compras: carga completa frente a la primera página (lo que hace
+ * la pantalla al abrirse) y el recorrido por filas que usa la exportación.
+ *
+ * @author Milanes
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListadoBenchmark {
+
+    private ListadoDeCompraDAO listadoDAO;
+
+    @Setup(Level.Trial)
+    public void preparar(BaseDatosBenchmark bd) {
+        listadoDAO = new ListadoDeCompraDAO();
+    }
+
+    @Benchmark
+    public List<ListadoCompra> listarDetallesCompras() {
+        return listadoDAO.listarDetallesCompras();
+    }
+
+    @Benchmark
+    public List<ListadoCompra> listarPrimeraPagina() {
+        return listadoDAO.listarDetallesPagina(-1, 0, 0, ListadoDeCompraDAO.TAMANIO_PAGINA);
+    }
+
+    @Benchmark
+    public int recorrerComprasAgrupadas() throws Exception {
+        int[] unidades = {0};
+        listadoDAO.recorrerComprasAgrupadasPorUsuario(-1, fila -> unidades[0] += fila.getCantidad());
+        return unidades[0];
+    }
+}
@@ -25,7 +25,8 @@ INSERT INTO `permisos` (`id_permiso`, `nombre`, `descripcion`, `area`) VALUES
 (10, 'btnGastosPorMes', 'Permite ver gastos mensuales.', 'Gastos por Mes'),
 (11, 'btnGastosAnual', 'Permite ver gastos anuales.', 'Gastos Anuales'),
 (12, 'btnGestionRepartidores', 'Permite gestionar repartidores.', 'Gestión de Repartidores'),
-(13, 'permisoVerTodasLasCompras', 'Permite ver las compras de todos los usuarios', 'Ver Todas las Compras');
+(13, 'permisoVerTodasLasCompras', 'Permite ver las compras de todos los usuarios', 'Ver Todas las Compras'),
+(14, 'btnMetricas', 'Permite ver las métricas de la base de datos.', 'Métricas');
 
 -- 3️⃣ ROLES_PERMISOS (relación entre roles y permisos)
 INSERT INTO `roles_permisos` (`id_rol`, `id_permiso`, `activo`) VALUES
@@ -42,6 +43,7 @@ INSERT INTO `roles_permisos` (`id_rol`, `id_permiso`, `activo`) VALUES
 (1, 11, 1),
 (1, 12, 1),
 (1, 13, 1),
+(1, 14, 1),
 (2, 1, 1),
 (2, 2, 1),
 (2, 3, 1),
@@ -104,4 +106,5 @@ INSERT INTO `usuarios_permisos` (`id_usuario`, `id_permiso`) VALUES
 (1, 10),
 (1, 11),
 (1, 12),
-(1, 13);
+(1, 13),
+(1, 14);
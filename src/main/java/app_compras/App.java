@@ -1,8 +1,11 @@
 package app_compras;
 
+import config.ConexionDB;
+import config.TareasBD;
+import dao.CarritoEnMemoria;
+import dao.DiarioCarrito;
+import dao.MigracionesEsquema;
 import javafx.application.Application;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 import java.io.IOException;
@@ -10,6 +13,7 @@ import java.io.IOException;
 public class App extends Application {
 
     private static Stage mainStage;
+    private static Scene escena;
 
     @Override
     public void start(Stage stage) throws IOException {
@@ -19,6 +23,26 @@ public class App extends Application {
         cargarVista("views/login");
         stage.setTitle("Gestor de Compras del Hogar");
         stage.show();
+
+        // Mientras el usuario inicia sesión se pone el esquema al día y se
+        // preparan las vistas más usadas
+        Thread migraciones = new Thread(MigracionesEsquema::aplicar, "migraciones-esquema");
+        migraciones.setDaemon(true);
+        migraciones.start();
+        Vistas.precargar();
+    }
+
+    /**
+     * Al cerrar la aplicación se guardan los carritos con cambios pendientes
+     * (en la base y en su diario local), se detienen las tareas de fondo y se
+     * liberan las conexiones del pool.
+     */
+    @Override
+    public void stop() {
+        DiarioCarrito.cerrarTodos();
+        CarritoEnMemoria.volcarTodos();
+        TareasBD.cerrar();
+        ConexionDB.cerrarConexion();
     }
 
     /**
@@ -30,14 +54,32 @@ public class App extends Application {
     }
 
     /**
-     * Método reutilizable para cambiar la escena actual.
+     * Vuelve al login tras cerrar la sesión. Las vistas guardadas se
+     * descartan porque muestran los datos y los permisos del usuario que
+     * salió, y se vuelven a precargar para el siguiente.
+     */
+    public static void volverAlLogin() throws IOException {
+        Vistas.vaciar();
+        cargarVista("views/login");
+        Vistas.precargar();
+    }
+
+    /**
+     * Método reutilizable para cambiar la vista actual. Hay una sola escena
+     * para toda la aplicación: solo se cambia su raíz, y la vista sale de la
+     * caché de Vistas cuando ya se había cargado antes.
      */
     private static void cargarVista(String fxml) throws IOException {
-        FXMLLoader loader = new FXMLLoader(App.class.getResource("/" + fxml + ".fxml"));
-        Parent root = loader.load();
+        Vistas.Vista vista = Vistas.obtener(fxml);
+
+        if (escena == null) {
+            escena = new Scene(vista.raiz);
+            mainStage.setScene(escena);
+        } else {
+            escena.setRoot(vista.raiz);
+        }
+        vista.alMostrar();
 
-        Scene newScene = new Scene(root);
-        mainStage.setScene(newScene);
         mainStage.sizeToScene(); // 🔹 Ajusta automáticamente al tamaño del FXML
         mainStage.centerOnScreen(); // 🔹 Centra la ventana en pantalla
     }
@@ -0,0 +1,20 @@
+package app_compras;
+
+/**
+ * Controlador cuya vista puede quedarse en la caché de vistas de App y volver
+ * a mostrarse sin leer de nuevo el FXML.
+ *
+ * El initialize() de estos controladores solo prepara la vista (columnas,
+ * eventos...) porque puede ejecutarse en segundo plano, antes de que haya
+ * sesión. Lo que depende de la sesión o de los datos va en alMostrar().
+ *
+ * @author Milanes
+ */
+public interface VistaReutilizable {
+
+    /**
+     * Se llama en el hilo de JavaFX cada vez que la vista pasa a ser la
+     * visible, también la primera.
+     */
+    void alMostrar();
+}
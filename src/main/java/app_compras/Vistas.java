@@ -0,0 +1,148 @@
+package app_compras;
+
+import config.Logger;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javafx.application.Platform;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+
+/**
+ * Registro de las vistas FXML ya cargadas. Leer un FXML (parseo, reflexión
+ * sobre el controlador, creación de todos los nodos) cuesta más que cambiar la
+ * raíz de la escena, así que las vistas cuyo controlador implementa
+ * VistaReutilizable se guardan en una caché LRU y se reutilizan. Las demás se
+ * cargan cada vez, como antes.
+ *
+ * Mientras se muestra el login se precargan en un hilo aparte las vistas más
+ * usadas, para que el primer acceso tras iniciar sesión sea inmediato.
+ *
+ * Propiedades del sistema:
+ * <ul>
+ * <li>app_compras.vistas.max: vistas guardadas como máximo (8 por defecto,
+ * 0 desactiva la caché).</li>
+ * <li>app_compras.vistas.precarga: vistas a precargar separadas por comas
+ * (vacío para no precargar).</li>
+ * </ul>
+ *
+ * @author Milanes
+ */
+final class Vistas {
+
+    static final int MAXIMO = Math.max(0, Integer.getInteger("app_compras.vistas.max", 8));
+
+    private static final List<String> PRECARGA = Arrays.stream(System.getProperty("app_compras.vistas.precarga",
+            "views/dashboard,views/productos,views/categorias,views/tienda").split(","))
+            .map(String::trim)
+            .filter(s -> !s.isEmpty())
+            .collect(Collectors.toList());
+
+    /** Vistas reutilizables por nombre de FXML. Solo se usa desde el hilo de JavaFX. */
+    private static final Map<String, Vista> CACHE = new LinkedHashMap<String, Vista>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Vista> eldest) {
+            return size() > MAXIMO;
+        }
+    };
+
+    private Vistas() {
+    }
+
+    /** Nodo raíz de una vista junto con su controlador. */
+    static final class Vista {
+
+        final Parent raiz;
+        final Object controlador;
+
+        private Vista(Parent raiz, Object controlador) {
+            this.raiz = raiz;
+            this.controlador = controlador;
+        }
+
+        boolean esReutilizable() {
+            return controlador instanceof VistaReutilizable;
+        }
+
+        /** Avisa al controlador de que su vista ya es la visible. */
+        void alMostrar() {
+            if (esReutilizable()) {
+                ((VistaReutilizable) controlador).alMostrar();
+            }
+        }
+    }
+
+    // ============================================================
+    // OBTENER VISTAS
+    // ============================================================
+    /**
+     * Devuelve la vista de la caché o, si no está, la carga (y la guarda si es
+     * reutilizable). Debe llamarse desde el hilo de JavaFX.
+     */
+    static Vista obtener(String fxml) throws IOException {
+        Vista vista = CACHE.get(fxml);
+        if (vista != null) {
+            return vista;
+        }
+
+        vista = cargar(fxml);
+        if (vista.esReutilizable() && MAXIMO > 0) {
+            CACHE.put(fxml, vista);
+        }
+        return vista;
+    }
+
+    private static Vista cargar(String fxml) throws IOException {
+        FXMLLoader loader = new FXMLLoader(App.class.getResource("/" + fxml + ".fxml"));
+        Parent raiz = loader.load();
+        return new Vista(raiz, loader.getController());
+    }
+
+    /** Descarta todas las vistas guardadas. */
+    static void vaciar() {
+        CACHE.clear();
+    }
+
+    // ============================================================
+    // PRECARGA EN SEGUNDO PLANO
+    // ============================================================
+    /**
+     * Carga en un hilo aparte las vistas configuradas en
+     * app_compras.vistas.precarga. Cada vista se añade a la caché desde el hilo
+     * de JavaFX; si mientras tanto el usuario ya la abrió, se queda la suya.
+     * Un fallo solo se registra: la vista se cargará al abrirla.
+     */
+    static void precargar() {
+        if (MAXIMO == 0 || PRECARGA.isEmpty()) {
+            return;
+        }
+
+        Thread hilo = new Thread(() -> {
+            for (String fxml : PRECARGA) {
+                try {
+                    long inicio = System.nanoTime();
+                    Vista vista = cargar(fxml);
+                    if (!vista.esReutilizable()) {
+                        Logger.warning("La vista " + fxml + " no es reutilizable; no se guarda precargada.");
+                        continue;
+                    }
+                    long ms = (System.nanoTime() - inicio) / 1_000_000;
+                    Platform.runLater(() -> {
+                        if (!CACHE.containsKey(fxml) && CACHE.size() < MAXIMO) {
+                            CACHE.put(fxml, vista);
+                        }
+                    });
+                    Logger.info(() -> "Vista precargada: " + fxml + " (" + ms + " ms)");
+                } catch (IOException | RuntimeException e) {
+                    Logger.exception("No se pudo precargar la vista " + fxml, e);
+                }
+            }
+        }, "precarga-vistas");
+        hilo.setDaemon(true);
+        hilo.setPriority(Thread.MIN_PRIORITY);
+        hilo.start();
+    }
+}
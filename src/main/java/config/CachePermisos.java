@@ -0,0 +1,215 @@
+package config;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché en memoria de los permisos efectivos por rol y por usuario.
+ *
+ * Al primer uso se leen de una vez las tablas permisos, roles,
+ * roles_permisos y usuarios_permisos. Cada permiso recibe un índice de bit y
+ * los permisos de cada rol y de cada usuario se guardan como BitSet, así que
+ * comprobar un permiso no hace ninguna consulta a la base de datos.
+ *
+ * Igual que en el Dashboard, los permisos efectivos de un usuario son los
+ * suyos propios si tiene alguno asignado y, si no, los de su rol.
+ *
+ * Los DAOs que modifican roles, permisos o permisos de usuario llaman a
+ * invalidar(); la siguiente consulta vuelve a cargar la caché.
+ *
+ * @author Milanes
+ */
+public final class CachePermisos {
+
+    private static volatile Instantanea actual;
+    // Cambia en cada invalidación; evita guardar una carga que empezó antes
+    private static final AtomicLong VERSION = new AtomicLong();
+
+    private CachePermisos() {
+    }
+
+    // ============================================================
+    // CONSULTAS
+    // ============================================================
+    /**
+     * Indica si el usuario tiene el permiso (propio o heredado de su rol).
+     */
+    public static boolean tienePermiso(int idUsuario, int idRol, String nombrePermiso) {
+        Instantanea c = obtener();
+        BitSet mascara = c.mascaraPorNombre.get(nombrePermiso);
+        return mascara != null && mascara.intersects(c.efectivos(idUsuario, idRol));
+    }
+
+    /**
+     * Indica si el rol tiene asignado el permiso.
+     */
+    public static boolean rolTienePermiso(int idRol, String nombrePermiso) {
+        Instantanea c = obtener();
+        BitSet mascara = c.mascaraPorNombre.get(nombrePermiso);
+        BitSet bits = c.porRol.get(idRol);
+        return mascara != null && bits != null && mascara.intersects(bits);
+    }
+
+    /**
+     * Nombres de los permisos efectivos del usuario.
+     */
+    public static Set<String> permisosEfectivos(int idUsuario, int idRol) {
+        Instantanea c = obtener();
+        BitSet bits = c.efectivos(idUsuario, idRol);
+        Set<String> nombres = new LinkedHashSet<>();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            nombres.add(c.nombrePorBit[i]);
+        }
+        return Collections.unmodifiableSet(nombres);
+    }
+
+    /**
+     * Indica si el usuario tiene permisos personalizados (no hereda los del rol).
+     */
+    public static boolean tienePermisosPropios(int idUsuario) {
+        BitSet bits = obtener().porUsuario.get(idUsuario);
+        return bits != null && !bits.isEmpty();
+    }
+
+    /**
+     * Nombre del rol o null si el rol no existe.
+     */
+    public static String nombreRol(int idRol) {
+        return obtener().nombresRol.get(idRol);
+    }
+
+    /**
+     * Descarta la caché. Se recarga en la siguiente consulta.
+     */
+    public static void invalidar() {
+        VERSION.incrementAndGet();
+        actual = null;
+        Logger.info("Caché de permisos invalidada.");
+    }
+
+    // ============================================================
+    // CARGA
+    // ============================================================
+    private static Instantanea obtener() {
+        Instantanea c = actual;
+        if (c != null) {
+            return c;
+        }
+        synchronized (CachePermisos.class) {
+            c = actual;
+            if (c != null) {
+                return c;
+            }
+            long version = VERSION.get();
+            Instantanea nueva = cargar();
+            if (nueva == null) {
+                // Sin base de datos: caché vacía, se reintenta en la siguiente consulta
+                return new Instantanea(Collections.emptyList());
+            }
+            if (VERSION.get() == version) {
+                actual = nueva;
+            }
+            return nueva;
+        }
+    }
+
+    private static Instantanea cargar() {
+        Connection conn = ConexionDB.getConexion();
+        if (conn == null) {
+            return null;
+        }
+
+        try (conn; Statement stmt = conn.createStatement()) {
+
+            Map<Integer, Integer> bitPorId = new HashMap<>();
+            List<String> nombres = new ArrayList<>();
+
+            try (ResultSet rs = stmt.executeQuery("SELECT id_permiso, nombre FROM permisos ORDER BY id_permiso")) {
+                while (rs.next()) {
+                    String nombre = rs.getString("nombre");
+                    bitPorId.put(rs.getInt("id_permiso"), nombres.size());
+                    nombres.add(nombre != null ? nombre.trim() : "");
+                }
+            }
+
+            Instantanea c = new Instantanea(nombres);
+
+            try (ResultSet rs = stmt.executeQuery("SELECT id_rol, nombre FROM roles")) {
+                while (rs.next()) {
+                    c.nombresRol.put(rs.getInt("id_rol"), rs.getString("nombre"));
+                }
+            }
+
+            try (ResultSet rs = stmt.executeQuery("SELECT id_rol, id_permiso FROM roles_permisos")) {
+                while (rs.next()) {
+                    asignar(c.porRol, rs.getInt("id_rol"), bitPorId.get(rs.getInt("id_permiso")));
+                }
+            }
+
+            try (ResultSet rs = stmt.executeQuery("SELECT id_usuario, id_permiso FROM usuarios_permisos")) {
+                while (rs.next()) {
+                    asignar(c.porUsuario, rs.getInt("id_usuario"), bitPorId.get(rs.getInt("id_permiso")));
+                }
+            }
+
+            Logger.info(() -> "Caché de permisos cargada: " + c.nombrePorBit.length + " permisos, "
+                    + c.porRol.size() + " roles, " + c.porUsuario.size() + " usuarios con permisos propios.");
+            return c;
+
+        } catch (SQLException e) {
+            Logger.exception("Error al cargar la caché de permisos.", e);
+        }
+        return null;
+    }
+
+    private static void asignar(Map<Integer, BitSet> destino, int id, Integer bit) {
+        if (bit != null) {
+            destino.computeIfAbsent(id, k -> new BitSet()).set(bit);
+        }
+    }
+
+    // ============================================================
+    // DATOS
+    // ============================================================
+    /**
+     * Contenido de la caché. No se modifica después de cargarse.
+     */
+    private static final class Instantanea {
+
+        // Normalmente un bit por nombre; varios si hay permisos con el mismo nombre
+        final Map<String, BitSet> mascaraPorNombre = new HashMap<>();
+        final String[] nombrePorBit;
+        final Map<Integer, String> nombresRol = new HashMap<>();
+        final Map<Integer, BitSet> porRol = new HashMap<>();
+        final Map<Integer, BitSet> porUsuario = new HashMap<>();
+
+        private static final BitSet VACIO = new BitSet(0);
+
+        Instantanea(List<String> nombres) {
+            this.nombrePorBit = nombres.toArray(new String[0]);
+            for (int i = 0; i < nombrePorBit.length; i++) {
+                mascaraPorNombre.computeIfAbsent(nombrePorBit[i], k -> new BitSet()).set(i);
+            }
+        }
+
+        BitSet efectivos(int idUsuario, int idRol) {
+            BitSet propios = porUsuario.get(idUsuario);
+            if (propios != null && !propios.isEmpty()) {
+                return propios;
+            }
+            BitSet deRol = porRol.get(idRol);
+            return deRol != null ? deRol : VACIO;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Caché de PreparedStatement de una conexión física del pool.
+ *
+ * Los DAOs preparan siempre las mismas sentencias: en lugar de volver a
+ * prepararlas en cada préstamo de la conexión, prepareStatement(sql) y
+ * prepareStatement(sql, autoGeneratedKeys) devuelven la sentencia ya
+ * preparada. Se entrega envuelta en un proxy cuyo close() la limpia
+ * (parámetros y lotes) y la deja disponible para el siguiente uso.
+ *
+ * - Capacidad máxima por conexión (app_compras.pool.sentencias, 0 desactiva
+ *   la caché); al llenarse se cierra la menos usada recientemente.
+ * - Si la misma sentencia se pide dos veces a la vez en la misma conexión, la
+ *   segunda se prepara aparte y se cierra normalmente.
+ * - Si el DAO cambia la configuración de la sentencia (setFetchSize,
+ *   setMaxRows...) no se reutiliza: se cierra al soltarla.
+ * - Las excepciones de la sentencia se marcan en la medición de la conexión
+ *   que la pidió (si la tiene), así que se ven también los errores de los
+ *   lotes que los DAOs ejecutan directamente.
+ *
+ * Una conexión se usa desde un solo hilo mientras está prestada, pero el
+ * pool puede cerrar la caché desde su hilo de limpieza: por eso los métodos
+ * están sincronizados.
+ *
+ * @author Milanes
+ */
+final class CacheSentencias {
+
+    // Métodos que cambian la configuración de la sentencia para los siguientes usos
+    private static final Set<String> MODIFICADORES = new HashSet<>(Arrays.asList(
+            "setFetchSize", "setFetchDirection", "setMaxRows", "setLargeMaxRows", "setMaxFieldSize",
+            "setQueryTimeout", "setEscapeProcessing", "setCursorName", "setPoolable", "closeOnCompletion"));
+
+    private final Connection fisica;
+    private final int capacidad;
+    // Orden de acceso: la primera es la menos usada recientemente
+    private final LinkedHashMap<String, Entrada> sentencias = new LinkedHashMap<>(16, 0.75f, true);
+
+    CacheSentencias(Connection fisica, int capacidad) {
+        this.fisica = fisica;
+        this.capacidad = capacidad;
+    }
+
+    /**
+     * true si la llamada a prepareStatement se puede servir desde la caché:
+     * solo las formas (sql) y (sql, autoGeneratedKeys).
+     */
+    boolean admite(Method method, Object[] args) {
+        if (capacidad <= 0 || !"prepareStatement".equals(method.getName()) || args == null) {
+            return false;
+        }
+        Class<?>[] tipos = method.getParameterTypes();
+        return tipos.length == 1 || (tipos.length == 2 && tipos[1] == int.class);
+    }
+
+    /**
+     * Devuelve la sentencia preparada para la llamada, reutilizando la de la
+     * caché si está libre.
+     *
+     * @param conexion proxy de la conexión prestada (lo que devuelve
+     * getConnection() de la sentencia)
+     * @param medicion medición de la conexión prestada (null si no se mide)
+     * @param args argumentos de prepareStatement (sql y, si viene,
+     * autoGeneratedKeys)
+     */
+    synchronized PreparedStatement preparar(Connection conexion, Metricas.Medicion medicion, Object[] args)
+            throws SQLException {
+        String sql = (String) args[0];
+        int clavesGeneradas = args.length > 1 ? (Integer) args[1] : Statement.NO_GENERATED_KEYS;
+        String clave = clavesGeneradas + "|" + sql;
+        Entrada entrada = sentencias.get(clave);
+
+        if (entrada != null && entrada.enUso) {
+            // Uso anidado de la misma sentencia: una aparte, fuera de la caché
+            return fisica.prepareStatement(sql, clavesGeneradas);
+        }
+
+        if (entrada == null) {
+            entrada = new Entrada(clave, fisica.prepareStatement(sql, clavesGeneradas));
+            entrada.enUso = true;
+            sentencias.put(clave, entrada);
+            desalojarSobrantes();
+        } else {
+            entrada.enUso = true;
+        }
+
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                new SentenciaCacheada(entrada, conexion, medicion));
+    }
+
+    /**
+     * Al devolver la conexión al pool: las sentencias que el DAO no cerró se
+     * cierran de verdad, porque pueden tener un ResultSet abierto.
+     */
+    synchronized void liberarOlvidadas() {
+        Iterator<Entrada> it = sentencias.values().iterator();
+        while (it.hasNext()) {
+            Entrada entrada = it.next();
+            if (entrada.enUso) {
+                it.remove();
+                cerrarFisica(entrada);
+            }
+        }
+    }
+
+    /**
+     * Cierra todas las sentencias (antes de cerrar la conexión física).
+     */
+    synchronized void cerrar() {
+        for (Entrada entrada : sentencias.values()) {
+            cerrarFisica(entrada);
+        }
+        sentencias.clear();
+    }
+
+    private synchronized void soltar(Entrada entrada) {
+        entrada.enUso = false;
+        if (entrada.modificada || sentencias.get(entrada.clave) != entrada) {
+            // Configuración cambiada o ya desalojada de la caché
+            sentencias.remove(entrada.clave, entrada);
+            cerrarFisica(entrada);
+            return;
+        }
+        try {
+            entrada.sentencia.clearParameters();
+            entrada.sentencia.clearBatch();
+            entrada.sentencia.clearWarnings();
+        } catch (SQLException e) {
+            sentencias.remove(entrada.clave, entrada);
+            cerrarFisica(entrada);
+        }
+    }
+
+    private void desalojarSobrantes() {
+        List<Entrada> desalojadas = new ArrayList<>();
+        Iterator<Entrada> it = sentencias.values().iterator();
+        while (sentencias.size() > capacidad && it.hasNext()) {
+            Entrada entrada = it.next();
+            if (!entrada.enUso) {
+                it.remove();
+                desalojadas.add(entrada);
+            }
+        }
+        desalojadas.forEach(CacheSentencias::cerrarFisica);
+    }
+
+    private static void cerrarFisica(Entrada entrada) {
+        try {
+            entrada.sentencia.close();
+        } catch (SQLException e) {
+            Logger.exception("Error al cerrar una sentencia de la caché.", e);
+        }
+    }
+
+    // ============================================================
+    // CLASES INTERNAS
+    // ============================================================
+    private static final class Entrada {
+
+        final String clave;
+        final PreparedStatement sentencia;
+        boolean enUso;
+        boolean modificada;
+
+        Entrada(String clave, PreparedStatement sentencia) {
+            this.clave = clave;
+            this.sentencia = sentencia;
+        }
+    }
+
+    /**
+     * Proxy de la sentencia entregada al DAO: close() la devuelve a la caché y
+     * cualquier uso posterior falla como si estuviera cerrada.
+     */
+    private final class SentenciaCacheada implements InvocationHandler {
+
+        private final Entrada entrada;
+        private final Connection conexion;
+        private final Metricas.Medicion medicion;
+        private boolean cerrada = false;
+
+        SentenciaCacheada(Entrada entrada, Connection conexion, Metricas.Medicion medicion) {
+            this.entrada = entrada;
+            this.conexion = conexion;
+            this.medicion = medicion;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!cerrada) {
+                        cerrada = true;
+                        soltar(entrada);
+                    }
+                    return null;
+                case "isClosed":
+                    return cerrada || entrada.sentencia.isClosed();
+                case "getConnection":
+                    return conexion;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "SentenciaCacheada[" + entrada.sentencia + "]";
+                default:
+                    break;
+            }
+
+            if (cerrada) {
+                throw new SQLException("La sentencia ya está cerrada.");
+            }
+            if (MODIFICADORES.contains(method.getName())) {
+                entrada.modificada = true;
+            }
+
+            try {
+                return method.invoke(entrada.sentencia, args);
+            } catch (InvocationTargetException e) {
+                Metricas.error(medicion, e.getCause());
+                throw e.getCause();
+            }
+        }
+    }
+}
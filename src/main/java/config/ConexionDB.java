@@ -1,54 +1,106 @@
 package config;
 
+import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 public class ConexionDB {
 
-    // Configuración de conexión (ajusta según tu entorno local)
-    private static final String URL = "jdbc:mysql://localhost:3306/app_compras";
-    private static final String USUARIO = "root";       // Usuario de phpMyAdmin
-    private static final String PASSWORD = "";          // Contraseña (vacía si no tienes)
+    // Motor de base de datos: MySQL (XAMPP) o H2 embebido, ver MotorBD
+    // Se elige con -Dapp_compras.db.motor=mysql|h2 y cada valor se puede
+    // sobrescribir con -Dapp_compras.db.url, .usuario, .password y .driver
+    private static final MotorBD MOTOR = MotorBD.configurado();
 
-    private static Connection conexion = null;
+    // Configuración del pool (se puede sobrescribir con -Dapp_compras.pool.*)
+    private static final int POOL_MINIMO = Integer.getInteger("app_compras.pool.minimo", 2);
+    private static final int POOL_MAXIMO = Integer.getInteger("app_compras.pool.maximo", 10);
+    private static final long POOL_INACTIVIDAD_MS = Long.getLong("app_compras.pool.inactividadMs", 300_000L);
+    private static final long POOL_ESPERA_MS = Long.getLong("app_compras.pool.esperaMs", 5_000L);
+    private static final int POOL_VALIDACION_SEG = Integer.getInteger("app_compras.pool.validacionSeg", 2);
+    private static final int POOL_SENTENCIAS = Integer.getInteger("app_compras.pool.sentencias", 64);
+
+    // volatile: se lee sin bloqueo en cada préstamo (ver obtenerPool)
+    private static volatile PoolConexiones pool = null;
 
     /**
-     * Retorna una conexión activa a la base de datos.
+     * Retorna una conexión del pool. Al cerrarla (try-with-resources) vuelve al
+     * pool en lugar de cerrarse físicamente.
      */
     public static Connection getConexion() {
-        try {
-            if (conexion == null || conexion.isClosed()) {
-                // Registrar el driver JDBC
-                Class.forName("com.mysql.cj.jdbc.Driver");
+        return getConexion(null);
+    }
 
-                // Crear la conexión
-                conexion = DriverManager.getConnection(URL, USUARIO, PASSWORD);
-                Logger.info("Conexión exitosa a la base de datos 'compras_del_hogar'.");
-            }
+    /**
+     * Como getConexion(), pero la conexión anota en la medición sus errores,
+     * los de sus sentencias preparadas y los rollbacks, y la cierra al
+     * volver al pool.
+     */
+    public static Connection getConexion(Metricas.Medicion medicion) {
+        try {
+            return obtenerPool().prestar(medicion);
         } catch (ClassNotFoundException e) {
-            Logger.error("No se encontró el driver JDBC de MySQL.");
-            Logger.exception("Error al intentar cargar el driver MySQL.", e);
+            Logger.error("No se encontró el driver JDBC " + MOTOR.getDriver() + ".");
+            Logger.exception("Error al intentar cargar el driver JDBC.", e);
+        } catch (IOException e) {
+            Logger.exception("Error al leer los scripts SQL de la base embebida.", e);
         } catch (SQLException e) {
             Logger.error("Error al conectar con la base de datos 'compras_del_hogar'.");
             Logger.exception("Error de SQL al establecer la conexión.", e);
         }
 
-        return conexion;
+        return null;
     }
 
     /**
-     * Cierra la conexión si está abierta.
+     * Crea el pool la primera vez que se necesita. Una vez creado se devuelve
+     * sin tomar el bloqueo de la clase: los préstamos de varios hilos solo
+     * compiten dentro del pool.
      */
-    public static void cerrarConexion() {
-        try {
-            if (conexion != null && !conexion.isClosed()) {
-                conexion.close();
-                Logger.info("Conexión cerrada correctamente.");
+    private static PoolConexiones obtenerPool()
+            throws ClassNotFoundException, SQLException, IOException {
+        PoolConexiones actual = pool;
+        if (actual != null) {
+            return actual;
+        }
+        return crearPool();
+    }
+
+    private static synchronized PoolConexiones crearPool()
+            throws ClassNotFoundException, SQLException, IOException {
+        if (pool == null) {
+            // Registrar el driver JDBC
+            Class.forName(MOTOR.getDriver());
+
+            PoolConexiones nuevo = new PoolConexiones(MOTOR.getUrl(), MOTOR.getUsuario(), MOTOR.getPassword(),
+                    POOL_MINIMO, POOL_MAXIMO, POOL_INACTIVIDAD_MS, POOL_ESPERA_MS, POOL_VALIDACION_SEG,
+                    POOL_SENTENCIAS);
+            try {
+                nuevo.precalentar();
+                if (MOTOR.esEmbebido()) {
+                    // La base embebida empieza vacía: crear el esquema la primera vez
+                    try (Connection conn = nuevo.prestar()) {
+                        EsquemaEmbebido.inicializarSiVacia(conn);
+                    }
+                }
+            } catch (SQLException | IOException e) {
+                nuevo.cerrar();
+                throw e;
             }
-        } catch (SQLException e) {
-            Logger.error("Error al cerrar la conexión a la base de datos.");
-            Logger.exception("Error de SQL al cerrar la conexión.", e);
+            pool = nuevo;
+            Logger.info("Conexión exitosa a la base de datos 'compras_del_hogar' (" + MOTOR + "). Pool de conexiones listo ("
+                    + POOL_MINIMO + "-" + POOL_MAXIMO + ").");
+        }
+        return pool;
+    }
+
+    /**
+     * Cierra el pool y todas sus conexiones físicas (al salir de la aplicación).
+     */
+    public static synchronized void cerrarConexion() {
+        if (pool != null) {
+            pool.cerrar();
+            pool = null;
+            Logger.info("Conexión cerrada correctamente.");
         }
     }
 }
@@ -0,0 +1,229 @@
+package config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Crea el esquema de la base embebida (H2 en modo MySQL) a partir de los
+ * mismos scripts que se importan en phpMyAdmin, para que las dos bases no se
+ * separen con el tiempo:
+ *
+ * - "recursos/app_compras limpia.sql": tablas, claves e índices.
+ * - "recursos/datos de ejemplo basicos.sql": roles, permisos y el usuario
+ *   admin. Se puede desactivar con -Dapp_compras.db.datosIniciales=false.
+ *
+ * Solo se ejecuta si la base está vacía (no existe la tabla usuarios).
+ *
+ * H2 entiende casi todo el volcado de MySQL; lo que no, se adapta aquí
+ * sentencia por sentencia (ver traducir).
+ *
+ * @author Milanes
+ */
+final class EsquemaEmbebido {
+
+    private static final String SCRIPT_ESQUEMA = "/recursos/app_compras limpia.sql";
+    private static final String SCRIPT_DATOS = "/recursos/datos de ejemplo basicos.sql";
+
+    // ALTER TABLE `tabla` <cláusulas separadas por comas>
+    private static final Pattern ALTER_TABLE = Pattern.compile("(?is)^ALTER\\s+TABLE\\s+(`?\\w+`?)\\s+(.*)$");
+    // ADD [UNIQUE] KEY `nombre` (columnas)
+    private static final Pattern ADD_KEY = Pattern.compile("(?is)^ADD\\s+(UNIQUE\\s+)?KEY\\s+`?(\\w+)`?\\s*(\\(.*\\))$");
+
+    private EsquemaEmbebido() {
+    }
+
+    /**
+     * Crea las tablas (y los datos iniciales) si la base todavía no las tiene.
+     */
+    static void inicializarSiVacia(Connection conn) throws SQLException, IOException {
+        if (existeTabla(conn, "usuarios")) {
+            return;
+        }
+
+        Logger.info("Base embebida vacía: creando el esquema desde " + SCRIPT_ESQUEMA + ".");
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            int sentencias = ejecutarScript(conn, SCRIPT_ESQUEMA);
+            if (Boolean.parseBoolean(System.getProperty("app_compras.db.datosIniciales", "true"))) {
+                sentencias += ejecutarScript(conn, SCRIPT_DATOS);
+            }
+            conn.commit();
+
+            int total = sentencias;
+            Logger.info(() -> "Esquema de la base embebida creado (" + total + " sentencias).");
+        } catch (SQLException | IOException e) {
+            // En H2 el DDL se confirma solo: se borra lo creado para reintentar
+            // desde cero en el próximo arranque en lugar de quedar a medias
+            conn.rollback();
+            try (Statement st = conn.createStatement()) {
+                st.execute("DROP ALL OBJECTS");
+            }
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static boolean existeTabla(Connection conn, String tabla) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        try (ResultSet rs = meta.getTables(conn.getCatalog(), null, tabla, new String[]{"TABLE"})) {
+            return rs.next();
+        }
+    }
+
+    private static int ejecutarScript(Connection conn, String recurso) throws SQLException, IOException {
+        int ejecutadas = 0;
+        try (Statement st = conn.createStatement()) {
+            for (String sentencia : separarSentencias(leerRecurso(recurso))) {
+                for (String traducida : traducir(sentencia)) {
+                    try {
+                        st.execute(traducida);
+                        ejecutadas++;
+                    } catch (SQLException e) {
+                        Logger.error("Sentencia del script " + recurso + " rechazada por la base embebida: " + traducida);
+                        throw e;
+                    }
+                }
+            }
+        }
+        return ejecutadas;
+    }
+
+    private static String leerRecurso(String recurso) throws IOException {
+        try (InputStream in = EsquemaEmbebido.class.getResourceAsStream(recurso)) {
+            if (in == null) {
+                throw new IOException("No se encontró el script " + recurso + " en el classpath.");
+            }
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            in.transferTo(buffer);
+            return buffer.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    // ============================================================
+    // LECTURA DEL SCRIPT
+    // ============================================================
+    /**
+     * Parte el script por ';' ignorando los comentarios "--" y los ';' que
+     * aparezcan dentro de literales de texto.
+     */
+    static List<String> separarSentencias(String script) {
+        List<String> sentencias = new ArrayList<>();
+        StringBuilder actual = new StringBuilder();
+        boolean enTexto = false;
+
+        for (String linea : script.split("\r?\n")) {
+            if (!enTexto && linea.trim().startsWith("--")) {
+                continue;
+            }
+            for (int i = 0; i < linea.length(); i++) {
+                char c = linea.charAt(i);
+                if (c == '\'') {
+                    enTexto = !enTexto;
+                }
+                if (c == ';' && !enTexto) {
+                    agregarSiNoVacia(sentencias, actual);
+                    actual.setLength(0);
+                } else {
+                    actual.append(c);
+                }
+            }
+            actual.append('\n');
+        }
+        agregarSiNoVacia(sentencias, actual);
+        return sentencias;
+    }
+
+    private static void agregarSiNoVacia(List<String> sentencias, StringBuilder sentencia) {
+        String texto = sentencia.toString().trim();
+        if (!texto.isEmpty()) {
+            sentencias.add(texto);
+        }
+    }
+
+    // ============================================================
+    // TRADUCCIÓN MySQL → H2
+    // ============================================================
+    /**
+     * Adapta una sentencia del volcado de MySQL. Puede devolver varias (un
+     * ALTER TABLE con varias cláusulas) o ninguna (SET de sesión y control de
+     * transacción, que lleva inicializarSiVacia).
+     */
+    static List<String> traducir(String sentencia) {
+        List<String> resultado = new ArrayList<>();
+        String mayusculas = sentencia.toUpperCase(Locale.ROOT);
+
+        if (mayusculas.startsWith("SET ") || mayusculas.startsWith("START TRANSACTION")
+                || mayusculas.equals("COMMIT")) {
+            return resultado;
+        }
+
+        if (mayusculas.startsWith("CREATE TABLE")) {
+            // H2 calcula las columnas generadas siempre al escribir: no admite STORED
+            resultado.add(sentencia.replaceAll("(?i)\\)\\s+STORED\\b", ")"));
+            return resultado;
+        }
+
+        Matcher alter = ALTER_TABLE.matcher(sentencia);
+        if (alter.matches()) {
+            String tabla = alter.group(1);
+            for (String clausula : separarClausulas(alter.group(2))) {
+                resultado.add(traducirClausula(tabla, clausula));
+            }
+            return resultado;
+        }
+
+        resultado.add(sentencia);
+        return resultado;
+    }
+
+    /**
+     * H2 solo acepta una cláusula por ALTER TABLE, y los índices (ADD KEY)
+     * van en un CREATE INDEX aparte. Los nombres de índice y restricción son
+     * únicos por esquema en H2, así que se prefijan con la tabla.
+     */
+    private static String traducirClausula(String tabla, String clausula) {
+        Matcher key = ADD_KEY.matcher(clausula);
+        if (key.matches()) {
+            String nombre = tabla.replace("`", "") + "_" + key.group(2);
+            return (key.group(1) != null ? "CREATE UNIQUE INDEX " : "CREATE INDEX ")
+                    + nombre + " ON " + tabla + " " + key.group(3);
+        }
+        return "ALTER TABLE " + tabla + " " + clausula;
+    }
+
+    /**
+     * Separa por las comas que no están dentro de paréntesis.
+     */
+    private static List<String> separarClausulas(String texto) {
+        List<String> clausulas = new ArrayList<>();
+        int nivel = 0;
+        int inicio = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c == '(') {
+                nivel++;
+            } else if (c == ')') {
+                nivel--;
+            } else if (c == ',' && nivel == 0) {
+                clausulas.add(texto.substring(inicio, i).trim());
+                inicio = i + 1;
+            }
+        }
+        clausulas.add(texto.substring(inicio).trim());
+        return clausulas;
+    }
+}
@@ -0,0 +1,329 @@
+package config;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * Índice de búsqueda "contiene" sobre una lista de elementos (por ejemplo el
+ * catálogo de productos), para filtrar tablas mientras se escribe.
+ *
+ * - El texto de cada elemento se normaliza una vez al indexarlo: minúsculas y
+ *   sin acentos ("Plátano" y "platano" son lo mismo).
+ * - Se indexan los n-gramas de 1, 2 y 3 caracteres del texto. Una consulta
+ *   de hasta 3 caracteres es directamente la lista de su n-grama; una más
+ *   larga solo revisa los elementos que tienen todos sus trigramas, y
+ *   confirma con contains().
+ * - Si la consulta nueva contiene a la anterior (el usuario sigue escribiendo)
+ *   se filtra el resultado anterior en lugar de empezar de cero.
+ * - agregarOActualizar y eliminar mantienen el índice al día sin
+ *   reconstruirlo.
+ *
+ * Los resultados salen en el orden en que se indexaron los elementos. No es
+ * seguro para varios hilos: se construye en un hilo de fondo y después se usa
+ * solo desde el hilo de JavaFX.
+ *
+ * @author Milanes
+ */
+public final class IndiceBusqueda<T> {
+
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+    private static final int[] VACIO = new int[0];
+
+    private final Function<T, Object> clave;
+    private final Function<T, String> texto;
+
+    // Posición → elemento y texto normalizado (null si se eliminó)
+    private final List<T> elementos = new ArrayList<>();
+    private final List<String> textos = new ArrayList<>();
+    private final Map<Object, Integer> posiciones = new HashMap<>();
+    private final Map<Long, Posiciones> ngramas = new HashMap<>();
+    private int eliminados = 0;
+
+    // Última búsqueda, para refinarla
+    private String ultimaConsulta;
+    private int[] ultimoResultado;
+
+    /**
+     * @param clave identifica el elemento (para actualizarlo o eliminarlo)
+     * @param texto texto en el que se busca (sin normalizar)
+     */
+    public IndiceBusqueda(Function<T, Object> clave, Function<T, String> texto) {
+        this.clave = clave;
+        this.texto = texto;
+    }
+
+    public IndiceBusqueda(Function<T, Object> clave, Function<T, String> texto, Collection<T> iniciales) {
+        this(clave, texto);
+        iniciales.forEach(this::agregarOActualizar);
+    }
+
+    /**
+     * Minúsculas y sin acentos ni diéresis (la ñ pasa a n).
+     */
+    public static String normalizar(String s) {
+        if (s == null) {
+            return "";
+        }
+        String sinMarcas = MARCAS.matcher(Normalizer.normalize(s, Normalizer.Form.NFD)).replaceAll("");
+        return sinMarcas.toLowerCase(Locale.ROOT);
+    }
+
+    public int tamanio() {
+        return posiciones.size();
+    }
+
+    // ============================================================
+    // MANTENIMIENTO
+    // ============================================================
+    public void agregarOActualizar(T elemento) {
+        Object id = clave.apply(elemento);
+        String normalizado = normalizar(texto.apply(elemento));
+        Integer posicion = posiciones.get(id);
+
+        if (posicion == null) {
+            posicion = elementos.size();
+            elementos.add(elemento);
+            textos.add(normalizado);
+            posiciones.put(id, posicion);
+            int nueva = posicion;
+            recorrerNgramas(normalizado, g -> ngramas.computeIfAbsent(g, k -> new Posiciones()).agregar(nueva));
+        } else {
+            // Misma posición: el elemento conserva su sitio en los resultados
+            String anterior = textos.get(posicion);
+            Set<Long> antes = ngramasDe(anterior);
+            Set<Long> despues = ngramasDe(normalizado);
+            for (long g : antes) {
+                if (!despues.contains(g)) {
+                    quitarDePosiciones(g, posicion);
+                }
+            }
+            for (long g : despues) {
+                if (!antes.contains(g)) {
+                    ngramas.computeIfAbsent(g, k -> new Posiciones()).agregar(posicion);
+                }
+            }
+            elementos.set(posicion, elemento);
+            textos.set(posicion, normalizado);
+        }
+        ultimaConsulta = null;
+    }
+
+    public void eliminar(Object id) {
+        Integer posicion = posiciones.remove(id);
+        if (posicion == null) {
+            return;
+        }
+        for (long g : ngramasDe(textos.get(posicion))) {
+            quitarDePosiciones(g, posicion);
+        }
+        elementos.set(posicion, null);
+        textos.set(posicion, null);
+        eliminados++;
+        ultimaConsulta = null;
+
+        // Muchos huecos: se reconstruye para no recorrerlos en las búsquedas cortas
+        if (eliminados > 1024 && eliminados > elementos.size() / 2) {
+            compactar();
+        }
+    }
+
+    private void quitarDePosiciones(long ngrama, int posicion) {
+        Posiciones lista = ngramas.get(ngrama);
+        if (lista != null && lista.quitar(posicion) && lista.tamanio == 0) {
+            ngramas.remove(ngrama);
+        }
+    }
+
+    private void compactar() {
+        List<T> vivos = new ArrayList<>(posiciones.size());
+        for (T elemento : elementos) {
+            if (elemento != null) {
+                vivos.add(elemento);
+            }
+        }
+        elementos.clear();
+        textos.clear();
+        posiciones.clear();
+        ngramas.clear();
+        eliminados = 0;
+        vivos.forEach(this::agregarOActualizar);
+    }
+
+    // ============================================================
+    // BÚSQUEDA
+    // ============================================================
+    /**
+     * Elementos cuyo texto contiene la consulta (normalizada). Una consulta
+     * vacía devuelve todos.
+     */
+    public List<T> buscar(String consulta) {
+        String q = normalizar(consulta).trim();
+        int[] resultado;
+
+        if (q.isEmpty()) {
+            resultado = todas();
+        } else if (q.length() <= 3) {
+            // La lista del n-grama ya es el resultado exacto
+            Posiciones lista = ngramas.get(clave(q, 0, q.length()));
+            resultado = lista == null ? VACIO : Arrays.copyOf(lista.datos, lista.tamanio);
+        } else {
+            int[] previo = ultimaConsulta != null && q.contains(ultimaConsulta) ? ultimoResultado : null;
+            resultado = filtrar(candidatos(q, previo), q);
+        }
+
+        ultimaConsulta = q;
+        ultimoResultado = resultado;
+
+        List<T> lista = new ArrayList<>(resultado.length);
+        for (int posicion : resultado) {
+            lista.add(elementos.get(posicion));
+        }
+        return lista;
+    }
+
+    private int[] todas() {
+        int[] todas = new int[posiciones.size()];
+        int n = 0;
+        for (int i = 0; i < elementos.size(); i++) {
+            if (elementos.get(i) != null) {
+                todas[n++] = i;
+            }
+        }
+        return todas;
+    }
+
+    /**
+     * Posiciones que tienen todos los trigramas de la consulta, intersecando
+     * de la lista más corta a la más larga. Si la consulta refina la anterior
+     * y su resultado es más corto que cualquier lista, se parte de él.
+     */
+    private int[] candidatos(String q, int[] previo) {
+        List<Posiciones> listas = new ArrayList<>();
+        for (int i = 0; i + 3 <= q.length(); i++) {
+            Posiciones lista = ngramas.get(clave(q, i, 3));
+            if (lista == null) {
+                return VACIO;
+            }
+            listas.add(lista);
+        }
+        listas.sort((a, b) -> Integer.compare(a.tamanio, b.tamanio));
+        if (previo != null && previo.length <= listas.get(0).tamanio) {
+            return previo;
+        }
+
+        int[] actual = Arrays.copyOf(listas.get(0).datos, listas.get(0).tamanio);
+        for (int i = 1; i < listas.size() && actual.length > 0; i++) {
+            actual = intersecar(actual, listas.get(i));
+        }
+        return actual;
+    }
+
+    private static int[] intersecar(int[] a, Posiciones b) {
+        int[] salida = new int[Math.min(a.length, b.tamanio)];
+        int n = 0;
+        int j = 0;
+        for (int i = 0; i < a.length && j < b.tamanio; i++) {
+            while (j < b.tamanio && b.datos[j] < a[i]) {
+                j++;
+            }
+            if (j < b.tamanio && b.datos[j] == a[i]) {
+                salida[n++] = a[i];
+            }
+        }
+        return Arrays.copyOf(salida, n);
+    }
+
+    private int[] filtrar(int[] posiciones, String q) {
+        int[] salida = new int[posiciones.length];
+        int n = 0;
+        for (int posicion : posiciones) {
+            String t = textos.get(posicion);
+            if (t != null && t.contains(q)) {
+                salida[n++] = posicion;
+            }
+        }
+        return Arrays.copyOf(salida, n);
+    }
+
+    // ============================================================
+    // N-GRAMAS
+    // ============================================================
+    /**
+     * Clave de los n caracteres desde inicio: la longitud en los bits altos
+     * y cada carácter en 16 bits.
+     */
+    private static long clave(String s, int inicio, int n) {
+        long clave = n;
+        for (int i = inicio; i < inicio + n; i++) {
+            clave = (clave << 16) | s.charAt(i);
+        }
+        return clave;
+    }
+
+    /** Todos los n-gramas de 1 a 3 caracteres, con repeticiones. */
+    private static void recorrerNgramas(String s, LongConsumer accion) {
+        for (int i = 0; i < s.length(); i++) {
+            for (int n = 1; n <= 3 && i + n <= s.length(); n++) {
+                accion.accept(clave(s, i, n));
+            }
+        }
+    }
+
+    private static Set<Long> ngramasDe(String s) {
+        Set<Long> resultado = new HashSet<>();
+        recorrerNgramas(s, resultado::add);
+        return resultado;
+    }
+
+    /**
+     * Lista ordenada de posiciones. Al indexar se añaden casi siempre al
+     * final, así que agregar suele ser O(1); un n-grama repetido en el mismo
+     * texto encuentra su posición ya al final y no se duplica.
+     */
+    private static final class Posiciones {
+
+        int[] datos = new int[4];
+        int tamanio = 0;
+
+        void agregar(int posicion) {
+            if (tamanio > 0 && datos[tamanio - 1] == posicion) {
+                return;
+            }
+            int i = tamanio == 0 || datos[tamanio - 1] < posicion
+                    ? tamanio : Arrays.binarySearch(datos, 0, tamanio, posicion);
+            if (i >= 0 && i < tamanio) {
+                return; // ya estaba
+            }
+            if (i < 0) {
+                i = -i - 1;
+            }
+            if (tamanio == datos.length) {
+                datos = Arrays.copyOf(datos, tamanio * 2);
+            }
+            System.arraycopy(datos, i, datos, i + 1, tamanio - i);
+            datos[i] = posicion;
+            tamanio++;
+        }
+
+        boolean quitar(int posicion) {
+            int i = Arrays.binarySearch(datos, 0, tamanio, posicion);
+            if (i < 0) {
+                return false;
+            }
+            System.arraycopy(datos, i + 1, datos, i, tamanio - i - 1);
+            tamanio--;
+            return true;
+        }
+    }
+}
@@ -1,34 +1,121 @@
 package config;
 
-import java.io.FileWriter;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
  * Clase Logger para registrar mensajes, advertencias y errores
  * en consola y en un archivo log.txt dentro del proyecto.
  *
+ * Por defecto trabaja en modo asíncrono: los mensajes se encolan en un búfer
+ * circular acotado y un único hilo escritor los vuelca por lotes sobre el
+ * archivo, que se mantiene abierto. Así el hilo que registra (normalmente el
+ * de JavaFX) no espera nunca al disco.
+ *
+ * Configuración (propiedades del sistema):
+ * - app_compras.log.async: true/false (por defecto true).
+ * - app_compras.log.capacidad: tamaño del búfer (por defecto 8192).
+ * - app_compras.log.politica: BLOQUEAR o DESCARTAR cuando el búfer está lleno.
+ * - app_compras.log.nivel: nivel mínimo registrado, INFO, WARNING o ERROR
+ *   (por defecto INFO).
+ *
+ * Rotación del archivo (ver RotacionLog):
+ * - app_compras.log.maxBytes: tamaño máximo de log.txt (por defecto 10 MB, 0 = sin límite).
+ * - app_compras.log.diaria: rotar también al cambiar de día (por defecto true).
+ * - app_compras.log.conservar: segmentos comprimidos a conservar en logs/ (por defecto 10).
+ *
  * @author Milanes
  */
 public class Logger {
 
+    /**
+     * Niveles de log, de menor a mayor gravedad.
+     */
+    public enum Nivel {
+        INFO, WARNING, ERROR
+    }
+
+    /**
+     * Qué hacer cuando el búfer asíncrono está lleno.
+     */
+    public enum PoliticaLleno {
+        BLOQUEAR, // El hilo que registra espera a que haya hueco
+        DESCARTAR // El mensaje se descarta y se contabiliza
+    }
+
     private static final DateTimeFormatter FORMATTER =
             DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss");
 
     // Ruta del archivo de log (en la raíz del proyecto)
     private static final String LOG_FILE = "log.txt";
 
+    // Máximo de mensajes que el escritor vuelca de una sola vez
+    private static final int TAMANIO_LOTE = 512;
+
+    private static final boolean ASINCRONO =
+            Boolean.parseBoolean(System.getProperty("app_compras.log.async", "true"));
+    private static final int CAPACIDAD = Integer.getInteger("app_compras.log.capacidad", 8192);
+    private static final PoliticaLleno POLITICA = leerPolitica();
+
+    private static volatile Nivel nivelMinimo = leerNivel();
+
+    private static final BlockingQueue<Registro> BUFER = new ArrayBlockingQueue<>(Math.max(16, CAPACIDAD));
+    private static final RotacionLog ROTACION = new RotacionLog(
+            Paths.get(LOG_FILE), Paths.get("logs"),
+            Long.getLong("app_compras.log.maxBytes", 10L * 1024 * 1024),
+            Boolean.parseBoolean(System.getProperty("app_compras.log.diaria", "true")),
+            Integer.getInteger("app_compras.log.conservar", 10));
+
+    private static final AtomicLong DESCARTADOS = new AtomicLong();
+    private static final Registro FIN = new Registro("", false);
+
+    // Archivo abierto de forma permanente (lo usa solo el escritor, o el llamador en modo síncrono)
+    private static OutputStream archivo;
+    private static Thread escritor;
+
+    static {
+        if (ASINCRONO) {
+            escritor = new Thread(Logger::bucleEscritor, "logger-escritor");
+            escritor.setDaemon(true);
+            escritor.start();
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(Logger::cerrar, "logger-cierre"));
+    }
+
     /**
      * Muestra un mensaje informativo y lo guarda en el log.
      * @param mensaje Contenido del mensaje.
      */
     public static void info(String mensaje) {
-        registrar("INFO", mensaje);
+        if (estaActivo(Nivel.INFO)) {
+            registrar("INFO", mensaje);
+        }
+    }
+
+    /**
+     * Igual que info(String), pero el texto solo se construye si el nivel INFO
+     * está activo.
+     * @param mensaje Proveedor del contenido del mensaje.
+     */
+    public static void info(Supplier<String> mensaje) {
+        if (estaActivo(Nivel.INFO)) {
+            registrar("INFO", mensaje.get());
+        }
     }
 
     /**
@@ -36,7 +123,20 @@ public class Logger {
      * @param mensaje Contenido del mensaje.
      */
     public static void warning(String mensaje) {
-        registrar("WARNING", mensaje);
+        if (estaActivo(Nivel.WARNING)) {
+            registrar("WARNING", mensaje);
+        }
+    }
+
+    /**
+     * Igual que warning(String), pero el texto solo se construye si el nivel
+     * WARNING está activo.
+     * @param mensaje Proveedor del contenido del mensaje.
+     */
+    public static void warning(Supplier<String> mensaje) {
+        if (estaActivo(Nivel.WARNING)) {
+            registrar("WARNING", mensaje.get());
+        }
     }
 
     /**
@@ -53,30 +153,122 @@ public class Logger {
      * @param e Excepción capturada.
      */
     public static void exception(String mensaje, Exception e) {
-        registrar("EXCEPTION", mensaje);
-        try (PrintWriter out = new PrintWriter(new FileWriter(LOG_FILE, true))) {
+        StringWriter traza = new StringWriter();
+        try (PrintWriter out = new PrintWriter(traza)) {
             e.printStackTrace(out);
-        } catch (IOException ioEx) {
-            System.err.println("Error al escribir la excepción en el archivo de log: " + ioEx.getMessage());
         }
-        e.printStackTrace(System.err);
+        String texto = formatear("EXCEPTION", mensaje) + System.lineSeparator() + traza.toString().trim();
+        encolar(new Registro(texto, true));
+    }
+
+    /**
+     * Cambia el nivel mínimo de los mensajes que se registran.
+     * @param nivel Nuevo nivel mínimo.
+     */
+    public static void setNivelMinimo(Nivel nivel) {
+        nivelMinimo = nivel != null ? nivel : Nivel.INFO;
+    }
+
+    public static Nivel getNivelMinimo() {
+        return nivelMinimo;
+    }
+
+    /**
+     * Indica si los mensajes del nivel indicado se registran. Útil para evitar
+     * bucles que solo sirven para generar log.
+     */
+    public static boolean estaActivo(Nivel nivel) {
+        return nivel.compareTo(nivelMinimo) >= 0;
+    }
+
+    /**
+     * Vacía el búfer pendiente y cierra el archivo de log. Se llama
+     * automáticamente al terminar la JVM.
+     */
+    public static void cerrar() {
+        Thread hilo = escritor;
+        if (hilo != null && hilo.isAlive()) {
+            try {
+                BUFER.offer(FIN, 1, TimeUnit.SECONDS);
+                hilo.join(2000);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (Logger.class) {
+            cerrarArchivo();
+        }
     }
 
     /**
      * Método genérico para formatear, mostrar y guardar mensajes.
      */
     private static void registrar(String tipo, String mensaje) {
-        String texto = formatear(tipo, mensaje);
+        boolean esError = tipo.equals("ERROR") || tipo.equals("EXCEPTION");
+        encolar(new Registro(formatear(tipo, mensaje), esError));
+    }
 
-        // Mostrar en consola
-        if (tipo.equals("ERROR") || tipo.equals("EXCEPTION")) {
-            System.err.println(texto);
-        } else {
-            System.out.println(texto);
+    /**
+     * Entrega el registro al escritor asíncrono o lo escribe directamente.
+     */
+    private static void encolar(Registro registro) {
+        if (!ASINCRONO || escritor == null || !escritor.isAlive()) {
+            synchronized (Logger.class) {
+                mostrarEnConsola(registro);
+                escribirEnArchivo(List.of(registro));
+            }
+            return;
+        }
+
+        if (POLITICA == PoliticaLleno.DESCARTAR) {
+            if (!BUFER.offer(registro)) {
+                DESCARTADOS.incrementAndGet();
+            }
+            return;
+        }
+
+        try {
+            BUFER.put(registro);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            DESCARTADOS.incrementAndGet();
         }
+    }
+
+    /**
+     * Hilo escritor: espera mensajes y los vuelca por lotes.
+     */
+    private static void bucleEscritor() {
+        List<Registro> lote = new ArrayList<>(TAMANIO_LOTE);
+        boolean terminar = false;
+
+        while (!terminar) {
+            try {
+                lote.add(BUFER.take());
+            } catch (InterruptedException ie) {
+                terminar = true;
+            }
+            BUFER.drainTo(lote, TAMANIO_LOTE - lote.size());
 
-        // Guardar en archivo
-        escribirEnArchivo(texto);
+            if (lote.remove(FIN)) {
+                terminar = true;
+                BUFER.drainTo(lote);
+            }
+
+            long descartados = DESCARTADOS.getAndSet(0);
+            if (descartados > 0) {
+                lote.add(new Registro(formatear("WARNING",
+                        "Búfer de log lleno: " + descartados + " mensajes descartados."), false));
+            }
+
+            synchronized (Logger.class) {
+                for (Registro r : lote) {
+                    mostrarEnConsola(r);
+                }
+                escribirEnArchivo(lote);
+            }
+            lote.clear();
+        }
     }
 
     /**
@@ -87,23 +279,85 @@ public class Logger {
                 + "[" + tipo + "] " + mensaje;
     }
 
+    private static void mostrarEnConsola(Registro registro) {
+        if (registro.error) {
+            System.err.println(registro.texto);
+        } else {
+            System.out.println(registro.texto);
+        }
+    }
+
     /**
-     * Escribe el mensaje en el archivo log.txt
+     * Escribe un lote de mensajes en el archivo log.txt (en UTF-8) y hace un
+     * único flush. Antes de cada mensaje comprueba si toca rotar el archivo,
+     * así que un lote grande también se reparte entre segmentos.
+     *
+     * Cada mensaje se codifica una sola vez y se cuentan esos bytes: las
+     * tildes ocupan dos y los emojis cuatro, así que contar caracteres
+     * dejaría crecer el archivo por encima de maxBytes.
      */
-    private static void escribirEnArchivo(String texto) {
+    private static void escribirEnArchivo(List<Registro> lote) {
         try {
-            Path path = Paths.get(LOG_FILE);
-            if (!Files.exists(path)) {
-                Files.createFile(path);
+            for (Registro r : lote) {
+                byte[] linea = (r.texto + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+                if (ROTACION.debeRotar(linea.length)) {
+                    cerrarArchivo();
+                    ROTACION.rotar();
+                }
+                if (archivo == null) {
+                    archivo = new BufferedOutputStream(new FileOutputStream(LOG_FILE, true), 64 * 1024);
+                }
+                archivo.write(linea);
+                ROTACION.registrarEscritos(linea.length);
             }
-
-            try (FileWriter fw = new FileWriter(LOG_FILE, true);
-                 PrintWriter pw = new PrintWriter(fw)) {
-                pw.println(texto);
+            if (archivo != null) {
+                archivo.flush();
             }
 
         } catch (IOException e) {
             System.err.println("Error al escribir en el archivo log: " + e.getMessage());
+            cerrarArchivo();
+        }
+    }
+
+    private static void cerrarArchivo() {
+        if (archivo != null) {
+            try {
+                archivo.close();
+            } catch (IOException e) {
+                System.err.println("Error al cerrar el archivo log: " + e.getMessage());
+            }
+            archivo = null;
+        }
+    }
+
+    private static Nivel leerNivel() {
+        try {
+            return Nivel.valueOf(System.getProperty("app_compras.log.nivel", "INFO").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Nivel.INFO;
+        }
+    }
+
+    private static PoliticaLleno leerPolitica() {
+        try {
+            return PoliticaLleno.valueOf(System.getProperty("app_compras.log.politica", "BLOQUEAR").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return PoliticaLleno.BLOQUEAR;
+        }
+    }
+
+    /**
+     * Mensaje ya formateado pendiente de escritura.
+     */
+    private static final class Registro {
+
+        final String texto;
+        final boolean error;
+
+        Registro(String texto, boolean error) {
+            this.texto = texto;
+            this.error = error;
         }
     }
 }
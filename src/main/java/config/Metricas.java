@@ -0,0 +1,564 @@
+package config;
+
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Métricas de las operaciones de base de datos, por método de DAO
+ * ("CompraDAO.registrarCompra", "UsuarioDAO.autenticarUsuario"...).
+ *
+ * De cada operación se cuentan las llamadas, los errores, las filas
+ * devueltas o afectadas, los rollbacks y los conflictos entre transacciones
+ * (interbloqueos y esperas de bloqueo agotadas), y se guarda un histograma de latencias con cubos
+ * logarítmico-lineales (como HdrHistogram): 16 cubos por cada potencia de 2,
+ * un error relativo por debajo del 7 % desde microsegundos hasta horas, y
+ * memoria fija por operación. Registrar una medición no bloquea: son
+ * contadores atómicos.
+ *
+ * Las mediciones se abren con iniciar() y se cierran con close(); mientras
+ * están abiertas, filas() y error() se aplican a la última abierta en el
+ * hilo. En los DAOs lo hace PlantillaJDBC (una medición por conexión
+ * pedida al pool, que la cierra al devolverla).
+ *
+ * Cada operación se publica por JMX como app_compras:type=DAO,name=... (se
+ * puede desactivar con app_compras.metricas.jmx=false), y la vista de
+ * métricas del panel de administración muestra instantanea().
+ *
+ * Con app_compras.metricas.activas=false no se mide nada.
+ *
+ * @author Milanes
+ */
+public final class Metricas {
+
+    private static final boolean ACTIVAS = Boolean.parseBoolean(System.getProperty("app_compras.metricas.activas", "true"));
+    private static final boolean JMX = Boolean.parseBoolean(System.getProperty("app_compras.metricas.jmx", "true"));
+
+    private static final Map<String, Operacion> OPERACIONES = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Medicion> ACTUAL = new ThreadLocal<>();
+
+    // Medición que no registra nada (métricas desactivadas)
+    private static final Medicion NINGUNA = new Medicion(null);
+
+    private Metricas() {
+    }
+
+    // ============================================================
+    // MEDICIONES
+    // ============================================================
+    /**
+     * Empieza a medir una llamada a la operación. Se cierra con close() en
+     * el mismo hilo.
+     */
+    public static Medicion iniciar(String operacion) {
+        if (!ACTIVAS) {
+            return NINGUNA;
+        }
+        Medicion medicion = new Medicion(OPERACIONES.computeIfAbsent(operacion, Metricas::registrar));
+        medicion.anterior = ACTUAL.get();
+        ACTUAL.set(medicion);
+        return medicion;
+    }
+
+    /**
+     * Como iniciar(String), pero el nombre de la operación solo se calcula
+     * si las métricas están activas.
+     */
+    public static Medicion iniciar(Supplier<String> operacion) {
+        return ACTIVAS ? iniciar(operacion.get()) : NINGUNA;
+    }
+
+    /** Suma filas a la medición abierta en este hilo (si la hay). */
+    public static void filas(long filas) {
+        Medicion medicion = ACTUAL.get();
+        if (medicion != null) {
+            medicion.filas(filas);
+        }
+    }
+
+    /** Marca como fallida la medición abierta en este hilo (si la hay). */
+    public static void error() {
+        Medicion medicion = ACTUAL.get();
+        if (medicion != null) {
+            medicion.error();
+        }
+    }
+
+    /**
+     * Marca como fallida la medición abierta en este hilo (si la hay) y, si
+     * la excepción es un conflicto entre transacciones, lo cuenta aparte.
+     */
+    public static void error(SQLException e) {
+        Medicion medicion = ACTUAL.get();
+        if (medicion != null) {
+            medicion.error(e);
+        }
+    }
+
+    /**
+     * Marca como fallida una medición concreta (si la hay); si la causa es
+     * una SQLException, cuenta también los conflictos. Lo usan el pool y la
+     * caché de sentencias, que guardan la medición de la conexión prestada.
+     */
+    static void error(Medicion medicion, Throwable causa) {
+        if (medicion == null) {
+            return;
+        }
+        if (causa instanceof SQLException) {
+            medicion.error((SQLException) causa);
+        } else {
+            medicion.error();
+        }
+    }
+
+    /**
+     * Indica si la excepción (o alguna de su cadena) es un interbloqueo o una
+     * espera de bloqueo agotada: SQLSTATE 40001/40P01, los códigos 1213 y
+     * 1205 de MySQL/MariaDB o el 50200 de H2.
+     */
+    public static boolean esConflicto(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransactionRollbackException) {
+                return true;
+            }
+            if (t instanceof SQLException) {
+                SQLException sql = (SQLException) t;
+                String estado = sql.getSQLState();
+                int codigo = sql.getErrorCode();
+                if ("40001".equals(estado) || "40P01".equals(estado)
+                        || codigo == 1213 || codigo == 1205 || codigo == 50200) {
+                    return true;
+                }
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Resumen de todas las operaciones medidas, de mayor a menor tiempo
+     * total.
+     */
+    public static List<Resumen> instantanea() {
+        List<Resumen> lista = new ArrayList<>();
+        for (Operacion operacion : OPERACIONES.values()) {
+            lista.add(operacion.resumen());
+        }
+        lista.sort(Comparator.comparingDouble(Resumen::getTotalMs).reversed());
+        return lista;
+    }
+
+    /** Pone a cero todas las operaciones. */
+    public static void reiniciar() {
+        OPERACIONES.values().forEach(Operacion::reiniciar);
+        Logger.info("Métricas de base de datos reiniciadas.");
+    }
+
+    private static Operacion registrar(String nombre) {
+        Operacion operacion = new Operacion(nombre);
+        if (JMX) {
+            try {
+                MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+                ObjectName objeto = new ObjectName("app_compras:type=DAO,name=" + ObjectName.quote(nombre));
+                if (!servidor.isRegistered(objeto)) {
+                    servidor.registerMBean(operacion, objeto);
+                }
+            } catch (JMException | RuntimeException e) {
+                Logger.exception("No se pudo publicar por JMX la métrica " + nombre, e);
+            }
+        }
+        return operacion;
+    }
+
+    /**
+     * Una llamada en curso. close() registra la duración una sola vez.
+     */
+    public static final class Medicion implements AutoCloseable {
+
+        private final Operacion operacion;
+        private final long inicio = System.nanoTime();
+        private Medicion anterior;
+        private long filas = 0;
+        private boolean fallida = false;
+        private boolean conflicto = false;
+        private boolean deshecha = false;
+        private boolean cerrada = false;
+
+        private Medicion(Operacion operacion) {
+            this.operacion = operacion;
+        }
+
+        public void filas(long filas) {
+            this.filas += filas;
+        }
+
+        public void error() {
+            fallida = true;
+        }
+
+        public void error(SQLException e) {
+            fallida = true;
+            if (esConflicto(e)) {
+                conflicto = true;
+            }
+        }
+
+        /** La transacción se deshizo (también cuenta como error). */
+        public void rollback() {
+            fallida = true;
+            deshecha = true;
+        }
+
+        @Override
+        public void close() {
+            if (operacion == null || cerrada) {
+                return;
+            }
+            cerrada = true;
+            operacion.registrar(System.nanoTime() - inicio, filas, fallida, conflicto, deshecha);
+            if (ACTUAL.get() == this) {
+                if (anterior != null) {
+                    ACTUAL.set(anterior);
+                } else {
+                    ACTUAL.remove();
+                }
+            }
+        }
+    }
+
+    // ============================================================
+    // OPERACIONES (JMX)
+    // ============================================================
+    /**
+     * Atributos de cada operación en JMX (tiempos en milisegundos).
+     */
+    public interface OperacionMXBean {
+
+        long getLlamadas();
+
+        long getErrores();
+
+        long getConflictos();
+
+        long getRollbacks();
+
+        long getFilas();
+
+        double getMediaMs();
+
+        double getP50Ms();
+
+        double getP90Ms();
+
+        double getP99Ms();
+
+        double getP999Ms();
+
+        double getMaxMs();
+
+        void reiniciar();
+    }
+
+    private static final class Operacion implements OperacionMXBean {
+
+        private final String nombre;
+        private final LongAdder llamadas = new LongAdder();
+        private final LongAdder errores = new LongAdder();
+        private final LongAdder conflictos = new LongAdder();
+        private final LongAdder rollbacks = new LongAdder();
+        private final LongAdder filas = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final Histograma histograma = new Histograma();
+
+        Operacion(String nombre) {
+            this.nombre = nombre;
+        }
+
+        void registrar(long nanos, long filasDevueltas, boolean fallida, boolean conflicto, boolean deshecha) {
+            llamadas.increment();
+            if (fallida) {
+                errores.increment();
+            }
+            if (conflicto) {
+                conflictos.increment();
+            }
+            if (deshecha) {
+                rollbacks.increment();
+            }
+            filas.add(filasDevueltas);
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            histograma.registrar(nanos);
+        }
+
+        Resumen resumen() {
+            long[] p = percentiles(0.50, 0.90, 0.99, 0.999);
+            long n = llamadas.sum();
+            long total = totalNanos.sum();
+            return new Resumen(nombre, n, errores.sum(), conflictos.sum(), rollbacks.sum(), filas.sum(),
+                    ms(total), n == 0 ? 0 : ms(total) / n,
+                    ms(p[0]), ms(p[1]), ms(p[2]), ms(p[3]), ms(maxNanos.get()));
+        }
+
+        /** Percentiles del histograma, sin pasar del máximo real medido. */
+        private long[] percentiles(double... cuantiles) {
+            long[] p = histograma.percentiles(cuantiles);
+            long max = maxNanos.get();
+            for (int i = 0; i < p.length; i++) {
+                p[i] = Math.min(p[i], max);
+            }
+            return p;
+        }
+
+        @Override
+        public long getLlamadas() {
+            return llamadas.sum();
+        }
+
+        @Override
+        public long getErrores() {
+            return errores.sum();
+        }
+
+        @Override
+        public long getConflictos() {
+            return conflictos.sum();
+        }
+
+        @Override
+        public long getRollbacks() {
+            return rollbacks.sum();
+        }
+
+        @Override
+        public long getFilas() {
+            return filas.sum();
+        }
+
+        @Override
+        public double getMediaMs() {
+            long n = llamadas.sum();
+            return n == 0 ? 0 : ms(totalNanos.sum()) / n;
+        }
+
+        @Override
+        public double getP50Ms() {
+            return ms(percentiles(0.50)[0]);
+        }
+
+        @Override
+        public double getP90Ms() {
+            return ms(percentiles(0.90)[0]);
+        }
+
+        @Override
+        public double getP99Ms() {
+            return ms(percentiles(0.99)[0]);
+        }
+
+        @Override
+        public double getP999Ms() {
+            return ms(percentiles(0.999)[0]);
+        }
+
+        @Override
+        public double getMaxMs() {
+            return ms(maxNanos.get());
+        }
+
+        @Override
+        public void reiniciar() {
+            llamadas.reset();
+            errores.reset();
+            conflictos.reset();
+            rollbacks.reset();
+            filas.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+            histograma.reiniciar();
+        }
+
+        private static double ms(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+
+    /**
+     * Histograma de nanosegundos con cubos logarítmico-lineales: los valores
+     * menores que 32 tienen un cubo cada uno y, a partir de ahí, cada
+     * potencia de 2 se divide en 16 cubos iguales. Los valores por encima de
+     * 2^42 ns (unos 73 minutos) van al último cubo.
+     */
+    private static final class Histograma {
+
+        private static final int SUBCUBOS = 16;
+        private static final long MAXIMO = (1L << 42) - 1;
+        private static final int CUBOS = indice(MAXIMO) + 1;
+
+        private final AtomicLongArray cuentas = new AtomicLongArray(CUBOS);
+
+        void registrar(long nanos) {
+            cuentas.incrementAndGet(indice(Math.max(0, Math.min(nanos, MAXIMO))));
+        }
+
+        static int indice(long valor) {
+            if (valor < 2 * SUBCUBOS) {
+                return (int) valor;
+            }
+            int desplazamiento = 63 - Long.numberOfLeadingZeros(valor) - 4;
+            return desplazamiento * SUBCUBOS + (int) (valor >>> desplazamiento);
+        }
+
+        /** Valor más alto que cae en el cubo (como highestEquivalentValue). */
+        static long limiteSuperior(int indice) {
+            if (indice < 2 * SUBCUBOS) {
+                return indice;
+            }
+            int desplazamiento = indice / SUBCUBOS - 1;
+            long base = indice - desplazamiento * SUBCUBOS;
+            return ((base + 1) << desplazamiento) - 1;
+        }
+
+        /**
+         * Percentiles pedidos (en orden creciente, entre 0 y 1) en una sola
+         * pasada.
+         */
+        long[] percentiles(double... cuantiles) {
+            long[] copia = new long[CUBOS];
+            long total = 0;
+            for (int i = 0; i < CUBOS; i++) {
+                copia[i] = cuentas.get(i);
+                total += copia[i];
+            }
+
+            long[] resultado = new long[cuantiles.length];
+            if (total == 0) {
+                return resultado;
+            }
+            long acumulado = 0;
+            int siguiente = 0;
+            for (int i = 0; i < CUBOS && siguiente < cuantiles.length; i++) {
+                acumulado += copia[i];
+                while (siguiente < cuantiles.length
+                        && acumulado >= Math.max(1, (long) Math.ceil(cuantiles[siguiente] * total))) {
+                    resultado[siguiente++] = limiteSuperior(i);
+                }
+            }
+            return resultado;
+        }
+
+        void reiniciar() {
+            for (int i = 0; i < CUBOS; i++) {
+                cuentas.set(i, 0);
+            }
+        }
+    }
+
+    // ============================================================
+    // RESUMEN (para la vista de métricas)
+    // ============================================================
+    /**
+     * Valores de una operación en un momento dado (tiempos en
+     * milisegundos).
+     */
+    public static final class Resumen {
+
+        private final String operacion;
+        private final long llamadas;
+        private final long errores;
+        private final long conflictos;
+        private final long rollbacks;
+        private final long filas;
+        private final double totalMs;
+        private final double mediaMs;
+        private final double p50Ms;
+        private final double p90Ms;
+        private final double p99Ms;
+        private final double p999Ms;
+        private final double maxMs;
+
+        Resumen(String operacion, long llamadas, long errores, long conflictos, long rollbacks, long filas,
+                double totalMs, double mediaMs, double p50Ms, double p90Ms, double p99Ms, double p999Ms, double maxMs) {
+            this.operacion = operacion;
+            this.llamadas = llamadas;
+            this.errores = errores;
+            this.conflictos = conflictos;
+            this.rollbacks = rollbacks;
+            this.filas = filas;
+            this.totalMs = totalMs;
+            this.mediaMs = mediaMs;
+            this.p50Ms = p50Ms;
+            this.p90Ms = p90Ms;
+            this.p99Ms = p99Ms;
+            this.p999Ms = p999Ms;
+            this.maxMs = maxMs;
+        }
+
+        public String getOperacion() {
+            return operacion;
+        }
+
+        public long getLlamadas() {
+            return llamadas;
+        }
+
+        public long getErrores() {
+            return errores;
+        }
+
+        public long getConflictos() {
+            return conflictos;
+        }
+
+        public long getRollbacks() {
+            return rollbacks;
+        }
+
+        public long getFilas() {
+            return filas;
+        }
+
+        public double getTotalMs() {
+            return totalMs;
+        }
+
+        public double getMediaMs() {
+            return mediaMs;
+        }
+
+        public double getP50Ms() {
+            return p50Ms;
+        }
+
+        public double getP90Ms() {
+            return p90Ms;
+        }
+
+        public double getP99Ms() {
+            return p99Ms;
+        }
+
+        public double getP999Ms() {
+            return p999Ms;
+        }
+
+        public double getMaxMs() {
+            return maxMs;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package config;
+
+/**
+ * Motores de base de datos soportados. Se elige con -Dapp_compras.db.motor
+ * (mysql por defecto):
+ *
+ * - MYSQL: servidor MySQL/MariaDB (XAMPP), como hasta ahora.
+ * - H2: base embebida en el propio proceso, en modo de compatibilidad MySQL.
+ *   Guarda los datos en ./datos/app_compras.mv.db y la primera vez crea las
+ *   tablas con "recursos/app_compras limpia.sql" (ver EsquemaEmbebido). No
+ *   necesita servidor, así que sirve para pruebas, benchmarks y para usar la
+ *   aplicación en un solo equipo.
+ *
+ * La URL, el usuario, la contraseña y el driver de cada motor se pueden
+ * sobrescribir con -Dapp_compras.db.url, .usuario, .password y .driver.
+ *
+ * @author Milanes
+ */
+public enum MotorBD {
+
+    MYSQL("com.mysql.cj.jdbc.Driver", "jdbc:mysql://localhost:3306/app_compras?rewriteBatchedStatements=true", "root", ""),
+    H2("org.h2.Driver", "jdbc:h2:./datos/app_compras;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH",
+            "sa", "");
+
+    private final String driver;
+    private final String url;
+    private final String usuario;
+    private final String password;
+
+    MotorBD(String driver, String url, String usuario, String password) {
+        this.driver = driver;
+        this.url = url;
+        this.usuario = usuario;
+        this.password = password;
+    }
+
+    /**
+     * Motor configurado con app_compras.db.motor. Si el valor no se reconoce
+     * se avisa en el log y se usa MySQL.
+     */
+    public static MotorBD configurado() {
+        String valor = System.getProperty("app_compras.db.motor", "mysql").trim();
+        for (MotorBD motor : values()) {
+            if (motor.name().equalsIgnoreCase(valor)) {
+                return motor;
+            }
+        }
+        Logger.warning(() -> "Motor de base de datos desconocido '" + valor + "', se usa MySQL.");
+        return MYSQL;
+    }
+
+    /**
+     * true si la base corre dentro del proceso de la aplicación.
+     */
+    public boolean esEmbebido() {
+        return this == H2;
+    }
+
+    public String getDriver() {
+        return System.getProperty("app_compras.db.driver", driver);
+    }
+
+    public String getUrl() {
+        return System.getProperty("app_compras.db.url", url);
+    }
+
+    public String getUsuario() {
+        return System.getProperty("app_compras.db.usuario", usuario);
+    }
+
+    public String getPassword() {
+        return System.getProperty("app_compras.db.password", password);
+    }
+}
@@ -0,0 +1,314 @@
+package config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool acotado de conexiones JDBC. Las conexiones se entregan envueltas en un
+ * proxy: al llamar a close() la conexión física no se cierra, sino que vuelve
+ * al pool para ser reutilizada por el siguiente DAO.
+ *
+ * - Tamaño mínimo y máximo configurables.
+ * - Validación de la conexión antes de entregarla.
+ * - Tiempo máximo de espera cuando todas las conexiones están ocupadas.
+ * - Expulsión periódica de las conexiones inactivas por encima del mínimo.
+ * - Caché de sentencias preparadas por conexión física (ver CacheSentencias).
+ * - Si se presta con una medición (config.Metricas), se marcan en ella los
+ *   errores de la conexión y de sus sentencias preparadas y los rollbacks, y
+ *   se cierra al devolver la conexión.
+ *
+ * @author Milanes
+ */
+final class PoolConexiones {
+
+    private final String url;
+    private final String usuario;
+    private final String password;
+    private final int minimo;
+    private final int maximo;
+    private final long inactividadMaxMs;
+    private final long esperaMaxMs;
+    private final int validacionSeg;
+    private final int capacidadSentencias;
+
+    // Conexiones libres (la más reciente al principio)
+    private final LinkedBlockingDeque<ConexionLibre> libres = new LinkedBlockingDeque<>();
+    // Limita el número de conexiones prestadas a la vez
+    private final Semaphore permisos;
+    private final AtomicInteger abiertas = new AtomicInteger();
+    // Sentencias preparadas de cada conexión física (viven lo mismo que ella)
+    private final Map<Connection, CacheSentencias> sentencias = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService limpiador;
+
+    private volatile boolean cerrado = false;
+
+    PoolConexiones(String url, String usuario, String password,
+            int minimo, int maximo, long inactividadMaxMs, long esperaMaxMs, int validacionSeg,
+            int capacidadSentencias) {
+        this.url = url;
+        this.usuario = usuario;
+        this.password = password;
+        this.maximo = Math.max(1, maximo);
+        this.minimo = Math.max(0, Math.min(minimo, this.maximo));
+        this.inactividadMaxMs = inactividadMaxMs;
+        this.esperaMaxMs = esperaMaxMs;
+        this.validacionSeg = validacionSeg;
+        this.capacidadSentencias = capacidadSentencias;
+        this.permisos = new Semaphore(this.maximo, true);
+
+        this.limpiador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "pool-conexiones-limpiador");
+            t.setDaemon(true);
+            return t;
+        });
+        long periodo = Math.max(1000, inactividadMaxMs / 2);
+        limpiador.scheduleWithFixedDelay(this::expulsarInactivas, periodo, periodo, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Abre las conexiones mínimas para que las primeras consultas no paguen el
+     * coste de conexión.
+     */
+    void precalentar() throws SQLException {
+        while (abiertas.get() < minimo) {
+            libres.offerLast(new ConexionLibre(abrirFisica()));
+        }
+    }
+
+    /**
+     * Toma una conexión del pool (o abre una nueva si hay hueco). Espera como
+     * máximo el tiempo configurado si todas están ocupadas.
+     */
+    Connection prestar() throws SQLException {
+        return prestar(null);
+    }
+
+    /**
+     * Como prestar(), midiendo el uso de la conexión en la medición (null
+     * para ninguna).
+     */
+    Connection prestar(Metricas.Medicion medicion) throws SQLException {
+        if (cerrado) {
+            throw new SQLException("El pool de conexiones está cerrado.");
+        }
+
+        try {
+            if (!permisos.tryAcquire(esperaMaxMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Tiempo de espera agotado (" + esperaMaxMs
+                        + " ms) esperando una conexión libre. Máximo: " + maximo);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido mientras se esperaba una conexión libre.", e);
+        }
+
+        try {
+            ConexionLibre libre;
+            while ((libre = libres.pollFirst()) != null) {
+                if (esValida(libre.fisica)) {
+                    return envolver(libre.fisica, medicion);
+                }
+                Logger.warning("Conexión inválida descartada del pool.");
+                cerrarFisica(libre.fisica);
+            }
+            return envolver(abrirFisica(), medicion);
+
+        } catch (SQLException | RuntimeException e) {
+            permisos.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Devuelve una conexión física al pool dejándola en un estado limpio.
+     */
+    private void devolver(Connection fisica) {
+        try {
+            if (cerrado || fisica.isClosed()) {
+                cerrarFisica(fisica);
+                return;
+            }
+            sentencias.get(fisica).liberarOlvidadas();
+            if (!fisica.getAutoCommit()) {
+                fisica.rollback();
+                fisica.setAutoCommit(true);
+            }
+            fisica.clearWarnings();
+            libres.offerFirst(new ConexionLibre(fisica));
+
+        } catch (SQLException e) {
+            Logger.exception("Error al devolver la conexión al pool. Se descarta.", e);
+            cerrarFisica(fisica);
+        } finally {
+            permisos.release();
+        }
+    }
+
+    /**
+     * Cierra todas las conexiones libres y rechaza nuevos préstamos. Las
+     * conexiones prestadas se cierran al devolverse.
+     */
+    void cerrar() {
+        cerrado = true;
+        limpiador.shutdownNow();
+        ConexionLibre libre;
+        while ((libre = libres.pollFirst()) != null) {
+            cerrarFisica(libre.fisica);
+        }
+    }
+
+    int getAbiertas() {
+        return abiertas.get();
+    }
+
+    int getLibres() {
+        return libres.size();
+    }
+
+    // ============================================================
+    // MANTENIMIENTO
+    // ============================================================
+    private void expulsarInactivas() {
+        long limite = System.currentTimeMillis() - inactividadMaxMs;
+        Iterator<ConexionLibre> it = libres.descendingIterator(); // las más antiguas primero
+        while (it.hasNext() && abiertas.get() > minimo) {
+            ConexionLibre libre = it.next();
+            if (libre.desde < limite && libres.removeLastOccurrence(libre)) {
+                cerrarFisica(libre.fisica);
+                Logger.info("Conexión inactiva expulsada del pool. Abiertas: " + abiertas.get());
+            }
+        }
+    }
+
+    private boolean esValida(Connection fisica) {
+        try {
+            return !fisica.isClosed() && fisica.isValid(validacionSeg);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private Connection abrirFisica() throws SQLException {
+        Connection fisica = DriverManager.getConnection(url, usuario, password);
+        sentencias.put(fisica, new CacheSentencias(fisica, capacidadSentencias));
+        int total = abiertas.incrementAndGet();
+        Logger.info("Nueva conexión física abierta en el pool. Abiertas: " + total + "/" + maximo);
+        return fisica;
+    }
+
+    private void cerrarFisica(Connection fisica) {
+        try {
+            CacheSentencias cache = sentencias.remove(fisica);
+            if (cache != null) {
+                cache.cerrar();
+            }
+            fisica.close();
+        } catch (SQLException e) {
+            Logger.exception("Error al cerrar una conexión física del pool.", e);
+        } finally {
+            abiertas.decrementAndGet();
+        }
+    }
+
+    private Connection envolver(Connection fisica, Metricas.Medicion medicion) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new ConexionPrestada(fisica, sentencias.get(fisica), medicion));
+    }
+
+    // ============================================================
+    // CLASES INTERNAS
+    // ============================================================
+    private static final class ConexionLibre {
+
+        final Connection fisica;
+        final long desde;
+
+        ConexionLibre(Connection fisica) {
+            this.fisica = fisica;
+            this.desde = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Proxy de la conexión prestada: close() la devuelve al pool y cualquier
+     * uso posterior falla como si estuviera cerrada.
+     */
+    private final class ConexionPrestada implements InvocationHandler {
+
+        private final Connection fisica;
+        private final CacheSentencias cache;
+        private final Metricas.Medicion medicion;
+        private boolean devuelta = false;
+
+        ConexionPrestada(Connection fisica, CacheSentencias cache, Metricas.Medicion medicion) {
+            this.fisica = fisica;
+            this.cache = cache;
+            this.medicion = medicion;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!devuelta) {
+                        devuelta = true;
+                        try {
+                            devolver(fisica);
+                        } finally {
+                            if (medicion != null) {
+                                medicion.close();
+                            }
+                        }
+                    }
+                    return null;
+                case "rollback":
+                    if (medicion != null && !devuelta) {
+                        medicion.rollback();
+                    }
+                    break;
+                case "isClosed":
+                    return devuelta || fisica.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "ConexionPrestada[" + fisica + "]";
+                default:
+                    break;
+            }
+
+            if (devuelta) {
+                throw new SQLException("La conexión ya fue devuelta al pool.");
+            }
+            try {
+                if (cache.admite(method, args)) {
+                    return cache.preparar((Connection) proxy, medicion, args);
+                }
+                return method.invoke(fisica, args);
+            } catch (InvocationTargetException e) {
+                Metricas.error(medicion, e.getCause());
+                throw e.getCause();
+            } catch (SQLException e) {
+                Metricas.error(medicion, e);
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Rotación del archivo de log por tamaño y/o por día. El segmento cerrado se
+ * mueve a la carpeta de archivos y se comprime con gzip en segundo plano,
+ * conservando solo los N más recientes.
+ *
+ * Solo la usa Logger desde el hilo que escribe en el archivo.
+ *
+ * @author Milanes
+ */
+final class RotacionLog {
+
+    private static final String SUFIJO_GZ = ".txt.gz";
+
+    private final Path archivo;
+    private final Path carpetaArchivos;
+    private final long maxBytes;
+    private final boolean diaria;
+    private final int conservar;
+
+    // Compresión y limpieza fuera del hilo escritor
+    private final ExecutorService compresor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "logger-compresor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private long bytesActuales = -1;
+    private LocalDate diaActual;
+
+    /**
+     * @param archivo archivo de log activo (log.txt)
+     * @param carpetaArchivos carpeta donde se guardan los segmentos comprimidos
+     * @param maxBytes tamaño máximo del archivo activo (0 = sin límite)
+     * @param diaria true para rotar también al cambiar de día
+     * @param conservar número de segmentos comprimidos a conservar
+     */
+    RotacionLog(Path archivo, Path carpetaArchivos, long maxBytes, boolean diaria, int conservar) {
+        this.archivo = archivo;
+        this.carpetaArchivos = carpetaArchivos;
+        this.maxBytes = maxBytes;
+        this.diaria = diaria;
+        this.conservar = Math.max(1, conservar);
+    }
+
+    /**
+     * Indica si hay que rotar antes de escribir los bytes indicados.
+     */
+    boolean debeRotar(long bytesAEscribir) {
+        if (bytesActuales < 0) {
+            leerEstadoInicial();
+        }
+        if (bytesActuales == 0) {
+            return false;
+        }
+        if (diaria && !LocalDate.now().equals(diaActual)) {
+            return true;
+        }
+        return maxBytes > 0 && bytesActuales + bytesAEscribir > maxBytes;
+    }
+
+    void registrarEscritos(long bytes) {
+        if (bytesActuales < 0) {
+            leerEstadoInicial();
+        }
+        if (bytesActuales == 0) {
+            diaActual = LocalDate.now();
+        }
+        bytesActuales += bytes;
+    }
+
+    /**
+     * Mueve el archivo activo (ya cerrado) a la carpeta de archivos y programa
+     * su compresión. El siguiente mensaje abrirá un log.txt nuevo.
+     */
+    void rotar() {
+        try {
+            Files.createDirectories(carpetaArchivos);
+            String base = "log-" + diaActual;
+            Path destino = carpetaArchivos.resolve(base + ".txt");
+            int n = 1;
+            while (Files.exists(destino) || Files.exists(carpetaArchivos.resolve(destino.getFileName() + ".gz"))) {
+                destino = carpetaArchivos.resolve(base + "." + n++ + ".txt");
+            }
+            Files.move(archivo, destino, StandardCopyOption.ATOMIC_MOVE);
+
+            final Path segmento = destino;
+            compresor.execute(() -> {
+                comprimir(segmento);
+                limpiarAntiguos();
+            });
+
+        } catch (IOException e) {
+            System.err.println("Error al rotar el archivo de log: " + e.getMessage());
+        } finally {
+            bytesActuales = 0;
+            diaActual = LocalDate.now();
+        }
+    }
+
+    private void leerEstadoInicial() {
+        try {
+            if (Files.exists(archivo)) {
+                bytesActuales = Files.size(archivo);
+                diaActual = LocalDate.ofInstant(Files.getLastModifiedTime(archivo).toInstant(), ZoneId.systemDefault());
+                return;
+            }
+        } catch (IOException e) {
+            System.err.println("Error al leer el estado del archivo de log: " + e.getMessage());
+        }
+        bytesActuales = 0;
+        diaActual = LocalDate.now();
+    }
+
+    private void comprimir(Path segmento) {
+        Path gz = segmento.resolveSibling(segmento.getFileName() + ".gz");
+        Path temporal = segmento.resolveSibling(segmento.getFileName() + ".gz.tmp");
+        try (InputStream in = Files.newInputStream(segmento);
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(temporal), 64 * 1024)) {
+            in.transferTo(out);
+        } catch (IOException e) {
+            System.err.println("Error al comprimir el segmento de log " + segmento + ": " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temporal, gz, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(segmento);
+        } catch (IOException e) {
+            System.err.println("Error al finalizar la compresión de " + segmento + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Borra los segmentos comprimidos más antiguos por encima del límite.
+     */
+    private void limpiarAntiguos() {
+        List<Path> segmentos = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(carpetaArchivos, "log-*" + SUFIJO_GZ)) {
+            for (Path p : ds) {
+                segmentos.add(p);
+            }
+        } catch (IOException e) {
+            System.err.println("Error al listar los segmentos de log: " + e.getMessage());
+            return;
+        }
+
+        if (segmentos.size() <= conservar) {
+            return;
+        }
+
+        segmentos.sort((a, b) -> {
+            try {
+                return Files.getLastModifiedTime(b).compareTo(Files.getLastModifiedTime(a));
+            } catch (IOException e) {
+                return 0;
+            }
+        });
+
+        for (Path viejo : segmentos.subList(conservar, segmentos.size())) {
+            try {
+                Files.deleteIfExists(viejo);
+            } catch (IOException e) {
+                System.err.println("No se pudo borrar el segmento de log " + viejo + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package config;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javafx.concurrent.Task;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.TableView;
+
+/**
+ * Ejecutor compartido para el trabajo de base de datos de los controladores.
+ * Los DAOs se llaman en hilos de fondo y el resultado se entrega en el hilo
+ * de JavaFX, de modo que la ventana no se congela mientras dura la consulta.
+ *
+ * Cada tarea puede llevar una clave: si se lanza otra tarea con la misma clave
+ * antes de que termine la anterior, la anterior se cancela y su resultado se
+ * descarta (por ejemplo, al cambiar rápido de usuario en un combo).
+ *
+ * Configuración (propiedades del sistema):
+ * - app_compras.tareas.hilos: hilos de fondo (por defecto 4).
+ *
+ * @author Milanes
+ */
+public final class TareasBD {
+
+    private static final int HILOS = Math.max(1, Integer.getInteger("app_compras.tareas.hilos", 4));
+
+    private static final AtomicInteger CONTADOR = new AtomicInteger();
+
+    private static final ExecutorService EJECUTOR = Executors.newFixedThreadPool(HILOS, r -> {
+        Thread t = new Thread(r, "tareas-bd-" + CONTADOR.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Última tarea lanzada por clave
+    private static final Map<String, Task<?>> EN_CURSO = new ConcurrentHashMap<>();
+
+    private TareasBD() {
+    }
+
+    /**
+     * Ejecuta el trabajo en segundo plano sin clave (no cancela nada).
+     */
+    public static <T> Task<T> ejecutar(Callable<T> trabajo, Consumer<T> alTerminar) {
+        return ejecutar(null, trabajo, alTerminar, null);
+    }
+
+    public static <T> Task<T> ejecutar(String clave, Callable<T> trabajo, Consumer<T> alTerminar) {
+        return ejecutar(clave, trabajo, alTerminar, null);
+    }
+
+    /**
+     * Ejecuta el trabajo en segundo plano.
+     *
+     * @param clave identifica la petición; la anterior con la misma clave se cancela (puede ser null)
+     * @param trabajo llamada a los DAOs, se ejecuta fuera del hilo de JavaFX
+     * @param alTerminar recibe el resultado en el hilo de JavaFX
+     * @param alFallar recibe la excepción en el hilo de JavaFX (puede ser null; siempre se registra en el log)
+     * @return la tarea lanzada
+     */
+    public static <T> Task<T> ejecutar(String clave, Callable<T> trabajo,
+            Consumer<T> alTerminar, Consumer<Throwable> alFallar) {
+
+        Task<T> tarea = new Task<T>() {
+            @Override
+            protected T call() throws Exception {
+                return trabajo.call();
+            }
+        };
+
+        // onSucceeded/onFailed ya se invocan en el hilo de JavaFX
+        tarea.setOnSucceeded(e -> {
+            liberar(clave, tarea);
+            if (alTerminar != null) {
+                alTerminar.accept(tarea.getValue());
+            }
+        });
+        tarea.setOnFailed(e -> {
+            liberar(clave, tarea);
+            Throwable error = tarea.getException();
+            if (error instanceof Exception) {
+                Logger.exception("Error en una tarea de base de datos" + (clave != null ? " (" + clave + ")." : "."),
+                        (Exception) error);
+            } else {
+                Logger.error("Error en una tarea de base de datos: " + error);
+            }
+            if (alFallar != null) {
+                alFallar.accept(error);
+            }
+        });
+        tarea.setOnCancelled(e -> liberar(clave, tarea));
+
+        if (clave != null) {
+            Task<?> anterior = EN_CURSO.put(clave, tarea);
+            if (anterior != null && anterior.cancel(true)) {
+                Logger.info(() -> "Tarea anterior cancelada: " + clave);
+            }
+        }
+
+        EJECUTOR.execute(tarea);
+        return tarea;
+    }
+
+    /**
+     * Cancela la última tarea lanzada con esa clave, si sigue en curso (por
+     * ejemplo cuando el usuario elige otra opción que no pasa por ella).
+     */
+    public static void cancelar(String clave) {
+        Task<?> tarea = EN_CURSO.remove(clave);
+        if (tarea != null && tarea.cancel(true)) {
+            Logger.info(() -> "Tarea cancelada: " + clave);
+        }
+    }
+
+    /**
+     * Muestra u oculta el estado de carga de una tabla: mientras se consulta,
+     * el marcador de posición es un indicador de progreso.
+     */
+    public static void mostrarCargando(TableView<?> tabla, boolean cargando) {
+        if (cargando) {
+            ProgressIndicator indicador = new ProgressIndicator();
+            indicador.setMaxSize(40, 40);
+            tabla.setPlaceholder(indicador);
+        } else {
+            tabla.setPlaceholder(new Label("No hay contenido en la tabla"));
+        }
+    }
+
+    /**
+     * Detiene los hilos de fondo (al salir de la aplicación).
+     */
+    public static void cerrar() {
+        EN_CURSO.values().forEach(t -> t.cancel(true));
+        EN_CURSO.clear();
+        EJECUTOR.shutdownNow();
+        try {
+            EJECUTOR.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void liberar(String clave, Task<?> tarea) {
+        if (clave != null) {
+            EN_CURSO.remove(clave, tarea);
+        }
+    }
+}
@@ -3,19 +3,19 @@ package controllers;
 import app_compras.App;
 import config.Logger;
 import config.Session;
-import config.ConexionDB;
-import dao.CarritoDAO;
+import config.TareasBD;
+import dao.CarritoEnMemoria;
 import dao.CompraDAO;
+import dao.DiarioCarrito;
 import dao.ProductoDAO;
 import dao.TiendaDAO;
 import java.io.IOException;
 import java.net.URL;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
 import java.time.LocalDate;
-import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import javafx.animation.PauseTransition;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
@@ -27,7 +27,9 @@ import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
+import javafx.util.Duration;
 import models.Carrito;
+import models.Compra;
 import models.Producto;
 import models.Tienda;
 import models.Usuario;
@@ -35,6 +37,15 @@ import models.Usuario;
 /**
  * Controlador del carrito de compras. Desactiva todos los elementos (incluyendo
  * tienda y cantidad) hasta que se guarde el nombre de la compra.
+ *
+ * Los cambios se hacen sobre un CarritoEnMemoria y se ven al momento; se
+ * guardan en la base poco después del último cambio
+ * (app_compras.carrito.volcadoMs, por defecto 1500 ms), antes de confirmar la
+ * compra y al volver al dashboard.
+ *
+ * Además cada cambio se anota en el diario local del usuario
+ * (DiarioCarrito): al volver a abrir la vista se recupera la compra en curso
+ * aunque la aplicación se cerrara antes de guardarla.
  */
 public class CarritoController implements Initializable {
 
@@ -69,8 +80,10 @@ public class CarritoController implements Initializable {
             btnGuardarCompraTemporalmente, btnImprimirTicketDeCompra,
             btnVolver, btnGuardarNombreCompra;
 
+    private static final Duration ESPERA_VOLCADO
+            = Duration.millis(Math.max(0, Long.getLong("app_compras.carrito.volcadoMs", 1500L)));
+
     // --- DAOs ---
-    private final CarritoDAO carritoDAO = new CarritoDAO();
     private final ProductoDAO productoDAO = new ProductoDAO();
     private final CompraDAO compraDAO = new CompraDAO();
     private final TiendaDAO tiendaDAO = new TiendaDAO();
@@ -81,6 +94,10 @@ public class CarritoController implements Initializable {
     private ObservableList<Tienda> listaTiendas;
     private Tienda tiendaSeleccionada;
     private String nombreCompraActual = null;
+    private CarritoEnMemoria carrito;
+    private DiarioCarrito diario;
+    private int idTiendaRecuperada = 0;
+    private final PauseTransition volcadoDiferido = new PauseTransition(ESPERA_VOLCADO);
     @FXML
     private AnchorPane carritoRoot;
     @FXML
@@ -122,11 +139,12 @@ public class CarritoController implements Initializable {
         configurarSpinnerCantidad();
         cargarTiendas();
         mostrarUsuarioActivo();
-        cargarCarritoTemporal();
         txtBuscarProducto.textProperty().addListener((obs, o, n) -> filtrarProductos(n));
+        volcadoDiferido.setOnFinished(e -> volcarEnSegundoPlano());
 
-        // Al inicio, todo desactivado hasta guardar nombre
+        // Al inicio, todo desactivado hasta guardar nombre (o recuperar la compra del diario)
         desactivarBotonesIniciales();
+        cargarCarritoTemporal();
     }
 
     private void mostrarUsuarioActivo() {
@@ -180,35 +198,98 @@ public class CarritoController implements Initializable {
     // MÉTODOS DE CARGA
     // ----------------------------------------------------------
     private void cargarTiendas() {
-        try {
-            listaTiendas = FXCollections.observableArrayList(tiendaDAO.listarTodas());
+        TareasBD.ejecutar("carrito.tiendas", tiendaDAO::listarTodas, tiendas -> {
+            listaTiendas = FXCollections.observableArrayList(tiendas);
             comboTiendas.setItems(listaTiendas);
-        } catch (Exception e) {
-            Logger.exception("Error al cargar tiendas", e);
-        }
+            if (idTiendaRecuperada > 0) {
+                listaTiendas.stream()
+                        .filter(t -> t.getIdTienda() == idTiendaRecuperada)
+                        .findFirst()
+                        .ifPresent(comboTiendas::setValue);
+                idTiendaRecuperada = 0;
+            }
+        });
     }
 
     private void cargarCarrito() {
-        int idUsuario = Session.getUsuarioId();
-        if (idUsuario <= 0) {
-            return;
-        }
-
-        if (nombreCompraActual == null || nombreCompraActual.isBlank()) {
+        if (carrito == null) {
             tablaCarrito.getItems().clear();
             labelTotal.setText("0,00 €");
             return;
         }
 
-        List<Carrito> lista = carritoDAO.listarPorUsuarioYNombre(idUsuario, nombreCompraActual);
-        listaCarrito = FXCollections.observableArrayList(lista);
-        tablaCarrito.setItems(listaCarrito);
+        CarritoEnMemoria actual = carrito;
+        TareasBD.mostrarCargando(tablaCarrito, true);
+        TareasBD.ejecutar("carrito.listar", actual::cargar,
+                lineas -> {
+                    TareasBD.mostrarCargando(tablaCarrito, false);
+                    if (actual == carrito) {
+                        mostrarCarrito();
+                    }
+                },
+                error -> {
+                    TareasBD.mostrarCargando(tablaCarrito, false);
+                    labelMensaje.setText("Error al cargar el carrito.");
+                    labelMensaje.setStyle("-fx-text-fill:red;");
+                });
+    }
 
-        double total = listaCarrito.stream().mapToDouble(Carrito::getSubtotal).sum();
-        labelTotal.setText(String.format("%.2f €", total));
+    /**
+     * Muestra las líneas y el total del carrito en memoria (sin consultar la
+     * base).
+     */
+    private void mostrarCarrito() {
+        listaCarrito = FXCollections.observableArrayList(carrito.getLineas());
+        filtrarProductos(txtBuscarProducto.getText());
+        labelTotal.setText(String.format("%.2f €", carrito.getTotal()));
         actualizarEstadoBotones();
     }
 
+    /**
+     * Guarda los cambios poco después del último: varios clics seguidos se
+     * escriben juntos.
+     */
+    private void programarVolcado() {
+        volcadoDiferido.playFromStart();
+    }
+
+    private void volcarEnSegundoPlano() {
+        volcadoDiferido.stop();
+        CarritoEnMemoria actual = carrito;
+        if (actual == null || !actual.hayPendientes()) {
+            return;
+        }
+        TareasBD.ejecutar(actual::volcar, ok -> {
+            if (!ok) {
+                labelMensaje.setText("No se pudieron guardar los cambios del carrito.");
+                labelMensaje.setStyle("-fx-text-fill:red;");
+            } else {
+                avisarEnOtraCompra(actual);
+            }
+        });
+    }
+
+    /**
+     * Avisa de los productos que no se guardaron porque ya estaban en otra
+     * compra del usuario.
+     *
+     * @return true si había alguno
+     */
+    private boolean avisarEnOtraCompra(CarritoEnMemoria actual) {
+        Map<String, String> enOtraCompra = actual.tomarEnOtraCompra();
+        if (enOtraCompra.isEmpty()) {
+            return false;
+        }
+        StringBuilder texto = new StringBuilder("Ya están en otra compra y se han quitado de esta: ");
+        enOtraCompra.forEach((producto, compra) -> texto.append(producto).append(" ('").append(compra).append("') "));
+        labelMensaje.setText(texto.toString().trim());
+        labelMensaje.setStyle("-fx-text-fill:orange;");
+        if (actual == carrito) {
+            mostrarCarrito();
+        }
+        return true;
+    }
+
     @FXML
     private void tiendaSeleccionada(ActionEvent event) {
         tiendaSeleccionada = comboTiendas.getValue();
@@ -219,17 +300,22 @@ public class CarritoController implements Initializable {
             return;
         }
 
-        List<Producto> productos = productoDAO.listarPorTienda(tiendaSeleccionada.getIdTienda());
-        if (productos.isEmpty()) {
-            comboProductos.getItems().clear();
-            comboProductos.setDisable(true);
-            btnAgregar.setDisable(true);
-        } else {
-            listaProductos = FXCollections.observableArrayList(productos);
-            comboProductos.setItems(listaProductos);
-            comboProductos.setDisable(false);
-            btnAgregar.setDisable(false);
+        int idTienda = tiendaSeleccionada.getIdTienda();
+        if (diario != null && carrito != null) {
+            diario.anotarTienda(idTienda);
         }
+        comboProductos.setDisable(true);
+        btnAgregar.setDisable(true);
+        TareasBD.ejecutar("carrito.productos", () -> productoDAO.listarPorTienda(idTienda), productos -> {
+            if (productos.isEmpty()) {
+                comboProductos.getItems().clear();
+            } else {
+                listaProductos = FXCollections.observableArrayList(productos);
+                comboProductos.setItems(listaProductos);
+                comboProductos.setDisable(false);
+                btnAgregar.setDisable(false);
+            }
+        });
     }
 
     // ----------------------------------------------------------
@@ -244,6 +330,16 @@ public class CarritoController implements Initializable {
             return;
         }
 
+        if (carrito == null || !nombre.equals(carrito.getNombreCompra())) {
+            // Lo pendiente del carrito anterior se guarda antes de cambiar de compra
+            volcarEnSegundoPlano();
+
+            this.carrito = new CarritoEnMemoria(Session.getUsuarioId(), nombre);
+            if (diario != null) {
+                diario.iniciarCompra(nombre);
+                carrito.setDiario(diario);
+            }
+        }
         this.nombreCompraActual = nombre;
         labelMensaje.setText("Nombre de compra guardado: " + nombre);
         labelMensaje.setStyle("-fx-text-fill:green;");
@@ -253,7 +349,7 @@ public class CarritoController implements Initializable {
 
     @FXML
     private void agregarProducto(ActionEvent event) {
-        if (nombreCompraActual == null) {
+        if (carrito == null) {
             labelMensaje.setText("Primero debes guardar el nombre de la compra.");
             labelMensaje.setStyle("-fx-text-fill:red;");
             return;
@@ -269,15 +365,13 @@ public class CarritoController implements Initializable {
             return;
         }
 
-        Carrito nuevo = new Carrito(idUsuario, p.getIdProducto(), cant);
-        nuevo.setNombreCompra(nombreCompraActual);
+        carrito.agregar(p, cant);
+        mostrarCarrito();
+        programarVolcado();
 
-        if (carritoDAO.agregarAlCarrito(nuevo)) {
-            labelMensaje.setText("Producto añadido: " + p.getNombre());
-            labelMensaje.setStyle("-fx-text-fill:green;");
-            cargarCarrito();
-            spinnerCantidad.getValueFactory().setValue(0);
-        }
+        labelMensaje.setText("Producto añadido: " + p.getNombre());
+        labelMensaje.setStyle("-fx-text-fill:green;");
+        spinnerCantidad.getValueFactory().setValue(0);
     }
 
     @FXML
@@ -288,14 +382,20 @@ public class CarritoController implements Initializable {
             labelMensaje.setStyle("-fx-text-fill:orange;");
             return;
         }
+        if (carrito == null) {
+            labelMensaje.setText("Primero debes guardar el nombre de la compra.");
+            labelMensaje.setStyle("-fx-text-fill:red;");
+            return;
+        }
 
         Alert a = new Alert(Alert.AlertType.CONFIRMATION,
                 "¿Eliminar producto del carrito?", ButtonType.OK, ButtonType.CANCEL);
         a.setHeaderText("Producto: " + c.getNombreProducto());
         Optional<ButtonType> res = a.showAndWait();
         if (res.isPresent() && res.get() == ButtonType.OK) {
-            if (carritoDAO.eliminarProducto(c.getIdCarrito())) {
-                cargarCarrito();
+            if (carrito.quitar(c.getIdProducto())) {
+                mostrarCarrito();
+                programarVolcado();
                 labelMensaje.setText("Producto eliminado.");
                 labelMensaje.setStyle("-fx-text-fill:green;");
             }
@@ -312,17 +412,11 @@ public class CarritoController implements Initializable {
         Alert a = new Alert(Alert.AlertType.CONFIRMATION,
                 "¿Vaciar carrito actual?", ButtonType.OK, ButtonType.CANCEL);
         Optional<ButtonType> r = a.showAndWait();
-        if (r.isPresent() && r.get() == ButtonType.OK && nombreCompraActual != null) {
-            try (Connection conn = ConexionDB.getConexion(); PreparedStatement stmt = conn.prepareStatement(
-                    "DELETE FROM carrito WHERE id_usuario = ? AND nombre_compra = ?")) {
-                stmt.setInt(1, idUsuario);
-                stmt.setString(2, nombreCompraActual);
-                stmt.executeUpdate();
-            } catch (Exception e) {
-                Logger.exception("Error al vaciar carrito actual", e);
-            }
-            cargarCarrito();
-            labelMensaje.setText("Carrito '" + nombreCompraActual + "' vaciado.");
+        if (r.isPresent() && r.get() == ButtonType.OK && carrito != null) {
+            carrito.vaciar();
+            mostrarCarrito();
+            programarVolcado();
+            labelMensaje.setText("Carrito '" + carrito.getNombreCompra() + "' vaciado.");
             labelMensaje.setStyle("-fx-text-fill:green;");
         }
     }
@@ -334,7 +428,7 @@ public class CarritoController implements Initializable {
             return;
         }
 
-        if (nombreCompraActual == null) {
+        if (carrito == null) {
             labelMensaje.setText("Primero debes guardar el nombre de la compra.");
             labelMensaje.setStyle("-fx-text-fill:red;");
             return;
@@ -350,74 +444,66 @@ public class CarritoController implements Initializable {
                 "¿Confirmar compra '" + nombreCompraActual + "'?", ButtonType.OK, ButtonType.CANCEL);
         Optional<ButtonType> r = a.showAndWait();
         if (r.isPresent() && r.get() == ButtonType.OK) {
-            boolean exito = compraDAO.realizarCompraDesdeCarrito(
-                    idUsuario,
-                    tiendaSeleccionada.getIdTienda(),
-                    nombreCompraActual
-            );
-
-            if (exito) {
-                cargarCarrito();
-                labelMensaje.setText("Compra confirmada: " + nombreCompraActual);
-                labelMensaje.setStyle("-fx-text-fill:green;");
-                nombreCompraActual = null;
-                txtNombreCompra.clear();
-                desactivarBotonesIniciales();
-            } else {
-                labelMensaje.setText("Error al confirmar la compra.");
-                labelMensaje.setStyle("-fx-text-fill:red;");
+            int idTienda = tiendaSeleccionada.getIdTienda();
+            String nombreCompra = nombreCompraActual;
+            CarritoEnMemoria actual = carrito;
+            btnConfirmar1.setDisable(true);
+            // La compra se registra desde la tabla carrito: primero se guarda lo pendiente,
+            // y si algún producto estaba en otra compra se avisa antes de confirmar
+            volcadoDiferido.stop();
+            TareasBD.ejecutar(() -> actual.volcar() && !actual.hayEnOtraCompra()
+                    ? compraDAO.realizarCompraDesdeCarrito(idUsuario, idTienda, nombreCompra) : null,
+                    compra -> compraConfirmada(compra, nombreCompra));
+        }
+    }
+
+    private void compraConfirmada(Compra compra, String nombreCompra) {
+        if (compra == null && carrito != null && avisarEnOtraCompra(carrito)) {
+            btnConfirmar1.setDisable(false);
+            return;
+        }
+        if (compra != null) {
+            if (diario != null) {
+                diario.descartar();
             }
+            carrito = null;
+            nombreCompraActual = null;
+            cargarCarrito();
+            labelMensaje.setText(String.format("Compra confirmada: %s (%.2f €)", nombreCompra, compra.getTotal()));
+            labelMensaje.setStyle("-fx-text-fill:green;");
+            txtNombreCompra.clear();
+            desactivarBotonesIniciales();
+        } else {
+            btnConfirmar1.setDisable(false);
+            labelMensaje.setText("Error al confirmar la compra.");
+            labelMensaje.setStyle("-fx-text-fill:red;");
         }
     }
 
     // ----------------------------------------------------------
     // FUNCIONALIDADES ADICIONALES
     // ----------------------------------------------------------
+    /**
+     * Los cambios ya se anotan solos en el diario; el botón fuerza que lo
+     * anotado llegue a disco ahora mismo.
+     */
     @FXML
     private void accion_guardar_compra_temporalmente(ActionEvent event) {
-        try {
-            int idUsuario = Session.getUsuarioId();
-            if (idUsuario <= 0) {
-                labelMensaje.setText("Debes iniciar sesión para guardar.");
-                labelMensaje.setStyle("-fx-text-fill:red;");
-                return;
-            }
-            if (listaCarrito == null || listaCarrito.isEmpty()) {
-                labelMensaje.setText("No hay productos en el carrito.");
-                labelMensaje.setStyle("-fx-text-fill:orange;");
-                return;
-            }
-
-            var carpeta = java.nio.file.Paths.get("data", "compras_temporales");
-            if (!java.nio.file.Files.exists(carpeta)) {
-                java.nio.file.Files.createDirectories(carpeta);
-            }
-            var archivo = carpeta.resolve("usuario_" + idUsuario + ".tmp");
-
-            var sb = new StringBuilder();
-            sb.append("USUARIO: ").append(idUsuario).append("\n");
-            sb.append("FECHA: ").append(LocalDate.now()).append("\n");
-            sb.append("NOMBRE COMPRA: ").append(nombreCompraActual != null ? nombreCompraActual : "Sin nombre").append("\n");
-            sb.append("TIENDA: ").append(tiendaSeleccionada != null
-                    ? tiendaSeleccionada.getNombre() : "Sin tienda").append("\n");
-            sb.append("----------------------------------------------------\n");
-            for (Carrito c : listaCarrito) {
-                sb.append(c.getNombreProducto()).append("|")
-                        .append(c.getPrecioProducto()).append("|")
-                        .append(c.getCantidad()).append("|")
-                        .append(c.getSubtotal()).append("|")
-                        .append(c.getFechaAgregadoFormatted() != null
-                                ? c.getFechaAgregadoFormatted() : LocalDate.now())
-                        .append("\n");
-            }
-            java.nio.file.Files.writeString(archivo, sb.toString());
+        if (Session.getUsuarioId() <= 0) {
+            labelMensaje.setText("Debes iniciar sesión para guardar.");
+            labelMensaje.setStyle("-fx-text-fill:red;");
+            return;
+        }
+        if (listaCarrito == null || listaCarrito.isEmpty()) {
+            labelMensaje.setText("No hay productos en el carrito.");
+            labelMensaje.setStyle("-fx-text-fill:orange;");
+            return;
+        }
 
+        if (diario != null && diario.sincronizar()) {
             labelMensaje.setText("Compra guardada temporalmente.");
             labelMensaje.setStyle("-fx-text-fill:green;");
-            Logger.info("Compra temporal guardada: " + archivo);
-
-        } catch (Exception e) {
-            Logger.exception("Error al guardar compra temporal.", e);
+        } else {
             labelMensaje.setText("Error al guardar.");
             labelMensaje.setStyle("-fx-text-fill:red;");
         }
@@ -494,44 +580,41 @@ public class CarritoController implements Initializable {
         tablaCarrito.setItems(filtrados);
     }
 
+    /**
+     * Abre el diario del usuario y, si tenía una compra a medias, la
+     * recupera: nombre, tienda y líneas, que quedan pendientes de volcar
+     * sobre lo que ya hubiera en la base.
+     */
     private void cargarCarritoTemporal() {
+        int idUsuario = Session.getUsuarioId();
+        if (idUsuario <= 0) {
+            return;
+        }
+
         try {
-            int idUsuario = Session.getUsuarioId();
-            var archivo = java.nio.file.Paths.get("data", "compras_temporales",
-                    "usuario_" + idUsuario + ".tmp");
-            if (!java.nio.file.Files.exists(archivo)) {
-                return;
-            }
+            diario = DiarioCarrito.abrir(idUsuario);
+        } catch (IOException e) {
+            Logger.exception("Error al abrir el diario del carrito.", e);
+            return;
+        }
 
-            var lineas = java.nio.file.Files.readAllLines(archivo);
-            ObservableList<Carrito> temp = FXCollections.observableArrayList();
-            for (String l : lineas) {
-                if (l.startsWith("USUARIO") || l.startsWith("FECHA")
-                        || l.startsWith("TIENDA") || l.startsWith("-") || l.isBlank()) {
-                    continue;
-                }
-                String[] p = l.split("\\|");
-                if (p.length >= 5) {
-                    Carrito c = new Carrito();
-                    c.setNombreProducto(p[0]);
-                    c.setPrecioProducto(Double.parseDouble(p[1]));
-                    c.setCantidad(Integer.parseInt(p[2]));
-                    c.setSubtotal(Double.parseDouble(p[3]));
-                    temp.add(c);
-                }
-            }
-            if (!temp.isEmpty()) {
-                listaCarrito = temp;
-                tablaCarrito.setItems(listaCarrito);
-                labelTotal.setText(String.format("%.2f €",
-                        listaCarrito.stream().mapToDouble(Carrito::getSubtotal).sum()));
-                labelMensaje.setText("Compra temporal cargada correctamente.");
-                labelMensaje.setStyle("-fx-text-fill:green;");
-            }
-            actualizarEstadoBotones();
-        } catch (Exception e) {
-            Logger.exception("Error al cargar compra temporal.", e);
+        String nombre = diario.getNombreCompra();
+        if (nombre == null) {
+            return;
         }
+
+        nombreCompraActual = nombre;
+        txtNombreCompra.setText(nombre);
+        carrito = new CarritoEnMemoria(idUsuario, nombre);
+        carrito.restaurar(diario.getLineas());
+        carrito.setDiario(diario);
+        idTiendaRecuperada = diario.getIdTienda();
+
+        activarBotones();
+        cargarCarrito();
+        programarVolcado();
+        labelMensaje.setText("Compra temporal recuperada: " + nombre);
+        labelMensaje.setStyle("-fx-text-fill:green;");
     }
 
     private void actualizarEstadoBotones() {
@@ -545,6 +628,10 @@ public class CarritoController implements Initializable {
 
     @FXML
     private void volverDashboard(ActionEvent event) {
+        volcarEnSegundoPlano();
+        if (diario != null) {
+            diario.cerrar();
+        }
         try {
             App.setRoot("views/dashboard");
         } catch (IOException e) {
@@ -1,6 +1,7 @@
 package controllers;
 
 import app_compras.App;
+import app_compras.VistaReutilizable;
 import config.Logger;
 import config.Session;
 import dao.CategoriaDAO;
@@ -29,7 +30,7 @@ import models.Usuario;
  *
  * @author Milanes
  */
-public class CategoriasController implements Initializable {
+public class CategoriasController implements Initializable, VistaReutilizable {
 
     @FXML
     private AnchorPane categoriasRoot;
@@ -80,13 +81,23 @@ public class CategoriasController implements Initializable {
     @Override
     public void initialize(URL url, ResourceBundle rb) {
         configurarColumnas();
-        cargarCategorias();
         configurarEventosTabla();
 
         // 🔍 Búsqueda en tiempo real
         txtBuscarCategoria.textProperty().addListener((obs, oldValue, newValue) -> {
             filtrarCategorias(newValue);
         });
+    }
+
+    /**
+     * Deja el formulario y la búsqueda vacíos y recarga las categorías al
+     * volver a la vista.
+     */
+    @Override
+    public void alMostrar() {
+        limpiarFormulario(null);
+        txtBuscarCategoria.clear();
+        cargarCategorias();
 
         // 👤 Mostrar usuario activo
         Usuario usuario = Session.getUsuarioActual();
@@ -1,9 +1,10 @@
 package controllers;
 
 import app_compras.App;
+import app_compras.VistaReutilizable;
+import config.CachePermisos;
 import config.Logger;
 import config.Session;
-import dao.RolDAO;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.net.URL;
@@ -17,11 +18,9 @@ import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
-import models.Permiso;
-import models.Rol;
 import models.Usuario;
 
-public class DashboardController implements Initializable {
+public class DashboardController implements Initializable, VistaReutilizable {
 
     @FXML
     private BorderPane dashboardRoot;
@@ -42,7 +41,7 @@ public class DashboardController implements Initializable {
     @FXML
     private Button btnGestionTiendas, btnGestionProductos, btnGestionCategorias;
     @FXML
-    private Button btnGestionUsuarios, btnGestionRoles, btnGestionRepartidores;
+    private Button btnGestionUsuarios, btnGestionRoles, btnGestionRepartidores, btnMetricas;
     @FXML
     private Button btnGastosPorDia, btnGastosPorSemana, btnGastosPorMes, btnGastosAnual;
 
@@ -56,7 +55,6 @@ public class DashboardController implements Initializable {
     @FXML
     private HBox mainContent;
 
-    private final RolDAO rolDAO = new RolDAO();
     private final Map<Button, ButtonState> estadoOriginal = new HashMap<>();
     private double posicionOriginalLogoutY = -1;
 
@@ -76,6 +74,19 @@ public class DashboardController implements Initializable {
     // ============================================================
     @Override
     public void initialize(URL url, ResourceBundle rb) {
+        Platform.runLater(() -> {
+            if (posicionOriginalLogoutY == -1) {
+                posicionOriginalLogoutY = btnLogout.getLayoutY();
+            }
+        });
+    }
+
+    /**
+     * La vista se reutiliza entre sesiones: los permisos se aplican de nuevo
+     * cada vez que se muestra, con el usuario que haya en ese momento.
+     */
+    @Override
+    public void alMostrar() {
         if (!Session.haySesionActiva()) {
             lblBienvenida.setText("No hay sesión activa.");
             bloquearTodo();
@@ -83,35 +94,28 @@ public class DashboardController implements Initializable {
             return;
         }
 
-        Platform.runLater(() -> {
-            if (posicionOriginalLogoutY == -1) {
-                posicionOriginalLogoutY = btnLogout.getLayoutY();
-            }
-        });
-
         try {
             Usuario usuario = Session.getUsuarioActual();
             lblBienvenida.setText("Bienvenido, " + usuario.getNombre());
 
-            Rol rolUsuario = rolDAO.obtenerRolPorId(usuario.getIdRol());
-            if (rolUsuario == null) {
+            String nombreRol = CachePermisos.nombreRol(usuario.getIdRol());
+            if (nombreRol == null) {
                 Logger.warning("Usuario sin rol asignado. Bloqueando todo.");
                 bloquearTodo();
                 btnLogout.setVisible(true);
                 return;
             }
 
-            Logger.info("Rol activo: " + rolUsuario.getNombre());
+            Logger.info(() -> "Rol activo: " + nombreRol);
 
-            Set<Permiso> permisosEfectivos = new HashSet<>();
-            if (usuario.getPermisos() != null && !usuario.getPermisos().isEmpty()) {
-                permisosEfectivos.addAll(usuario.getPermisos());
-                Logger.info("Permisos personalizados aplicados para el usuario: " + usuario.getNombre());
-            } else if (rolUsuario.getPermisos() != null && !rolUsuario.getPermisos().isEmpty()) {
-                permisosEfectivos.addAll(rolUsuario.getPermisos());
-                Logger.info("Permisos de rol aplicados para el usuario: " + usuario.getNombre());
-            } else {
+            // Permisos propios del usuario o, si no tiene, los de su rol (desde la caché)
+            Set<String> permisosEfectivos = CachePermisos.permisosEfectivos(usuario.getIdUsuario(), usuario.getIdRol());
+            if (permisosEfectivos.isEmpty()) {
                 Logger.warning("Usuario sin permisos ni por rol ni individuales: " + usuario.getNombre());
+            } else if (CachePermisos.tienePermisosPropios(usuario.getIdUsuario())) {
+                Logger.info(() -> "Permisos personalizados aplicados para el usuario: " + usuario.getNombre());
+            } else {
+                Logger.info(() -> "Permisos de rol aplicados para el usuario: " + usuario.getNombre());
             }
 
             aplicarPermisosDesdeBD(permisosEfectivos);
@@ -129,21 +133,14 @@ public class DashboardController implements Initializable {
     // ============================================================
     // APLICAR PERMISOS DESDE BD
     // ============================================================
-    private void aplicarPermisosDesdeBD(Set<Permiso> permisosEfectivos) {
+    private void aplicarPermisosDesdeBD(Set<String> nombresPermitidos) {
         bloquearTodo();
 
-        if (permisosEfectivos == null || permisosEfectivos.isEmpty()) {
+        if (nombresPermitidos == null || nombresPermitidos.isEmpty()) {
             Logger.warning("El usuario o su rol no tienen permisos asignados.");
             return;
         }
 
-        Set<String> nombresPermitidos = new HashSet<>();
-        for (Permiso p : permisosEfectivos) {
-            if (p.getNombre() != null) {
-                nombresPermitidos.add(p.getNombre().trim());
-            }
-        }
-
         for (Field field : this.getClass().getDeclaredFields()) {
             if (field.getType() == Button.class) {
                 field.setAccessible(true);
@@ -160,7 +157,7 @@ public class DashboardController implements Initializable {
 
                     if (nombresPermitidos.contains(field.getName())) {
                         restaurarBoton(btn);
-                        Logger.info("Permiso activo -> " + field.getName());
+                        Logger.info(() -> "Permiso activo -> " + field.getName());
                     } else {
                         bloquearBoton(btn);
                     }
@@ -316,6 +313,11 @@ public class DashboardController implements Initializable {
         abrirVista("views/roles", "roles");
     }
 
+    @FXML
+    private void accion_metricas(ActionEvent e) {
+        abrirVista("views/metricas", "métricas");
+    }
+
     @FXML
     private void accion_gastos_por_dia(ActionEvent e) {
         abrirVista("views/gastos_por_dia", "gastos diarios");
@@ -354,7 +356,7 @@ public class DashboardController implements Initializable {
                 Logger.info("Cierre de sesión de " + Session.getUsuarioActual().getNombre());
             }
             Session.cerrarSesion();
-            App.setRoot("views/login");
+            App.volverAlLogin();
             Logger.info("Sesión cerrada. Volviendo al inicio de sesión.");
         } catch (IOException e) {
             Logger.exception("Error al volver a login.", e);
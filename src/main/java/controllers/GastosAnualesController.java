@@ -3,12 +3,8 @@ package controllers;
 import app_compras.App;
 import config.Logger;
 import dao.GastosAnualesDAO;
-import config.ConexionDB;
 import java.io.IOException;
 import java.net.URL;
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.ResultSet;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
@@ -102,7 +98,7 @@ public class GastosAnualesController implements Initializable {
         mostrarMensajeUsuario("Verificando si existe la vista SQL...", false);
 
         // 🔹 Detectar vista en la base de datos
-        if (existeVistaEnBaseDeDatos("vista_gasto_anual")) {
+        if (gastosAnualesDAO.existenResumenes()) {
             mostrarMensajeUsuario("Vista detectada en base de datos. Cargando datos...", true);
             cargarDatosVista();
         } else {
@@ -119,21 +115,6 @@ public class GastosAnualesController implements Initializable {
         btnVolverDashboardGastosAnuales.setOnAction(this::accion_volver_al_dashboard);
     }
 
-    // ===================================================
-    // VERIFICAR EXISTENCIA DE VISTA
-    // ===================================================
-    private boolean existeVistaEnBaseDeDatos(String vistaNombre) {
-        try (Connection conn = ConexionDB.getConexion()) {
-            DatabaseMetaData meta = conn.getMetaData();
-            try (ResultSet rs = meta.getTables(null, null, vistaNombre, new String[]{"VIEW"})) {
-                return rs.next();
-            }
-        } catch (Exception e) {
-            Logger.exception("Error verificando la existencia de la vista " + vistaNombre, e);
-            return false;
-        }
-    }
-
     // ===================================================
     // CONFIGURAR TABLA
     // ===================================================
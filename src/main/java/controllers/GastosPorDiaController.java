@@ -5,9 +5,6 @@ import config.Logger;
 import dao.GastosDIADAO;
 import java.io.IOException;
 import java.net.URL;
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.ResultSet;
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -29,7 +26,6 @@ import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Text;
 import models.GastosDia;
-import config.ConexionDB;
 
 public class GastosPorDiaController implements Initializable {
 
@@ -105,7 +101,7 @@ public class GastosPorDiaController implements Initializable {
         mostrarMensajeUsuario("Verificando si existe la vista SQL...", false);
 
         // Detectar vista
-        if (existeVistaEnBaseDeDatos("vista_gasto_diario")) {
+        if (gastosDiaDAO.existenResumenes()) {
             mostrarMensajeUsuario("Vista detectada en base de datos. Cargando datos...", true);
             cargarDatosVista();
         } else {
@@ -120,21 +116,6 @@ public class GastosPorDiaController implements Initializable {
         comboDiasGastosDia.setOnAction(e -> aplicarFiltro());
     }
 
-    // ===================================================
-    // Verificar existencia de vista
-    // ===================================================
-    private boolean existeVistaEnBaseDeDatos(String vistaNombre) {
-        try (Connection conn = ConexionDB.getConexion()) {
-            DatabaseMetaData meta = conn.getMetaData();
-            try (ResultSet rs = meta.getTables(null, null, vistaNombre, new String[]{"VIEW"})) {
-                return rs.next();
-            }
-        } catch (Exception e) {
-            Logger.exception("Error verificando la existencia de la vista " + vistaNombre, e);
-            return false;
-        }
-    }
-
     // ===================================================
     // Configuración de tabla
     // ===================================================
@@ -3,12 +3,8 @@ package controllers;
 import app_compras.App;
 import config.Logger;
 import dao.GastosMesDAO;
-import config.ConexionDB;
 import java.io.IOException;
 import java.net.URL;
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.ResultSet;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
@@ -109,7 +105,7 @@ public class GastosPorMesController implements Initializable {
         mostrarEstado("Verificando si existe la vista SQL...", false);
 
         // 🔹 Detectar vista existente
-        if (existeVistaEnBaseDeDatos("vista_gasto_mensual")) {
+        if (gastosMesDAO.existenResumenes()) {
             mostrarEstado("Vista detectada en base de datos. Cargando datos...", true);
             cargarDatosVista();
         } else {
@@ -126,21 +122,6 @@ public class GastosPorMesController implements Initializable {
         btnVolverDashboardGastosMes.setOnAction(this::accion_volver_al_dashboard);
     }
 
-    // =====================================================
-    // VERIFICAR SI EXISTE LA VISTA
-    // =====================================================
-    private boolean existeVistaEnBaseDeDatos(String vistaNombre) {
-        try (Connection conn = ConexionDB.getConexion()) {
-            DatabaseMetaData meta = conn.getMetaData();
-            try (ResultSet rs = meta.getTables(null, null, vistaNombre, new String[]{"VIEW"})) {
-                return rs.next();
-            }
-        } catch (Exception e) {
-            Logger.exception("Error verificando la existencia de la vista " + vistaNombre, e);
-            return false;
-        }
-    }
-
     // =====================================================
     // CONFIGURAR TABLA
     // =====================================================
@@ -3,12 +3,8 @@ package controllers;
 import app_compras.App;
 import config.Logger;
 import dao.GastoSemanalDAO;
-import config.ConexionDB;
 import java.io.IOException;
 import java.net.URL;
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.ResultSet;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
@@ -112,7 +108,7 @@ public class GastosPorSemanaController implements Initializable {
         txtSemanaGastos.setDisable(true);
         mostrarEstado("Verificando si existe la vista SQL...", false);
 
-        if (existeVistaEnBaseDeDatos("vista_gasto_semanal")) {
+        if (gastoSemanalDAO.existenResumenes()) {
             mostrarEstado("Vista detectada en base de datos. Cargando datos...", true);
             cargarDatosVista();
         } else {
@@ -128,21 +124,6 @@ public class GastosPorSemanaController implements Initializable {
         btnVolverDashboardGastosSemana.setOnAction(this::accion_volver_al_dashboard);
     }
 
-    // =====================================================
-    // VERIFICAR SI EXISTE LA VISTA EN LA BASE DE DATOS
-    // =====================================================
-    private boolean existeVistaEnBaseDeDatos(String vistaNombre) {
-        try (Connection conn = ConexionDB.getConexion()) {
-            DatabaseMetaData meta = conn.getMetaData();
-            try (ResultSet rs = meta.getTables(null, null, vistaNombre, new String[]{"VIEW"})) {
-                return rs.next();
-            }
-        } catch (Exception e) {
-            Logger.exception("Error verificando la existencia de la vista " + vistaNombre, e);
-            return false;
-        }
-    }
-
     // =====================================================
     // CONFIGURAR TABLA
     // =====================================================
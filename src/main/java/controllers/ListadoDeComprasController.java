@@ -3,36 +3,38 @@ package controllers;
 import app_compras.App;
 import config.Logger;
 import config.Session;
+import config.TareasBD;
 import dao.ListadoDeCompraDAO;
 import dao.PermisoDAO;
 import dao.RolDAO;
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.URL;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.Callable;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
-import javafx.print.PrinterJob;
+import javafx.geometry.Orientation;
+import javafx.scene.Node;
 import javafx.scene.control.*;
 import javafx.scene.control.TableColumn.CellEditEvent;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.control.cell.TextFieldTableCell;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.Region;
-import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
 import javafx.util.converter.DoubleStringConverter;
 import javafx.util.converter.IntegerStringConverter;
 import models.ListadoCompra;
 import models.Rol;
 import models.Usuario;
+import reportes.ExportadorComprasPDF;
 
 public class ListadoDeComprasController implements Initializable {
 
@@ -87,11 +89,23 @@ public class ListadoDeComprasController implements Initializable {
     private Rol rolUsuario;
     private boolean puedeVerTodas = false;
 
+    // Estado del listado paginado (solo se toca en el hilo de JavaFX)
+    private int generacionListado;
+    private int idUsuarioListado = -1;
+    private Callable<Double> totalListado;
+    private String filtroListado;
+    private int ultimoIdCompra;
+    private int ultimoIdDetalle;
+    private boolean hayMasPaginas;
+    private boolean cargandoPagina;
+    private ScrollBar barraVertical;
+
     @Override
     public void initialize(URL url, ResourceBundle rb) {
         configurarColumnas();
         tablaListadoCompra.setEditable(true);
         tablaListadoCompra.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
+        configurarPaginacion();
         inicializarSegunRol();
         configurarBusqueda();
     }
@@ -143,8 +157,8 @@ public class ListadoDeComprasController implements Initializable {
         }
         compra.setCantidad(nuevaCantidad);
         compra.setSubtotal(compra.getPrecioUnitario() * nuevaCantidad);
-        listadoCompraDAO.actualizarDetalleCompra(compra);
         tablaListadoCompra.refresh();
+        guardarDetalle(compra);
     }
 
     private void editarPrecio(CellEditEvent<ListadoCompra, Double> event) {
@@ -157,8 +171,16 @@ public class ListadoDeComprasController implements Initializable {
         }
         compra.setPrecioUnitario(nuevoPrecio);
         compra.setSubtotal(compra.getCantidad() * nuevoPrecio);
-        listadoCompraDAO.actualizarDetalleCompra(compra);
         tablaListadoCompra.refresh();
+        guardarDetalle(compra);
+    }
+
+    private void guardarDetalle(ListadoCompra compra) {
+        TareasBD.ejecutar(() -> listadoCompraDAO.actualizarDetalleCompra(compra), ok -> {
+            if (!ok) {
+                labelMensajeListadoCompra.setText("No se pudo guardar el cambio del detalle " + compra.getIdDetalle() + ".");
+            }
+        });
     }
 
     private void inicializarSegunRol() {
@@ -173,12 +195,28 @@ public class ListadoDeComprasController implements Initializable {
             return;
         }
 
-        rolUsuario = rolDAO.obtenerRolPorId(usuarioActual.getIdRol());
         labelUsuarioActivoListadoCompra.setText(usuarioActual.getNombre());
-        puedeVerTodas = permisoDAO.tienePermiso(rolUsuario.getIdRol(), "permisoVerTodasLasCompras");
+        labelMensajeListadoCompra.setText("Cargando compras...");
+        comboUsuariosListadoCompra.setDisable(true);
+        btnImprimirListadoCompra.setDisable(true);
+
+        int idRol = usuarioActual.getIdRol();
+        TareasBD.ejecutar("listado.inicio", () -> {
+            DatosIniciales datos = new DatosIniciales();
+            datos.rol = rolDAO.obtenerRolPorId(idRol);
+            datos.puedeVerTodas = datos.rol != null
+                    && permisoDAO.tienePermiso(datos.rol.getIdRol(), "permisoVerTodasLasCompras");
+            datos.usuariosTotales = listadoCompraDAO.obtenerTotalesPorUsuario();
+            return datos;
+        }, this::aplicarDatosIniciales);
+    }
+
+    private void aplicarDatosIniciales(DatosIniciales datos) {
+        rolUsuario = datos.rol;
+        puedeVerTodas = datos.puedeVerTodas;
 
         // 🔹 Siempre cargamos todos los usuarios para el combo
-        cargarUsuariosEnComboBox();
+        cargarUsuariosEnComboBox(datos.usuariosTotales);
 
         // 🔹 Seleccionamos el usuario actual por defecto
         comboUsuariosListadoCompra.getSelectionModel().select(usuarioActual.getNombre());
@@ -201,25 +239,130 @@ public class ListadoDeComprasController implements Initializable {
     }
 
     private void cargarTodasLasCompras() {
-        List<ListadoCompra> compras = listadoCompraDAO.listarDetallesCompras();
-        compras.sort(Comparator.comparingInt(ListadoCompra::getIdDetalle));
-        listaCompras.setAll(compras);
-        tablaListadoCompra.setItems(listaCompras);
-        actualizarTotal(listadoCompraDAO.obtenerTotalGeneral());
+        cargarCompras(-1, listadoCompraDAO::obtenerTotalGeneral);
     }
 
     private void cargarComprasUsuario(int idUsuario) {
-        List<ListadoCompra> compras = listadoCompraDAO.listarDetallesPorUsuario(idUsuario);
-        compras.sort(Comparator.comparingInt(ListadoCompra::getIdDetalle));
-        listaCompras.setAll(compras);
-        tablaListadoCompra.setItems(listaCompras);
-        actualizarTotal(listadoCompraDAO.obtenerTotalGastadoPorUsuario(idUsuario));
+        cargarCompras(idUsuario, () -> listadoCompraDAO.obtenerTotalGastadoPorUsuario(idUsuario));
     }
 
-    private void cargarUsuariosEnComboBox() {
+    /**
+     * Empieza un listado nuevo: carga en segundo plano la primera página y el
+     * total. Las siguientes páginas se piden al desplazarse hasta el final de
+     * la tabla. Si el usuario cambia de filtro antes de que termine, la
+     * consulta anterior se cancela (misma clave). El texto del buscador
+     * (filtroListado) se aplica en la consulta de cada página.
+     *
+     * @param idUsuario usuario a listar o -1 para todos
+     */
+    private void cargarCompras(int idUsuario, Callable<Double> total) {
+        generacionListado++;
+        idUsuarioListado = idUsuario;
+        totalListado = total;
+        ultimoIdCompra = 0;
+        ultimoIdDetalle = 0;
+        hayMasPaginas = false;
+        cargandoPagina = true;
+
+        int generacion = generacionListado;
+        String filtro = filtroListado;
+        TareasBD.mostrarCargando(tablaListadoCompra, true);
+        TareasBD.ejecutar("listado.compras", () -> {
+            ResultadoCompras r = new ResultadoCompras();
+            r.compras = listadoCompraDAO.listarDetallesPagina(idUsuario, 0, 0, ListadoDeCompraDAO.TAMANIO_PAGINA,
+                    filtro);
+            r.total = total.call();
+            return r;
+        }, r -> {
+            if (generacion != generacionListado) {
+                return;
+            }
+            TareasBD.mostrarCargando(tablaListadoCompra, false);
+            listaCompras.clear();
+            agregarPagina(r.compras);
+            tablaListadoCompra.setItems(listaCompras);
+            tablaListadoCompra.scrollTo(0);
+            actualizarTotal(r.total);
+        }, error -> {
+            if (generacion != generacionListado) {
+                return;
+            }
+            TareasBD.mostrarCargando(tablaListadoCompra, false);
+            cargandoPagina = false;
+            labelMensajeListadoCompra.setText("Error al cargar las compras.");
+        });
+    }
+
+    // ============================================================
+    // PAGINACIÓN AL DESPLAZARSE
+    // ============================================================
+    /**
+     * Localiza la barra de desplazamiento vertical de la tabla (existe cuando
+     * la tabla ya tiene skin) y pide la siguiente página al acercarse al final.
+     */
+    private void configurarPaginacion() {
+        tablaListadoCompra.skinProperty().addListener((obs, anterior, skin) -> Platform.runLater(() -> {
+            for (Node nodo : tablaListadoCompra.lookupAll(".scroll-bar")) {
+                if (nodo instanceof ScrollBar && ((ScrollBar) nodo).getOrientation() == Orientation.VERTICAL) {
+                    barraVertical = (ScrollBar) nodo;
+                    barraVertical.valueProperty().addListener((o, v, valor) -> {
+                        if (valor.doubleValue() >= barraVertical.getMax() * 0.9) {
+                            cargarSiguientePagina();
+                        }
+                    });
+                    break;
+                }
+            }
+        }));
+    }
+
+    private void cargarSiguientePagina() {
+        if (cargandoPagina || !hayMasPaginas) {
+            return;
+        }
+        cargandoPagina = true;
+
+        int generacion = generacionListado;
+        int idUsuario = idUsuarioListado;
+        int despuesDeCompra = ultimoIdCompra;
+        int despuesDeDetalle = ultimoIdDetalle;
+        String filtro = filtroListado;
+        TareasBD.ejecutar("listado.pagina",
+                () -> listadoCompraDAO.listarDetallesPagina(idUsuario, despuesDeCompra, despuesDeDetalle,
+                        ListadoDeCompraDAO.TAMANIO_PAGINA, filtro),
+                pagina -> {
+                    // Página de un listado anterior (el usuario cambió de filtro)
+                    if (generacion == generacionListado) {
+                        agregarPagina(pagina);
+                    }
+                }, error -> {
+                    if (generacion == generacionListado) {
+                        cargandoPagina = false;
+                    }
+                });
+    }
+
+    private void agregarPagina(List<ListadoCompra> pagina) {
+        listaCompras.addAll(pagina);
+        if (!pagina.isEmpty()) {
+            ListadoCompra ultima = pagina.get(pagina.size() - 1);
+            ultimoIdCompra = ultima.getIdCompra();
+            ultimoIdDetalle = ultima.getIdDetalle();
+        }
+        hayMasPaginas = pagina.size() == ListadoDeCompraDAO.TAMANIO_PAGINA;
+        cargandoPagina = false;
+
+        // Si la página no llena la tabla no hay barra que desplazar: se pide otra
+        Platform.runLater(() -> {
+            if (hayMasPaginas && (barraVertical == null || !barraVertical.isVisible())) {
+                cargarSiguientePagina();
+            }
+        });
+    }
+
+    private void cargarUsuariosEnComboBox(List<Map<String, Object>> usuariosTotales) {
         listaUsuarios.clear();
         listaUsuarios.add("Todos");
-        List<Map<String, Object>> usuariosTotales = listadoCompraDAO.obtenerTotalesPorUsuario();
         for (Map<String, Object> fila : usuariosTotales) {
             listaUsuarios.add((String) fila.get("usuario"));
         }
@@ -234,14 +377,21 @@ public class ListadoDeComprasController implements Initializable {
         }
 
         if (seleccion.equals("Todos")) {
+            // Una búsqueda de usuario aún pendiente no debe reemplazar este listado
+            TareasBD.cancelar("listado.filtro");
             cargarTodasLasCompras();
             labelMensajeListadoCompra.setText("Mostrando todas las compras del sistema.");
         } else {
-            int idUsuario = listadoCompraDAO.obtenerIdUsuarioPorNombre(seleccion);
-            if (idUsuario != -1) {
-                cargarComprasUsuario(idUsuario);
-                labelMensajeListadoCompra.setText("Compras de " + seleccion + ".");
-            }
+            TareasBD.ejecutar("listado.filtro", () -> listadoCompraDAO.obtenerIdUsuarioPorNombre(seleccion), idUsuario -> {
+                // Puede haber terminado justo cuando se elegía otra opción
+                if (!seleccion.equals(comboUsuariosListadoCompra.getSelectionModel().getSelectedItem())) {
+                    return;
+                }
+                if (idUsuario != -1) {
+                    cargarComprasUsuario(idUsuario);
+                    labelMensajeListadoCompra.setText("Compras de " + seleccion + ".");
+                }
+            });
         }
     }
 
@@ -249,20 +399,21 @@ public class ListadoDeComprasController implements Initializable {
         txtBuscarListadoCompra.textProperty().addListener((obs, oldValue, newValue) -> filtrarDetalles(newValue));
     }
 
+    /**
+     * Busca en todo el histórico, no solo en las páginas ya cargadas: vuelve
+     * a pedir el listado actual desde la primera página con el texto como
+     * filtro de la consulta.
+     */
     private void filtrarDetalles(String filtro) {
-        if (filtro == null || filtro.trim().isEmpty()) {
-            tablaListadoCompra.setItems(listaCompras);
+        String texto = filtro == null || filtro.trim().isEmpty() ? null : filtro.trim();
+        if (Objects.equals(texto, filtroListado)) {
             return;
         }
-        String texto = filtro.toLowerCase();
-        ObservableList<ListadoCompra> filtrados = listaCompras.filtered(d
-                -> (d.getNombreCompra() != null && d.getNombreCompra().toLowerCase().contains(texto))
-                || (d.getUsuarioNombre() != null && d.getUsuarioNombre().toLowerCase().contains(texto))
-                || (d.getProductoNombre() != null && d.getProductoNombre().toLowerCase().contains(texto))
-                || (d.getTiendaNombre() != null && d.getTiendaNombre().toLowerCase().contains(texto))
-                || (d.getFechaCompra() != null && d.getFechaCompra().toLowerCase().contains(texto))
-        );
-        tablaListadoCompra.setItems(filtrados);
+        filtroListado = texto;
+        // Aún no hay listado: la primera carga ya usará el filtro
+        if (totalListado != null) {
+            cargarCompras(idUsuarioListado, totalListado);
+        }
     }
 
     private void actualizarTotal(double total) {
@@ -292,14 +443,16 @@ public class ListadoDeComprasController implements Initializable {
     @FXML
     private void imprimirListado(ActionEvent event) {
         String seleccion = comboUsuariosListadoCompra.getSelectionModel().getSelectedItem();
-        int idFiltro = (seleccion == null || seleccion.equals("Todos"))
-                ? -1
-                : listadoCompraDAO.obtenerIdUsuarioPorNombre(seleccion);
-
-        Map<String, List<ListadoCompra>> comprasPorUsuario = listadoCompraDAO.listarComprasAgrupadasPorUsuario(idFiltro);
-
-        if (comprasPorUsuario.isEmpty()) {
-            mostrarAlerta(Alert.AlertType.WARNING, "Sin datos", "No hay registros para imprimir.");
+        boolean todos = seleccion == null || seleccion.equals("Todos");
+
+        FileChooser selector = new FileChooser();
+        selector.setTitle("Exportar listado de compras a PDF");
+        selector.getExtensionFilters().add(new FileChooser.ExtensionFilter("Documento PDF", "*.pdf"));
+        selector.setInitialFileName("listado_compras_"
+                + LocalDate.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd")) + ".pdf");
+        File archivo = selector.showSaveDialog(listadoCompraRoot.getScene().getWindow());
+        if (archivo == null) {
+            Logger.info("Exportación a PDF cancelada por el usuario.");
             return;
         }
 
@@ -307,143 +460,45 @@ public class ListadoDeComprasController implements Initializable {
                 ? Session.getUsuarioActual().getNombre()
                 : "Invitado";
 
-        // 🔹 Formato de fecha legible (dd/MM/yyyy)
-        String fechaActual = java.time.LocalDate.now().format(java.time.format.DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-
-        PrinterJob job = PrinterJob.createPrinterJob();
-        if (job == null || !job.showPrintDialog(listadoCompraRoot.getScene().getWindow())) {
-            Logger.info("Impresión cancelada por el usuario.");
-            return;
-        }
-
-        int totalUsuarios = comprasPorUsuario.size();
-        int numPagina = 1;
-
-        Map<String, Double> totalesUsuarios = new LinkedHashMap<>();
-        double totalGeneral = 0.0;
-
-        for (Map.Entry<String, List<ListadoCompra>> entry : comprasPorUsuario.entrySet()) {
-            String usuario = entry.getKey();
-            List<ListadoCompra> compras = entry.getValue();
-
-            VBox pagina = new VBox(5);
-            pagina.setStyle("-fx-font-family: 'Consolas'; -fx-font-size: 11px; -fx-padding: 30;");
-
-            Label encabezado = new Label("*********** LISTADO DE COMPRAS ***********\n"
-                    + "Generado por: " + usuarioGenerador + "\n"
-                    + "Usuario actual: " + usuario + "\n"
-                    + "Fecha: " + fechaActual + "\n"
-                    + "==========================================");
-            encabezado.setStyle("-fx-font-weight: bold;");
-            encabezado.setWrapText(true);
-            encabezado.setMaxWidth(580);
-            pagina.getChildren().add(encabezado);
-
-            double totalUsuario = 0.0;
-
-            // 🔹 Agrupar productos por nombre de compra (para no repetir títulos)
-            Map<String, List<ListadoCompra>> agrupadasPorCompra = new LinkedHashMap<>();
-            for (ListadoCompra lc : compras) {
-                String clave = lc.getNombreCompra() + " (" + lc.getTiendaNombre() + ")";
-                agrupadasPorCompra.computeIfAbsent(clave, k -> new ArrayList<>()).add(lc);
-            }
-
-            // 🔹 Imprimir cada bloque agrupado
-            for (Map.Entry<String, List<ListadoCompra>> compraEntry : agrupadasPorCompra.entrySet()) {
-                String nombreCompra = compraEntry.getKey();
-                List<ListadoCompra> productos = compraEntry.getValue();
-
-                Label lblTitulo = new Label("Nombre de la compra: " + nombreCompra);
-                lblTitulo.setStyle("-fx-font-weight: bold; -fx-font-size: 12px; -fx-text-fill: #000;");
-                pagina.getChildren().add(lblTitulo);
-
-                for (ListadoCompra p : productos) {
-                    Label lblDetalle = new Label(String.format("   - %-25s %.2f€ x%d = %.2f€",
-                            p.getProductoNombre(),
-                            p.getPrecioUnitario(),
-                            p.getCantidad(),
-                            p.getSubtotal()));
-                    pagina.getChildren().add(lblDetalle);
-                    totalUsuario += p.getSubtotal();
-                }
-                pagina.getChildren().add(new Label(""));
-            }
-
-            totalesUsuarios.put(usuario, totalUsuario);
-            totalGeneral += totalUsuario;
-
-            Label totalLbl = new Label(String.format("\nTOTAL USUARIO %s: %.2f €", usuario, totalUsuario));
-            totalLbl.setStyle("-fx-font-weight: bold; -fx-font-size: 12px;");
-            pagina.getChildren().addAll(new Label("------------------------------------------"), totalLbl);
-
-            Label piePagina = new Label(String.format("\n--- Página %d de %d ---", numPagina, totalUsuarios + 1));
-            piePagina.setStyle("-fx-font-size: 10px; -fx-text-alignment: center;");
-            pagina.getChildren().add(piePagina);
-
-            boolean ok = job.printPage(pagina);
-            if (!ok) {
-                mostrarAlerta(Alert.AlertType.ERROR, "Error de impresión", "Hubo un problema al imprimir la página de " + usuario);
+        btnImprimirListadoCompra.setDisable(true);
+        labelMensajeListadoCompra.setText("Generando PDF...");
+
+        // La consulta y la escritura del PDF van en segundo plano, fila a fila
+        TareasBD.ejecutar("listado.pdf", () -> {
+            int idFiltro = todos ? -1 : listadoCompraDAO.obtenerIdUsuarioPorNombre(seleccion);
+            return new ExportadorComprasPDF().exportar(idFiltro, archivo.toPath(), usuarioGenerador);
+        }, resultado -> {
+            btnImprimirListadoCompra.setDisable(false);
+            if (resultado.getFilas() == 0) {
+                labelMensajeListadoCompra.setText("No hay registros para exportar.");
+                mostrarAlerta(Alert.AlertType.WARNING, "Sin datos", "No hay registros para imprimir.");
                 return;
             }
+            labelMensajeListadoCompra.setText("PDF generado: " + archivo.getName());
+            mostrarAlerta(Alert.AlertType.INFORMATION, "Exportación completada", String.format(
+                    "Se exportaron %d líneas de %d usuarios (total %.2f €) en %s.",
+                    resultado.getFilas(), resultado.getUsuarios(), resultado.getTotalGeneral(), archivo.getName()));
+        }, error -> {
+            btnImprimirListadoCompra.setDisable(false);
+            labelMensajeListadoCompra.setText("Error al generar el PDF.");
+            mostrarAlerta(Alert.AlertType.ERROR, "Error de exportación",
+                    "No se pudo generar el PDF: " + error.getMessage());
+        });
+    }
 
-            numPagina++;
-        }
-
-        // 🔹 Página final de resumen general
-        VBox resumen = new VBox(5);
-        resumen.setStyle("-fx-font-family: 'Consolas'; -fx-font-size: 11px; -fx-padding: 40;");
-
-        Label tituloResumen = new Label("*********** RESUMEN GENERAL ***********");
-        tituloResumen.setStyle("-fx-font-weight: bold; -fx-font-size: 13px;");
-        resumen.getChildren().add(tituloResumen);
-
-        resumen.getChildren().add(new Label("Fecha: " + fechaActual));
-        resumen.getChildren().add(new Label("Generado por: " + usuarioGenerador));
-        resumen.getChildren().add(new Label("=========================================="));
-
-        for (Map.Entry<String, Double> t : totalesUsuarios.entrySet()) {
-            resumen.getChildren().add(new Label(String.format("Total %-10s : %.2f €", t.getKey(), t.getValue())));
-        }
-
-        resumen.getChildren().add(new Label("------------------------------------------"));
-        Label totalLblFinal = new Label(String.format("TOTAL GENERAL DEL SISTEMA: %.2f €", totalGeneral));
-        totalLblFinal.setStyle("-fx-font-weight: bold; -fx-font-size: 12px;");
-        resumen.getChildren().add(totalLblFinal);
-
-        resumen.getChildren().add(new Label("******************************************"));
-        resumen.getChildren().add(new Label(String.format("\n--- Página %d de %d ---", numPagina, totalUsuarios + 1)));
-
-        job.printPage(resumen);
-        job.endJob();
+    // ============================================================
+    // RESULTADOS DE LAS CONSULTAS EN SEGUNDO PLANO
+    // ============================================================
+    private static final class DatosIniciales {
 
-        mostrarAlerta(Alert.AlertType.INFORMATION, "Impresión completada",
-                "Se imprimieron todas las páginas correctamente, incluido el resumen final.");
-        Logger.info("Impresión finalizada. Total páginas: " + (totalUsuarios + 1));
+        Rol rol;
+        boolean puedeVerTodas;
+        List<Map<String, Object>> usuariosTotales;
     }
 
-    /**
-     * Divide un texto largo en páginas, calculando líneas aproximadas por hoja.
-     */
-    private List<String> dividirTextoPorAltura(String texto, int lineasPorPagina) {
-        List<String> paginas = new ArrayList<>();
-        String[] lineas = texto.split("\n");
-        StringBuilder pagina = new StringBuilder();
-        int contador = 0;
-
-        for (String linea : lineas) {
-            pagina.append(linea).append("\n");
-            contador++;
-            if (contador >= lineasPorPagina) {
-                paginas.add(pagina.toString());
-                pagina.setLength(0);
-                contador = 0;
-            }
-        }
-        if (pagina.length() > 0) {
-            paginas.add(pagina.toString());
-        }
+    private static final class ResultadoCompras {
 
-        return paginas;
+        List<ListadoCompra> compras;
+        double total;
     }
-
 }
@@ -57,20 +57,28 @@ public class LoginController implements Initializable {
     public void initialize(URL url, ResourceBundle rb) {
         verificarConexion();
 
-        // Evita redimensionar o maximizar la ventana
+        // Evita redimensionar o maximizar la ventana. La escena es compartida:
+        // al volver del logout ya tiene ventana y no se vuelve a asignar.
         loginRoot.sceneProperty().addListener((obs, oldScene, newScene) -> {
             if (newScene != null) {
+                if (newScene.getWindow() != null) {
+                    fijarVentana(newScene.getWindow());
+                }
                 newScene.windowProperty().addListener((obsWin, oldWin, newWin) -> {
                     if (newWin != null) {
-                        javafx.stage.Stage stage = (javafx.stage.Stage) newWin;
-                        stage.setResizable(false);
-                        stage.setMaximized(false);
+                        fijarVentana(newWin);
                     }
                 });
             }
         });
     }
 
+    private static void fijarVentana(javafx.stage.Window ventana) {
+        javafx.stage.Stage stage = (javafx.stage.Stage) ventana;
+        stage.setResizable(false);
+        stage.setMaximized(false);
+    }
+
     // ============================================================
     // CONEXIÓN
     // ============================================================
@@ -0,0 +1,142 @@
+package controllers;
+
+import app_compras.App;
+import app_compras.VistaReutilizable;
+import config.Logger;
+import config.Metricas;
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import javafx.collections.FXCollections;
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.fxml.Initializable;
+import javafx.geometry.Pos;
+import javafx.scene.control.*;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.Region;
+
+/**
+ * Vista de administración con las métricas de los DAOs (config.Metricas).
+ *
+ * @author Milanes
+ */
+public class MetricasController implements Initializable, VistaReutilizable {
+
+    @FXML
+    private TableView<Metricas.Resumen> tablaMetricas;
+    @FXML
+    private TableColumn<Metricas.Resumen, String> colOperacion;
+    @FXML
+    private TableColumn<Metricas.Resumen, Long> colLlamadas;
+    @FXML
+    private TableColumn<Metricas.Resumen, Long> colErrores;
+    @FXML
+    private TableColumn<Metricas.Resumen, Long> colConflictos;
+    @FXML
+    private TableColumn<Metricas.Resumen, Long> colRollbacks;
+    @FXML
+    private TableColumn<Metricas.Resumen, Long> colFilas;
+    @FXML
+    private TableColumn<Metricas.Resumen, Double> colMedia;
+    @FXML
+    private TableColumn<Metricas.Resumen, Double> colP50;
+    @FXML
+    private TableColumn<Metricas.Resumen, Double> colP90;
+    @FXML
+    private TableColumn<Metricas.Resumen, Double> colP99;
+    @FXML
+    private TableColumn<Metricas.Resumen, Double> colP999;
+    @FXML
+    private TableColumn<Metricas.Resumen, Double> colMax;
+    @FXML
+    private TableColumn<Metricas.Resumen, Double> colTotal;
+    @FXML
+    private Label labelMensaje;
+
+    @Override
+    public void initialize(URL url, ResourceBundle rb) {
+        colOperacion.setCellValueFactory(new PropertyValueFactory<>("operacion"));
+        colLlamadas.setCellValueFactory(new PropertyValueFactory<>("llamadas"));
+        colErrores.setCellValueFactory(new PropertyValueFactory<>("errores"));
+        colConflictos.setCellValueFactory(new PropertyValueFactory<>("conflictos"));
+        colRollbacks.setCellValueFactory(new PropertyValueFactory<>("rollbacks"));
+        colFilas.setCellValueFactory(new PropertyValueFactory<>("filas"));
+        columnaMs(colMedia, "mediaMs");
+        columnaMs(colP50, "p50Ms");
+        columnaMs(colP90, "p90Ms");
+        columnaMs(colP99, "p99Ms");
+        columnaMs(colP999, "p999Ms");
+        columnaMs(colMax, "maxMs");
+        columnaMs(colTotal, "totalMs");
+
+        colLlamadas.setStyle("-fx-alignment: CENTER-RIGHT;");
+        colErrores.setStyle("-fx-alignment: CENTER-RIGHT;");
+        colConflictos.setStyle("-fx-alignment: CENTER-RIGHT;");
+        colRollbacks.setStyle("-fx-alignment: CENTER-RIGHT;");
+        colFilas.setStyle("-fx-alignment: CENTER-RIGHT;");
+    }
+
+    /** Las métricas cambian mientras se usa la aplicación: se leen al entrar. */
+    @Override
+    public void alMostrar() {
+        refrescar(null);
+    }
+
+    /** Milisegundos con 2 decimales, alineados a la derecha. */
+    private void columnaMs(TableColumn<Metricas.Resumen, Double> columna, String propiedad) {
+        columna.setCellValueFactory(new PropertyValueFactory<>(propiedad));
+        columna.setCellFactory(tc -> {
+            TableCell<Metricas.Resumen, Double> cell = new TableCell<>() {
+                @Override
+                protected void updateItem(Double item, boolean empty) {
+                    super.updateItem(item, empty);
+                    setText(empty || item == null ? null : String.format(Locale.ROOT, "%.2f", item));
+                }
+            };
+            cell.setAlignment(Pos.CENTER_RIGHT);
+            return cell;
+        });
+    }
+
+    @FXML
+    private void refrescar(ActionEvent event) {
+        List<Metricas.Resumen> operaciones = Metricas.instantanea();
+        tablaMetricas.setItems(FXCollections.observableArrayList(operaciones));
+
+        long errores = operaciones.stream().mapToLong(Metricas.Resumen::getErrores).sum();
+        long conflictos = operaciones.stream().mapToLong(Metricas.Resumen::getConflictos).sum();
+        labelMensaje.setText("Operaciones medidas: " + operaciones.size() + " | Errores: " + errores
+                + " | Conflictos: " + conflictos);
+        labelMensaje.setStyle(errores > 0 ? "-fx-text-fill: red;" : "-fx-text-fill: gray;");
+    }
+
+    @FXML
+    private void reiniciar(ActionEvent event) {
+        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+        confirm.setTitle("Reiniciar métricas");
+        confirm.setHeaderText("¿Deseas poner a cero todas las métricas?");
+        confirm.getDialogPane().setMinHeight(Region.USE_PREF_SIZE);
+
+        confirm.showAndWait().ifPresent(res -> {
+            if (res == ButtonType.OK) {
+                Metricas.reiniciar();
+                refrescar(null);
+            }
+        });
+    }
+
+    @FXML
+    private void volverDashboard(ActionEvent event) {
+        try {
+            App.setRoot("views/dashboard");
+            Logger.info("Usuario volvió al dashboard desde vista Métricas.");
+        } catch (IOException e) {
+            labelMensaje.setText("No se pudo volver al Dashboard.");
+            labelMensaje.setStyle("-fx-text-fill: red;");
+            Logger.exception("Error al volver al dashboard desde MetricasController", e);
+        }
+    }
+}
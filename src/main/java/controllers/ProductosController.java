@@ -1,15 +1,23 @@
 package controllers;
 
 import app_compras.App;
+import app_compras.VistaReutilizable;
+import config.IndiceBusqueda;
 import config.Logger;
 import config.Session;
+import config.TareasBD;
 import dao.CategoriaDAO;
+import dao.ImportadorProductos;
 import dao.ProductoDAO;
 import dao.TiendaDAO;
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.List;
+import java.util.Objects;
 import java.util.ResourceBundle;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
@@ -22,12 +30,14 @@ import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
+import javafx.util.Duration;
 import models.Categoria;
 import models.Producto;
 import models.Tienda;
 import models.Usuario;
 
-public class ProductosController implements Initializable {
+public class ProductosController implements Initializable, VistaReutilizable {
 
     @FXML
     private Label labelUsuarioActivo;
@@ -50,6 +60,8 @@ public class ProductosController implements Initializable {
     @FXML
     private Button btnLimpiar;
     @FXML
+    private Button btnImportar;
+    @FXML
     private TableView<Producto> tablaProductos;
     @FXML
     private TableColumn<Producto, Integer> colId;
@@ -86,6 +98,13 @@ public class ProductosController implements Initializable {
     @FXML
     private HBox hboxBotonesCRUD;
 
+    // Pausa tras la última tecla antes de filtrar la tabla
+    private static final Duration ESPERA_BUSQUEDA
+            = Duration.millis(Math.max(0, Long.getLong("app_compras.productos.busquedaMs", 150L)));
+
+    // Filas rechazadas que se listan en el aviso al terminar una importación
+    private static final int MAX_RECHAZOS_MOSTRADOS = 10;
+
     private final ProductoDAO productoDAO = new ProductoDAO();
     private final TiendaDAO tiendaDAO = new TiendaDAO();
     private final CategoriaDAO categoriaDAO = new CategoriaDAO();
@@ -94,6 +113,10 @@ public class ProductosController implements Initializable {
     private ObservableList<Tienda> listaTiendas = FXCollections.observableArrayList();
     private ObservableList<Categoria> listaCategorias = FXCollections.observableArrayList();
 
+    // Índice del catálogo para la búsqueda; se mantiene al insertar, editar y eliminar
+    private IndiceBusqueda<Producto> indiceProductos = nuevoIndice(List.of());
+    private final PauseTransition busquedaDiferida = new PauseTransition(ESPERA_BUSQUEDA);
+
     private Producto productoSeleccionado = null;
     @FXML
     private VBox headerProductos;
@@ -101,13 +124,26 @@ public class ProductosController implements Initializable {
     @Override
     public void initialize(URL url, ResourceBundle rb) {
         configurarColumnas();
+        configurarEventosTabla();
+
+        // Búsqueda mientras se escribe, al dejar de teclear
+        busquedaDiferida.setOnFinished(e -> filtrarProductos(txtbuscarProducto.getText()));
+        txtbuscarProducto.textProperty().addListener((observable, oldValue, newValue) -> busquedaDiferida.playFromStart());
+    }
+
+    /**
+     * Cada vez que se entra en la vista se parte de un formulario vacío y se
+     * recargan los datos, igual que si se hubiera abierto por primera vez.
+     */
+    @Override
+    public void alMostrar() {
+        limpiarFormulario(null);
+        txtbuscarProducto.clear();
+        busquedaDiferida.stop();
+
         cargarTiendas();
         cargarCategorias();
         cargarProductos();
-        configurarEventosTabla();
-
-        // Búsqueda en tiempo real
-        txtbuscarProducto.textProperty().addListener((observable, oldValue, newValue) -> filtrarProductos(newValue));
 
         Usuario usuario = Session.getUsuarioActual();
         if (usuario != null) {
@@ -135,9 +171,8 @@ public class ProductosController implements Initializable {
     }
 
     private void cargarTiendas() {
-        List<Tienda> tiendas = tiendaDAO.listarTodas();
-        listaTiendas.setAll(tiendas);
         comboTiendas.setItems(listaTiendas);
+        TareasBD.ejecutar("productos.tiendas", tiendaDAO::listarTodas, listaTiendas::setAll);
 
         comboTiendas.setPromptText("Selecciona una tienda...");
 
@@ -159,9 +194,8 @@ public class ProductosController implements Initializable {
     }
 
     private void cargarCategorias() {
-        List<Categoria> categorias = categoriaDAO.listarTodas();
-        listaCategorias.setAll(categorias);
         comboCategorias.setItems(listaCategorias);
+        TareasBD.ejecutar("productos.categorias", categoriaDAO::listarTodas, listaCategorias::setAll);
 
         comboCategorias.setPromptText("Selecciona una categoría...");
 
@@ -183,20 +217,51 @@ public class ProductosController implements Initializable {
     }
 
     private void cargarProductos() {
-        List<Producto> productos = productoDAO.listarTodos();
-        listaProductos.setAll(productos);
+        labelMensaje.setText("Cargando productos...");
+        labelMensaje.setStyle("-fx-text-fill: gray;");
+        TareasBD.mostrarCargando(tablaProductos, true);
+
+        // El índice se construye en el hilo de fondo junto con la consulta
+        TareasBD.ejecutar("productos.listar", () -> nuevoIndice(productoDAO.listarTodos()), this::mostrarProductos, error -> {
+            TareasBD.mostrarCargando(tablaProductos, false);
+            labelMensaje.setText("Error al cargar los productos.");
+            labelMensaje.setStyle("-fx-text-fill: red;");
+        });
+    }
+
+    private void mostrarProductos(IndiceBusqueda<Producto> indice) {
+        TareasBD.mostrarCargando(tablaProductos, false);
+        indiceProductos = indice;
+        listaProductos.setAll(indice.buscar(""));
+
+        String filtro = txtbuscarProducto.getText();
+        if (filtro != null && !filtro.trim().isEmpty()) {
+            filtrarProductos(filtro);
+            return;
+        }
         tablaProductos.setItems(listaProductos);
 
         if (listaProductos.isEmpty()) {
             labelMensaje.setText("No hay datos en la tabla.");
             labelMensaje.setStyle("-fx-text-fill: gray;");
         } else {
-            labelMensaje.setText("Datos cargados correctamente (" + productos.size() + " producto"
-                    + (productos.size() > 1 ? "s" : "") + ").");
+            labelMensaje.setText("Datos cargados correctamente (" + listaProductos.size() + " producto"
+                    + (listaProductos.size() > 1 ? "s" : "") + ").");
             labelMensaje.setStyle("-fx-text-fill: green;");
         }
     }
 
+    private static IndiceBusqueda<Producto> nuevoIndice(List<Producto> productos) {
+        return new IndiceBusqueda<>(Producto::getIdProducto, ProductosController::textoBusqueda, productos);
+    }
+
+    /** Campos en los que busca el filtro, separados para que no haya coincidencias entre dos. */
+    private static String textoBusqueda(Producto p) {
+        return Objects.toString(p.getNombre(), "") + "\n" + Objects.toString(p.getDescripcion(), "")
+                + "\n" + Objects.toString(p.getNombreCategoria(), "") + "\n" + Objects.toString(p.getNombreTienda(), "")
+                + "\n" + p.getPrecio();
+    }
+
     private void configurarEventosTabla() {
         tablaProductos.setOnMouseClicked((MouseEvent event) -> {
             if (tablaProductos.getSelectionModel().getSelectedItem() != null) {
@@ -258,15 +323,20 @@ public class ProductosController implements Initializable {
                 nuevo.setPrecio(precio);
                 nuevo.setIdTienda(tienda.getIdTienda());
                 nuevo.setIdCategoria(categoria.getIdCategoria());
-
-                boolean insertado = productoDAO.insertar(nuevo);
-                if (insertado) {
-                    mostrarAlerta(Alert.AlertType.INFORMATION, "Producto agregado", "Producto agregado correctamente.");
-                    limpiarFormulario(null);
-                    cargarProductos();
-                } else {
-                    mostrarAlerta(Alert.AlertType.ERROR, "Error", "No se pudo agregar el producto.");
-                }
+                nuevo.setNombreTienda(tienda.getNombre());
+                nuevo.setNombreCategoria(categoria.getNombre());
+
+                TareasBD.ejecutar(() -> productoDAO.insertar(nuevo), insertado -> {
+                    if (insertado) {
+                        listaProductos.add(nuevo);
+                        indiceProductos.agregarOActualizar(nuevo);
+                        mostrarAlerta(Alert.AlertType.INFORMATION, "Producto agregado", "Producto agregado correctamente.");
+                        limpiarFormulario(null);
+                        filtrarProductos(txtbuscarProducto.getText());
+                    } else {
+                        mostrarAlerta(Alert.AlertType.ERROR, "Error", "No se pudo agregar el producto.");
+                    }
+                });
             }
         });
     }
@@ -306,20 +376,31 @@ public class ProductosController implements Initializable {
 
         confirm.showAndWait().ifPresent(res -> {
             if (res == ButtonType.OK) {
-                productoSeleccionado.setNombre(nombre);
-                productoSeleccionado.setDescripcion(descripcion);
-                productoSeleccionado.setPrecio(precio);
-                productoSeleccionado.setIdTienda(tienda.getIdTienda());
-                productoSeleccionado.setIdCategoria(categoria.getIdCategoria());
-
-                boolean actualizado = productoDAO.actualizar(productoSeleccionado);
-                if (actualizado) {
-                    mostrarAlerta(Alert.AlertType.INFORMATION, "Actualizado", "Producto actualizado correctamente.");
-                    limpiarFormulario(null);
-                    cargarProductos();
-                } else {
-                    mostrarAlerta(Alert.AlertType.ERROR, "Error", "No se pudo actualizar el producto.");
-                }
+                // Se guarda una copia: la fila de la tabla solo cambia si la base acepta el cambio
+                Producto producto = productoSeleccionado;
+                Producto cambios = new Producto(producto.getIdProducto(), nombre, descripcion, precio,
+                        tienda.getIdTienda(), categoria.getIdCategoria());
+                cambios.setNombreTienda(tienda.getNombre());
+                cambios.setNombreCategoria(categoria.getNombre());
+
+                TareasBD.ejecutar(() -> productoDAO.actualizar(cambios), actualizado -> {
+                    if (actualizado) {
+                        producto.setNombre(cambios.getNombre());
+                        producto.setDescripcion(cambios.getDescripcion());
+                        producto.setPrecio(cambios.getPrecio());
+                        producto.setIdTienda(cambios.getIdTienda());
+                        producto.setIdCategoria(cambios.getIdCategoria());
+                        producto.setNombreTienda(cambios.getNombreTienda());
+                        producto.setNombreCategoria(cambios.getNombreCategoria());
+                        indiceProductos.agregarOActualizar(producto);
+                        tablaProductos.refresh();
+                        mostrarAlerta(Alert.AlertType.INFORMATION, "Actualizado", "Producto actualizado correctamente.");
+                        limpiarFormulario(null);
+                        filtrarProductos(txtbuscarProducto.getText());
+                    } else {
+                        mostrarAlerta(Alert.AlertType.ERROR, "Error", "No se pudo actualizar el producto.");
+                    }
+                });
             }
         });
     }
@@ -339,18 +420,83 @@ public class ProductosController implements Initializable {
 
         confirm.showAndWait().ifPresent(response -> {
             if (response == ButtonType.OK) {
-                boolean eliminado = productoDAO.eliminar(productoSeleccionado.getIdProducto());
-                if (eliminado) {
-                    mostrarAlerta(Alert.AlertType.INFORMATION, "Eliminado", "Producto eliminado correctamente.");
-                    limpiarFormulario(null);
-                    cargarProductos();
-                } else {
-                    mostrarAlerta(Alert.AlertType.ERROR, "Error", "No se pudo eliminar el producto.");
-                }
+                int idProducto = productoSeleccionado.getIdProducto();
+                TareasBD.ejecutar(() -> productoDAO.eliminar(idProducto), eliminado -> {
+                    if (eliminado) {
+                        listaProductos.removeIf(p -> p.getIdProducto() == idProducto);
+                        indiceProductos.eliminar(idProducto);
+                        mostrarAlerta(Alert.AlertType.INFORMATION, "Eliminado", "Producto eliminado correctamente.");
+                        limpiarFormulario(null);
+                        filtrarProductos(txtbuscarProducto.getText());
+                    } else {
+                        mostrarAlerta(Alert.AlertType.ERROR, "Error", "No se pudo eliminar el producto.");
+                    }
+                });
             }
         });
     }
 
+    @FXML
+    private void importarCSV(ActionEvent event) {
+        FileChooser selector = new FileChooser();
+        selector.setTitle("Importar productos desde CSV");
+        selector.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Archivos CSV", "*.csv", "*.txt"),
+                new FileChooser.ExtensionFilter("Todos los archivos", "*.*"));
+        File archivo = selector.showOpenDialog(tablaProductos.getScene().getWindow());
+        if (archivo == null) {
+            return;
+        }
+
+        // La tienda elegida se usa para las filas que no indican tienda
+        Tienda tienda = comboTiendas.getValue();
+        Integer idTienda = tienda != null ? tienda.getIdTienda() : null;
+
+        btnImportar.setDisable(true);
+        labelMensaje.setText("Importando " + archivo.getName() + "...");
+        labelMensaje.setStyle("-fx-text-fill: gray;");
+
+        ImportadorProductos.Progreso progreso = (leidas, guardadas, rechazadas) -> Platform.runLater(() ->
+                labelMensaje.setText("Importando " + archivo.getName() + ": " + leidas + " filas leídas, "
+                        + guardadas + " guardadas, " + rechazadas + " rechazadas..."));
+
+        // Sin clave: una importación en curso no se cancela
+        TareasBD.ejecutar(null, () -> new ImportadorProductos().importar(archivo.toPath(), idTienda, progreso),
+                resultado -> {
+                    btnImportar.setDisable(false);
+                    mostrarResultadoImportacion(resultado);
+                    cargarProductos();
+                }, error -> {
+                    btnImportar.setDisable(false);
+                    labelMensaje.setText("Error al importar el archivo.");
+                    labelMensaje.setStyle("-fx-text-fill: red;");
+                    mostrarAlerta(Alert.AlertType.ERROR, "Importación fallida", error.getMessage());
+                });
+    }
+
+    private void mostrarResultadoImportacion(ImportadorProductos.Resultado resultado) {
+        List<ImportadorProductos.Rechazo> rechazos = resultado.getRechazos();
+        StringBuilder mensaje = new StringBuilder()
+                .append("Filas leídas: ").append(resultado.getLeidas())
+                .append("\nProductos nuevos: ").append(resultado.getInsertadas())
+                .append("\nProductos actualizados: ").append(resultado.getActualizadas())
+                .append("\nFilas rechazadas: ").append(rechazos.size());
+        if (resultado.getError() != null) {
+            mensaje.append("\n\nLa importación se detuvo por un error de la base de datos: ").append(resultado.getError());
+        }
+        if (!rechazos.isEmpty()) {
+            mensaje.append("\n");
+            rechazos.stream().limit(MAX_RECHAZOS_MOSTRADOS).forEach(r -> mensaje.append("\n").append(r));
+            if (rechazos.size() > MAX_RECHAZOS_MOSTRADOS) {
+                mensaje.append("\n... (el resto en el log)");
+            }
+            rechazos.forEach(r -> Logger.warning("Importación de productos, fila rechazada. " + r));
+        }
+
+        mostrarAlerta(resultado.getError() != null || !rechazos.isEmpty()
+                ? Alert.AlertType.WARNING : Alert.AlertType.INFORMATION, "Importación terminada", mensaje.toString());
+    }
+
     @FXML
     private void limpiarFormulario(ActionEvent event) {
         txtNombre.clear();
@@ -392,15 +538,8 @@ public class ProductosController implements Initializable {
             return;
         }
 
-        String texto = filtro.toLowerCase();
-
-        ObservableList<Producto> filtrados = listaProductos.filtered(p
-                -> (p.getNombre() != null && p.getNombre().toLowerCase().contains(texto))
-                || (p.getDescripcion() != null && p.getDescripcion().toLowerCase().contains(texto))
-                || (p.getNombreCategoria() != null && p.getNombreCategoria().toLowerCase().contains(texto))
-                || (p.getNombreTienda() != null && p.getNombreTienda().toLowerCase().contains(texto))
-                || String.valueOf(p.getPrecio()).contains(texto)
-        );
+        // Sin distinguir mayúsculas ni acentos; al seguir escribiendo se filtra el resultado anterior
+        ObservableList<Producto> filtrados = FXCollections.observableArrayList(indiceProductos.buscar(filtro));
 
         tablaProductos.setItems(filtrados);
 
@@ -1,6 +1,7 @@
 package controllers;
 
 import app_compras.App;
+import app_compras.VistaReutilizable;
 import config.Logger;
 import config.Session;
 import dao.TiendaDAO;
@@ -25,7 +26,7 @@ import models.Tienda;
 import models.Repartidor;
 import models.Usuario;
 
-public class TiendaController implements Initializable {
+public class TiendaController implements Initializable, VistaReutilizable {
 
     @FXML
     private TextField txtNombre;
@@ -99,11 +100,21 @@ public class TiendaController implements Initializable {
     @Override
     public void initialize(URL url, ResourceBundle rb) {
         configurarColumnas();
-        cargarRepartidores();
-        cargarTiendas();
         configurarEventosTabla();
 
         txtBuscarTienda.textProperty().addListener((observable, oldValue, newValue) -> filtrarTiendas(newValue));
+    }
+
+    /**
+     * Recarga repartidores y tiendas con el formulario vacío cada vez que se
+     * muestra la vista.
+     */
+    @Override
+    public void alMostrar() {
+        limpiarFormulario(null);
+        txtBuscarTienda.clear();
+        cargarRepartidores();
+        cargarTiendas();
 
         Usuario usuario = Session.getUsuarioActual();
         if (usuario != null) {
@@ -3,11 +3,13 @@ package controllers;
 import app_compras.App;
 import config.Logger;
 import config.Session;
+import config.TareasBD;
 import dao.RolDAO;
 import dao.UsuarioDAO;
 import dao.PermisoDAO;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.ResourceBundle;
@@ -176,27 +178,26 @@ public class UsuariosController implements Initializable {
     // CARGA DE DATOS
     // ============================================================
     private void cargarRoles() {
-        try {
-            listaRoles.setAll(rolDAO.listarTodos());
-            comboRol.setItems(listaRoles);
-        } catch (Exception e) {
-            Logger.exception("Error al cargar roles en UsuariosController", e);
-        }
+        comboRol.setItems(listaRoles);
+        TareasBD.ejecutar("usuarios.roles", rolDAO::listarTodos, listaRoles::setAll);
     }
 
     private void cargarPermisos() {
-        try {
-            listaPermisos.setAll(permisoDAO.listarTodos());
-            listPermisos.setItems(listaPermisos);
-        } catch (Exception e) {
-            Logger.exception("Error al cargar permisos en UsuariosController", e);
-        }
+        listPermisos.setItems(listaPermisos);
+        TareasBD.ejecutar("usuarios.permisos", permisoDAO::listarTodos, listaPermisos::setAll);
     }
 
     private void cargarUsuarios() {
-        try {
+        labelMensaje.setText("Cargando usuarios...");
+        labelMensaje.setStyle("-fx-text-fill: gray;");
+        TareasBD.mostrarCargando(tablaUsuarios, true);
+
+        TareasBD.ejecutar("usuarios.listar", () -> {
             List<Usuario> usuarios = usuarioDAO.listarUsuariosConPermisos();
             usuarios.sort(Comparator.comparingInt(Usuario::getIdUsuario));
+            return usuarios;
+        }, usuarios -> {
+            TareasBD.mostrarCargando(tablaUsuarios, false);
             listaUsuarios.setAll(usuarios);
             tablaUsuarios.setItems(listaUsuarios);
 
@@ -207,12 +208,11 @@ public class UsuariosController implements Initializable {
                 labelMensaje.setText("Usuarios cargados correctamente.");
                 labelMensaje.setStyle("-fx-text-fill: green;");
             }
-
-        } catch (Exception e) {
+        }, error -> {
+            TareasBD.mostrarCargando(tablaUsuarios, false);
             labelMensaje.setText("Error al cargar usuarios.");
             labelMensaje.setStyle("-fx-text-fill: red;");
-            Logger.exception("Error al cargar usuarios.", e);
-        }
+        });
 
         tablaUsuarios.setOnMouseClicked(event -> {
             usuarioSeleccionado = tablaUsuarios.getSelectionModel().getSelectedItem();
@@ -279,7 +279,7 @@ public class UsuariosController implements Initializable {
         String email = txtEmail.getText().trim();
         String password = txtPassword.getText().trim();
         Rol rol = comboRol.getValue();
-        List<Permiso> permisosSeleccionados = listPermisos.getSelectionModel().getSelectedItems();
+        List<Permiso> permisosSeleccionados = new ArrayList<>(listPermisos.getSelectionModel().getSelectedItems());
 
         if (nombre.isEmpty() || email.isEmpty() || password.isEmpty() || rol == null) {
             mostrarAlerta(Alert.AlertType.WARNING, "Campos incompletos",
@@ -287,24 +287,22 @@ public class UsuariosController implements Initializable {
             return;
         }
 
-        if (usuarioDAO.existeEmail(email)) {
-            mostrarAlerta(Alert.AlertType.WARNING, "Duplicado",
-                    "Ya existe un usuario con este email.");
-            return;
-        }
-
         Usuario nuevo = new Usuario(nombre, email, password, rol.getIdRol());
         nuevo.setPermisos(permisosSeleccionados);
 
-        boolean creado = usuarioDAO.crearUsuarioConPermisos(nuevo);
-
-        if (creado) {
-            mostrarAlerta(Alert.AlertType.INFORMATION, "Éxito", "Usuario agregado correctamente.");
-            limpiarFormulario(null);
-            cargarUsuarios();
-        } else {
-            mostrarAlerta(Alert.AlertType.ERROR, "Error", "No se pudo agregar el usuario.");
-        }
+        // null = el email ya existe
+        TareasBD.ejecutar(() -> usuarioDAO.existeEmail(email) ? null : usuarioDAO.crearUsuarioConPermisos(nuevo), creado -> {
+            if (creado == null) {
+                mostrarAlerta(Alert.AlertType.WARNING, "Duplicado",
+                        "Ya existe un usuario con este email.");
+            } else if (creado) {
+                mostrarAlerta(Alert.AlertType.INFORMATION, "Éxito", "Usuario agregado correctamente.");
+                limpiarFormulario(null);
+                cargarUsuarios();
+            } else {
+                mostrarAlerta(Alert.AlertType.ERROR, "Error", "No se pudo agregar el usuario.");
+            }
+        });
     }
 
     @FXML
@@ -318,7 +316,7 @@ public class UsuariosController implements Initializable {
         String email = txtEmail.getText().trim();
         String password = txtPassword.getText().trim();
         Rol rol = comboRol.getValue();
-        List<Permiso> permisosSeleccionados = listPermisos.getSelectionModel().getSelectedItems();
+        List<Permiso> permisosSeleccionados = new ArrayList<>(listPermisos.getSelectionModel().getSelectedItems());
 
         if (nombre.isEmpty() || email.isEmpty() || password.isEmpty() || rol == null) {
             mostrarAlerta(Alert.AlertType.WARNING, "Campos incompletos", "Debes llenar todos los campos y seleccionar un rol.");
@@ -331,15 +329,16 @@ public class UsuariosController implements Initializable {
         usuarioSeleccionado.setIdRol(rol.getIdRol());
         usuarioSeleccionado.setPermisos(permisosSeleccionados);
 
-        boolean actualizado = usuarioDAO.actualizarUsuarioConPermisos(usuarioSeleccionado);
-
-        if (actualizado) {
-            mostrarAlerta(Alert.AlertType.INFORMATION, "Actualizado", "Usuario actualizado correctamente.");
-            limpiarFormulario(null);
-            cargarUsuarios();
-        } else {
-            mostrarAlerta(Alert.AlertType.ERROR, "Error", "No se pudo actualizar el usuario.");
-        }
+        Usuario usuario = usuarioSeleccionado;
+        TareasBD.ejecutar(() -> usuarioDAO.actualizarUsuarioConPermisos(usuario), actualizado -> {
+            if (actualizado) {
+                mostrarAlerta(Alert.AlertType.INFORMATION, "Actualizado", "Usuario actualizado correctamente.");
+                limpiarFormulario(null);
+                cargarUsuarios();
+            } else {
+                mostrarAlerta(Alert.AlertType.ERROR, "Error", "No se pudo actualizar el usuario.");
+            }
+        });
     }
 
     @FXML
@@ -357,14 +356,16 @@ public class UsuariosController implements Initializable {
 
         confirm.showAndWait().ifPresent(response -> {
             if (response == ButtonType.OK) {
-                boolean eliminado = usuarioDAO.eliminarUsuario(usuarioSeleccionado.getIdUsuario());
-                if (eliminado) {
-                    mostrarAlerta(Alert.AlertType.INFORMATION, "Eliminado", "Usuario eliminado correctamente.");
-                    limpiarFormulario(null);
-                    cargarUsuarios();
-                } else {
-                    mostrarAlerta(Alert.AlertType.ERROR, "Error", "No se pudo eliminar el usuario.");
-                }
+                int idUsuario = usuarioSeleccionado.getIdUsuario();
+                TareasBD.ejecutar(() -> usuarioDAO.eliminarUsuario(idUsuario), eliminado -> {
+                    if (eliminado) {
+                        mostrarAlerta(Alert.AlertType.INFORMATION, "Eliminado", "Usuario eliminado correctamente.");
+                        limpiarFormulario(null);
+                        cargarUsuarios();
+                    } else {
+                        mostrarAlerta(Alert.AlertType.ERROR, "Error", "No se pudo eliminar el usuario.");
+                    }
+                });
             }
         });
     }
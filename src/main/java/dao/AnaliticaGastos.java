@@ -0,0 +1,603 @@
+package dao;
+
+import config.Logger;
+import config.Metricas;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.format.TextStyle;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import models.GastoSemanal;
+import models.GastosAnual;
+import models.GastosDia;
+import models.GastosMes;
+
+/**
+ * Informes de gastos calculados en memoria, como alternativa a las tablas de
+ * resumen (ver ResumenGastosDAO).
+ *
+ * El histórico se carga una vez en columnas de tipos primitivos, ordenadas
+ * por fecha:
+ *
+ * - compras: usuario, día (LocalDate.toEpochDay) y total en céntimos.
+ * - líneas de compra: usuario, día, categoría (0 = sin categoría) y subtotal
+ *   en céntimos, para el informe mensual por categoría.
+ *
+ * Cada informe busca por fecha el tramo de filas del periodo, traduce cada
+ * día a su grupo (día de la semana, semana del mes, mes o año) con una tabla
+ * precalculada y suma por usuario y grupo. Si se filtra por usuario se recorre
+ * una copia de sus filas, también ordenada por fecha. Los tramos grandes se
+ * reparten en el ForkJoinPool común. Cambiar de usuario o de periodo en un
+ * informe no vuelve a consultar la base de datos.
+ *
+ * Los datos se descartan cuando CompraDAO o ListadoDeCompraDAO modifican
+ * compras, cuando cambian usuarios o categorías (por los nombres), al
+ * reconstruir los resúmenes y al pasar el TTL de las cachés de lectura
+ * (app_compras.cache.ttlMs), por los cambios hechos desde otros equipos.
+ *
+ * Se activa con -Dapp_compras.gastos.memoria=true; si no, los informes leen
+ * las tablas de resumen.
+ *
+ * @author Milanes
+ */
+final class AnaliticaGastos {
+
+    static final boolean ACTIVA = Boolean.getBoolean("app_compras.gastos.memoria");
+
+    // Por debajo de estas filas se suma en el hilo que consulta
+    private static final int UMBRAL_PARALELO = 1 << 15;
+
+    private static final String SQL_COMPRAS
+            = "SELECT id_usuario, fecha_compra, total FROM compras "
+            + "WHERE id_usuario IS NOT NULL AND fecha_compra IS NOT NULL ORDER BY fecha_compra";
+
+    private static final String SQL_LINEAS
+            = "SELECT c.id_usuario, c.fecha_compra, COALESCE(p.id_categoria, 0) AS id_categoria, ld.subtotal "
+            + "FROM listado_de_compras ld "
+            + "INNER JOIN compras c ON c.id_compra = ld.id_compra "
+            + "LEFT JOIN productos p ON p.id_producto = ld.id_producto "
+            + "WHERE c.id_usuario IS NOT NULL AND c.fecha_compra IS NOT NULL ORDER BY c.fecha_compra";
+
+    // SELECT id, nombre
+    private static final MapeadorFilas<Map.Entry<Integer, String>> ID_NOMBRE
+            = columnas -> rs -> new AbstractMap.SimpleEntry<>(rs.getInt(1), rs.getString(2));
+
+    // Cambia en cada invalidación; evita quedarse con una carga que empezó antes
+    private static final AtomicLong VERSION = new AtomicLong();
+
+    private static volatile Datos datos;
+
+    private AnaliticaGastos() {
+    }
+
+    /**
+     * Descarta los datos cargados; la siguiente consulta los vuelve a leer.
+     */
+    static void invalidar() {
+        VERSION.incrementAndGet();
+        datos = null;
+    }
+
+    // ============================================================
+    // INFORMES
+    // ============================================================
+    /**
+     * Gasto por usuario, año, mes y día de la semana (como resumen_gasto_dia).
+     *
+     * @param diaSemana 1 = lunes ... 7 = domingo, 0 = todos
+     * @param usuario nombre del usuario o null para todos
+     */
+    static List<GastosDia> gastoPorDia(int diaSemana, String usuario) throws SQLException {
+        Datos d = datos();
+        Tabla t = d.compras;
+        if (t.filas == 0) {
+            return new ArrayList<>();
+        }
+
+        int desde = t.dia[0];
+        int hasta = t.dia[t.filas - 1];
+        int[] grupos = grupos(desde, hasta, f -> diaSemana > 0 && f.getDayOfWeek().getValue() != diaSemana
+                ? -1 : f.getYear() << 8 | f.getMonthValue() << 4 | f.getDayOfWeek().getValue());
+
+        List<Fila> filas = sumar(d, t, desde, hasta, usuario, grupos).filas(d);
+        // año, mes, usuario, día de la semana
+        filas.sort(Comparator.<Fila>comparingInt(f -> f.grupo >>> 4).thenComparing(f -> f.usuario)
+                .thenComparingInt(f -> f.grupo & 0xF));
+
+        List<GastosDia> lista = new ArrayList<>(filas.size());
+        for (Fila f : filas) {
+            GastosDia g = new GastosDia();
+            g.setUsuario(f.usuario);
+            g.setAnio(f.grupo >>> 8);
+            g.setMes(nombreMes(f.grupo >>> 4 & 0xF));
+            g.setDiaSemana(GastosDIADAO.DIAS[(f.grupo & 0xF) - 1]);
+            g.setGastoTotal(f.euros());
+            lista.add(g);
+        }
+        return lista;
+    }
+
+    /**
+     * Gasto por usuario y semana del mes de la fecha indicada (como
+     * resumen_gasto_semana), con la primera y la última fecha con compras.
+     *
+     * @param numeroSemana semana del mes (1 a 6), 0 = todas
+     * @param usuario nombre del usuario o null para todos
+     */
+    static List<GastoSemanal> gastoPorSemana(LocalDate hoy, int numeroSemana, String usuario) throws SQLException {
+        Datos d = datos();
+        LocalDate primero = hoy.withDayOfMonth(1);
+        int desde = (int) primero.toEpochDay();
+        int hasta = (int) primero.plusMonths(1).minusDays(1).toEpochDay();
+        int[] grupos = grupos(desde, hasta, f -> {
+            int semana = ResumenGastosDAO.semanaDelMes(f);
+            return numeroSemana > 0 && semana != numeroSemana ? -1 : semana;
+        });
+
+        List<Fila> filas = sumar(d, d.compras, desde, hasta, usuario, grupos).filas(d);
+        filas.sort(Comparator.<Fila, String>comparing(f -> f.usuario).thenComparingInt(f -> f.grupo));
+
+        List<GastoSemanal> lista = new ArrayList<>(filas.size());
+        for (Fila f : filas) {
+            GastoSemanal g = new GastoSemanal();
+            g.setUsuario(f.usuario);
+            g.setAnio(hoy.getYear());
+            g.setMes(nombreMes(hoy.getMonthValue()));
+            g.setSemanaDelMes(f.grupo);
+            g.setInicioSemana(LocalDate.ofEpochDay(f.primerDia).toString());
+            g.setFinSemana(LocalDate.ofEpochDay(f.ultimoDia).toString());
+            g.setGastoSemana(f.euros());
+            lista.add(g);
+        }
+        return lista;
+    }
+
+    /**
+     * Gasto por usuario, mes y categoría de un año (como resumen_gasto_mes),
+     * sumando los subtotales de las líneas.
+     *
+     * @param mes 1 a 12, 0 = todo el año
+     * @param usuario nombre del usuario o null para todos
+     */
+    static List<GastosMes> gastoPorMes(int anio, int mes, String usuario) throws SQLException {
+        Datos d = datos();
+        LocalDate inicio = mes > 0 ? LocalDate.of(anio, mes, 1) : LocalDate.of(anio, 1, 1);
+        LocalDate fin = mes > 0 ? inicio.plusMonths(1).minusDays(1) : LocalDate.of(anio, 12, 31);
+        int[] grupos = grupos((int) inicio.toEpochDay(), (int) fin.toEpochDay(), LocalDate::getMonthValue);
+
+        List<Fila> filas = sumar(d, d.lineas, (int) inicio.toEpochDay(), (int) fin.toEpochDay(), usuario, grupos)
+                .filas(d);
+        // mes, usuario, categoría (sin categoría primero)
+        filas.sort(Comparator.<Fila>comparingInt(f -> f.grupo >>> BITS_CATEGORIA).thenComparing(f -> f.usuario)
+                .thenComparing(f -> d.categorias.get(f.grupo & MASCARA_CATEGORIA),
+                        Comparator.nullsFirst(Comparator.naturalOrder())));
+
+        List<GastosMes> lista = new ArrayList<>(filas.size());
+        for (Fila f : filas) {
+            GastosMes g = new GastosMes();
+            g.setUsuario(f.usuario);
+            g.setAnio(anio);
+            g.setMes(GastosMesDAO.MESES[(f.grupo >>> BITS_CATEGORIA) - 1]);
+            g.setCategoria(d.categorias.get(f.grupo & MASCARA_CATEGORIA));
+            g.setGastoTotal(f.euros());
+            lista.add(g);
+        }
+        return lista;
+    }
+
+    /**
+     * Gasto por usuario y año (como resumen_gasto_anual).
+     *
+     * @param anio año o 0 para todos
+     * @param usuario nombre del usuario o null para todos
+     */
+    static List<GastosAnual> gastoPorAnio(int anio, String usuario) throws SQLException {
+        Datos d = datos();
+        Tabla t = d.compras;
+        if (t.filas == 0) {
+            return new ArrayList<>();
+        }
+
+        int desde = anio > 0 ? (int) LocalDate.of(anio, 1, 1).toEpochDay() : t.dia[0];
+        int hasta = anio > 0 ? (int) LocalDate.of(anio, 12, 31).toEpochDay() : t.dia[t.filas - 1];
+        int[] grupos = grupos(desde, hasta, LocalDate::getYear);
+
+        List<Fila> filas = sumar(d, t, desde, hasta, usuario, grupos).filas(d);
+        filas.sort(Comparator.<Fila>comparingInt(f -> f.grupo).thenComparing(f -> f.usuario));
+
+        List<GastosAnual> lista = new ArrayList<>(filas.size());
+        for (Fila f : filas) {
+            GastosAnual g = new GastosAnual();
+            g.setUsuario(f.usuario);
+            g.setAnio(f.grupo);
+            g.setGastoTotal(f.euros());
+            lista.add(g);
+        }
+        return lista;
+    }
+
+    /** En inglés, como devolvía MONTHNAME(); los controladores lo traducen. */
+    private static String nombreMes(int mes) {
+        return Month.of(mes).getDisplayName(TextStyle.FULL, Locale.ENGLISH);
+    }
+
+    // ============================================================
+    // AGREGACIÓN
+    // ============================================================
+    // En las líneas el grupo lleva además la categoría en los bits bajos
+    private static final int BITS_CATEGORIA = 24;
+    private static final int MASCARA_CATEGORIA = (1 << BITS_CATEGORIA) - 1;
+
+    @FunctionalInterface
+    private interface Agrupacion {
+
+        /** Grupo (>= 0) del día, o -1 para no contarlo. */
+        int grupo(LocalDate dia);
+    }
+
+    /** Grupo de cada día entre desde y hasta (ambos incluidos). */
+    private static int[] grupos(int desde, int hasta, Agrupacion agrupacion) {
+        int[] grupos = new int[Math.max(0, hasta - desde + 1)];
+        for (int i = 0; i < grupos.length; i++) {
+            grupos[i] = agrupacion.grupo(LocalDate.ofEpochDay(desde + (long) i));
+        }
+        return grupos;
+    }
+
+    /**
+     * Suma por usuario y grupo del día las filas con fecha entre desde y
+     * hasta. Con un usuario solo se recorren sus filas.
+     *
+     * @param usuario nombre del usuario o null para todos
+     */
+    private static Sumas sumar(Datos d, Tabla t, int desde, int hasta, String usuario, int[] grupos) {
+        if (usuario == null || usuario.trim().isEmpty()) {
+            return sumar(t, desde, hasta, grupos);
+        }
+        // Puede haber más de un usuario con el mismo nombre
+        Sumas sumas = new Sumas();
+        for (Map.Entry<Integer, String> u : d.usuarios.entrySet()) {
+            Tabla propia = t.porUsuario.get(u.getKey());
+            if (propia != null && usuario.equalsIgnoreCase(u.getValue())) {
+                sumas.unir(sumar(propia, desde, hasta, grupos));
+            }
+        }
+        return sumas;
+    }
+
+    private static Sumas sumar(Tabla t, int desde, int hasta, int[] grupos) {
+        int primera = t.primeraFila(desde);
+        int ultima = t.primeraFila(hasta + 1);
+        Suma tarea = new Suma(t, primera, ultima, desde, grupos);
+        return ultima - primera > UMBRAL_PARALELO ? ForkJoinPool.commonPool().invoke(tarea) : tarea.compute();
+    }
+
+    private static final class Suma extends RecursiveTask<Sumas> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Tabla t;
+        private final int desdeFila;
+        private final int hastaFila;
+        private final int primerDia;
+        private final int[] grupos;
+
+        Suma(Tabla t, int desdeFila, int hastaFila, int primerDia, int[] grupos) {
+            this.t = t;
+            this.desdeFila = desdeFila;
+            this.hastaFila = hastaFila;
+            this.primerDia = primerDia;
+            this.grupos = grupos;
+        }
+
+        @Override
+        protected Sumas compute() {
+            if (hastaFila - desdeFila > UMBRAL_PARALELO) {
+                int mitad = (desdeFila + hastaFila) >>> 1;
+                Suma izquierda = new Suma(t, desdeFila, mitad, primerDia, grupos);
+                izquierda.fork();
+                Sumas derecha = new Suma(t, mitad, hastaFila, primerDia, grupos).compute();
+                return izquierda.join().unir(derecha);
+            }
+
+            Sumas sumas = new Sumas();
+            int[] usuario = t.usuario;
+            int[] dia = t.dia;
+            long[] centimos = t.centimos;
+            int[] categoria = t.categoria;
+            for (int i = desdeFila; i < hastaFila; i++) {
+                int grupo = grupos[dia[i] - primerDia];
+                if (grupo < 0) {
+                    continue;
+                }
+                if (categoria != null) {
+                    grupo = grupo << BITS_CATEGORIA | categoria[i];
+                }
+                sumas.sumar((long) usuario[i] << 32 | grupo, centimos[i], dia[i]);
+            }
+            return sumas;
+        }
+    }
+
+    /**
+     * Tabla hash de claves (usuario << 32 | grupo) a importe, primer y último
+     * día, con direccionamiento abierto y arrays primitivos.
+     */
+    private static final class Sumas {
+
+        private long[] claves = vacias(256);
+        private long[] centimos = new long[256];
+        private int[] primerDia = new int[256];
+        private int[] ultimoDia = new int[256];
+        private int tamanio;
+        // Bits altos del hash que se usan como posición: 64 - log2(capacidad)
+        private int desplazamiento = 64 - 8;
+
+        private static long[] vacias(int capacidad) {
+            long[] claves = new long[capacidad];
+            Arrays.fill(claves, -1L);
+            return claves;
+        }
+
+        void sumar(long clave, long importe, int dia) {
+            sumar(clave, importe, dia, dia);
+        }
+
+        private void sumar(long clave, long importe, int primero, int ultimo) {
+            int mascara = claves.length - 1;
+            int i = (int) (clave * 0x9E3779B97F4A7C15L >>> desplazamiento);
+            while (claves[i] != -1L && claves[i] != clave) {
+                i = i + 1 & mascara;
+            }
+            if (claves[i] == -1L) {
+                claves[i] = clave;
+                centimos[i] = importe;
+                primerDia[i] = primero;
+                ultimoDia[i] = ultimo;
+                // Ocupación máxima de 1/4: casi todas las claves quedan en su posición
+                if (++tamanio * 4 > claves.length) {
+                    crecer();
+                }
+                return;
+            }
+            centimos[i] += importe;
+            primerDia[i] = Math.min(primerDia[i], primero);
+            ultimoDia[i] = Math.max(ultimoDia[i], ultimo);
+        }
+
+        private void crecer() {
+            long[] viejasClaves = claves;
+            long[] viejosCentimos = centimos;
+            int[] viejosPrimeros = primerDia;
+            int[] viejosUltimos = ultimoDia;
+            int capacidad = viejasClaves.length * 2;
+            claves = vacias(capacidad);
+            desplazamiento--;
+            centimos = new long[capacidad];
+            primerDia = new int[capacidad];
+            ultimoDia = new int[capacidad];
+            tamanio = 0;
+            for (int i = 0; i < viejasClaves.length; i++) {
+                if (viejasClaves[i] != -1L) {
+                    sumar(viejasClaves[i], viejosCentimos[i], viejosPrimeros[i], viejosUltimos[i]);
+                }
+            }
+        }
+
+        Sumas unir(Sumas otra) {
+            for (int i = 0; i < otra.claves.length; i++) {
+                if (otra.claves[i] != -1L) {
+                    sumar(otra.claves[i], otra.centimos[i], otra.primerDia[i], otra.ultimoDia[i]);
+                }
+            }
+            return this;
+        }
+
+        List<Fila> filas(Datos d) {
+            List<Fila> filas = new ArrayList<>(tamanio);
+            for (int i = 0; i < claves.length; i++) {
+                if (claves[i] != -1L) {
+                    filas.add(new Fila(d.usuarios.get((int) (claves[i] >>> 32)), (int) claves[i],
+                            centimos[i], primerDia[i], ultimoDia[i]));
+                }
+            }
+            return filas;
+        }
+    }
+
+    /** Resultado de un grupo, antes de convertirlo al modelo del informe. */
+    private static final class Fila {
+
+        final String usuario;
+        final int grupo;
+        final long centimos;
+        final int primerDia;
+        final int ultimoDia;
+
+        Fila(String usuario, int grupo, long centimos, int primerDia, int ultimoDia) {
+            this.usuario = usuario;
+            this.grupo = grupo;
+            this.centimos = centimos;
+            this.primerDia = primerDia;
+            this.ultimoDia = ultimoDia;
+        }
+
+        double euros() {
+            return centimos / 100.0;
+        }
+    }
+
+    // ============================================================
+    // CARGA
+    // ============================================================
+    private static Datos datos() throws SQLException {
+        Datos actuales = datos;
+        if (actuales != null && !actuales.caducados()) {
+            return actuales;
+        }
+        synchronized (AnaliticaGastos.class) {
+            actuales = datos;
+            if (actuales != null && !actuales.caducados()) {
+                return actuales;
+            }
+            long version = VERSION.get();
+            long inicio = System.currentTimeMillis();
+            Datos nuevos = cargar();
+            // Si se invalidó durante la carga se usa igual, pero no se guarda
+            if (VERSION.get() == version) {
+                datos = nuevos;
+            }
+            Logger.info(() -> "Gastos cargados en memoria en " + (System.currentTimeMillis() - inicio) + " ms ("
+                    + nuevos.compras.filas + " compras, " + nuevos.lineas.filas + " líneas).");
+            return nuevos;
+        }
+    }
+
+    private static Datos cargar() throws SQLException {
+        try (Connection conn = PlantillaJDBC.conexion()) {
+            Map<Integer, String> usuarios = new HashMap<>();
+            for (Map.Entry<Integer, String> u : PlantillaJDBC.listar(conn,
+                    "SELECT id_usuario, nombre FROM usuarios", ID_NOMBRE)) {
+                usuarios.put(u.getKey(), u.getValue());
+            }
+            Map<Integer, String> categorias = new HashMap<>();
+            for (Map.Entry<Integer, String> c : PlantillaJDBC.listar(conn,
+                    "SELECT id_categoria, nombre FROM categorias", ID_NOMBRE)) {
+                categorias.put(c.getKey(), c.getValue());
+            }
+            return new Datos(leer(conn, SQL_COMPRAS, false, usuarios), leer(conn, SQL_LINEAS, true, usuarios),
+                    usuarios, categorias);
+        }
+    }
+
+    /**
+     * Lee las columnas de la consulta. Las compras de usuarios borrados no se
+     * cargan, como en el INNER JOIN con usuarios de los resúmenes; las que no
+     * tienen fecha tampoco (las descarta la propia consulta).
+     */
+    private static Tabla leer(Connection conn, String sql, boolean conCategoria, Map<Integer, String> usuarios)
+            throws SQLException {
+        Tabla t = new Tabla(conCategoria);
+        try (PreparedStatement ps = conn.prepareStatement(sql);
+                ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                int idUsuario = rs.getInt(1);
+                if (!usuarios.containsKey(idUsuario)) {
+                    continue;
+                }
+                int categoria = conCategoria ? rs.getInt(3) : 0;
+                t.agregar(idUsuario, (int) rs.getTimestamp(2).toLocalDateTime().toLocalDate().toEpochDay(),
+                        categoria, Math.round(rs.getDouble(conCategoria ? 4 : 3) * 100));
+            }
+        } catch (SQLException e) {
+            Metricas.error(e);
+            throw e;
+        }
+        Metricas.filas(t.filas);
+        t.separarPorUsuario();
+        return t;
+    }
+
+    /**
+     * Columnas de compras o de líneas, ordenadas por día, y una copia de las
+     * filas de cada usuario para los informes filtrados por usuario.
+     */
+    private static final class Tabla {
+
+        int filas;
+        int[] usuario;
+        int[] dia;
+        long[] centimos;
+        int[] categoria;
+        Map<Integer, Tabla> porUsuario = Collections.emptyMap();
+
+        Tabla(boolean conCategoria) {
+            this(conCategoria, 1024);
+        }
+
+        private Tabla(boolean conCategoria, int capacidad) {
+            usuario = new int[capacidad];
+            dia = new int[capacidad];
+            centimos = new long[capacidad];
+            categoria = conCategoria ? new int[capacidad] : null;
+        }
+
+        void agregar(int idUsuario, int diaEpoch, int idCategoria, long importe) {
+            if (filas == dia.length) {
+                int capacidad = filas * 2;
+                usuario = Arrays.copyOf(usuario, capacidad);
+                dia = Arrays.copyOf(dia, capacidad);
+                centimos = Arrays.copyOf(centimos, capacidad);
+                if (categoria != null) {
+                    categoria = Arrays.copyOf(categoria, capacidad);
+                }
+            }
+            usuario[filas] = idUsuario;
+            dia[filas] = diaEpoch;
+            centimos[filas] = importe;
+            if (categoria != null) {
+                categoria[filas] = idCategoria & MASCARA_CATEGORIA;
+            }
+            filas++;
+        }
+
+        /** Reparte las filas por usuario; cada parte sigue ordenada por día. */
+        void separarPorUsuario() {
+            porUsuario = new HashMap<>();
+            for (int i = 0; i < filas; i++) {
+                porUsuario.computeIfAbsent(usuario[i], u -> new Tabla(categoria != null, 64))
+                        .agregar(usuario[i], dia[i], categoria != null ? categoria[i] : 0, centimos[i]);
+            }
+        }
+
+        /** Primera fila con día >= el indicado (o filas si no hay). */
+        int primeraFila(int desde) {
+            int bajo = 0;
+            int alto = filas;
+            while (bajo < alto) {
+                int medio = (bajo + alto) >>> 1;
+                if (dia[medio] < desde) {
+                    bajo = medio + 1;
+                } else {
+                    alto = medio;
+                }
+            }
+            return bajo;
+        }
+    }
+
+    private static final class Datos {
+
+        final Tabla compras;
+        final Tabla lineas;
+        final Map<Integer, String> usuarios;
+        final Map<Integer, String> categorias;
+        final long caducaEn;
+
+        Datos(Tabla compras, Tabla lineas, Map<Integer, String> usuarios, Map<Integer, String> categorias) {
+            this.compras = compras;
+            this.lineas = lineas;
+            this.usuarios = usuarios;
+            this.categorias = categorias;
+            this.caducaEn = System.currentTimeMillis() + CacheLectura.TTL_POR_DEFECTO;
+        }
+
+        boolean caducados() {
+            return System.currentTimeMillis() >= caducaEn;
+        }
+    }
+}
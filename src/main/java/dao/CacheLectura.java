@@ -0,0 +1,142 @@
+package dao;
+
+import config.Logger;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * Caché de lectura para tablas de referencia que cambian poco (tiendas,
+ * categorías, repartidores, roles).
+ *
+ * - La primera lectura (o la primera tras caducar) consulta la base de datos;
+ *   las siguientes se sirven desde memoria mientras no pase el TTL.
+ * - Los métodos insertar/actualizar/eliminar del DAO llaman a invalidar().
+ * - Se devuelve siempre una copia de cada objeto, porque los controladores
+ *   modifican los objetos seleccionados antes de guardarlos.
+ * - Si la consulta falla no se guarda nada y se devuelve una lista vacía,
+ *   igual que hacían los DAOs.
+ *
+ * Configuración (propiedades del sistema):
+ * - app_compras.cache.ttlMs: tiempo de vida en ms (por defecto 300000, 0 = sin caché).
+ *
+ * @author Milanes
+ */
+public final class CacheLectura<T> {
+
+    /**
+     * Consulta que rellena la caché. Puede lanzar SQLException.
+     */
+    @FunctionalInterface
+    public interface Cargador<T> {
+
+        List<T> cargar() throws SQLException;
+    }
+
+    static final long TTL_POR_DEFECTO = Long.getLong("app_compras.cache.ttlMs", 300_000L);
+
+    private final String nombre;
+    private final long ttlMs;
+    private final UnaryOperator<T> copiar;
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    // Cambia en cada invalidación; evita guardar una carga que empezó antes
+    private final AtomicLong version = new AtomicLong();
+
+    private volatile List<T> datos;
+    private volatile long caducaEn;
+
+    /**
+     * @param nombre nombre de la tabla (para el log)
+     * @param ttlMs tiempo de vida de los datos en memoria
+     * @param copiar crea una copia independiente de un elemento
+     */
+    public CacheLectura(String nombre, long ttlMs, UnaryOperator<T> copiar) {
+        this.nombre = nombre;
+        this.ttlMs = ttlMs;
+        this.copiar = copiar;
+    }
+
+    /**
+     * Devuelve una copia de los datos en caché o los carga si no hay o han
+     * caducado.
+     */
+    public List<T> obtener(Cargador<T> cargador) {
+        List<T> actuales = vigentes();
+        if (actuales != null) {
+            aciertos.incrementAndGet();
+            return copia(actuales);
+        }
+
+        synchronized (this) {
+            // Otro hilo puede haberla cargado mientras esperábamos
+            actuales = vigentes();
+            if (actuales != null) {
+                aciertos.incrementAndGet();
+                return copia(actuales);
+            }
+
+            fallos.incrementAndGet();
+            long versionInicial = version.get();
+            List<T> cargados;
+            try {
+                cargados = Collections.unmodifiableList(new ArrayList<>(cargador.cargar()));
+            } catch (SQLException e) {
+                Logger.exception("Error al cargar la caché de " + nombre + ".", e);
+                return new ArrayList<>();
+            }
+
+            if (ttlMs > 0 && version.get() == versionInicial) {
+                caducaEn = System.currentTimeMillis() + ttlMs;
+                datos = cargados;
+            }
+            return copia(cargados);
+        }
+    }
+
+    /**
+     * Descarta los datos en memoria. La siguiente lectura consulta la base de datos.
+     */
+    public void invalidar() {
+        version.incrementAndGet();
+        datos = null;
+        Logger.info(() -> "Caché de " + nombre + " invalidada.");
+    }
+
+    public long getAciertos() {
+        return aciertos.get();
+    }
+
+    public long getFallos() {
+        return fallos.get();
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheLectura[" + nombre + ", aciertos=" + aciertos.get() + ", fallos=" + fallos.get() + "]";
+    }
+
+    private List<T> vigentes() {
+        List<T> actuales = datos;
+        if (actuales != null && System.currentTimeMillis() < caducaEn) {
+            return actuales;
+        }
+        return null;
+    }
+
+    private List<T> copia(List<T> origen) {
+        List<T> resultado = new ArrayList<>(origen.size());
+        for (T elemento : origen) {
+            resultado.add(copiar.apply(elemento));
+        }
+        return resultado;
+    }
+}
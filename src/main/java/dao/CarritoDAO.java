@@ -1,11 +1,14 @@
 package dao;
 
-import config.ConexionDB;
 import config.Logger;
 import config.Session;
-import java.sql.*;
-import java.util.ArrayList;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import models.Carrito;
 
 /**
@@ -16,6 +19,48 @@ import models.Carrito;
  */
 public class CarritoDAO {
 
+    /** Línea del carrito con el nombre y el precio del producto. */
+    private static final MapeadorFilas<Carrito> CARRITO = columnas -> {
+        int id = columnas.indice("id_carrito");
+        int idUsuario = columnas.indice("id_usuario");
+        int idProducto = columnas.indice("id_producto");
+        int cantidad = columnas.indice("cantidad");
+        int fechaAgregado = columnas.indice("fecha_agregado");
+        int nombreCompra = columnas.indice("nombre_compra");
+        int producto = columnas.indice("producto");
+        int precio = columnas.indice("precio");
+        return rs -> {
+            Carrito c = new Carrito();
+            c.setIdCarrito(rs.getInt(id));
+            c.setIdUsuario(rs.getInt(idUsuario));
+            c.setIdProducto(rs.getInt(idProducto));
+            c.setCantidad(rs.getInt(cantidad));
+            c.setNombreProducto(rs.getString(producto));
+            c.setPrecioProducto(rs.getDouble(precio));
+            c.setSubtotal(c.getCantidad() * c.getPrecioProducto());
+
+            Timestamp ts = rs.getTimestamp(fechaAgregado);
+            if (ts != null) {
+                c.setFechaAgregado(ts.toLocalDateTime());
+            }
+
+            c.setNombreCompra(rs.getString(nombreCompra));
+            return c;
+        };
+    };
+
+    /** Solo el producto y la compra a la que pertenece la línea. */
+    private static final MapeadorFilas<Carrito> PRODUCTO_Y_COMPRA = columnas -> {
+        int idProducto = columnas.indice("id_producto");
+        int nombreCompra = columnas.indice("nombre_compra");
+        return rs -> {
+            Carrito c = new Carrito();
+            c.setIdProducto(rs.getInt(idProducto));
+            c.setNombreCompra(rs.getString(nombreCompra));
+            return c;
+        };
+    };
+
     /**
      * Agrega un producto al carrito del usuario logueado.
      * Si ya existe, incrementa la cantidad automáticamente.
@@ -31,17 +76,10 @@ public class CarritoDAO {
                    + "VALUES (?, ?, ?, ?) "
                    + "ON DUPLICATE KEY UPDATE cantidad = cantidad + VALUES(cantidad)";
 
-        try (Connection conn = ConexionDB.getConexion();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setInt(1, idUsuario);
-            stmt.setInt(2, carrito.getIdProducto());
-            stmt.setInt(3, carrito.getCantidad());
-            stmt.setString(4, carrito.getNombreCompra());
-
-            int filas = stmt.executeUpdate();
+        try {
+            int filas = PlantillaJDBC.actualizar(sql, idUsuario, carrito.getIdProducto(), carrito.getCantidad(), carrito.getNombreCompra());
             if (filas > 0) {
-                Logger.info("Producto agregado o actualizado en carrito (Usuario ID: "
+                Logger.info(() -> "Producto agregado o actualizado en carrito (Usuario ID: "
                         + idUsuario + ", Producto ID: " + carrito.getIdProducto()
                         + ", Cantidad: " + carrito.getCantidad()
                         + ", Compra: " + carrito.getNombreCompra() + ")");
@@ -63,15 +101,10 @@ public class CarritoDAO {
     public boolean actualizarCantidad(int idCarrito, int cantidad) {
         String sql = "UPDATE carrito SET cantidad = ? WHERE id_carrito = ?";
 
-        try (Connection conn = ConexionDB.getConexion();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setInt(1, cantidad);
-            stmt.setInt(2, idCarrito);
-
-            int filas = stmt.executeUpdate();
+        try {
+            int filas = PlantillaJDBC.actualizar(sql, cantidad, idCarrito);
             if (filas > 0) {
-                Logger.info("Cantidad actualizada correctamente (id_carrito = " + idCarrito + ")");
+                Logger.info(() -> "Cantidad actualizada correctamente (id_carrito = " + idCarrito + ")");
                 return true;
             }
 
@@ -96,14 +129,8 @@ public class CarritoDAO {
 
         String sql = "UPDATE carrito SET cantidad = ? WHERE id_usuario = ? AND id_producto = ?";
 
-        try (Connection conn = ConexionDB.getConexion();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setInt(1, nuevaCantidad);
-            stmt.setInt(2, idUsuario);
-            stmt.setInt(3, idProducto);
-
-            int filas = stmt.executeUpdate();
+        try {
+            int filas = PlantillaJDBC.actualizar(sql, nuevaCantidad, idUsuario, idProducto);
             if (filas > 0) {
                 Logger.info("Cantidad actualizada correctamente (Usuario: " + idUsuario
                         + ", Producto: " + idProducto + ", Nueva cantidad: " + nuevaCantidad + ")");
@@ -119,14 +146,11 @@ public class CarritoDAO {
     public boolean eliminarProducto(int idCarrito) {
         String sql = "DELETE FROM carrito WHERE id_carrito = ?";
 
-        try (Connection conn = ConexionDB.getConexion();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setInt(1, idCarrito);
-            int filas = stmt.executeUpdate();
+        try {
+            int filas = PlantillaJDBC.actualizar(sql, idCarrito);
 
             if (filas > 0) {
-                Logger.info("Producto eliminado del carrito (id_carrito: " + idCarrito + ")");
+                Logger.info(() -> "Producto eliminado del carrito (id_carrito: " + idCarrito + ")");
                 return true;
             }
 
@@ -146,13 +170,8 @@ public class CarritoDAO {
 
         String sql = "DELETE FROM carrito WHERE id_usuario = ? AND id_producto = ?";
 
-        try (Connection conn = ConexionDB.getConexion();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setInt(1, idUsuario);
-            stmt.setInt(2, idProducto);
-
-            int filas = stmt.executeUpdate();
+        try {
+            int filas = PlantillaJDBC.actualizar(sql, idUsuario, idProducto);
             if (filas > 0) {
                 Logger.info("Producto eliminado del carrito (Usuario ID: " + idUsuario + ", Producto ID: " + idProducto + ")");
                 return true;
@@ -169,11 +188,8 @@ public class CarritoDAO {
 
         String sql = "DELETE FROM carrito WHERE id_usuario = ?";
 
-        try (Connection conn = ConexionDB.getConexion();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setInt(1, idUsuario);
-            int filas = stmt.executeUpdate();
+        try {
+            int filas = PlantillaJDBC.actualizar(sql, idUsuario);
 
             if (filas > 0) {
                 Logger.info("Carrito vaciado correctamente (Usuario ID: " + idUsuario + ")");
@@ -186,6 +202,86 @@ public class CarritoDAO {
         return false;
     }
 
+    /**
+     * Guarda de una vez los cambios acumulados de un carrito (ver
+     * CarritoEnMemoria), en una sola transacción con dos lotes.
+     *
+     * Las cantidades son absolutas, no incrementos: repetir la misma llamada
+     * deja la tabla igual, así que se puede reintentar tras un error.
+     *
+     * Un usuario solo puede tener cada producto en una de sus compras
+     * (unique_usuario_producto). Si un producto ya está en otra compra con
+     * nombre, no se toca esa fila: se devuelve como conflicto y el resto se
+     * guarda igual.
+     *
+     * @param cantidades id_producto → cantidad final (0 = quitar del carrito)
+     * @return id_producto → nombre de la otra compra en la que ya está (vacío
+     * si no hay conflictos), o null si no se pudo guardar
+     */
+    public Map<Integer, String> guardarCambios(int idUsuario, String nombreCompra, Map<Integer, Integer> cantidades) {
+        Map<Integer, String> enOtraCompra = new LinkedHashMap<>();
+        if (cantidades.isEmpty()) {
+            return enOtraCompra;
+        }
+
+        String sqlOtrasCompras = "SELECT id_producto, nombre_compra FROM carrito "
+                               + "WHERE id_usuario = ? AND (nombre_compra IS NULL OR nombre_compra <> ?)";
+        // Si otra sesión mete el producto en otra compra entre la consulta y el lote, la fila se deja como está
+        String sqlGuardar = "INSERT INTO carrito (id_usuario, id_producto, cantidad, nombre_compra) "
+                          + "VALUES (?, ?, ?, ?) "
+                          + "ON DUPLICATE KEY UPDATE cantidad = "
+                          + "CASE WHEN nombre_compra = VALUES(nombre_compra) THEN VALUES(cantidad) ELSE cantidad END";
+        String sqlQuitar = "DELETE FROM carrito WHERE id_usuario = ? AND id_producto = ? AND nombre_compra = ?";
+
+        try (Connection conn = PlantillaJDBC.conexion()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement psGuardar = conn.prepareStatement(sqlGuardar);
+                 PreparedStatement psQuitar = conn.prepareStatement(sqlQuitar)) {
+
+                for (Carrito otra : PlantillaJDBC.listar(conn, sqlOtrasCompras, PRODUCTO_Y_COMPRA, idUsuario, nombreCompra)) {
+                    Integer cantidad = cantidades.get(otra.getIdProducto());
+                    if (cantidad != null && cantidad > 0) {
+                        enOtraCompra.put(otra.getIdProducto(), otra.getNombreCompra());
+                    }
+                }
+
+                for (Map.Entry<Integer, Integer> cambio : cantidades.entrySet()) {
+                    if (enOtraCompra.containsKey(cambio.getKey())) {
+                        continue;
+                    }
+                    if (cambio.getValue() > 0) {
+                        PlantillaJDBC.asignar(psGuardar, idUsuario, cambio.getKey(), cambio.getValue(), nombreCompra);
+                        psGuardar.addBatch();
+                    } else {
+                        PlantillaJDBC.asignar(psQuitar, idUsuario, cambio.getKey(), nombreCompra);
+                        psQuitar.addBatch();
+                    }
+                }
+                psGuardar.executeBatch();
+                psQuitar.executeBatch();
+
+                conn.commit();
+                Logger.info(() -> "Carrito '" + nombreCompra + "' guardado (Usuario ID: " + idUsuario
+                        + ", " + (cantidades.size() - enOtraCompra.size()) + " productos modificados)");
+                if (!enOtraCompra.isEmpty()) {
+                    Logger.warning("Productos que ya están en otra compra del usuario " + idUsuario
+                            + ", no se añaden a '" + nombreCompra + "': " + enOtraCompra);
+                }
+                return enOtraCompra;
+
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            Logger.exception("Error al guardar los cambios del carrito '" + nombreCompra
+                    + "' (Usuario ID: " + idUsuario + ")", e);
+        }
+        return null;
+    }
+
     // -------------------------------------------------------------------------
     // CONSULTAS EXTENDIDAS
     // -------------------------------------------------------------------------
@@ -196,39 +292,16 @@ public class CarritoDAO {
     public List<Carrito> listarPorUsuarioYNombre(int idUsuario, String nombreCompra) {
         if (idUsuario <= 0) idUsuario = Session.getUsuarioId();
 
-        List<Carrito> lista = new ArrayList<>();
-        String sql = "SELECT c.id_carrito, c.id_usuario, c.id_producto, c.cantidad, c.fecha_agregado, "
+        List<Carrito> lista = List.of();
+        String sql = "SELECT c.id_carrito, c.id_usuario, c.id_producto, c.cantidad, c.fecha_agregado, c.nombre_compra, "
                    + "p.nombre AS producto, p.precio "
                    + "FROM carrito c "
                    + "INNER JOIN productos p ON c.id_producto = p.id_producto "
                    + "WHERE c.id_usuario = ? AND c.nombre_compra = ? "
                    + "ORDER BY c.fecha_agregado ASC";
 
-        try (Connection conn = ConexionDB.getConexion();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setInt(1, idUsuario);
-            stmt.setString(2, nombreCompra);
-            ResultSet rs = stmt.executeQuery();
-
-            while (rs.next()) {
-                Carrito c = new Carrito();
-                c.setIdCarrito(rs.getInt("id_carrito"));
-                c.setIdUsuario(rs.getInt("id_usuario"));
-                c.setIdProducto(rs.getInt("id_producto"));
-                c.setCantidad(rs.getInt("cantidad"));
-                c.setNombreProducto(rs.getString("producto"));
-                c.setPrecioProducto(rs.getDouble("precio"));
-                c.setSubtotal(c.getCantidad() * c.getPrecioProducto());
-
-                Timestamp ts = rs.getTimestamp("fecha_agregado");
-                if (ts != null) {
-                    c.setFechaAgregado(ts.toLocalDateTime());
-                }
-
-                c.setNombreCompra(nombreCompra);
-                lista.add(c);
-            }
+        try {
+            lista = PlantillaJDBC.listar(sql, CARRITO, idUsuario, nombreCompra);
 
             Logger.info("Carrito cargado correctamente para usuario "
                     + idUsuario + " y compra '" + nombreCompra + "'");
@@ -250,14 +323,10 @@ public class CarritoDAO {
                    + "INNER JOIN productos p ON c.id_producto = p.id_producto "
                    + "WHERE c.id_usuario = ?";
 
-        try (Connection conn = ConexionDB.getConexion();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setInt(1, idUsuario);
-            ResultSet rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                return rs.getDouble("total");
+        try {
+            Double total = PlantillaJDBC.primero(sql, MapeadorFilas.DECIMAL, idUsuario);
+            if (total != null) {
+                return total;
             }
 
         } catch (SQLException e) {
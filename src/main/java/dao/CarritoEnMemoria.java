@@ -0,0 +1,303 @@
+package dao;
+
+import config.Logger;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import models.Carrito;
+import models.Producto;
+
+/**
+ * Carrito de una compra con nombre, en memoria y con escritura diferida.
+ *
+ * Los cambios (añadir, quitar, vaciar) se aplican al momento sobre las líneas
+ * en memoria y el total se actualiza con la diferencia, sin consultar la
+ * base. Solo se anota qué productos cambiaron; volcar() guarda su cantidad
+ * final con CarritoDAO.guardarCambios en una sola transacción. Así varios
+ * clics sobre el mismo producto acaban en una sola fila escrita.
+ *
+ * Si se le asigna un DiarioCarrito, cada cambio se anota también en el
+ * diario local, para recuperar la compra si la aplicación se cierra antes de
+ * volcarla (ver restaurar).
+ *
+ * Quien lo usa decide cuándo volcar: CarritoController lo hace poco después
+ * del último cambio, antes de confirmar la compra y al salir de la vista. Lo
+ * que quede pendiente al cerrar la aplicación se guarda con volcarTodos().
+ *
+ * Los cambios se hacen desde el hilo de JavaFX y volcar() desde un hilo de
+ * fondo (TareasBD), por eso el acceso a las líneas está sincronizado.
+ *
+ * @author Milanes
+ */
+public class CarritoEnMemoria {
+
+    // Carritos con cambios sin guardar (para volcarTodos al cerrar)
+    private static final Set<CarritoEnMemoria> CON_PENDIENTES = ConcurrentHashMap.newKeySet();
+
+    private final CarritoDAO carritoDAO = new CarritoDAO();
+    private final int idUsuario;
+    private final String nombreCompra;
+
+    // id_producto → línea, en el orden en que se añadieron
+    private final Map<Integer, Carrito> lineas = new LinkedHashMap<>();
+    // Productos cuya cantidad cambió desde el último volcado
+    private final Set<Integer> pendientes = new LinkedHashSet<>();
+    // Total en céntimos: sumar y restar en double acumularía errores de redondeo
+    private long totalCentimos = 0;
+    // Productos que un volcado no guardó por estar ya en otra compra (nombre → compra)
+    private final Map<String, String> enOtraCompra = new LinkedHashMap<>();
+
+    // Un volcado cada vez, en el orden en que se piden
+    private final Object volcando = new Object();
+
+    private DiarioCarrito diario;
+
+    public CarritoEnMemoria(int idUsuario, String nombreCompra) {
+        this.idUsuario = idUsuario;
+        this.nombreCompra = nombreCompra;
+    }
+
+    public int getIdUsuario() {
+        return idUsuario;
+    }
+
+    public String getNombreCompra() {
+        return nombreCompra;
+    }
+
+    /**
+     * Diario en el que anotar los cambios a partir de ahora (null para
+     * ninguno).
+     */
+    public synchronized void setDiario(DiarioCarrito diario) {
+        this.diario = diario;
+    }
+
+    // ============================================================
+    // CARGA
+    // ============================================================
+    /**
+     * Carga las líneas guardadas en la base (una consulta). Los cambios sin
+     * volcar se mantienen sobre lo leído.
+     *
+     * @return copia de las líneas
+     */
+    public List<Carrito> cargar() {
+        List<Carrito> guardadas = carritoDAO.listarPorUsuarioYNombre(idUsuario, nombreCompra);
+        synchronized (this) {
+            Map<Integer, Carrito> locales = new LinkedHashMap<>(lineas);
+            lineas.clear();
+            for (Carrito c : guardadas) {
+                if (!pendientes.contains(c.getIdProducto())) {
+                    lineas.put(c.getIdProducto(), c);
+                }
+            }
+            for (Integer idProducto : pendientes) {
+                Carrito local = locales.get(idProducto);
+                if (local != null) {
+                    lineas.put(idProducto, local);
+                }
+            }
+            recalcularTotal();
+            return getLineas();
+        }
+    }
+
+    /**
+     * Recupera las líneas de un diario (DiarioCarrito.getLineas) como cambios
+     * pendientes de volcar; las de cantidad 0 se borrarán de la base. Se
+     * llama antes de cargar(), que las mantiene sobre lo que haya guardado.
+     */
+    public synchronized void restaurar(List<Carrito> recuperadas) {
+        for (Carrito linea : recuperadas) {
+            lineas.remove(linea.getIdProducto());
+            if (linea.getCantidad() > 0) {
+                linea.setNombreCompra(nombreCompra);
+                lineas.put(linea.getIdProducto(), linea);
+            }
+            pendientes.add(linea.getIdProducto());
+        }
+        if (!pendientes.isEmpty()) {
+            CON_PENDIENTES.add(this);
+        }
+        recalcularTotal();
+    }
+
+    // ============================================================
+    // CAMBIOS EN MEMORIA
+    // ============================================================
+    /**
+     * Suma la cantidad al producto (o lo añade si no estaba).
+     *
+     * @return la línea del producto, ya actualizada
+     */
+    public synchronized Carrito agregar(Producto producto, int cantidad) {
+        if (cantidad <= 0) {
+            throw new IllegalArgumentException("La cantidad debe ser mayor que 0: " + cantidad);
+        }
+
+        Carrito linea = lineas.get(producto.getIdProducto());
+        if (linea == null) {
+            linea = new Carrito(idUsuario, producto.getIdProducto(), 0);
+            linea.setNombreProducto(producto.getNombre());
+            linea.setPrecioProducto(producto.getPrecio());
+            linea.setNombreCompra(nombreCompra);
+            linea.setFechaAgregado(LocalDateTime.now());
+            lineas.put(producto.getIdProducto(), linea);
+        }
+        cambiarCantidad(linea, linea.getCantidad() + cantidad);
+        return linea;
+    }
+
+    /**
+     * Quita el producto del carrito.
+     *
+     * @return false si no estaba
+     */
+    public synchronized boolean quitar(int idProducto) {
+        Carrito linea = lineas.remove(idProducto);
+        if (linea == null) {
+            return false;
+        }
+        cambiarCantidad(linea, 0);
+        return true;
+    }
+
+    /**
+     * Quita todos los productos del carrito.
+     */
+    public synchronized void vaciar() {
+        for (Carrito linea : lineas.values()) {
+            cambiarCantidad(linea, 0);
+        }
+        lineas.clear();
+        totalCentimos = 0;
+    }
+
+    public synchronized List<Carrito> getLineas() {
+        return new ArrayList<>(lineas.values());
+    }
+
+    public synchronized boolean estaVacio() {
+        return lineas.isEmpty();
+    }
+
+    public synchronized double getTotal() {
+        return totalCentimos / 100.0;
+    }
+
+    public synchronized boolean hayPendientes() {
+        return !pendientes.isEmpty();
+    }
+
+    public synchronized boolean hayEnOtraCompra() {
+        return !enOtraCompra.isEmpty();
+    }
+
+    /**
+     * Devuelve y olvida los productos que no se guardaron por estar ya en
+     * otra compra del usuario (nombre del producto → nombre de esa compra).
+     * Sus líneas ya se quitaron de este carrito.
+     */
+    public synchronized Map<String, String> tomarEnOtraCompra() {
+        Map<String, String> copia = new LinkedHashMap<>(enOtraCompra);
+        enOtraCompra.clear();
+        return copia;
+    }
+
+    private void cambiarCantidad(Carrito linea, int cantidad) {
+        long precio = centimos(linea.getPrecioProducto());
+        totalCentimos += (cantidad - linea.getCantidad()) * precio;
+        linea.setCantidad(cantidad);
+        linea.setSubtotal(cantidad * precio / 100.0);
+
+        pendientes.add(linea.getIdProducto());
+        CON_PENDIENTES.add(this);
+
+        if (diario != null) {
+            diario.anotarLinea(linea);
+        }
+    }
+
+    private void recalcularTotal() {
+        totalCentimos = 0;
+        for (Carrito linea : lineas.values()) {
+            totalCentimos += linea.getCantidad() * centimos(linea.getPrecioProducto());
+        }
+    }
+
+    private static long centimos(double euros) {
+        return Math.round(euros * 100);
+    }
+
+    // ============================================================
+    // VOLCADO A LA BASE DE DATOS
+    // ============================================================
+    /**
+     * Guarda en la base los productos cambiados desde el último volcado (su
+     * cantidad actual; 0 los borra). Se llama fuera del hilo de JavaFX.
+     *
+     * Si falla, los cambios siguen pendientes para el siguiente intento. Los
+     * productos que ya estaban en otra compra del usuario se quitan de este
+     * carrito y se pueden consultar con tomarEnOtraCompra().
+     *
+     * @return true si no queda nada pendiente de lo que había al empezar
+     */
+    public boolean volcar() {
+        synchronized (volcando) {
+            Map<Integer, Integer> cantidades = new LinkedHashMap<>();
+            synchronized (this) {
+                for (Integer idProducto : pendientes) {
+                    Carrito linea = lineas.get(idProducto);
+                    cantidades.put(idProducto, linea != null ? linea.getCantidad() : 0);
+                }
+                pendientes.clear();
+            }
+
+            Map<Integer, String> rechazados = carritoDAO.guardarCambios(idUsuario, nombreCompra, cantidades);
+            if (rechazados != null) {
+                synchronized (this) {
+                    for (Map.Entry<Integer, String> rechazado : rechazados.entrySet()) {
+                        Carrito linea = lineas.remove(rechazado.getKey());
+                        if (linea != null) {
+                            totalCentimos -= linea.getCantidad() * centimos(linea.getPrecioProducto());
+                            enOtraCompra.put(linea.getNombreProducto(), rechazado.getValue());
+                            if (diario != null) {
+                                linea.setCantidad(0);
+                                diario.anotarLinea(linea);
+                            }
+                        }
+                    }
+                    if (pendientes.isEmpty()) {
+                        CON_PENDIENTES.remove(this);
+                    }
+                }
+                return true;
+            }
+
+            // Se guardará la cantidad que tengan en el próximo volcado
+            synchronized (this) {
+                pendientes.addAll(cantidades.keySet());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Vuelca todos los carritos con cambios sin guardar (al cerrar la
+     * aplicación).
+     */
+    public static void volcarTodos() {
+        for (CarritoEnMemoria carrito : new ArrayList<>(CON_PENDIENTES)) {
+            if (!carrito.volcar()) {
+                Logger.error("No se pudieron guardar los cambios del carrito '" + carrito.nombreCompra
+                        + "' (Usuario ID: " + carrito.idUsuario + ")");
+            }
+        }
+    }
+}
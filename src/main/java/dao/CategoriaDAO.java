@@ -1,8 +1,7 @@
 package dao;
 
-import config.ConexionDB;
 import config.Logger;
-import java.sql.*;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import models.Categoria;
@@ -15,6 +14,17 @@ import models.Categoria;
  */
 public class CategoriaDAO {
 
+    // Caché compartida de listarTodas()
+    static final CacheLectura<Categoria> CACHE = new CacheLectura<>("categorías", CacheLectura.TTL_POR_DEFECTO,
+            c -> new Categoria(c.getIdCategoria(), c.getNombre(), c.getDescripcion()));
+
+    private static final MapeadorFilas<Categoria> CATEGORIA = columnas -> {
+        int id = columnas.indice("id_categoria");
+        int nombre = columnas.indice("nombre");
+        int descripcion = columnas.indice("descripcion");
+        return rs -> new Categoria(rs.getInt(id), rs.getString(nombre), rs.getString(descripcion));
+    };
+
     /**
      * Inserta una nueva categoría en la base de datos.
      *
@@ -23,14 +33,11 @@ public class CategoriaDAO {
      */
     public boolean insertar(Categoria categoria) {
         String sql = "INSERT INTO categorias (nombre, descripcion) VALUES (?, ?)";
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setString(1, categoria.getNombre());
-            ps.setString(2, categoria.getDescripcion());
-
-            int filas = ps.executeUpdate();
+        try {
+            int filas = PlantillaJDBC.actualizar(sql, categoria.getNombre(), categoria.getDescripcion());
             if (filas > 0) {
-                Logger.info("Categoría insertada correctamente: " + categoria.getNombre());
+                Logger.info(() -> "Categoría insertada correctamente: " + categoria.getNombre());
+                CACHE.invalidar();
                 return true;
             }
         } catch (SQLException e) {
@@ -47,15 +54,13 @@ public class CategoriaDAO {
      */
     public boolean actualizar(Categoria categoria) {
         String sql = "UPDATE categorias SET nombre = ?, descripcion = ? WHERE id_categoria = ?";
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setString(1, categoria.getNombre());
-            ps.setString(2, categoria.getDescripcion());
-            ps.setInt(3, categoria.getIdCategoria());
-
-            int filas = ps.executeUpdate();
+        try {
+            int filas = PlantillaJDBC.actualizar(sql, categoria.getNombre(), categoria.getDescripcion(),
+                    categoria.getIdCategoria());
             if (filas > 0) {
-                Logger.info("Categoría actualizada correctamente: " + categoria.getNombre());
+                Logger.info(() -> "Categoría actualizada correctamente: " + categoria.getNombre());
+                CACHE.invalidar();
+                AnaliticaGastos.invalidar();
                 return true;
             }
         } catch (SQLException e) {
@@ -65,19 +70,21 @@ public class CategoriaDAO {
     }
 
     /**
-     * Elimina una categoría por su ID.
+     * Elimina una categoría por su ID. Sus productos quedan sin categoría
+     * (SET NULL), y su gasto pasa a "sin categoría" en los resúmenes
+     * mensuales.
      *
      * @param id ID de la categoría a eliminar.
      * @return true si se eliminó correctamente, false si ocurrió un error.
      */
     public boolean eliminar(int id) {
         String sql = "DELETE FROM categorias WHERE id_categoria = ?";
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setInt(1, id);
-            int filas = ps.executeUpdate();
+        try {
+            int filas = ResumenGastosDAO.actualizarProductos("p.id_categoria = ?", new Object[]{id}, sql, id);
             if (filas > 0) {
-                Logger.info("Categoría eliminada correctamente (ID: " + id + ")");
+                Logger.info(() -> "Categoría eliminada correctamente (ID: " + id + ")");
+                CACHE.invalidar();
+                AnaliticaGastos.invalidar();
                 return true;
             }
         } catch (SQLException e) {
@@ -94,18 +101,8 @@ public class CategoriaDAO {
      */
     public Categoria obtenerPorId(int id) {
         String sql = "SELECT * FROM categorias WHERE id_categoria = ?";
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setInt(1, id);
-            ResultSet rs = ps.executeQuery();
-
-            if (rs.next()) {
-                Categoria c = new Categoria();
-                c.setIdCategoria(rs.getInt("id_categoria"));
-                c.setNombre(rs.getString("nombre"));
-                c.setDescripcion(rs.getString("descripcion"));
-                return c;
-            }
+        try {
+            return PlantillaJDBC.primero(sql, CATEGORIA, id);
         } catch (SQLException e) {
             Logger.exception("Error al obtener la categoría con ID: " + id, e);
         }
@@ -120,18 +117,8 @@ public class CategoriaDAO {
      */
     public Categoria obtenerPorNombre(String nombre) {
         String sql = "SELECT * FROM categorias WHERE nombre = ?";
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setString(1, nombre);
-            ResultSet rs = ps.executeQuery();
-
-            if (rs.next()) {
-                Categoria c = new Categoria();
-                c.setIdCategoria(rs.getInt("id_categoria"));
-                c.setNombre(rs.getString("nombre"));
-                c.setDescripcion(rs.getString("descripcion"));
-                return c;
-            }
+        try {
+            return PlantillaJDBC.primero(sql, CATEGORIA, nombre);
         } catch (SQLException e) {
             Logger.exception("Error al obtener la categoría con nombre: " + nombre, e);
         }
@@ -139,29 +126,17 @@ public class CategoriaDAO {
     }
 
     /**
-     * Lista todas las categorías registradas.
+     * Lista todas las categorías registradas. Se sirve desde la caché.
      *
      * @return Lista de objetos Categoria.
      */
     public List<Categoria> listarTodas() {
-        List<Categoria> lista = new ArrayList<>();
-        String sql = "SELECT * FROM categorias ORDER BY nombre ASC";
-
-        try (Connection conn = ConexionDB.getConexion(); Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
-
-            while (rs.next()) {
-                Categoria c = new Categoria();
-                c.setIdCategoria(rs.getInt("id_categoria"));
-                c.setNombre(rs.getString("nombre"));
-                c.setDescripcion(rs.getString("descripcion"));
-                lista.add(c);
-            }
+        return CACHE.obtener(() -> {
+            List<Categoria> lista = PlantillaJDBC.listar("SELECT * FROM categorias ORDER BY nombre ASC", CATEGORIA);
 
-            Logger.info("Listado de categorías obtenido correctamente. Total: " + lista.size());
-        } catch (SQLException e) {
-            Logger.exception("Error al listar las categorías.", e);
-        }
-        return lista;
+            Logger.info(() -> "Listado de categorías obtenido correctamente. Total: " + lista.size());
+            return lista;
+        });
     }
 
     /**
@@ -170,19 +145,15 @@ public class CategoriaDAO {
      * @return Lista de nombres de categorías.
      */
     public List<String> obtenerNombresCategorias() {
-        List<String> nombres = new ArrayList<>();
         String sql = "SELECT nombre FROM categorias ORDER BY nombre ASC";
 
-        try (Connection conn = ConexionDB.getConexion(); Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
-
-            while (rs.next()) {
-                nombres.add(rs.getString("nombre"));
-            }
-
-            Logger.info("Lista de nombres de categorías cargada correctamente (" + nombres.size() + " resultados).");
+        try {
+            List<String> nombres = PlantillaJDBC.listar(sql, MapeadorFilas.TEXTO);
+            Logger.info(() -> "Lista de nombres de categorías cargada correctamente (" + nombres.size() + " resultados).");
+            return nombres;
         } catch (SQLException e) {
             Logger.exception("Error al obtener los nombres de las categorías.", e);
         }
-        return nombres;
+        return new ArrayList<>();
     }
 }
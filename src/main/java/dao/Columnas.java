@@ -0,0 +1,50 @@
+package dao;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Índices de las columnas de un ResultSet por etiqueta (alias o nombre),
+ * resueltos una sola vez a partir de sus metadatos.
+ *
+ * Igual que ResultSet.findColumn: sin distinguir mayúsculas y, si dos columnas
+ * tienen la misma etiqueta, gana la primera.
+ *
+ * @author Milanes
+ */
+final class Columnas {
+
+    private final Map<String, Integer> indices;
+
+    Columnas(ResultSetMetaData meta) throws SQLException {
+        int total = meta.getColumnCount();
+        indices = new HashMap<>(total * 2);
+        for (int i = 1; i <= total; i++) {
+            indices.putIfAbsent(meta.getColumnLabel(i).toLowerCase(Locale.ROOT), i);
+        }
+    }
+
+    /**
+     * Índice (desde 1) de la columna con esa etiqueta.
+     *
+     * @throws SQLException si la consulta no devuelve esa columna
+     */
+    int indice(String etiqueta) throws SQLException {
+        Integer indice = indices.get(etiqueta.toLowerCase(Locale.ROOT));
+        if (indice == null) {
+            throw new SQLException("La consulta no devuelve la columna '" + etiqueta + "'.");
+        }
+        return indice;
+    }
+
+    /**
+     * Índice de la columna o 0 si la consulta no la devuelve (para mapeadores
+     * compartidos por consultas con columnas opcionales).
+     */
+    int indiceOpcional(String etiqueta) {
+        return indices.getOrDefault(etiqueta.toLowerCase(Locale.ROOT), 0);
+    }
+}
@@ -1,16 +1,71 @@
 package dao;
 
-import config.ConexionDB;
 import config.Logger;
 import config.Session;
-import java.sql.*;
-import java.util.ArrayList;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import models.Carrito;
 import models.Compra;
 
 public class CompraDAO {
 
+    /** Compra con el nombre de su tienda (sin usuario). */
+    private static final MapeadorFilas<Compra> COMPRA = columnas -> {
+        int id = columnas.indice("id_compra");
+        int nombre = columnas.indice("nombre");
+        int fecha = columnas.indice("fecha_compra");
+        int total = columnas.indice("total");
+        int idTienda = columnas.indice("id_tienda");
+        int tienda = columnas.indice("tienda");
+        return rs -> {
+            Compra compra = new Compra();
+            compra.setIdCompra(rs.getInt(id));
+            compra.setIdTienda(rs.getInt(idTienda));
+            compra.setNombre(rs.getString(nombre));
+            compra.setNombreTienda(rs.getString(tienda));
+            compra.setFechaCompra(rs.getTimestamp(fecha).toLocalDateTime());
+            compra.setTotal(rs.getDouble(total));
+            return compra;
+        };
+    };
+
+    /** Línea del carrito tal y como se va a comprar: producto, cantidad, precio actual y categoría. */
+    private static final MapeadorFilas<LineaCheckout> LINEA_CHECKOUT = columnas -> {
+        int idProducto = columnas.indice("id_producto");
+        int cantidad = columnas.indice("cantidad");
+        int precio = columnas.indice("precio");
+        int idCategoria = columnas.indice("id_categoria");
+        return rs -> new LineaCheckout(rs.getInt(idProducto), rs.getInt(cantidad),
+                rs.getBigDecimal(precio), rs.getInt(idCategoria));
+    };
+
+    private static final class LineaCheckout {
+
+        final int idProducto;
+        final int cantidad;
+        final BigDecimal precio;
+        final int idCategoria;
+
+        LineaCheckout(int idProducto, int cantidad, BigDecimal precio, int idCategoria) {
+            this.idProducto = idProducto;
+            this.cantidad = cantidad;
+            this.precio = precio;
+            this.idCategoria = idCategoria;
+        }
+
+        /** Igual que la columna generada listado_de_compras.subtotal. */
+        BigDecimal subtotal() {
+            return precio.multiply(BigDecimal.valueOf(cantidad));
+        }
+    }
+
     /**
      * Registra una compra y sus productos en la base de datos.
      *
@@ -20,14 +75,24 @@ public class CompraDAO {
      * @return true si la compra fue registrada correctamente
      */
     public boolean registrarCompra(Integer idTienda, String nombreCompra, List<Carrito> carrito) {
-        int idUsuario = Session.getUsuarioId();
+        return registrarCompra(Session.getUsuarioId(), idTienda, nombreCompra, carrito);
+    }
+
+    /**
+     * Igual que registrarCompra(idTienda, nombreCompra, carrito) pero para el
+     * usuario indicado, sin depender de la sesión (que es una sola para toda
+     * la aplicación).
+     *
+     * @param idUsuario ID del usuario que compra
+     */
+    public boolean registrarCompra(int idUsuario, Integer idTienda, String nombreCompra, List<Carrito> carrito) {
         if (idUsuario <= 0) {
             Logger.warning("Intento de registrar compra sin usuario logueado.");
             return false;
         }
 
         if (carrito == null || carrito.isEmpty()) {
-            Logger.warning("Intento de registrar compra con carrito vacío (Usuario ID: " + idUsuario + ")");
+            Logger.warning(() -> "Intento de registrar compra con carrito vacío (Usuario ID: " + idUsuario + ")");
             return false;
         }
 
@@ -37,54 +102,43 @@ public class CompraDAO {
         String sqlListadoCompra = "INSERT INTO listado_de_compras (id_compra, id_producto, cantidad, precio_unitario) VALUES (?, ?, ?, ?)";
 
         Connection conn = null;
-        PreparedStatement psCompra = null;
-        PreparedStatement psListadoCompra = null;
-        ResultSet rs = null;
+
+        // Nunca con la transacción abierta: la migración de los resúmenes puede estar en marcha
+        ResumenGastosDAO.esperarMigraciones();
 
         try {
-            conn = ConexionDB.getConexion();
+            conn = PlantillaJDBC.conexion();
             conn.setAutoCommit(false);
 
-            // Insertar la compra principal
-            psCompra = conn.prepareStatement(sqlCompra, Statement.RETURN_GENERATED_KEYS);
-            psCompra.setInt(1, idUsuario);
-
-            if (idTienda != null) {
-                psCompra.setInt(2, idTienda);
-            } else {
-                psCompra.setNull(2, Types.INTEGER);
-            }
-
-            psCompra.setString(3, nombreCompra != null ? nombreCompra : "Compra sin nombre");
-            psCompra.setDouble(4, total);
-            psCompra.executeUpdate();
-
-            // Obtener el id_compra generado
-            rs = psCompra.getGeneratedKeys();
-            int idCompra = 0;
-            if (rs.next()) {
-                idCompra = rs.getInt(1);
-            }
+            // Insertar la compra principal y obtener el id_compra generado
+            int idCompra = PlantillaJDBC.insertar(conn, sqlCompra, idUsuario, idTienda,
+                    nombreCompra != null ? nombreCompra : "Compra sin nombre", total);
 
-            if (idCompra == 0) {
+            if (idCompra <= 0) {
                 Logger.error("No se pudo obtener el ID de la compra generada.");
                 conn.rollback();
                 return false;
             }
 
             // Insertar los registros en listado_de_compras
-            psListadoCompra = conn.prepareStatement(sqlListadoCompra);
-            for (Carrito c : carrito) {
-                psListadoCompra.setInt(1, idCompra);
-                psListadoCompra.setInt(2, c.getIdProducto());
-                psListadoCompra.setInt(3, c.getCantidad());
-                psListadoCompra.setDouble(4, c.getPrecioProducto());
-                psListadoCompra.addBatch();
+            try (PreparedStatement psListadoCompra = conn.prepareStatement(sqlListadoCompra)) {
+                for (Carrito c : carrito) {
+                    psListadoCompra.setInt(1, idCompra);
+                    psListadoCompra.setInt(2, c.getIdProducto());
+                    psListadoCompra.setInt(3, c.getCantidad());
+                    psListadoCompra.setDouble(4, c.getPrecioProducto());
+                    psListadoCompra.addBatch();
+                }
+                psListadoCompra.executeBatch();
             }
-            psListadoCompra.executeBatch();
+
+            // Sumar la compra a los resúmenes de gastos (misma transacción; si aún
+            // no existen, se reconstruyen más tarde)
+            ResumenGastosDAO.registrarCompra(conn, idCompra);
 
             // Confirmar la transacción
             conn.commit();
+            AnaliticaGastos.invalidar();
             Logger.info("Compra registrada correctamente (ID: " + idCompra
                     + ", Usuario ID: " + idUsuario
                     + ", Tienda ID: " + (idTienda != null ? idTienda : "NULL")
@@ -102,9 +156,6 @@ public class CompraDAO {
             Logger.exception("Error SQL al registrar compra", e);
         } finally {
             try {
-                if (rs != null) rs.close();
-                if (psCompra != null) psCompra.close();
-                if (psListadoCompra != null) psListadoCompra.close();
                 if (conn != null) conn.setAutoCommit(true);
                 if (conn != null) conn.close();
             } catch (SQLException e) {
@@ -118,7 +169,7 @@ public class CompraDAO {
      * Devuelve todas las compras de un usuario determinado.
      */
     public List<Compra> listarComprasPorUsuario(int idUsuario) {
-        List<Compra> lista = new ArrayList<>();
+        List<Compra> lista = List.of();
 
         String sql = "SELECT c.id_compra, c.nombre, c.fecha_compra, c.total, c.id_tienda, t.nombre AS tienda "
                    + "FROM compras c "
@@ -126,25 +177,11 @@ public class CompraDAO {
                    + "WHERE c.id_usuario = ? "
                    + "ORDER BY c.fecha_compra DESC";
 
-        try (Connection conn = ConexionDB.getConexion();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setInt(1, idUsuario);
-            ResultSet rs = stmt.executeQuery();
-
-            while (rs.next()) {
-                Compra compra = new Compra();
-                compra.setIdCompra(rs.getInt("id_compra"));
-                compra.setIdUsuario(idUsuario);
-                compra.setIdTienda(rs.getInt("id_tienda"));
-                compra.setNombre(rs.getString("nombre"));
-                compra.setNombreTienda(rs.getString("tienda"));
-                compra.setFechaCompra(rs.getTimestamp("fecha_compra").toLocalDateTime());
-                compra.setTotal(rs.getDouble("total"));
-                lista.add(compra);
-            }
+        try {
+            lista = PlantillaJDBC.listar(sql, COMPRA, idUsuario);
+            lista.forEach(compra -> compra.setIdUsuario(idUsuario));
 
-            Logger.info("Compras cargadas correctamente para usuario ID: " + idUsuario);
+            Logger.info(() -> "Compras cargadas correctamente para usuario ID: " + idUsuario);
 
         } catch (SQLException e) {
             Logger.exception("Error al listar compras por usuario", e);
@@ -159,12 +196,10 @@ public class CompraDAO {
     public double calcularTotalGeneral() {
         String sql = "SELECT SUM(total) AS total_general FROM compras";
 
-        try (Connection conn = ConexionDB.getConexion();
-             PreparedStatement stmt = conn.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-
-            if (rs.next()) {
-                return rs.getDouble("total_general");
+        try {
+            Double total = PlantillaJDBC.primero(sql, MapeadorFilas.DECIMAL);
+            if (total != null) {
+                return total;
             }
 
         } catch (SQLException e) {
@@ -183,15 +218,15 @@ public class CompraDAO {
                    + "GROUP BY u.id_usuario "
                    + "ORDER BY gasto_total DESC LIMIT 1";
 
-        try (Connection conn = ConexionDB.getConexion();
-             PreparedStatement stmt = conn.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-
-            if (rs.next()) {
-                String nombre = rs.getString("nombre");
-                double gasto = rs.getDouble("gasto_total");
-                Logger.info("Usuario con mayor gasto: " + nombre + " (" + gasto + " €)");
-                return nombre + " (" + gasto + " €)";
+        try {
+            String resultado = PlantillaJDBC.primero(sql, columnas -> {
+                int nombre = columnas.indice("nombre");
+                int gasto = columnas.indice("gasto_total");
+                return rs -> rs.getString(nombre) + " (" + rs.getDouble(gasto) + " €)";
+            });
+            if (resultado != null) {
+                Logger.info(() -> "Usuario con mayor gasto: " + resultado);
+                return resultado;
             }
 
         } catch (SQLException e) {
@@ -207,14 +242,10 @@ public class CompraDAO {
     public double calcularTotalPorUsuario(int idUsuario) {
         String sql = "SELECT SUM(total) AS total_usuario FROM compras WHERE id_usuario = ?";
 
-        try (Connection conn = ConexionDB.getConexion();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setInt(1, idUsuario);
-            ResultSet rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                return rs.getDouble("total_usuario");
+        try {
+            Double total = PlantillaJDBC.primero(sql, MapeadorFilas.DECIMAL, idUsuario);
+            if (total != null) {
+                return total;
             }
 
         } catch (SQLException e) {
@@ -224,53 +255,138 @@ public class CompraDAO {
     }
 
     /**
-     * Realiza una compra completa desde el carrito filtrando solo la lista activa.
+     * Realiza una compra completa desde el carrito filtrando solo la lista
+     * activa. Todo ocurre en una única transacción y conexión: leer las
+     * líneas (con precio y categoría), vaciarlas del carrito, insertar la
+     * compra y su detalle en lote y sumar la compra a los resúmenes de gastos.
+     * Si algo falla no queda nada a medias: ni compra sin detalle ni carrito
+     * vaciado sin compra.
+     *
+     * Si otra confirmación de la misma lista se adelanta, el borrado del
+     * carrito espera a que termine y no encuentra las líneas leídas; entonces
+     * se deshace todo para no registrar la compra dos veces.
+     *
+     * @return la compra registrada (con su ID, fecha y total) o null si no se
+     * pudo registrar
      */
-    public boolean realizarCompraDesdeCarrito(int idUsuario, int idTienda, String nombreCompra) {
+    public Compra realizarCompraDesdeCarrito(int idUsuario, int idTienda, String nombreCompra) {
         if (idUsuario <= 0) {
             idUsuario = Session.getUsuarioId();
         }
 
         if (idUsuario <= 0) {
             Logger.warning("Intento de realizar compra sin usuario logueado.");
-            return false;
+            return null;
         }
 
-        CarritoDAO carritoDAO = new CarritoDAO();
-        // 🔹 Ahora solo obtiene los productos del carrito con ese nombre de compra
-        List<Carrito> carrito = carritoDAO.listarPorUsuarioYNombre(idUsuario, nombreCompra);
+        // FOR UPDATE: las líneas (y el precio de sus productos) quedan bloqueadas
+        // hasta el commit, así nadie cambia el carrito entre leerlo y vaciarlo
+        String sqlLineas = "SELECT c.id_producto, c.cantidad, p.precio, COALESCE(p.id_categoria, 0) AS id_categoria "
+                + "FROM carrito c "
+                + "INNER JOIN productos p ON c.id_producto = p.id_producto "
+                + "WHERE c.id_usuario = ? AND c.nombre_compra = ? "
+                + "ORDER BY c.fecha_agregado ASC "
+                + "FOR UPDATE";
+        String sqlVaciar = "DELETE FROM carrito WHERE id_usuario = ? AND nombre_compra = ?";
+        String sqlCompra = "INSERT INTO compras (id_usuario, id_tienda, nombre, fecha_compra, total) VALUES (?, ?, ?, ?, ?)";
+        String sqlListadoCompra = "INSERT INTO listado_de_compras (id_compra, id_producto, cantidad, precio_unitario) VALUES (?, ?, ?, ?)";
 
-        if (carrito == null || carrito.isEmpty()) {
-            Logger.warning("Intento de realizar compra con carrito vacío o sin nombre válido (Usuario ID: " + idUsuario + ", Nombre: " + nombreCompra + ")");
-            return false;
-        }
+        Connection conn = null;
+
+        // Como en registrarCompra: antes de abrir la transacción
+        ResumenGastosDAO.esperarMigraciones();
 
         try {
-            boolean compraRegistrada = registrarCompra(idTienda, nombreCompra, carrito);
-
-            if (compraRegistrada) {
-                // 🔹 Solo elimina del carrito los productos de esa compra específica
-                String sqlEliminar = "DELETE FROM carrito WHERE id_usuario = ? AND nombre_compra = ?";
-                try (Connection conn = ConexionDB.getConexion();
-                     PreparedStatement stmt = conn.prepareStatement(sqlEliminar)) {
-                    stmt.setInt(1, idUsuario);
-                    stmt.setString(2, nombreCompra);
-                    stmt.executeUpdate();
-                }
+            conn = PlantillaJDBC.conexion();
+            conn.setAutoCommit(false);
 
-                Logger.info("Compra '" + nombreCompra + "' confirmada y productos eliminados del carrito "
-                        + "(Usuario ID: " + idUsuario + ", Tienda ID: " + idTienda + ")");
-                return true;
-            } else {
-                Logger.warning("Error al registrar la compra desde carrito "
-                        + "(Usuario ID: " + idUsuario + ", Tienda ID: " + idTienda + ")");
+            List<LineaCheckout> lineas = PlantillaJDBC.listar(conn, sqlLineas, LINEA_CHECKOUT, idUsuario, nombreCompra);
+            if (lineas.isEmpty()) {
+                conn.rollback();
+                Logger.warning("Intento de realizar compra con carrito vacío o sin nombre válido (Usuario ID: "
+                        + idUsuario + ", Nombre: " + nombreCompra + ")");
+                return null;
             }
 
-        } catch (Exception e) {
+            // 🔹 Solo elimina del carrito los productos de esa compra específica
+            int borradas = PlantillaJDBC.actualizar(conn, sqlVaciar, idUsuario, nombreCompra);
+            if (borradas != lineas.size()) {
+                conn.rollback();
+                Logger.warning("El carrito '" + nombreCompra + "' cambió durante la confirmación (Usuario ID: "
+                        + idUsuario + "). Compra cancelada.");
+                return null;
+            }
+
+            BigDecimal total = BigDecimal.ZERO;
+            Map<Integer, BigDecimal> gastoPorCategoria = new HashMap<>();
+            for (LineaCheckout linea : lineas) {
+                BigDecimal subtotal = linea.subtotal();
+                total = total.add(subtotal);
+                gastoPorCategoria.merge(linea.idCategoria, subtotal, BigDecimal::add);
+            }
+
+            // La fecha se fija aquí (sin fracciones, como la guarda DATETIME) para no tener que releerla
+            LocalDateTime fecha = LocalDateTime.now().withNano(0);
+            String nombre = nombreCompra != null ? nombreCompra : "Compra sin nombre";
+            int idCompra = PlantillaJDBC.insertar(conn, sqlCompra, idUsuario, idTienda, nombre,
+                    Timestamp.valueOf(fecha), total);
+
+            if (idCompra <= 0) {
+                Logger.error("No se pudo obtener el ID de la compra generada.");
+                conn.rollback();
+                return null;
+            }
+
+            try (PreparedStatement psListadoCompra = conn.prepareStatement(sqlListadoCompra)) {
+                for (LineaCheckout linea : lineas) {
+                    psListadoCompra.setInt(1, idCompra);
+                    psListadoCompra.setInt(2, linea.idProducto);
+                    psListadoCompra.setInt(3, linea.cantidad);
+                    psListadoCompra.setBigDecimal(4, linea.precio);
+                    psListadoCompra.addBatch();
+                }
+                psListadoCompra.executeBatch();
+            }
+
+            Map<Integer, Double> gastos = new HashMap<>();
+            gastoPorCategoria.forEach((idCategoria, gasto) -> gastos.put(idCategoria, gasto.doubleValue()));
+            ResumenGastosDAO.registrarCompra(conn, idUsuario, fecha.toLocalDate(), total.doubleValue(), gastos);
+
+            conn.commit();
+            AnaliticaGastos.invalidar();
+
+            Compra compra = new Compra();
+            compra.setIdCompra(idCompra);
+            compra.setIdUsuario(idUsuario);
+            compra.setIdTienda(idTienda);
+            compra.setNombre(nombre);
+            compra.setFechaCompra(fecha);
+            compra.setTotal(total.doubleValue());
+
+            int usuario = idUsuario;
+            Logger.info(() -> "Compra '" + nombre + "' confirmada desde el carrito (ID: " + idCompra
+                    + ", Usuario ID: " + usuario + ", Tienda ID: " + idTienda
+                    + ", Líneas: " + lineas.size() + ", Total: " + compra.getTotal() + " €)");
+            return compra;
+
+        } catch (SQLException e) {
+            try {
+                if (conn != null) conn.rollback();
+                Logger.warning("Rollback ejecutado en realizarCompraDesdeCarrito()");
+            } catch (SQLException ex) {
+                Logger.exception("Error al hacer rollback en realizarCompraDesdeCarrito()", ex);
+            }
             Logger.exception("Error al realizar compra desde carrito "
                     + "(Usuario ID: " + idUsuario + ", Tienda ID: " + idTienda + ")", e);
+        } finally {
+            try {
+                if (conn != null) conn.setAutoCommit(true);
+                if (conn != null) conn.close();
+            } catch (SQLException e) {
+                Logger.exception("Error cerrando recursos en realizarCompraDesdeCarrito()", e);
+            }
         }
 
-        return false;
+        return null;
     }
 }
@@ -0,0 +1,473 @@
+package dao;
+
+import config.Logger;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import models.Carrito;
+
+/**
+ * Diario binario (solo se añade al final) con el carrito temporal de un
+ * usuario: data/compras_temporales/usuario_N.diario.
+ *
+ * Cada cambio del carrito se anota como un registro:
+ *
+ * <pre>
+ * [longitud int][crc32 int][tipo byte][datos...]
+ * </pre>
+ *
+ * - CABECERA: empieza una compra nueva (nombre); lo anterior se descarta.
+ * - TIENDA: tienda elegida.
+ * - LINEA: cantidad final de un producto (0 = quitado) con su nombre y precio.
+ *
+ * Escribir un registro es una sola escritura al final del fichero, así que se
+ * puede hacer en cada clic. El fsync no se hace en cada registro sino cada
+ * app_compras.diario.syncMs (200 ms por defecto) si hubo cambios, y al cerrar.
+ *
+ * Al abrirlo se reproduce el fichero. Si la aplicación se cerró a mitad de una
+ * escritura, el último registro queda incompleto o con el CRC mal: se
+ * descarta desde ahí y se recorta el fichero.
+ *
+ * Como las cantidades son absolutas, cuando se acumulan
+ * app_compras.diario.compactarCada registros (500 por defecto) el diario se
+ * reescribe en segundo plano con una línea por producto: se escribe un
+ * fichero nuevo, se sincroniza y se renombra sobre el anterior, de modo que
+ * un corte en medio deja intacto el diario viejo.
+ *
+ * Si falla la escritura se avisa en el log y el diario deja de escribir: el
+ * carrito sigue funcionando, solo que sin copia local.
+ *
+ * @author Milanes
+ */
+public final class DiarioCarrito {
+
+    private static final Path CARPETA = Paths.get("data", "compras_temporales");
+    private static final int MAGIA = 0x44435231; // "DCR1"
+
+    private static final byte CABECERA = 1;
+    private static final byte TIENDA = 2;
+    private static final byte LINEA = 3;
+
+    // Un registro nunca se acerca a esto: una longitud mayor es basura
+    private static final int MAXIMO_REGISTRO = 64 * 1024;
+
+    private static final long SYNC_MS = Math.max(10, Long.getLong("app_compras.diario.syncMs", 200L));
+    private static final int COMPACTAR_CADA = Math.max(10, Integer.getInteger("app_compras.diario.compactarCada", 500));
+
+    private static final AtomicInteger CONTADOR = new AtomicInteger();
+    private static final ScheduledExecutorService FONDO = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "diario-carrito-" + CONTADOR.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Un diario abierto por usuario
+    private static final Map<Integer, DiarioCarrito> ABIERTOS = new ConcurrentHashMap<>();
+
+    private final int idUsuario;
+    private final Path archivo;
+    private FileChannel canal;
+
+    // Estado reproducido (lo que dejaría una compactación)
+    private String nombreCompra;
+    private int idTienda;
+    private final Map<Integer, Carrito> lineas = new LinkedHashMap<>();
+
+    private int registrosDesdeCompactacion = 0;
+    private boolean compactacionProgramada = false;
+    private boolean sucio = false;
+    private boolean averiado = false;
+    private final ScheduledFuture<?> sincronizacion;
+
+    private DiarioCarrito(int idUsuario, Path archivo) throws IOException {
+        this.idUsuario = idUsuario;
+        this.archivo = archivo;
+        this.canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            reproducir();
+        } catch (IOException e) {
+            canal.close();
+            throw e;
+        }
+        this.sincronizacion = FONDO.scheduleWithFixedDelay(this::sincronizarSiSucio, SYNC_MS, SYNC_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Abre (o crea) el diario del usuario y reproduce lo que tenga. Si ya
+     * estaba abierto devuelve el mismo.
+     */
+    public static synchronized DiarioCarrito abrir(int idUsuario) throws IOException {
+        DiarioCarrito abierto = ABIERTOS.get(idUsuario);
+        if (abierto != null) {
+            return abierto;
+        }
+        Files.createDirectories(CARPETA);
+        DiarioCarrito diario = new DiarioCarrito(idUsuario, CARPETA.resolve("usuario_" + idUsuario + ".diario"));
+        ABIERTOS.put(idUsuario, diario);
+        return diario;
+    }
+
+    /**
+     * Sincroniza y cierra todos los diarios abiertos (al cerrar la aplicación).
+     */
+    public static void cerrarTodos() {
+        for (DiarioCarrito diario : new ArrayList<>(ABIERTOS.values())) {
+            diario.cerrar();
+        }
+    }
+
+    // ============================================================
+    // ESTADO REPRODUCIDO
+    // ============================================================
+    /**
+     * Nombre de la compra en curso, o null si no hay ninguna.
+     */
+    public synchronized String getNombreCompra() {
+        return nombreCompra;
+    }
+
+    /**
+     * Tienda elegida para la compra en curso, o 0.
+     */
+    public synchronized int getIdTienda() {
+        return idTienda;
+    }
+
+    /**
+     * Líneas de la compra en curso, incluidas las quitadas (cantidad 0),
+     * que también hay que llevar a la base.
+     */
+    public synchronized List<Carrito> getLineas() {
+        List<Carrito> copia = new ArrayList<>();
+        for (Carrito l : lineas.values()) {
+            Carrito c = new Carrito(idUsuario, l.getIdProducto(), l.getCantidad());
+            c.setNombreProducto(l.getNombreProducto());
+            c.setPrecioProducto(l.getPrecioProducto());
+            c.setSubtotal(l.getCantidad() * l.getPrecioProducto());
+            c.setFechaAgregado(l.getFechaAgregado());
+            c.setNombreCompra(nombreCompra);
+            copia.add(c);
+        }
+        return copia;
+    }
+
+    // ============================================================
+    // ANOTACIONES
+    // ============================================================
+    public synchronized void iniciarCompra(String nombre) {
+        aplicarCabecera(nombre);
+        anotar(CABECERA, out -> out.writeUTF(nombre));
+    }
+
+    public synchronized void anotarTienda(int id) {
+        if (id == idTienda) {
+            return;
+        }
+        idTienda = id;
+        anotar(TIENDA, out -> out.writeInt(id));
+    }
+
+    public synchronized void anotarLinea(Carrito linea) {
+        aplicarLinea(linea.getIdProducto(), linea.getCantidad(), linea.getPrecioProducto(),
+                linea.getNombreProducto(), linea.getFechaAgregado());
+        anotar(LINEA, out -> escribirLinea(out, linea));
+    }
+
+    /**
+     * Borra el contenido del diario (compra confirmada).
+     */
+    public synchronized void descartar() {
+        nombreCompra = null;
+        idTienda = 0;
+        lineas.clear();
+        if (averiado) {
+            return;
+        }
+        try {
+            canal.truncate(0);
+            escribirAlFinal(canal, magia());
+            canal.force(false);
+            sucio = false;
+            registrosDesdeCompactacion = 0;
+        } catch (IOException e) {
+            averiar("Error al vaciar el diario del carrito " + archivo, e);
+        }
+    }
+
+    /**
+     * Fuerza a disco lo anotado hasta ahora.
+     */
+    public synchronized boolean sincronizar() {
+        if (averiado) {
+            return false;
+        }
+        try {
+            canal.force(false);
+            sucio = false;
+            return true;
+        } catch (IOException e) {
+            averiar("Error al sincronizar el diario del carrito " + archivo, e);
+            return false;
+        }
+    }
+
+    public synchronized void cerrar() {
+        ABIERTOS.remove(idUsuario, this);
+        sincronizacion.cancel(false);
+        if (canal.isOpen()) {
+            sincronizar();
+            try {
+                canal.close();
+            } catch (IOException e) {
+                Logger.exception("Error al cerrar el diario del carrito " + archivo, e);
+            }
+        }
+    }
+
+    // ============================================================
+    // ESCRITURA
+    // ============================================================
+    @FunctionalInterface
+    private interface Datos {
+
+        void escribir(DataOutputStream out) throws IOException;
+    }
+
+    private void anotar(byte tipo, Datos datos) {
+        if (averiado) {
+            return;
+        }
+        try {
+            escribirAlFinal(canal, registro(tipo, datos));
+            sucio = true;
+            if (++registrosDesdeCompactacion >= COMPACTAR_CADA && !compactacionProgramada) {
+                compactacionProgramada = true;
+                FONDO.execute(this::compactar);
+            }
+        } catch (IOException e) {
+            averiar("Error al escribir en el diario del carrito " + archivo, e);
+        }
+    }
+
+    private static void escribirAlFinal(FileChannel destino, ByteBuffer buffer) throws IOException {
+        long posicion = destino.size();
+        while (buffer.hasRemaining()) {
+            posicion += destino.write(buffer, posicion);
+        }
+    }
+
+    private static ByteBuffer magia() {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(0, MAGIA);
+    }
+
+    private static ByteBuffer registro(byte tipo, Datos datos) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(tipo);
+        datos.escribir(out);
+        byte[] carga = bytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(carga);
+
+        ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES + carga.length);
+        buffer.putInt(carga.length).putInt((int) crc.getValue()).put(carga).flip();
+        return buffer;
+    }
+
+    private static void escribirLinea(DataOutputStream out, Carrito linea) throws IOException {
+        out.writeInt(linea.getIdProducto());
+        out.writeInt(linea.getCantidad());
+        out.writeDouble(linea.getPrecioProducto());
+        out.writeUTF(linea.getNombreProducto() != null ? linea.getNombreProducto() : "");
+        out.writeLong(linea.getFechaAgregado() != null
+                ? linea.getFechaAgregado().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : -1L);
+    }
+
+    private synchronized void sincronizarSiSucio() {
+        if (sucio && canal.isOpen()) {
+            sincronizar();
+        }
+    }
+
+    /**
+     * Reescribe el diario con el estado actual: cabecera, tienda y una línea
+     * por producto. El fichero nuevo sustituye al viejo con un renombrado.
+     */
+    private synchronized void compactar() {
+        compactacionProgramada = false;
+        if (averiado || !canal.isOpen()) {
+            return;
+        }
+
+        Path temporal = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+        try {
+            try (FileChannel nuevo = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                escribirAlFinal(nuevo, magia());
+                if (nombreCompra != null) {
+                    String nombre = nombreCompra;
+                    escribirAlFinal(nuevo, registro(CABECERA, out -> out.writeUTF(nombre)));
+                }
+                if (idTienda > 0) {
+                    int id = idTienda;
+                    escribirAlFinal(nuevo, registro(TIENDA, out -> out.writeInt(id)));
+                }
+                for (Carrito linea : lineas.values()) {
+                    escribirAlFinal(nuevo, registro(LINEA, out -> escribirLinea(out, linea)));
+                }
+                nuevo.force(true);
+            }
+
+            canal.close();
+            try {
+                Files.move(temporal, archivo, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING);
+            }
+            canal = FileChannel.open(archivo, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            int antes = registrosDesdeCompactacion;
+            registrosDesdeCompactacion = 0;
+            sucio = false;
+            Logger.info(() -> "Diario del carrito compactado (Usuario ID: " + idUsuario + ", " + antes
+                    + " registros → " + lineas.size() + " líneas).");
+        } catch (IOException e) {
+            averiar("Error al compactar el diario del carrito " + archivo, e);
+        }
+    }
+
+    private void averiar(String mensaje, IOException e) {
+        averiado = true;
+        Logger.exception(mensaje + ". El carrito temporal deja de guardarse.", e);
+    }
+
+    // ============================================================
+    // REPRODUCCIÓN
+    // ============================================================
+    private void reproducir() throws IOException {
+        long tamanio = canal.size();
+        if (tamanio < Integer.BYTES) {
+            // Nuevo (o cortado antes de escribir la cabecera)
+            canal.truncate(0);
+            escribirAlFinal(canal, magia());
+            canal.force(false);
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(tamanio, Integer.MAX_VALUE - 8));
+        while (buffer.hasRemaining() && canal.read(buffer, buffer.position()) > 0) {
+            // lee el fichero completo
+        }
+        buffer.flip();
+
+        if (buffer.getInt() != MAGIA) {
+            Logger.warning(() -> "El diario del carrito " + archivo + " no tiene un formato reconocido; se empieza de cero.");
+            canal.truncate(0);
+            escribirAlFinal(canal, magia());
+            canal.force(false);
+            return;
+        }
+
+        int registros = 0;
+        long valido = buffer.position();
+        while (buffer.remaining() >= 2 * Integer.BYTES) {
+            int longitud = buffer.getInt();
+            int crcEsperado = buffer.getInt();
+            if (longitud <= 0 || longitud > MAXIMO_REGISTRO || longitud > buffer.remaining()) {
+                break;
+            }
+            byte[] carga = new byte[longitud];
+            buffer.get(carga);
+
+            CRC32 crc = new CRC32();
+            crc.update(carga);
+            if ((int) crc.getValue() != crcEsperado || !aplicar(carga)) {
+                break;
+            }
+            valido = buffer.position();
+            registros++;
+        }
+
+        if (valido < tamanio) {
+            long descartados = tamanio - valido;
+            Logger.warning(() -> "Diario del carrito " + archivo + " con un registro incompleto al final: se descartan "
+                    + descartados + " bytes.");
+            canal.truncate(valido);
+            canal.force(false);
+        }
+        registrosDesdeCompactacion = registros;
+
+        int total = registros;
+        Logger.info(() -> "Diario del carrito reproducido (Usuario ID: " + idUsuario + ", " + total + " registros).");
+    }
+
+    /**
+     * Aplica un registro leído. false si el contenido no es válido.
+     */
+    private boolean aplicar(byte[] carga) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(carga))) {
+            switch (in.readByte()) {
+                case CABECERA:
+                    aplicarCabecera(in.readUTF());
+                    return true;
+                case TIENDA:
+                    idTienda = in.readInt();
+                    return true;
+                case LINEA:
+                    int idProducto = in.readInt();
+                    int cantidad = in.readInt();
+                    double precio = in.readDouble();
+                    String nombre = in.readUTF();
+                    long fecha = in.readLong();
+                    aplicarLinea(idProducto, cantidad, precio, nombre, fecha < 0 ? null
+                            : LocalDateTime.ofInstant(Instant.ofEpochMilli(fecha), ZoneId.systemDefault()));
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void aplicarCabecera(String nombre) {
+        nombreCompra = nombre;
+        idTienda = 0;
+        lineas.clear();
+    }
+
+    private void aplicarLinea(int idProducto, int cantidad, double precio, String nombre, LocalDateTime fecha) {
+        Carrito linea = new Carrito(idUsuario, idProducto, cantidad);
+        linea.setPrecioProducto(precio);
+        linea.setNombreProducto(nombre);
+        linea.setFechaAgregado(fecha);
+        lineas.put(idProducto, linea);
+    }
+}
@@ -1,105 +1,105 @@
 package dao;
 
-import config.ConexionDB;
 import config.Logger;
-import java.sql.*;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import models.GastosAnual;
 
 /**
- * DAO para obtener reportes de gasto anual. Gestiona la creación de la vista
- * SQL y la lectura de sus datos.
+ * DAO para obtener reportes de gasto anual. Lee la tabla de resumen
+ * resumen_gasto_anual (ver ResumenGastosDAO).
  *
  * @author Milanes
  */
 public class GastosAnualesDAO {
 
     // =====================================================
-    // 🧱 CREAR O ACTUALIZAR VISTA
+    // 🧱 RECONSTRUIR RESÚMENES (antes: crear vista)
     // =====================================================
     public boolean crearVistaGastoAnual() {
-        String sql
-                = "CREATE OR REPLACE VIEW vista_gasto_anual AS "
-                + "SELECT "
-                + "u.nombre AS usuario, "
-                + "YEAR(c.fecha_compra) AS anio, "
-                + "SUM(c.total) AS gasto_total "
-                + "FROM compras c "
-                + "INNER JOIN usuarios u ON u.id_usuario = c.id_usuario "
-                + "GROUP BY u.nombre, YEAR(c.fecha_compra) "
-                + "ORDER BY anio ASC, usuario ASC;";
-
-        try (Connection conn = ConexionDB.getConexion(); Statement st = conn.createStatement()) {
-
-            Logger.info("Creando o actualizando la vista SQL 'vista_gasto_anual'...");
-            st.executeUpdate(sql);
-            Logger.info("Vista 'vista_gasto_anual' creada o actualizada correctamente.");
-            return true;
+        Logger.info("Reconstruyendo los resúmenes de gastos (gasto anual)...");
+        return new ResumenGastosDAO().reconstruir();
+    }
 
-        } catch (SQLException e) {
-            Logger.exception("Error al crear o actualizar la vista 'vista_gasto_anual'.", e);
-            return false;
-        }
+    /** Total de un usuario en un año (resumen_gasto_anual). */
+    private static final MapeadorFilas<GastosAnual> GASTO_ANUAL = columnas -> {
+        int usuario = columnas.indice("usuario");
+        int anio = columnas.indice("anio");
+        int gastoTotal = columnas.indice("gasto_total");
+        return rs -> {
+            GastosAnual g = new GastosAnual();
+            g.setUsuario(rs.getString(usuario));
+            g.setAnio(rs.getInt(anio));
+            g.setGastoTotal(rs.getDouble(gastoTotal));
+            return g;
+        };
+    };
+
+    /**
+     * Indica si las tablas de resumen están listas (las crea si faltan).
+     */
+    public boolean existenResumenes() {
+        return ResumenGastosDAO.preparar();
     }
 
     // =====================================================
-    // 📊 LISTAR DATOS DESDE LA VISTA
+    // 📊 LISTAR DATOS DEL RESUMEN
     // =====================================================
     /**
-     * Lista los gastos anuales desde la vista SQL. Si anio = 0 → todos los
-     * años. Si usuario = null → todos los usuarios.
+     * Lista los gastos anuales. Si anio = 0 → todos los años. Si usuario =
+     * null → todos los usuarios.
      */
     public List<GastosAnual> listarPorAnioYUsuario(int anio, String usuario) {
         List<GastosAnual> lista = new ArrayList<>();
 
+        if (!AnaliticaGastos.ACTIVA && !ResumenGastosDAO.preparar()) {
+            Logger.warning("Las tablas de resumen de gastos no están disponibles.");
+            return lista;
+        }
+
+        if (AnaliticaGastos.ACTIVA) {
+            try {
+                lista.addAll(AnaliticaGastos.gastoPorAnio(anio, usuario));
+            } catch (SQLException e) {
+                Logger.exception("Error al calcular los gastos anuales en memoria.", e);
+            }
+            return lista;
+        }
+
         StringBuilder sql = new StringBuilder();
-        sql.append("SELECT usuario, anio, gasto_total ");
-        sql.append("FROM vista_gasto_anual WHERE 1=1 ");
+        sql.append("SELECT u.nombre AS usuario, r.anio, r.gasto_total ");
+        sql.append("FROM resumen_gasto_anual r ");
+        sql.append("INNER JOIN usuarios u ON u.id_usuario = r.id_usuario WHERE 1=1 ");
 
         if (anio > 0) {
-            sql.append("AND anio = ? ");
+            sql.append("AND r.anio = ? ");
         }
         if (usuario != null && !usuario.trim().isEmpty()) {
-            sql.append("AND usuario = ? ");
+            sql.append("AND u.nombre = ? ");
         }
 
-        sql.append("ORDER BY anio ASC, usuario ASC;");
-
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+        sql.append("ORDER BY r.anio ASC, u.nombre ASC;");
 
-            int index = 1;
-            if (anio > 0) {
-                ps.setInt(index++, anio);
-            }
-            if (usuario != null && !usuario.trim().isEmpty()) {
-                ps.setString(index++, usuario);
-            }
-
-            Logger.info("Ejecutando SQL: " + sql);
-            ResultSet rs = ps.executeQuery();
+        List<Object> parametros = new ArrayList<>();
+        if (anio > 0) {
+            parametros.add(anio);
+        }
+        if (usuario != null && !usuario.trim().isEmpty()) {
+            parametros.add(usuario);
+        }
 
-            while (rs.next()) {
-                GastosAnual g = new GastosAnual();
-                g.setUsuario(rs.getString("usuario"));
-                g.setAnio(rs.getInt("anio"));
-                g.setGastoTotal(rs.getDouble("gasto_total"));
-                lista.add(g);
-            }
+        try {
+            Logger.info(() -> "Ejecutando SQL: " + sql);
+            lista.addAll(PlantillaJDBC.listar(sql.toString(), GASTO_ANUAL, parametros.toArray()));
 
-            Logger.info("Consulta completada. Registros obtenidos: " + lista.size());
+            Logger.info(() -> "Consulta completada. Registros obtenidos: " + lista.size());
             if (lista.isEmpty()) {
                 Logger.warning("No se encontraron registros con los filtros aplicados.");
             }
 
         } catch (SQLException e) {
-            // ⚠️ Manejo especial si la vista no existe
-            String msg = e.getMessage() != null ? e.getMessage().toLowerCase() : "";
-            if (msg.contains("doesn't exist") || msg.contains("no such table") || msg.contains("view")) {
-                Logger.warning("La vista 'vista_gasto_anual' no existe. Crea la vista antes de cargar los datos.");
-            } else {
-                Logger.exception("Error al listar gastos anuales desde la vista.", e);
-            }
+            Logger.exception("Error al listar gastos anuales desde el resumen.", e);
         }
 
         return lista;
@@ -117,13 +117,10 @@ public class GastosAnualesDAO {
         List<String> usuarios = new ArrayList<>();
         String sql = "SELECT nombre FROM usuarios ORDER BY nombre ASC;";
 
-        try (Connection conn = ConexionDB.getConexion(); Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
-
-            while (rs.next()) {
-                usuarios.add(rs.getString("nombre"));
-            }
+        try {
+            usuarios.addAll(PlantillaJDBC.listar(sql, MapeadorFilas.TEXTO));
 
-            Logger.info("Usuarios cargados correctamente: " + usuarios.size());
+            Logger.info(() -> "Usuarios cargados correctamente: " + usuarios.size());
 
         } catch (SQLException e) {
             Logger.exception("Error al obtener la lista de usuarios.", e);
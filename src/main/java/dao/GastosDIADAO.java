@@ -1,56 +1,65 @@
 package dao;
 
-import config.ConexionDB;
 import config.Logger;
-import java.sql.*;
+import java.sql.SQLException;
+import java.time.Month;
+import java.time.format.TextStyle;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import models.GastosDia;
 
 /**
  * DAO para gestionar los reportes de gasto diario (por día de la semana).
- * Gestiona la creación de la vista SQL y la lectura de sus datos.
+ * Lee la tabla de resumen resumen_gasto_dia (ver ResumenGastosDAO).
  *
  * @author Milanes
  */
 public class GastosDIADAO {
 
+    static final String[] DIAS = {
+        "Lunes", "Martes", "Miércoles", "Jueves", "Viernes", "Sábado", "Domingo"
+    };
+
+    /** Fila de resumen_gasto_dia (día de la semana 1 = lunes). */
+    private static final MapeadorFilas<GastosDia> GASTO_DIA = columnas -> {
+        int usuario = columnas.indice("usuario");
+        int anio = columnas.indice("anio");
+        int mes = columnas.indice("mes");
+        int diaSemana = columnas.indice("dia_semana");
+        int gastoTotal = columnas.indice("gasto_total");
+        return rs -> {
+            GastosDia g = new GastosDia();
+            g.setUsuario(rs.getString(usuario));
+            g.setAnio(rs.getInt(anio));
+            // En inglés, como devolvía MONTHNAME(); el controlador lo traduce
+            g.setMes(Month.of(rs.getInt(mes)).getDisplayName(TextStyle.FULL, Locale.ENGLISH));
+            g.setDiaSemana(DIAS[rs.getInt(diaSemana) - 1]);
+            g.setGastoTotal(rs.getDouble(gastoTotal));
+            return g;
+        };
+    };
+
     /**
-     * Crea o actualiza la vista SQL "vista_gasto_diario". Agrupa los gastos por
-     * usuario y día de la semana (Lunes, Martes, etc.).
+     * Reconstruye los resúmenes de gastos desde el histórico de compras.
+     * Sustituye a la antigua vista SQL "vista_gasto_diario".
      */
     public boolean crearVistaGastoDiario() {
-        String sql
-                = "CREATE OR REPLACE VIEW vista_gasto_diario AS "
-                + "SELECT "
-                + "u.nombre AS usuario, "
-                + "YEAR(c.fecha_compra) AS anio, "
-                + "MONTHNAME(c.fecha_compra) AS mes, "
-                + "ELT(DAYOFWEEK(c.fecha_compra), "
-                + "   'Domingo','Lunes','Martes','Miércoles','Jueves','Viernes','Sábado') AS dia_semana, "
-                + "SUM(c.total) AS gasto_total "
-                + "FROM compras c "
-                + "INNER JOIN usuarios u ON u.id_usuario = c.id_usuario "
-                + "GROUP BY u.nombre, anio, mes, dia_semana "
-                + "ORDER BY anio ASC, mes ASC, FIELD(dia_semana,'Lunes','Martes','Miércoles','Jueves','Viernes','Sábado','Domingo'), usuario ASC;";
-
-        try (Connection conn = ConexionDB.getConexion(); Statement st = conn.createStatement()) {
-
-            Logger.info("Creando o actualizando la vista SQL 'vista_gasto_diario'...");
-            st.executeUpdate(sql);
-            Logger.info("Vista 'vista_gasto_diario' creada correctamente.");
-            return true;
+        Logger.info("Reconstruyendo los resúmenes de gastos (gasto diario)...");
+        return new ResumenGastosDAO().reconstruir();
+    }
 
-        } catch (SQLException e) {
-            Logger.exception("Error al crear o actualizar la vista 'vista_gasto_diario'.", e);
-            return false;
-        }
+    /**
+     * Indica si las tablas de resumen están listas (las crea si faltan).
+     */
+    public boolean existenResumenes() {
+        return ResumenGastosDAO.preparar();
     }
 
     /**
-     * Lista los gastos diarios desde la vista SQL según día de la semana y
-     * usuario. Si diaSemana = null → todos los días. Si usuario = null → todos
-     * los usuarios.
+     * Lista los gastos diarios según día de la semana y usuario. Si diaSemana
+     * = null → todos los días. Si usuario = null → todos los usuarios.
      *
      * @param diaSemana nombre del día (Lunes, Martes...) o null
      * @param usuario nombre del usuario o null
@@ -59,73 +68,63 @@ public class GastosDIADAO {
     public List<GastosDia> listarPorDiaYUsuario(String diaSemana, String usuario) {
         List<GastosDia> lista = new ArrayList<>();
 
-        StringBuilder sql = new StringBuilder();
-        sql.append("SELECT usuario, anio, mes, dia_semana, gasto_total ");
-        sql.append("FROM vista_gasto_diario WHERE 1=1 ");
+        if (!AnaliticaGastos.ACTIVA && !ResumenGastosDAO.preparar()) {
+            Logger.warning("Las tablas de resumen de gastos no están disponibles.");
+            return lista;
+        }
 
+        int numeroDia = 0;
         if (diaSemana != null && !diaSemana.trim().isEmpty()) {
-            sql.append("AND dia_semana = ? ");
+            numeroDia = Arrays.asList(DIAS).indexOf(diaSemana.trim()) + 1;
+            if (numeroDia == 0) {
+                Logger.warning(() -> "Día de la semana no reconocido: " + diaSemana);
+                return lista;
+            }
+        }
+
+        if (AnaliticaGastos.ACTIVA) {
+            try {
+                lista.addAll(AnaliticaGastos.gastoPorDia(numeroDia, usuario));
+            } catch (SQLException e) {
+                Logger.exception("Error al calcular los gastos diarios en memoria.", e);
+            }
+            return lista;
+        }
+
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT u.nombre AS usuario, r.anio, r.mes, r.dia_semana, r.gasto_total ");
+        sql.append("FROM resumen_gasto_dia r ");
+        sql.append("INNER JOIN usuarios u ON u.id_usuario = r.id_usuario WHERE 1=1 ");
+
+        if (numeroDia > 0) {
+            sql.append("AND r.dia_semana = ? ");
         }
         if (usuario != null && !usuario.trim().isEmpty()) {
-            sql.append("AND usuario = ? ");
+            sql.append("AND u.nombre = ? ");
         }
 
-        // ✅ Orden corregido: primero usuario, luego día de la semana
-        sql.append("ORDER BY anio ASC, mes ASC, usuario ASC, ");
-        sql.append("FIELD(dia_semana,'Lunes','Martes','Miércoles','Jueves','Viernes','Sábado','Domingo');");
-
-        boolean reintentoHecho = false;
-
-        while (true) {
-            try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql.toString())) {
-
-                int index = 1;
-                if (diaSemana != null && !diaSemana.trim().isEmpty()) {
-                    ps.setString(index++, diaSemana);
-                }
-                if (usuario != null && !usuario.trim().isEmpty()) {
-                    ps.setString(index++, usuario);
-                }
-
-                Logger.info("Ejecutando SQL: " + sql);
-                ResultSet rs = ps.executeQuery();
-
-                while (rs.next()) {
-                    GastosDia g = new GastosDia();
-                    g.setUsuario(rs.getString("usuario"));
-                    g.setAnio(rs.getInt("anio"));
-                    g.setMes(rs.getString("mes"));
-                    g.setDiaSemana(rs.getString("dia_semana"));
-                    g.setGastoTotal(rs.getDouble("gasto_total"));
-                    lista.add(g);
-                }
-
-                Logger.info("Consulta completada. Registros obtenidos: " + lista.size());
-                if (lista.isEmpty()) {
-                    Logger.info("No hay registros disponibles en la vista.");
-                }
-                break;
+        // Primero usuario, luego día de la semana
+        sql.append("ORDER BY r.anio ASC, r.mes ASC, u.nombre ASC, r.dia_semana ASC;");
 
-            } catch (SQLException e) {
-                String msg = e.getMessage() != null ? e.getMessage().toLowerCase() : "";
-
-                // Si la vista no existe, crearla y reintentar una sola vez
-                if (msg.contains("doesn't exist") && !reintentoHecho) {
-                    Logger.warning("La vista 'vista_gasto_diario' no existe. Se procederá a crearla...");
-                    boolean creada = crearVistaGastoDiario();
-                    if (creada) {
-                        Logger.info("Vista 'vista_gasto_diario' creada correctamente. Reintentando consulta...");
-                        reintentoHecho = true;
-                        continue;
-                    } else {
-                        Logger.warning("No se pudo crear la vista 'vista_gasto_diario'. Se aborta el proceso.");
-                        break;
-                    }
-                }
-
-                Logger.exception("Error al listar los gastos diarios desde la vista.", e);
-                break;
+        List<Object> parametros = new ArrayList<>();
+        if (numeroDia > 0) {
+            parametros.add(numeroDia);
+        }
+        if (usuario != null && !usuario.trim().isEmpty()) {
+            parametros.add(usuario);
+        }
+
+        try {
+            Logger.info(() -> "Ejecutando SQL: " + sql);
+            lista.addAll(PlantillaJDBC.listar(sql.toString(), GASTO_DIA, parametros.toArray()));
+
+            Logger.info(() -> "Consulta completada. Registros obtenidos: " + lista.size());
+            if (lista.isEmpty()) {
+                Logger.info("No hay registros disponibles en el resumen.");
             }
+
+        } catch (SQLException e) {
+            Logger.exception("Error al listar los gastos diarios desde el resumen.", e);
         }
 
         return lista;
@@ -140,13 +139,10 @@ public class GastosDIADAO {
         List<String> usuarios = new ArrayList<>();
         String sql = "SELECT nombre FROM usuarios ORDER BY nombre ASC;";
 
-        try (Connection conn = ConexionDB.getConexion(); Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
-
-            while (rs.next()) {
-                usuarios.add(rs.getString("nombre"));
-            }
+        try {
+            usuarios.addAll(PlantillaJDBC.listar(sql, MapeadorFilas.TEXTO));
 
-            Logger.info("Usuarios cargados correctamente: " + usuarios.size());
+            Logger.info(() -> "Usuarios cargados correctamente: " + usuarios.size());
 
         } catch (SQLException e) {
             Logger.exception("Error al obtener la lista de usuarios.", e);
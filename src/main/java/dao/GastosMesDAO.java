@@ -1,74 +1,62 @@
 package dao;
 
-import config.ConexionDB;
 import config.Logger;
-import java.sql.*;
+import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import models.GastosMes;
 
 /**
- * DAO para generar y consultar el reporte de gastos mensuales. Gestiona la
- * creación de la vista SQL "vista_gasto_mensual" y la lectura de sus datos por
- * usuario y mes.
+ * DAO para generar y consultar el reporte de gastos mensuales. Lee la tabla de
+ * resumen resumen_gasto_mes (ver ResumenGastosDAO) por usuario y mes.
  */
 public class GastosMesDAO {
 
+    static final String[] MESES = {
+        "Enero", "Febrero", "Marzo", "Abril", "Mayo", "Junio",
+        "Julio", "Agosto", "Septiembre", "Octubre", "Noviembre", "Diciembre"
+    };
+
+    /** Fila de resumen_gasto_mes, una por usuario, mes y categoría. */
+    private static final MapeadorFilas<GastosMes> GASTO_MES = columnas -> {
+        int usuario = columnas.indice("usuario");
+        int anio = columnas.indice("anio");
+        int mes = columnas.indice("mes");
+        int categoria = columnas.indice("categoria");
+        int gastoTotal = columnas.indice("gasto_total");
+        return rs -> {
+            GastosMes gm = new GastosMes();
+            gm.setUsuario(rs.getString(usuario));
+            gm.setAnio(rs.getInt(anio));
+            gm.setMes(MESES[rs.getInt(mes) - 1]);
+            gm.setCategoria(rs.getString(categoria));
+            gm.setGastoTotal(rs.getDouble(gastoTotal));
+            return gm;
+        };
+    };
+
     /**
-     * Crea o actualiza la vista SQL "vista_gasto_mensual". Incluye
-     * automáticamente los registros del año actual agrupados por usuario, mes y
-     * categoría. Fuerza los nombres de los meses en español (lc_time_names =
-     * 'es_ES').
+     * Reconstruye los resúmenes de gastos desde el histórico de compras.
+     * Sustituye a la antigua vista SQL "vista_gasto_mensual".
      */
     public boolean crearVistaGastoMensual() {
-        int anioActual = LocalDate.now().getYear();
-
-        String sqlConfig = "SET lc_time_names = 'es_ES';";
-
-        String sqlVista
-                = "CREATE OR REPLACE VIEW vista_gasto_mensual AS "
-                + "SELECT "
-                + "u.nombre AS usuario, "
-                + "YEAR(c.fecha_compra) AS anio, "
-                + "MONTH(c.fecha_compra) AS mes_num, "
-                + "LPAD(MONTH(c.fecha_compra), 2, '0') AS mes_numero, "
-                + "CONCAT(UCASE(LEFT(MONTHNAME(c.fecha_compra), 1)), "
-                + "       LCASE(SUBSTRING(MONTHNAME(c.fecha_compra), 2))) AS mes_texto, "
-                + "cat.nombre AS categoria, "
-                + "SUM(c.total) AS gasto_total "
-                + "FROM compras c "
-                + "INNER JOIN usuarios u ON u.id_usuario = c.id_usuario "
-                + "LEFT JOIN listado_de_compras ldc ON ldc.id_compra = c.id_compra "
-                + "LEFT JOIN productos p ON p.id_producto = ldc.id_producto "
-                + "LEFT JOIN categorias cat ON cat.id_categoria = p.id_categoria "
-                + "WHERE YEAR(c.fecha_compra) = " + anioActual + " "
-                + "GROUP BY u.nombre, anio, mes_num, categoria "
-                + "ORDER BY anio ASC, mes_num, u.nombre, categoria;";
-
-        try (Connection conn = ConexionDB.getConexion(); Statement st = conn.createStatement()) {
-
-            Logger.info("Creando o actualizando la vista SQL 'vista_gasto_mensual'...");
-            Logger.info("Año actual: " + anioActual);
-
-            // Forzamos los nombres de mes en español
-            st.execute(sqlConfig);
-
-            // Creamos la vista
-            st.executeUpdate(sqlVista);
-
-            Logger.info("Vista 'vista_gasto_mensual' creada correctamente con meses en español.");
-            return true;
+        Logger.info("Reconstruyendo los resúmenes de gastos (gasto mensual)...");
+        return new ResumenGastosDAO().reconstruir();
+    }
 
-        } catch (SQLException e) {
-            Logger.exception("Error al crear o actualizar la vista 'vista_gasto_mensual'.", e);
-            return false;
-        }
+    /**
+     * Indica si las tablas de resumen están listas (las crea si faltan).
+     */
+    public boolean existenResumenes() {
+        return ResumenGastosDAO.preparar();
     }
 
     /**
-     * Lista los gastos mensuales desde la vista SQL. Si mes = 0 → muestra todos
-     * los meses del año. Si usuario = null → muestra todos los usuarios.
+     * Lista los gastos mensuales del año actual por categoría. Si mes = 0 →
+     * muestra todos los meses del año. Si usuario = null → muestra todos los
+     * usuarios. El gasto de cada categoría es la suma de los subtotales de sus
+     * líneas de compra.
      *
      * @param mes número del mes (1–12 o 0 para todos)
      * @param usuario nombre del usuario o null
@@ -77,49 +65,56 @@ public class GastosMesDAO {
     public List<GastosMes> listarPorMesYUsuario(int mes, String usuario) {
         List<GastosMes> lista = new ArrayList<>();
 
+        if (!AnaliticaGastos.ACTIVA && !ResumenGastosDAO.preparar()) {
+            Logger.warning("Las tablas de resumen de gastos no están disponibles.");
+            return lista;
+        }
+
+        if (AnaliticaGastos.ACTIVA) {
+            try {
+                lista.addAll(AnaliticaGastos.gastoPorMes(LocalDate.now().getYear(), mes, usuario));
+            } catch (SQLException e) {
+                Logger.exception("Error al calcular los gastos mensuales en memoria.", e);
+            }
+            return lista;
+        }
+
         StringBuilder sql = new StringBuilder();
-        sql.append("SELECT usuario, anio, mes_texto AS mes, categoria, gasto_total ");
-        sql.append("FROM vista_gasto_mensual WHERE 1=1 ");
+        sql.append("SELECT u.nombre AS usuario, r.anio, r.mes, cat.nombre AS categoria, r.gasto_total ");
+        sql.append("FROM resumen_gasto_mes r ");
+        sql.append("INNER JOIN usuarios u ON u.id_usuario = r.id_usuario ");
+        sql.append("LEFT JOIN categorias cat ON cat.id_categoria = r.id_categoria ");
+        sql.append("WHERE r.anio = ? ");
 
         if (mes > 0) {
-            sql.append("AND mes_num = ? ");
+            sql.append("AND r.mes = ? ");
         }
         if (usuario != null && !usuario.trim().isEmpty()) {
-            sql.append("AND usuario = ? ");
+            sql.append("AND u.nombre = ? ");
         }
 
-        sql.append("ORDER BY anio ASC, mes_num, usuario, categoria;");
+        sql.append("ORDER BY r.anio ASC, r.mes, u.nombre, categoria;");
 
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql.toString())) {
-
-            int index = 1;
-            if (mes > 0) {
-                ps.setInt(index++, mes);
-            }
-            if (usuario != null && !usuario.trim().isEmpty()) {
-                ps.setString(index++, usuario);
-            }
+        List<Object> parametros = new ArrayList<>();
+        parametros.add(LocalDate.now().getYear());
+        if (mes > 0) {
+            parametros.add(mes);
+        }
+        if (usuario != null && !usuario.trim().isEmpty()) {
+            parametros.add(usuario);
+        }
 
-            Logger.info("Ejecutando consulta SQL de gastos mensuales: " + sql);
-            ResultSet rs = ps.executeQuery();
-
-            while (rs.next()) {
-                GastosMes gm = new GastosMes();
-                gm.setUsuario(rs.getString("usuario"));
-                gm.setAnio(rs.getInt("anio"));
-                gm.setMes(rs.getString("mes"));
-                gm.setCategoria(rs.getString("categoria"));
-                gm.setGastoTotal(rs.getDouble("gasto_total"));
-                lista.add(gm);
-            }
+        try {
+            Logger.info(() -> "Ejecutando consulta SQL de gastos mensuales: " + sql);
+            lista.addAll(PlantillaJDBC.listar(sql.toString(), GASTO_MES, parametros.toArray()));
 
-            Logger.info("Consulta completada. Registros obtenidos: " + lista.size());
+            Logger.info(() -> "Consulta completada. Registros obtenidos: " + lista.size());
             if (lista.isEmpty()) {
                 Logger.warning("No se encontraron registros de gastos mensuales con los filtros aplicados.");
             }
 
         } catch (SQLException e) {
-            Logger.exception("Error al listar los gastos mensuales desde la vista.", e);
+            Logger.exception("Error al listar los gastos mensuales desde el resumen.", e);
         }
 
         return lista;
@@ -134,13 +129,10 @@ public class GastosMesDAO {
         List<String> usuarios = new ArrayList<>();
         String sql = "SELECT nombre FROM usuarios ORDER BY nombre ASC;";
 
-        try (Connection conn = ConexionDB.getConexion(); Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
-
-            while (rs.next()) {
-                usuarios.add(rs.getString("nombre"));
-            }
+        try {
+            usuarios.addAll(PlantillaJDBC.listar(sql, MapeadorFilas.TEXTO));
 
-            Logger.info("Usuarios cargados correctamente: " + usuarios.size());
+            Logger.info(() -> "Usuarios cargados correctamente: " + usuarios.size());
 
         } catch (SQLException e) {
             Logger.exception("Error al obtener la lista de usuarios.", e);
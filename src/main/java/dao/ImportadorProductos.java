@@ -0,0 +1,526 @@
+package dao;
+
+import config.IndiceBusqueda;
+import config.Logger;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import models.Categoria;
+import models.Producto;
+import models.Tienda;
+
+/**
+ * Importa productos desde un CSV (la lista de precios de una tienda).
+ *
+ * El archivo se lee registro a registro, sin cargarlo entero:
+ *
+ * - La primera fila es la cabecera, con las columnas nombre, precio y,
+ *   opcionalmente, descripcion, tienda y categoria, en cualquier orden.
+ *   El separador (";", "," o tabulador) se deduce de ella.
+ * - Los campos pueden ir entre comillas dobles, con "" para una comilla y
+ *   con saltos de línea dentro.
+ * - El precio admite coma o punto decimal y el símbolo €.
+ * - La tienda y la categoría se buscan por nombre (sin distinguir
+ *   mayúsculas ni acentos) en mapas cargados al empezar. Sin columna tienda,
+ *   o con ella vacía, se usa la tienda por defecto.
+ *
+ * Un producto que ya existe en su tienda con el mismo nombre se actualiza
+ * (precio y, si vienen, descripción y categoría); si no, se inserta. Se
+ * guarda en lotes de app_compras.importacion.lote filas (1000 por defecto),
+ * cada uno en su transacción: inserciones con INSERT de varias filas y
+ * actualizaciones en un batch (ver ProductoDAO.insertarVarios).
+ *
+ * Las filas con errores no se guardan y se devuelven en el resultado con su
+ * línea y el motivo. Si falla la base de datos se deshace el lote en curso
+ * y la importación se detiene; los lotes anteriores quedan guardados.
+ *
+ * @author Milanes
+ */
+public class ImportadorProductos {
+
+    static final int TAMANIO_LOTE = Math.max(1, Integer.getInteger("app_compras.importacion.lote", 1000));
+
+    // Límites de las columnas en la tabla productos
+    private static final int MAX_NOMBRE = 100;
+    private static final int MAX_DESCRIPCION = 255;
+
+    private final ProductoDAO productoDAO = new ProductoDAO();
+    private final TiendaDAO tiendaDAO = new TiendaDAO();
+    private final CategoriaDAO categoriaDAO = new CategoriaDAO();
+
+    /**
+     * Recibe el avance después de guardar cada lote (desde el hilo que
+     * importa).
+     */
+    @FunctionalInterface
+    public interface Progreso {
+
+        void actualizar(int leidas, int guardadas, int rechazadas);
+    }
+
+    /**
+     * Importa el archivo (UTF-8, con o sin BOM).
+     *
+     * @param idTiendaPorDefecto tienda de las filas sin tienda, o null
+     * @param progreso avance por lote, o null
+     * @throws IOException si no se puede leer el archivo o la cabecera no es
+     * válida
+     * @throws SQLException si no se puede empezar (conexión o productos
+     * existentes)
+     */
+    public Resultado importar(Path archivo, Integer idTiendaPorDefecto, Progreso progreso)
+            throws IOException, SQLException {
+
+        long inicio = System.currentTimeMillis();
+        Resultado resultado = new Resultado();
+
+        Map<String, Integer> tiendas = new HashMap<>();
+        for (Tienda t : tiendaDAO.listarTodas()) {
+            tiendas.put(clave(t.getNombre()), t.getIdTienda());
+        }
+        Map<String, Integer> categorias = new HashMap<>();
+        for (Categoria c : categoriaDAO.listarTodas()) {
+            categorias.put(clave(c.getNombre()), c.getIdCategoria());
+        }
+
+        // Los cambios de categoría tocan los resúmenes: migraciones antes de las transacciones
+        ResumenGastosDAO.esperarMigraciones();
+
+        try (BufferedReader lector = Files.newBufferedReader(archivo, StandardCharsets.UTF_8);
+                Connection conn = PlantillaJDBC.conexion()) {
+
+            LectorCSV csv = new LectorCSV(lector);
+            Cabecera cabecera = new Cabecera(csv.leerCabecera());
+            if (cabecera.tienda < 0 && idTiendaPorDefecto == null) {
+                throw new IOException("El archivo no tiene columna 'tienda': elige una tienda antes de importar.");
+            }
+            if (idTiendaPorDefecto != null && !tiendas.containsValue(idTiendaPorDefecto)) {
+                throw new IOException("La tienda por defecto (" + idTiendaPorDefecto + ") no existe.");
+            }
+
+            // tienda|nombre → id de los productos que ya existen
+            Map<String, Integer> existentes = new HashMap<>();
+            for (Producto p : productoDAO.listarClaves(conn)) {
+                existentes.put(p.getIdTienda() + "|" + clave(p.getNombre()), p.getIdProducto());
+            }
+            // tienda|nombre → línea, para detectar repetidos en el archivo
+            Map<String, Integer> vistos = new HashMap<>();
+
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                Lote lote = new Lote();
+                List<String> campos;
+                while ((campos = csv.leerRegistro()) != null) {
+                    int linea = csv.getLineaRegistro();
+                    if (campos.size() == 1 && campos.get(0).trim().isEmpty()) {
+                        continue; // línea en blanco
+                    }
+                    resultado.leidas++;
+
+                    Producto producto;
+                    try {
+                        producto = convertir(campos, cabecera, tiendas, categorias, idTiendaPorDefecto);
+                    } catch (IllegalArgumentException e) {
+                        resultado.rechazar(linea, e.getMessage());
+                        continue;
+                    }
+
+                    String clave = producto.getIdTienda() + "|" + clave(producto.getNombre());
+                    Integer repetida = vistos.putIfAbsent(clave, linea);
+                    if (repetida != null) {
+                        resultado.rechazar(linea, "Producto repetido en el archivo (línea " + repetida + ").");
+                        continue;
+                    }
+
+                    Integer id = existentes.get(clave);
+                    if (id != null) {
+                        producto.setIdProducto(id);
+                        lote.actualizar.add(producto);
+                    } else {
+                        lote.insertar.add(producto);
+                    }
+
+                    if (lote.tamanio() >= TAMANIO_LOTE && !guardar(conn, lote, resultado, progreso)) {
+                        return resultado;
+                    }
+                }
+                guardar(conn, lote, resultado, progreso);
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } finally {
+            resultado.milisegundos = System.currentTimeMillis() - inicio;
+            Logger.info(() -> "Importación de productos desde " + archivo.getFileName()
+                    + ": leídas " + resultado.leidas + ", insertadas " + resultado.insertadas
+                    + ", actualizadas " + resultado.actualizadas + ", rechazadas " + resultado.rechazos.size()
+                    + " (" + resultado.milisegundos + " ms)"
+                    + (resultado.error != null ? ". Detenida: " + resultado.error : ""));
+        }
+        return resultado;
+    }
+
+    /**
+     * Guarda el lote en una transacción.
+     *
+     * @return false si falló (el lote se deshace y se da por rechazado)
+     */
+    private boolean guardar(Connection conn, Lote lote, Resultado resultado, Progreso progreso) throws SQLException {
+        if (lote.tamanio() == 0) {
+            return true;
+        }
+        try {
+            if (!lote.insertar.isEmpty()) {
+                productoDAO.insertarVarios(conn, lote.insertar);
+            }
+            if (!lote.actualizar.isEmpty()) {
+                productoDAO.actualizarVarios(conn, lote.actualizar);
+            }
+            conn.commit();
+            if (!lote.actualizar.isEmpty()) {
+                AnaliticaGastos.invalidar();
+            }
+            resultado.insertadas += lote.insertar.size();
+            resultado.actualizadas += lote.actualizar.size();
+        } catch (SQLException e) {
+            conn.rollback();
+            Logger.exception("Error al guardar un lote de la importación de productos.", e);
+            // El mensaje puede incluir la sentencia completa, con cientos de parámetros
+            String motivo = String.valueOf(e.getMessage()).split("\\R", 2)[0];
+            resultado.error = motivo;
+            resultado.rechazar(-1, "Lote de " + lote.tamanio() + " productos sin guardar: " + motivo);
+            return false;
+        } finally {
+            lote.insertar.clear();
+            lote.actualizar.clear();
+        }
+
+        if (progreso != null) {
+            progreso.actualizar(resultado.leidas, resultado.insertadas + resultado.actualizadas,
+                    resultado.rechazos.size());
+        }
+        return true;
+    }
+
+    /**
+     * Producto de una fila, o IllegalArgumentException con el motivo del
+     * rechazo.
+     */
+    private static Producto convertir(List<String> campos, Cabecera cabecera, Map<String, Integer> tiendas,
+            Map<String, Integer> categorias, Integer idTiendaPorDefecto) {
+
+        String nombre = campo(campos, cabecera.nombre);
+        if (nombre.isEmpty()) {
+            throw new IllegalArgumentException("Falta el nombre.");
+        }
+        if (nombre.length() > MAX_NOMBRE) {
+            throw new IllegalArgumentException("Nombre de más de " + MAX_NOMBRE + " caracteres.");
+        }
+
+        String descripcion = campo(campos, cabecera.descripcion);
+        if (descripcion.length() > MAX_DESCRIPCION) {
+            throw new IllegalArgumentException("Descripción de más de " + MAX_DESCRIPCION + " caracteres.");
+        }
+
+        double precio = precio(campo(campos, cabecera.precio));
+
+        String nombreTienda = campo(campos, cabecera.tienda);
+        Integer idTienda = nombreTienda.isEmpty() ? idTiendaPorDefecto : tiendas.get(clave(nombreTienda));
+        if (idTienda == null) {
+            throw new IllegalArgumentException(nombreTienda.isEmpty()
+                    ? "Falta la tienda." : "Tienda desconocida: " + nombreTienda);
+        }
+
+        String nombreCategoria = campo(campos, cabecera.categoria);
+        int idCategoria = 0;
+        if (!nombreCategoria.isEmpty()) {
+            Integer id = categorias.get(clave(nombreCategoria));
+            if (id == null) {
+                throw new IllegalArgumentException("Categoría desconocida: " + nombreCategoria);
+            }
+            idCategoria = id;
+        }
+
+        Producto producto = new Producto(nombre, descripcion.isEmpty() ? null : descripcion, precio, idTienda, idCategoria);
+        producto.setNombreTienda(nombreTienda);
+        producto.setNombreCategoria(nombreCategoria);
+        return producto;
+    }
+
+    private static String campo(List<String> campos, int indice) {
+        return indice >= 0 && indice < campos.size() ? campos.get(indice).trim() : "";
+    }
+
+    /**
+     * "2,50", "2.50", "1.234,50", "1,234.50" o "2,50 €". Si aparecen punto y
+     * coma, el último es el decimal.
+     */
+    private static double precio(String texto) {
+        String limpio = texto.replace("€", "").replace(" ", "").replace("\u00A0", "");
+        if (limpio.isEmpty()) {
+            throw new IllegalArgumentException("Falta el precio.");
+        }
+        int coma = limpio.lastIndexOf(',');
+        int punto = limpio.lastIndexOf('.');
+        if (coma > punto) {
+            limpio = limpio.replace(".", "").replace(',', '.');
+        } else if (punto > coma && coma >= 0) {
+            limpio = limpio.replace(",", "");
+        }
+        try {
+            BigDecimal valor = new BigDecimal(limpio);
+            if (valor.signum() < 0) {
+                throw new IllegalArgumentException("Precio negativo: " + texto);
+            }
+            if (valor.compareTo(new BigDecimal("99999999.99")) > 0) {
+                throw new IllegalArgumentException("Precio demasiado alto: " + texto);
+            }
+            return valor.doubleValue();
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Precio no válido: " + texto);
+        }
+    }
+
+    /** Nombres comparados como en la base (utf8mb4_general_ci). */
+    private static String clave(String nombre) {
+        return IndiceBusqueda.normalizar(nombre).trim();
+    }
+
+    // ============================================================
+    // CLASES INTERNAS
+    // ============================================================
+    private static final class Lote {
+
+        final List<Producto> insertar = new ArrayList<>();
+        final List<Producto> actualizar = new ArrayList<>();
+
+        int tamanio() {
+            return insertar.size() + actualizar.size();
+        }
+    }
+
+    /** Posición de cada columna conocida (-1 si no está). */
+    private static final class Cabecera {
+
+        int nombre = -1;
+        int descripcion = -1;
+        int precio = -1;
+        int tienda = -1;
+        int categoria = -1;
+
+        Cabecera(List<String> columnas) throws IOException {
+            for (int i = 0; i < columnas.size(); i++) {
+                switch (clave(columnas.get(i))) {
+                    case "nombre":
+                    case "producto":
+                        nombre = i;
+                        break;
+                    case "descripcion":
+                        descripcion = i;
+                        break;
+                    case "precio":
+                        precio = i;
+                        break;
+                    case "tienda":
+                        tienda = i;
+                        break;
+                    case "categoria":
+                        categoria = i;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (nombre < 0 || precio < 0) {
+                throw new IOException("Cabecera no válida: se esperan al menos las columnas 'nombre' y 'precio'.");
+            }
+        }
+    }
+
+    /**
+     * Lector de registros CSV con campos entre comillas. El separador se
+     * deduce de la cabecera.
+     */
+    private static final class LectorCSV {
+
+        private final BufferedReader lector;
+        private char separador = ';';
+        private int linea = 0;
+        private int lineaRegistro = 0;
+
+        LectorCSV(BufferedReader lector) {
+            this.lector = lector;
+        }
+
+        List<String> leerCabecera() throws IOException {
+            String primera = lector.readLine();
+            if (primera == null) {
+                throw new IOException("El archivo está vacío.");
+            }
+            linea = 1;
+            lineaRegistro = 1;
+            if (primera.startsWith("\uFEFF")) {
+                primera = primera.substring(1);
+            }
+
+            int puntoYComa = contar(primera, ';');
+            int coma = contar(primera, ',');
+            int tabulador = contar(primera, '\t');
+            separador = tabulador > puntoYComa && tabulador > coma ? '\t' : (coma > puntoYComa ? ',' : ';');
+            return recorrer(primera, false, new StringBuilder(), new ArrayList<>());
+        }
+
+        /** Línea en la que empieza el último registro leído. */
+        int getLineaRegistro() {
+            return lineaRegistro;
+        }
+
+        /** Campos del siguiente registro, o null al final del archivo. */
+        List<String> leerRegistro() throws IOException {
+            String texto = lector.readLine();
+            if (texto == null) {
+                return null;
+            }
+            linea++;
+            lineaRegistro = linea;
+
+            List<String> campos = new ArrayList<>();
+            StringBuilder actual = new StringBuilder();
+            List<String> resto = recorrer(texto, false, actual, campos);
+            // Comillas sin cerrar: el campo sigue en la línea siguiente
+            while (resto == null) {
+                String siguiente = lector.readLine();
+                if (siguiente == null) {
+                    throw new IOException("Comillas sin cerrar en el registro de la línea " + lineaRegistro + ".");
+                }
+                linea++;
+                actual.append('\n');
+                resto = recorrer(siguiente, true, actual, campos);
+            }
+            return resto;
+        }
+
+        /**
+         * Añade a campos los de la línea. Devuelve null si la línea acaba
+         * dentro de comillas (actual guarda lo leído del campo abierto).
+         */
+        private List<String> recorrer(String texto, boolean entreComillas, StringBuilder actual,
+                List<String> campos) {
+            for (int i = 0; i < texto.length(); i++) {
+                char c = texto.charAt(i);
+                if (entreComillas) {
+                    if (c == '"') {
+                        if (i + 1 < texto.length() && texto.charAt(i + 1) == '"') {
+                            actual.append('"');
+                            i++;
+                        } else {
+                            entreComillas = false;
+                        }
+                    } else {
+                        actual.append(c);
+                    }
+                } else if (c == '"') {
+                    entreComillas = true;
+                } else if (c == separador) {
+                    campos.add(actual.toString());
+                    actual.setLength(0);
+                } else {
+                    actual.append(c);
+                }
+            }
+            if (entreComillas) {
+                return null;
+            }
+            campos.add(actual.toString());
+            actual.setLength(0);
+            return campos;
+        }
+
+        private static int contar(String texto, char c) {
+            int n = 0;
+            for (int i = 0; i < texto.length(); i++) {
+                if (texto.charAt(i) == c) {
+                    n++;
+                }
+            }
+            return n;
+        }
+    }
+
+    // ============================================================
+    // RESULTADO
+    // ============================================================
+    /** Fila no importada: línea del archivo (-1 si es un lote) y motivo. */
+    public static final class Rechazo {
+
+        private final int linea;
+        private final String motivo;
+
+        Rechazo(int linea, String motivo) {
+            this.linea = linea;
+            this.motivo = motivo;
+        }
+
+        public int getLinea() {
+            return linea;
+        }
+
+        public String getMotivo() {
+            return motivo;
+        }
+
+        @Override
+        public String toString() {
+            return (linea > 0 ? "Línea " + linea + ": " : "") + motivo;
+        }
+    }
+
+    public static final class Resultado {
+
+        private int leidas;
+        private int insertadas;
+        private int actualizadas;
+        private final List<Rechazo> rechazos = new ArrayList<>();
+        private String error;
+        private long milisegundos;
+
+        private void rechazar(int linea, String motivo) {
+            rechazos.add(new Rechazo(linea, motivo));
+        }
+
+        public int getLeidas() {
+            return leidas;
+        }
+
+        public int getInsertadas() {
+            return insertadas;
+        }
+
+        public int getActualizadas() {
+            return actualizadas;
+        }
+
+        public List<Rechazo> getRechazos() {
+            return Collections.unmodifiableList(rechazos);
+        }
+
+        /** Mensaje del error de base de datos que detuvo la importación, o null. */
+        public String getError() {
+            return error;
+        }
+
+        public long getMilisegundos() {
+            return milisegundos;
+        }
+    }
+}
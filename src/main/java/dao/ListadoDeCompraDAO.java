@@ -1,9 +1,19 @@
 package dao;
 
-import config.ConexionDB;
 import config.Logger;
-import java.sql.*;
-import java.util.*;
+import config.Metricas;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import models.ListadoCompra;
 
 /**
@@ -14,133 +24,194 @@ import models.ListadoCompra;
  */
 public class ListadoDeCompraDAO {
 
+    /**
+     * Filas por página en el listado paginado (propiedad del sistema
+     * app_compras.listado.pagina, por defecto 200).
+     */
+    public static final int TAMANIO_PAGINA = Math.max(1, Integer.getInteger("app_compras.listado.pagina", 200));
+
+    // Columnas y joins comunes a todos los listados de detalle
+    private static final String SELECT_DETALLES = "SELECT "
+            + " ld.id_detalle, "
+            + " ld.id_compra, "
+            + " c.id_usuario, "
+            + " c.nombre AS nombre_compra, "
+            + " u.nombre AS usuario, "
+            + " p.nombre AS producto, "
+            + " t.nombre AS tienda, "
+            + " ld.cantidad, "
+            + " ld.precio_unitario, "
+            + " ld.subtotal, "
+            + " c.fecha_compra "
+            + "FROM listado_de_compras ld "
+            + "INNER JOIN compras c ON ld.id_compra = c.id_compra "
+            + "INNER JOIN usuarios u ON c.id_usuario = u.id_usuario "
+            + "INNER JOIN productos p ON ld.id_producto = p.id_producto "
+            + "INNER JOIN tiendas t ON c.id_tienda = t.id_tienda ";
+
+    /** Fila de SELECT_DETALLES. */
+    private static final MapeadorFilas<ListadoCompra> DETALLE = columnas -> {
+        int idDetalle = columnas.indice("id_detalle");
+        int idCompra = columnas.indice("id_compra");
+        int idUsuario = columnas.indice("id_usuario");
+        int nombreCompra = columnas.indice("nombre_compra");
+        int usuario = columnas.indice("usuario");
+        int producto = columnas.indice("producto");
+        int tienda = columnas.indice("tienda");
+        int cantidad = columnas.indice("cantidad");
+        int precioUnitario = columnas.indice("precio_unitario");
+        int subtotal = columnas.indice("subtotal");
+        int fechaCompra = columnas.indice("fecha_compra");
+        return rs -> new ListadoCompra(
+                rs.getInt(idDetalle),
+                rs.getInt(idCompra),
+                rs.getInt(idUsuario),
+                rs.getString(nombreCompra),
+                rs.getString(usuario),
+                rs.getString(producto),
+                rs.getString(tienda),
+                rs.getInt(cantidad),
+                rs.getDouble(precioUnitario),
+                rs.getDouble(subtotal),
+                rs.getString(fechaCompra)
+        );
+    };
+
     /**
      * Obtiene todos los registros de la tabla listado_de_compras con
      * información completa (modo administrador).
      */
     public List<ListadoCompra> listarDetallesCompras() {
-        List<ListadoCompra> lista = new ArrayList<>();
-
-        String sql = "SELECT "
-                + " ld.id_detalle, "
-                + " ld.id_compra, "
-                + " c.id_usuario, "
-                + " c.nombre AS nombre_compra, "
-                + " u.nombre AS usuario, "
-                + " p.nombre AS producto, "
-                + " t.nombre AS tienda, "
-                + " ld.cantidad, "
-                + " ld.precio_unitario, "
-                + " ld.subtotal, "
-                + " c.fecha_compra "
-                + "FROM listado_de_compras ld "
-                + "INNER JOIN compras c ON ld.id_compra = c.id_compra "
-                + "INNER JOIN usuarios u ON c.id_usuario = u.id_usuario "
-                + "INNER JOIN productos p ON ld.id_producto = p.id_producto "
-                + "INNER JOIN tiendas t ON c.id_tienda = t.id_tienda "
+        String sql = SELECT_DETALLES
                 + "ORDER BY ld.id_detalle ASC;"; // 🔥 Orden numérico puro por ID
 
-        try (Connection conn = ConexionDB.getConexion(); Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
-
-            while (rs.next()) {
-                ListadoCompra lc = new ListadoCompra(
-                        rs.getInt("id_detalle"),
-                        rs.getInt("id_compra"),
-                        rs.getInt("id_usuario"),
-                        rs.getString("nombre_compra"),
-                        rs.getString("usuario"),
-                        rs.getString("producto"),
-                        rs.getString("tienda"),
-                        rs.getInt("cantidad"),
-                        rs.getDouble("precio_unitario"),
-                        rs.getDouble("subtotal"),
-                        rs.getString("fecha_compra")
-                );
-                lista.add(lc);
-            }
+        try {
+            List<ListadoCompra> lista = PlantillaJDBC.listar(sql, DETALLE);
 
-            Logger.info("Listado de TODAS las compras cargado correctamente. Total registros: " + lista.size());
+            Logger.info(() -> "Listado de TODAS las compras cargado correctamente. Total registros: " + lista.size());
+            return lista;
         } catch (SQLException e) {
             Logger.exception("Error al listar TODAS las compras", e);
         }
 
-        return lista;
+        return new ArrayList<>();
     }
 
     /**
      * Obtiene los registros de compras asociados a un usuario específico.
      */
     public List<ListadoCompra> listarDetallesPorUsuario(int idUsuario) {
-        List<ListadoCompra> lista = new ArrayList<>();
-
-        String sql = "SELECT "
-                + " ld.id_detalle, "
-                + " ld.id_compra, "
-                + " c.id_usuario, "
-                + " c.nombre AS nombre_compra, "
-                + " u.nombre AS usuario, "
-                + " p.nombre AS producto, "
-                + " t.nombre AS tienda, "
-                + " ld.cantidad, "
-                + " ld.precio_unitario, "
-                + " ld.subtotal, "
-                + " c.fecha_compra "
-                + "FROM listado_de_compras ld "
-                + "INNER JOIN compras c ON ld.id_compra = c.id_compra "
-                + "INNER JOIN usuarios u ON c.id_usuario = u.id_usuario "
-                + "INNER JOIN productos p ON ld.id_producto = p.id_producto "
-                + "INNER JOIN tiendas t ON c.id_tienda = t.id_tienda "
+        String sql = SELECT_DETALLES
                 + "WHERE c.id_usuario = ? "
                 + "ORDER BY ld.id_detalle ASC;"; // 🔥 También orden numérico puro por ID
 
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement pst = conn.prepareStatement(sql)) {
+        try {
+            List<ListadoCompra> lista = PlantillaJDBC.listar(sql, DETALLE, idUsuario);
 
-            pst.setInt(1, idUsuario);
-            try (ResultSet rs = pst.executeQuery()) {
-                while (rs.next()) {
-                    ListadoCompra lc = new ListadoCompra(
-                            rs.getInt("id_detalle"),
-                            rs.getInt("id_compra"),
-                            rs.getInt("id_usuario"),
-                            rs.getString("nombre_compra"),
-                            rs.getString("usuario"),
-                            rs.getString("producto"),
-                            rs.getString("tienda"),
-                            rs.getInt("cantidad"),
-                            rs.getDouble("precio_unitario"),
-                            rs.getDouble("subtotal"),
-                            rs.getString("fecha_compra")
-                    );
-                    lista.add(lc);
-                }
-            }
-
-            Logger.info("Listado de compras cargado para usuario ID " + idUsuario + ". Total: " + lista.size());
+            Logger.info(() -> "Listado de compras cargado para usuario ID " + idUsuario + ". Total: " + lista.size());
+            return lista;
         } catch (SQLException e) {
             Logger.exception("Error al listar compras por usuario", e);
         }
 
-        return lista;
+        return new ArrayList<>();
     }
 
     /**
-     * Calcula el total gastado por un usuario específico.
+     * Obtiene una página del listado (paginación por clave): como máximo
+     * tamanio filas a continuación de la última ya cargada. Cada página cuesta
+     * lo mismo sin importar cuánto histórico haya:
+     * <ul>
+     * <li>Todos los usuarios: orden por id_detalle, leyendo directamente la
+     * clave primaria.</li>
+     * <li>Un usuario: orden por (id_compra, id_detalle). Sus compras salen de
+     * idx_compras_usuario_fecha y sus líneas de idx_listado_compra_producto,
+     * sin recorrer las líneas de los demás usuarios.</li>
+     * </ul>
+     *
+     * @param idUsuario usuario a listar o -1 para todos (modo administrador)
+     * @param despuesDeIdCompra id_compra de la última fila ya cargada (0 para
+     * la primera página; no se usa con todos los usuarios)
+     * @param despuesDeIdDetalle id_detalle de la última fila ya cargada (0
+     * para la primera página)
+     * @param tamanio número máximo de filas
+     * @return filas de la página; si hay menos que tamanio, es la última
      */
-    public double obtenerTotalGastadoPorUsuario(int idUsuario) {
-        double total = 0.0;
+    public List<ListadoCompra> listarDetallesPagina(int idUsuario, int despuesDeIdCompra, int despuesDeIdDetalle,
+            int tamanio) {
+        return listarDetallesPagina(idUsuario, despuesDeIdCompra, despuesDeIdDetalle, tamanio, null);
+    }
 
-        String sql = "SELECT SUM(ld.subtotal) AS total "
-                + "FROM listado_de_compras ld "
-                + "JOIN compras c ON ld.id_compra = c.id_compra "
-                + "WHERE c.id_usuario = ?;";
+    /**
+     * Igual que listarDetallesPagina, pero solo con las líneas cuya compra,
+     * usuario, producto, tienda o fecha contienen el texto buscado. El filtro
+     * va en la consulta, así que la búsqueda cubre todo el histórico y no solo
+     * las páginas ya cargadas.
+     *
+     * @param filtro texto a buscar; null o vacío para no filtrar
+     */
+    public List<ListadoCompra> listarDetallesPagina(int idUsuario, int despuesDeIdCompra, int despuesDeIdDetalle,
+            int tamanio, String filtro) {
+        List<Object> parametros = new ArrayList<>();
+        StringBuilder sql = new StringBuilder(SELECT_DETALLES);
+        if (idUsuario > 0) {
+            sql.append("WHERE c.id_usuario = ? ")
+                    .append("AND (c.id_compra > ? OR (c.id_compra = ? AND ld.id_detalle > ?)) ");
+            Collections.addAll(parametros, idUsuario, despuesDeIdCompra, despuesDeIdCompra, despuesDeIdDetalle);
+        } else {
+            sql.append("WHERE ld.id_detalle > ? ");
+            parametros.add(despuesDeIdDetalle);
+        }
 
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement pst = conn.prepareStatement(sql)) {
+        boolean filtrado = filtro != null && !filtro.trim().isEmpty();
+        if (filtrado) {
+            // Sin distinguir mayúsculas también en H2 (en MySQL ya lo hace la intercalación)
+            sql.append("AND (LOWER(c.nombre) LIKE ? OR LOWER(u.nombre) LIKE ? OR LOWER(p.nombre) LIKE ? ")
+                    .append("OR LOWER(t.nombre) LIKE ? OR CAST(c.fecha_compra AS CHAR(19)) LIKE ?) ");
+            String patron = "%" + filtro.trim().toLowerCase(Locale.ROOT) + "%";
+            Collections.addAll(parametros, patron, patron, patron, patron, patron);
+        }
 
-            pst.setInt(1, idUsuario);
-            try (ResultSet rs = pst.executeQuery()) {
-                if (rs.next()) {
-                    total = rs.getDouble("total");
-                }
+        sql.append(idUsuario > 0 ? "ORDER BY ld.id_compra ASC, ld.id_detalle ASC " : "ORDER BY ld.id_detalle ASC ")
+                .append("LIMIT ?;");
+        parametros.add(tamanio);
+
+        try {
+            List<ListadoCompra> lista = PlantillaJDBC.listar(sql.toString(), DETALLE, parametros.toArray());
+
+            Logger.info(() -> "Página del listado cargada (usuario " + (idUsuario > 0 ? idUsuario : "todos")
+                    + (filtrado ? ", filtro \"" + filtro.trim() + "\"" : "")
+                    + ", después de " + despuesDeIdDetalle + "): " + lista.size() + " filas.");
+            return lista;
+        } catch (SQLException e) {
+            Logger.exception("Error al listar la página de compras después del detalle " + despuesDeIdDetalle, e);
+        }
+
+        return new ArrayList<>();
+    }
+
+    /**
+     * Calcula el total gastado por un usuario específico. Con los resúmenes al
+     * día suma sus filas de resumen_gasto_anual (una por año) más las compras
+     * sin fecha, que no cuentan en los resúmenes; si no, suma todas sus líneas.
+     */
+    public double obtenerTotalGastadoPorUsuario(int idUsuario) {
+        double total = 0.0;
+
+        try {
+            if (ResumenGastosDAO.disponibles()) {
+                // Las compras sin fecha salen de idx_compras_usuario_fecha
+                total = PlantillaJDBC.primero("SELECT SUM(gasto_total) AS total "
+                        + "FROM resumen_gasto_anual WHERE id_usuario = ?;", MapeadorFilas.DECIMAL, idUsuario)
+                        + PlantillaJDBC.primero("SELECT SUM(ld.subtotal) AS total "
+                                + "FROM compras c "
+                                + "JOIN listado_de_compras ld ON ld.id_compra = c.id_compra "
+                                + "WHERE c.id_usuario = ? AND c.fecha_compra IS NULL;", MapeadorFilas.DECIMAL, idUsuario);
+            } else {
+                total = PlantillaJDBC.primero("SELECT SUM(ld.subtotal) AS total "
+                        + "FROM listado_de_compras ld "
+                        + "JOIN compras c ON ld.id_compra = c.id_compra "
+                        + "WHERE c.id_usuario = ?;", MapeadorFilas.DECIMAL, idUsuario);
             }
 
             Logger.info("Total gastado por usuario ID " + idUsuario + ": " + total + " €");
@@ -152,16 +223,25 @@ public class ListadoDeCompraDAO {
     }
 
     /**
-     * Calcula el total general de todas las compras (modo administrador).
+     * Calcula el total general de todas las compras (modo administrador). Con
+     * los resúmenes al día suma resumen_gasto_anual más las compras que no
+     * cuentan en ellos (sin fecha o de usuarios eliminados); si no, suma todas
+     * las líneas.
      */
     public double obtenerTotalGeneral() {
         double total = 0.0;
-        String sql = "SELECT SUM(ld.subtotal) AS total FROM listado_de_compras ld;";
-
-        try (Connection conn = ConexionDB.getConexion(); Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
 
-            if (rs.next()) {
-                total = rs.getDouble("total");
+        try {
+            if (ResumenGastosDAO.disponibles()) {
+                total = PlantillaJDBC.primero("SELECT SUM(gasto_total) AS total FROM resumen_gasto_anual;",
+                        MapeadorFilas.DECIMAL)
+                        + PlantillaJDBC.primero("SELECT SUM(ld.subtotal) AS total "
+                                + "FROM compras c "
+                                + "JOIN listado_de_compras ld ON ld.id_compra = c.id_compra "
+                                + "WHERE c.id_usuario IS NULL OR c.fecha_compra IS NULL;", MapeadorFilas.DECIMAL);
+            } else {
+                total = PlantillaJDBC.primero("SELECT SUM(ld.subtotal) AS total FROM listado_de_compras ld;",
+                        MapeadorFilas.DECIMAL);
             }
             Logger.info("Total general de compras (admin): " + total + " €");
         } catch (SQLException e) {
@@ -175,8 +255,6 @@ public class ListadoDeCompraDAO {
      * Devuelve una lista con el nombre de cada usuario y su total gastado.
      */
     public List<Map<String, Object>> obtenerTotalesPorUsuario() {
-        List<Map<String, Object>> lista = new ArrayList<>();
-
         String sql = "SELECT u.id_usuario, u.nombre AS usuario, SUM(ld.subtotal) AS total "
                 + "FROM listado_de_compras ld "
                 + "JOIN compras c ON ld.id_compra = c.id_compra "
@@ -184,42 +262,105 @@ public class ListadoDeCompraDAO {
                 + "GROUP BY u.id_usuario, u.nombre "
                 + "ORDER BY total ASC;";
 
-        try (Connection conn = ConexionDB.getConexion(); Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
-
-            while (rs.next()) {
-                Map<String, Object> fila = new HashMap<>();
-                fila.put("id_usuario", rs.getInt("id_usuario"));
-                fila.put("usuario", rs.getString("usuario"));
-                fila.put("total", rs.getDouble("total"));
-                lista.add(fila);
-            }
-
-            Logger.info("Totales por usuario cargados correctamente (" + lista.size() + " usuarios).");
+        try {
+            List<Map<String, Object>> lista = PlantillaJDBC.listar(sql, columnas -> {
+                int idUsuario = columnas.indice("id_usuario");
+                int usuario = columnas.indice("usuario");
+                int total = columnas.indice("total");
+                return rs -> {
+                    Map<String, Object> fila = new HashMap<>();
+                    fila.put("id_usuario", rs.getInt(idUsuario));
+                    fila.put("usuario", rs.getString(usuario));
+                    fila.put("total", rs.getDouble(total));
+                    return fila;
+                };
+            });
+
+            Logger.info(() -> "Totales por usuario cargados correctamente (" + lista.size() + " usuarios).");
+            return lista;
         } catch (SQLException e) {
             Logger.exception("Error al obtener totales por usuario", e);
         }
 
-        return lista;
+        return new ArrayList<>();
     }
 
     /**
-     * Corrige error con columna generada 'subtotal'.
+     * Actualiza cantidad y precio de una línea (sin tocar la columna generada
+     * 'subtotal'). En la misma transacción ajusta el total de la compra y los
+     * resúmenes de gastos con la diferencia de subtotal.
      */
     public boolean actualizarDetalleCompra(ListadoCompra compra) {
+        String sqlAnterior = "SELECT ld.id_compra, ld.subtotal, c.id_usuario, c.fecha_compra, "
+                + "COALESCE(p.id_categoria, 0) AS id_categoria "
+                + "FROM listado_de_compras ld "
+                + "INNER JOIN compras c ON c.id_compra = ld.id_compra "
+                + "LEFT JOIN productos p ON p.id_producto = ld.id_producto "
+                + "WHERE ld.id_detalle = ? FOR UPDATE;";
         String sql = "UPDATE listado_de_compras "
                 + "SET cantidad = ?, precio_unitario = ? "
                 + "WHERE id_detalle = ?;";
+        String sqlSubtotal = "SELECT subtotal FROM listado_de_compras WHERE id_detalle = ?;";
+        String sqlTotal = "UPDATE compras SET total = total + ? WHERE id_compra = ?;";
+
+        // Migraciones antes de abrir la transacción (ver CompraDAO.registrarCompra)
+        ResumenGastosDAO.esperarMigraciones();
+
+        try (Connection conn = PlantillaJDBC.conexion()) {
+            conn.setAutoCommit(false);
+            try {
+                int idCompra;
+                int idUsuario;
+                int idCategoria;
+                double subtotalAnterior;
+                LocalDate fecha;
+
+                // Línea actual, bloqueada hasta el commit
+                try (PreparedStatement pst = conn.prepareStatement(sqlAnterior)) {
+                    pst.setInt(1, compra.getIdDetalle());
+                    try (ResultSet rs = pst.executeQuery()) {
+                        if (!rs.next()) {
+                            conn.rollback();
+                            Logger.warning(() -> "No existe el detalle de compra ID " + compra.getIdDetalle());
+                            return false;
+                        }
+                        idCompra = rs.getInt("id_compra");
+                        subtotalAnterior = rs.getDouble("subtotal");
+                        idUsuario = rs.getInt("id_usuario");
+                        Timestamp fechaCompra = rs.getTimestamp("fecha_compra");
+                        fecha = fechaCompra != null ? fechaCompra.toLocalDateTime().toLocalDate() : null;
+                        idCategoria = rs.getInt("id_categoria");
+                    }
+                }
 
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement pst = conn.prepareStatement(sql)) {
-
-            pst.setInt(1, compra.getCantidad());
-            pst.setDouble(2, compra.getPrecioUnitario());
-            pst.setInt(3, compra.getIdDetalle());
+                PlantillaJDBC.actualizar(conn, sql, compra.getCantidad(), compra.getPrecioUnitario(),
+                        compra.getIdDetalle());
+
+                // El subtotal es una columna calculada: se lee ya actualizado
+                Double subtotalLeido = PlantillaJDBC.primero(conn, sqlSubtotal, MapeadorFilas.DECIMAL,
+                        compra.getIdDetalle());
+                double subtotalNuevo = subtotalLeido != null ? subtotalLeido : subtotalAnterior;
+
+                double diferencia = subtotalNuevo - subtotalAnterior;
+                if (diferencia != 0) {
+                    PlantillaJDBC.actualizar(conn, sqlTotal, diferencia, idCompra);
+                    // Compras de usuarios eliminados o sin fecha no cuentan en los resúmenes
+                    if (idUsuario > 0 && fecha != null) {
+                        ResumenGastosDAO.aplicarDiferencia(conn, idUsuario, fecha, idCategoria, diferencia);
+                    }
+                }
 
-            int filas = pst.executeUpdate();
-            if (filas > 0) {
-                Logger.info("Detalle de compra actualizado correctamente. ID: " + compra.getIdDetalle());
+                conn.commit();
+                AnaliticaGastos.invalidar();
+                Logger.info(() -> "Detalle de compra actualizado correctamente. ID: " + compra.getIdDetalle());
                 return true;
+
+            } catch (Throwable e) {
+                // Cualquier fallo: el finally haría commit de la línea sin el total ni los resúmenes
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
             }
         } catch (SQLException e) {
             Logger.exception("Error al actualizar detalle de compra ID " + compra.getIdDetalle(), e);
@@ -235,13 +376,10 @@ public class ListadoDeCompraDAO {
         String sql = "SELECT id_usuario FROM usuarios WHERE nombre = ?;";
         int id = -1;
 
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement pst = conn.prepareStatement(sql)) {
-
-            pst.setString(1, nombreUsuario);
-            try (ResultSet rs = pst.executeQuery()) {
-                if (rs.next()) {
-                    id = rs.getInt("id_usuario");
-                }
+        try {
+            Integer encontrado = PlantillaJDBC.primero(sql, MapeadorFilas.ENTERO, nombreUsuario);
+            if (encontrado != null) {
+                id = encontrado;
             }
 
             Logger.info("ID obtenido para usuario '" + nombreUsuario + "': " + id);
@@ -253,69 +391,57 @@ public class ListadoDeCompraDAO {
     }
 
     /**
-     * Devuelve todas las compras agrupadas por usuario. Si el parámetro
-     * idUsuario es -1 ⇒ devuelve todos los usuarios (modo admin). Si el
-     * parámetro idUsuario > 0 ⇒ devuelve solo ese usuario.
+     * Recibe las filas del listado una a una mientras se recorre el ResultSet.
      */
-    public Map<String, List<ListadoCompra>> listarComprasAgrupadasPorUsuario(int idUsuario) {
-        Map<String, List<ListadoCompra>> mapaUsuarios = new LinkedHashMap<>();
-
-        String sql = "SELECT "
-                + " u.nombre AS usuario, "
-                + " ld.id_detalle, "
-                + " ld.id_compra, "
-                + " c.id_usuario, "
-                + " c.nombre AS nombre_compra, "
-                + " p.nombre AS producto, "
-                + " t.nombre AS tienda, "
-                + " ld.cantidad, "
-                + " ld.precio_unitario, "
-                + " ld.subtotal, "
-                + " c.fecha_compra "
-                + "FROM listado_de_compras ld "
-                + "INNER JOIN compras c ON ld.id_compra = c.id_compra "
-                + "INNER JOIN usuarios u ON c.id_usuario = u.id_usuario "
-                + "INNER JOIN productos p ON ld.id_producto = p.id_producto "
-                + "INNER JOIN tiendas t ON c.id_tienda = t.id_tienda "
+    @FunctionalInterface
+    public interface ProcesadorFila<E extends Exception> {
+
+        void procesar(ListadoCompra fila) throws E;
+    }
+
+    /**
+     * Recorre las compras ordenadas por usuario, compra y detalle sin
+     * guardarlas en memoria: cada fila se entrega al procesador y se descarta.
+     * El ResultSet es de solo avance y, en MySQL, se lee en streaming.
+     *
+     * @param idUsuario usuario a recorrer o -1 para todos
+     * @param procesador recibe cada fila
+     * @return número de filas recorridas
+     */
+    public <E extends Exception> int recorrerComprasAgrupadasPorUsuario(int idUsuario,
+            ProcesadorFila<E> procesador) throws SQLException, E {
+
+        String sql = SELECT_DETALLES
                 + (idUsuario > 0 ? "WHERE c.id_usuario = ? " : "")
                 + "ORDER BY u.nombre ASC, c.id_compra ASC, ld.id_detalle ASC;";
 
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement pst = conn.prepareStatement(sql)) {
+        int filas = 0;
+        try (Connection conn = PlantillaJDBC.conexion(); PreparedStatement pst = conn.prepareStatement(sql,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            // Connector/J solo entrega las filas en streaming con este valor especial
+            boolean mysql = "MySQL".equalsIgnoreCase(conn.getMetaData().getDatabaseProductName());
+            pst.setFetchSize(mysql ? Integer.MIN_VALUE : 500);
 
             if (idUsuario > 0) {
                 pst.setInt(1, idUsuario);
             }
 
             try (ResultSet rs = pst.executeQuery()) {
+                MapeadorFilas.Fila<ListadoCompra> detalle = DETALLE.preparar(new Columnas(rs.getMetaData()));
                 while (rs.next()) {
-                    String usuario = rs.getString("usuario");
-
-                    ListadoCompra lc = new ListadoCompra(
-                            rs.getInt("id_detalle"),
-                            rs.getInt("id_compra"),
-                            rs.getInt("id_usuario"),
-                            rs.getString("nombre_compra"),
-                            usuario,
-                            rs.getString("producto"),
-                            rs.getString("tienda"),
-                            rs.getInt("cantidad"),
-                            rs.getDouble("precio_unitario"),
-                            rs.getDouble("subtotal"),
-                            rs.getString("fecha_compra")
-                    );
-
-                    mapaUsuarios.computeIfAbsent(usuario, k -> new ArrayList<>()).add(lc);
+                    procesador.procesar(detalle.mapear(rs));
+                    filas++;
                 }
             }
-
-            Logger.info("Compras agrupadas cargadas correctamente. Filtro: "
-                    + (idUsuario > 0 ? "usuario ID " + idUsuario : "TODOS los usuarios")
-                    + ". Total usuarios: " + mapaUsuarios.size());
-        } catch (SQLException e) {
-            Logger.exception("Error al listar compras agrupadas por usuario", e);
+            Metricas.filas(filas);
         }
 
-        return mapaUsuarios;
+        int total = filas;
+        Logger.info(() -> "Compras recorridas en streaming. Filtro: "
+                + (idUsuario > 0 ? "usuario ID " + idUsuario : "TODOS los usuarios")
+                + ". Filas: " + total);
+        return filas;
     }
 
 }
@@ -0,0 +1,49 @@
+package dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Convierte las filas de una consulta en objetos del modelo.
+ *
+ * Se llama una vez por ResultSet con sus columnas: ahí se resuelven los
+ * índices por etiqueta y se devuelve la función que convierte cada fila
+ * leyendo por índice, sin buscar la etiqueta en cada fila.
+ *
+ * <pre>
+ * MapeadorFilas&lt;Categoria&gt; CATEGORIA = columnas -&gt; {
+ *     int id = columnas.indice("id_categoria");
+ *     int nombre = columnas.indice("nombre");
+ *     return rs -&gt; new Categoria(rs.getInt(id), rs.getString(nombre));
+ * };
+ * </pre>
+ *
+ * @author Milanes
+ */
+@FunctionalInterface
+interface MapeadorFilas<T> {
+
+    Fila<T> preparar(Columnas columnas) throws SQLException;
+
+    /**
+     * Conversión de la fila actual del ResultSet.
+     */
+    @FunctionalInterface
+    interface Fila<T> {
+
+        T mapear(ResultSet rs) throws SQLException;
+    }
+
+    // Valores sueltos de la primera columna (COUNT, SUM, ids...)
+    MapeadorFilas<Integer> ENTERO = columnas -> rs -> rs.getInt(1);
+    MapeadorFilas<Double> DECIMAL = columnas -> rs -> rs.getDouble(1);
+    MapeadorFilas<String> TEXTO = columnas -> rs -> rs.getString(1);
+
+    /**
+     * Integer o null si la columna es NULL (rs.getInt devolvería 0).
+     */
+    static Integer enteroONulo(ResultSet rs, int indice) throws SQLException {
+        int valor = rs.getInt(indice);
+        return rs.wasNull() ? null : valor;
+    }
+}
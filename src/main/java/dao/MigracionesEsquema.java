@@ -0,0 +1,322 @@
+package dao;
+
+import config.CachePermisos;
+import config.ConexionDB;
+import config.Logger;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Migraciones versionadas del esquema. "recursos/app_compras limpia.sql" es la
+ * versión 1; lo que se añade después va aquí como una migración numerada, y
+ * la tabla version_esquema guarda cuáles se aplicaron ya (con la fecha y lo
+ * que tardaron).
+ *
+ * aplicar() se lanza una vez al arrancar la aplicación y ejecuta en orden las
+ * que falten; si una falla, las siguientes se dejan para el próximo arranque.
+ * Las compras no dependen de ellas: los DAO que actualizan los resúmenes de
+ * gastos esperan a que termine el primer intento (antes de abrir su
+ * transacción) y preguntan con aplicada(VERSION_RESUMENES), que solo lee un
+ * campo; si no están se los saltan y dejan la versión pendiente para el
+ * próximo arranque (ver ResumenGastosDAO). Los informes llaman a
+ * ResumenGastosDAO.preparar(), que también espera al primer intento.
+ * aplicar() nunca debe llamarse con una transacción abierta: un CREATE INDEX
+ * esperaría a los bloqueos de esa transacción.
+ *
+ * En MySQL el DDL no es transaccional, así que cada paso es idempotente
+ * (CREATE TABLE IF NOT EXISTS, índices que se comprueban antes de crearlos,
+ * filas que se buscan antes de insertarlas): si una migración se corta a
+ * medias, o dos equipos arrancan a la vez sobre la misma base, se puede
+ * repetir sin romper nada.
+ *
+ * Para añadir una migración basta con agregarla al final de MIGRACIONES con
+ * el siguiente número. Nunca se cambia una que ya se haya publicado.
+ *
+ * @author Milanes
+ */
+public final class MigracionesEsquema {
+
+    private static final String SQL_CREAR_TABLA
+            = "CREATE TABLE IF NOT EXISTS version_esquema ("
+            + "version INT NOT NULL PRIMARY KEY, "
+            + "descripcion VARCHAR(200) NOT NULL, "
+            + "aplicada DATETIME NOT NULL, "
+            + "duracion_ms BIGINT NOT NULL)";
+
+    private static final String SQL_REGISTRAR
+            = "INSERT INTO version_esquema (version, descripcion, aplicada, duracion_ms) VALUES (?, ?, ?, ?)";
+
+    /** Un paso de una migración, sobre una conexión en modo autocommit. */
+    @FunctionalInterface
+    interface Paso {
+
+        void aplicar(Connection conn) throws SQLException;
+    }
+
+    private static final class Migracion {
+
+        final int version;
+        final String descripcion;
+        final Paso[] pasos;
+
+        Migracion(int version, String descripcion, Paso... pasos) {
+            this.version = version;
+            this.descripcion = descripcion;
+            this.pasos = pasos;
+        }
+    }
+
+    /** Versión que crea y rellena las tablas de resumen de gastos. */
+    static final int VERSION_RESUMENES = 2;
+
+    private static final List<Migracion> MIGRACIONES = Arrays.asList(
+            new Migracion(1, "Esquema inicial (app_compras limpia.sql)",
+                    MigracionesEsquema::comprobarEsquemaInicial),
+            new Migracion(VERSION_RESUMENES, "Tablas de resumen de gastos",
+                    ResumenGastosDAO::recalcular),
+            new Migracion(3, "Índices compuestos de compras, carrito y listado_de_compras",
+                    // Historial y totales de un usuario ordenados por fecha
+                    indice("compras", "idx_compras_usuario_fecha", "id_usuario", "fecha_compra"),
+                    // Líneas de una compra concreta del carrito (checkout, vaciar)
+                    indice("carrito", "idx_carrito_usuario_nombre", "id_usuario", "nombre_compra"),
+                    // Detalle de una compra y búsqueda de una línea por producto
+                    indice("listado_de_compras", "idx_listado_compra_producto", "id_compra", "id_producto")),
+            new Migracion(4, "Permiso btnMetricas para el administrador",
+                    MigracionesEsquema::permisoMetricas)
+    );
+
+    // Versiones que constan como aplicadas (se sustituye entero, nunca se modifica)
+    private static volatile Set<Integer> aplicadas = Set.of();
+    // true cuando ya se hizo el intento de la sesión
+    private static volatile boolean intentado;
+
+    private MigracionesEsquema() {
+    }
+
+    // ============================================================
+    // APLICAR
+    // ============================================================
+    /**
+     * Aplica en orden las migraciones que aún no constan en version_esquema.
+     * Solo trabaja una vez por sesión: las siguientes llamadas devuelven el
+     * resultado de ese intento. Si una migración falla se registra en el log
+     * y ni ella ni las siguientes se reintentan hasta el próximo arranque
+     * (solo se vuelve a intentar si no hubo conexión).
+     *
+     * @return true si el esquema está al día
+     */
+    public static boolean aplicar() {
+        if (intentado) {
+            return estaAlDia();
+        }
+        synchronized (MigracionesEsquema.class) {
+            if (intentado) {
+                return estaAlDia();
+            }
+            Connection conn = ConexionDB.getConexion();
+            if (conn == null) {
+                return false;
+            }
+            intentado = true;
+
+            try (conn) {
+                try (Statement st = conn.createStatement()) {
+                    st.executeUpdate(SQL_CREAR_TABLA);
+                }
+
+                aplicadas = Set.copyOf(aplicadas(conn));
+                int pendientes = 0;
+                for (Migracion migracion : MIGRACIONES) {
+                    if (!aplicadas.contains(migracion.version)) {
+                        aplicar(conn, migracion);
+                        Set<Integer> nuevas = new HashSet<>(aplicadas);
+                        nuevas.add(migracion.version);
+                        aplicadas = Set.copyOf(nuevas);
+                        pendientes++;
+                    }
+                }
+
+                int total = pendientes;
+                Logger.info(() -> total == 0
+                        ? "Esquema de la base de datos al día (versión " + ultimaVersion() + ")."
+                        : "Esquema de la base de datos actualizado a la versión " + ultimaVersion()
+                        + " (" + total + " migraciones).");
+                return true;
+
+            } catch (SQLException e) {
+                Logger.exception("Error al actualizar el esquema de la base de datos. "
+                        + "Se reintentará en el próximo arranque.", e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Indica, sin esperar ni tocar la base, si una migración ya consta como
+     * aplicada. Es la comprobación que se puede hacer dentro de una
+     * transacción abierta: aplicar() ahí podría quedarse esperando a los
+     * bloqueos de esa misma transacción.
+     */
+    static boolean aplicada(int version) {
+        return aplicadas.contains(version);
+    }
+
+    /**
+     * Quita una migración de version_esquema dentro de la transacción del
+     * llamador, para que el próximo arranque la vuelva a aplicar. No cambia
+     * lo que aplicada() responde en esta sesión. Si la tabla aún no existe no
+     * hace nada: nunca se ha migrado y el próximo arranque aplicará todas.
+     */
+    static void marcarPendiente(Connection conn, int version) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        try (ResultSet rs = meta.getTables(conn.getCatalog(), null, "version_esquema", new String[]{"TABLE"})) {
+            if (!rs.next()) {
+                return;
+            }
+        }
+        if (PlantillaJDBC.actualizar(conn, "DELETE FROM version_esquema WHERE version = ?", version) > 0) {
+            Logger.warning("La migración " + version + " queda pendiente: se aplicará de nuevo en el próximo arranque.");
+        }
+    }
+
+    private static boolean estaAlDia() {
+        return aplicadas.size() == MIGRACIONES.size();
+    }
+
+    private static void aplicar(Connection conn, Migracion migracion) throws SQLException {
+        Logger.info(() -> "Aplicando migración " + migracion.version + ": " + migracion.descripcion + "...");
+        long inicio = System.currentTimeMillis();
+
+        try {
+            for (Paso paso : migracion.pasos) {
+                paso.aplicar(conn);
+            }
+            try (PreparedStatement ps = conn.prepareStatement(SQL_REGISTRAR)) {
+                ps.setInt(1, migracion.version);
+                ps.setString(2, migracion.descripcion);
+                ps.setTimestamp(3, Timestamp.valueOf(LocalDateTime.now().withNano(0)));
+                ps.setLong(4, System.currentTimeMillis() - inicio);
+                ps.executeUpdate();
+            }
+        } catch (SQLException e) {
+            // Otro equipo pudo aplicarla a la vez: si ya consta, no es un error
+            if (aplicadas(conn).contains(migracion.version)) {
+                Logger.info(() -> "La migración " + migracion.version + " la aplicó otra instancia.");
+                return;
+            }
+            Logger.error("Falló la migración " + migracion.version + " (" + migracion.descripcion + ").");
+            throw e;
+        }
+    }
+
+    private static Set<Integer> aplicadas(Connection conn) throws SQLException {
+        Set<Integer> versiones = new HashSet<>();
+        try (Statement st = conn.createStatement();
+                ResultSet rs = st.executeQuery("SELECT version FROM version_esquema")) {
+            while (rs.next()) {
+                versiones.add(rs.getInt(1));
+            }
+        }
+        return versiones;
+    }
+
+    private static int ultimaVersion() {
+        return MIGRACIONES.get(MIGRACIONES.size() - 1).version;
+    }
+
+    // ============================================================
+    // PASOS
+    // ============================================================
+    /**
+     * La versión 1 no cambia nada: solo comprueba que la base tiene las tablas
+     * del script inicial (la embebida las crea sola; en MySQL se importa).
+     */
+    private static void comprobarEsquemaInicial(Connection conn) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        try (ResultSet rs = meta.getTables(conn.getCatalog(), null, "usuarios", new String[]{"TABLE"})) {
+            if (!rs.next()) {
+                throw new SQLException("La base de datos no tiene el esquema inicial: "
+                        + "importa \"recursos/app_compras limpia.sql\".");
+            }
+        }
+    }
+
+    /**
+     * Crea un índice si la tabla todavía no tiene uno con ese nombre. Los
+     * nombres llevan la tabla porque en H2 son únicos por esquema.
+     */
+    private static Paso indice(String tabla, String nombre, String... columnas) {
+        return conn -> {
+            DatabaseMetaData meta = conn.getMetaData();
+            try (ResultSet rs = meta.getIndexInfo(conn.getCatalog(), null, tabla, false, true)) {
+                while (rs.next()) {
+                    if (nombre.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                        return;
+                    }
+                }
+            }
+            try (Statement st = conn.createStatement()) {
+                st.executeUpdate("CREATE INDEX " + nombre + " ON " + tabla + " (" + String.join(", ", columnas) + ")");
+            }
+        };
+    }
+
+    /**
+     * El permiso de la vista de métricas solo venía en los datos de ejemplo:
+     * las bases creadas antes no lo tienen. Se añade (con el id que toque) y
+     * se concede al rol Administrador. Los usuarios con permisos propios en
+     * usuarios_permisos no heredan los del rol (ver CachePermisos), así que a
+     * los administradores que los tienen se les añade también ahí.
+     */
+    private static void permisoMetricas(Connection conn) throws SQLException {
+        Integer idPermiso = PlantillaJDBC.primero(conn, "SELECT id_permiso FROM permisos WHERE nombre = ?",
+                MapeadorFilas.ENTERO, "btnMetricas");
+        if (idPermiso == null) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO permisos (nombre, descripcion, area) VALUES (?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                ps.setString(1, "btnMetricas");
+                ps.setString(2, "Permite ver las métricas de la base de datos.");
+                ps.setString(3, "Métricas");
+                ps.executeUpdate();
+                try (ResultSet rs = ps.getGeneratedKeys()) {
+                    rs.next();
+                    idPermiso = rs.getInt(1);
+                }
+            }
+        }
+
+        Integer idRol = PlantillaJDBC.primero(conn, "SELECT id_rol FROM roles WHERE nombre = ?",
+                MapeadorFilas.ENTERO, "Administrador");
+        if (idRol == null) {
+            return;
+        }
+
+        int concedidos = 0;
+        if (PlantillaJDBC.primero(conn, "SELECT id_rol FROM roles_permisos WHERE id_rol = ? AND id_permiso = ?",
+                MapeadorFilas.ENTERO, idRol, idPermiso) == null) {
+            concedidos += PlantillaJDBC.actualizar(conn,
+                    "INSERT INTO roles_permisos (id_rol, id_permiso, activo) VALUES (?, ?, ?)", idRol, idPermiso, 1);
+        }
+        concedidos += PlantillaJDBC.actualizar(conn, "INSERT INTO usuarios_permisos (id_usuario, id_permiso) "
+                + "SELECT u.id_usuario, ? FROM usuarios u "
+                + "WHERE u.id_rol = ? "
+                + "AND EXISTS (SELECT 1 FROM usuarios_permisos up WHERE up.id_usuario = u.id_usuario) "
+                + "AND NOT EXISTS (SELECT 1 FROM usuarios_permisos up "
+                + "WHERE up.id_usuario = u.id_usuario AND up.id_permiso = ?)",
+                idPermiso, idRol, idPermiso);
+        if (concedidos > 0) {
+            CachePermisos.invalidar();
+        }
+    }
+}
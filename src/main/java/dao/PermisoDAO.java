@@ -1,10 +1,11 @@
 package dao;
 
-import config.ConexionDB;
+import config.CachePermisos;
 import config.Logger;
 import models.Permiso;
 
-import java.sql.*;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -16,92 +17,68 @@ import java.util.List;
  */
 public class PermisoDAO {
 
+    private static final String SELECT_POR_ROL
+            = "SELECT p.id_permiso, p.nombre, p.descripcion, p.area "
+            + "FROM permisos p "
+            + "INNER JOIN roles_permisos rp ON rp.id_permiso = p.id_permiso "
+            + "WHERE rp.id_rol = ? "
+            + "ORDER BY p.area ASC, p.nombre ASC";
+
     // ============================================================
     // LISTAR TODOS LOS PERMISOS
     // ============================================================
     public List<Permiso> listarTodos() {
-        List<Permiso> permisos = new ArrayList<>();
-
         String sql
                 = "SELECT p.id_permiso, p.nombre, p.descripcion, p.area "
                 + "FROM permisos p "
                 + "ORDER BY p.area ASC, p.nombre ASC";
 
-        try (Connection conn = ConexionDB.getConexion(); Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                permisos.add(mapear(rs));
-            }
-
-            Logger.info("Permisos cargados correctamente. Total: " + permisos.size());
+        try {
+            List<Permiso> permisos = PlantillaJDBC.listar(sql, PERMISO);
+            Logger.info(() -> "Permisos cargados correctamente. Total: " + permisos.size());
+            return permisos;
 
         } catch (SQLException e) {
             Logger.exception("Error al listar todos los permisos.", e);
         }
 
-        return permisos;
+        return new ArrayList<>();
     }
 
     // ============================================================
     // LISTAR PERMISOS POR ROL (usa nueva conexión interna)
     // ============================================================
     public List<Permiso> listarPorRol(int idRol) {
-        List<Permiso> permisos = new ArrayList<>();
-
-        String sql
-                = "SELECT p.id_permiso, p.nombre, p.descripcion, p.area "
-                + "FROM permisos p "
-                + "INNER JOIN roles_permisos rp ON rp.id_permiso = p.id_permiso "
-                + "WHERE rp.id_rol = ? "
-                + "ORDER BY p.area ASC, p.nombre ASC";
-
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql)) {
+        try {
+            List<Permiso> permisos = PlantillaJDBC.listar(SELECT_POR_ROL, PERMISO, idRol);
 
-            ps.setInt(1, idRol);
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    permisos.add(mapear(rs));
+            Logger.info(() -> "Permisos cargados para el rol ID " + idRol + ": " + permisos.size());
+            if (Logger.estaActivo(Logger.Nivel.INFO)) {
+                for (Permiso p : permisos) {
+                    Logger.info("  - " + p.getNombre() + " (" + p.getArea() + ")");
                 }
             }
-
-            Logger.info("Permisos cargados para el rol ID " + idRol + ": " + permisos.size());
-            for (Permiso p : permisos) {
-                Logger.info("  - " + p.getNombre() + " (" + p.getArea() + ")");
-            }
+            return permisos;
 
         } catch (SQLException e) {
             Logger.exception("Error al listar permisos por rol ID " + idRol, e);
         }
 
-        return permisos;
+        return new ArrayList<>();
     }
 
     // ============================================================
     // LISTAR PERMISOS POR ROL (usando conexión externa)
     // ============================================================
     public List<Permiso> listarPorRol(int idRol, Connection conn) {
-        List<Permiso> permisos = new ArrayList<>();
-
-        String sql
-                = "SELECT p.id_permiso, p.nombre, p.descripcion, p.area "
-                + "FROM permisos p "
-                + "INNER JOIN roles_permisos rp ON p.id_permiso = rp.id_permiso "
-                + "WHERE rp.id_rol = ? "
-                + "ORDER BY p.area ASC, p.nombre ASC";
-
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, idRol);
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    permisos.add(mapear(rs));
-                }
-            }
+        try {
+            return PlantillaJDBC.listar(conn, SELECT_POR_ROL, PERMISO, idRol);
 
         } catch (SQLException e) {
             Logger.exception("Error al listar permisos para rol ID " + idRol + " (usando conexión externa)", e);
         }
 
-        return permisos;
+        return new ArrayList<>();
     }
 
     // ============================================================
@@ -115,16 +92,12 @@ public class PermisoDAO {
                 + "FROM permisos p "
                 + "WHERE p.id_permiso = ?";
 
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setInt(1, idPermiso);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    permiso = mapear(rs);
-                    Logger.info("Permiso encontrado con ID: " + idPermiso);
-                } else {
-                    Logger.warning("No se encontró permiso con ID: " + idPermiso);
-                }
+        try {
+            permiso = PlantillaJDBC.primero(sql, PERMISO, idPermiso);
+            if (permiso != null) {
+                Logger.info(() -> "Permiso encontrado con ID: " + idPermiso);
+            } else {
+                Logger.warning(() -> "No se encontró permiso con ID: " + idPermiso);
             }
 
         } catch (SQLException e) {
@@ -147,23 +120,15 @@ public class PermisoDAO {
                 = "INSERT INTO permisos (nombre, descripcion, area) "
                 + "VALUES (?, ?, ?)";
 
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-
-            ps.setString(1, permiso.getNombre());
-            ps.setString(2, permiso.getDescripcion());
-            ps.setString(3, permiso.getArea());
-
-            int filas = ps.executeUpdate();
-            if (filas > 0) {
-                try (ResultSet rs = ps.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        permiso.setIdPermiso(rs.getInt(1));
-                    }
-                }
-                Logger.info("Permiso creado correctamente: " + permiso.getNombre());
+        try {
+            int idPermiso = PlantillaJDBC.insertar(sql, permiso.getNombre(), permiso.getDescripcion(), permiso.getArea());
+            if (idPermiso > 0) {
+                permiso.setIdPermiso(idPermiso);
+                Logger.info(() -> "Permiso creado correctamente: " + permiso.getNombre());
+                RolDAO.invalidarCaches();
                 return true;
             } else {
-                Logger.warning("No se insertó ningún registro al crear el permiso: " + permiso.getNombre());
+                Logger.warning(() -> "No se insertó ningún registro al crear el permiso: " + permiso.getNombre());
             }
 
         } catch (SQLException e) {
@@ -192,21 +157,17 @@ public class PermisoDAO {
                 + "SET nombre = ?, descripcion = ?, area = ? "
                 + "WHERE id_permiso = ?";
 
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setString(1, permiso.getNombre());
-            ps.setString(2, permiso.getDescripcion());
-            ps.setString(3, permiso.getArea());
-            ps.setInt(4, permiso.getIdPermiso());
-
-            int filas = ps.executeUpdate();
+        try {
+            int filas = PlantillaJDBC.actualizar(sql, permiso.getNombre(), permiso.getDescripcion(), permiso.getArea(),
+                    permiso.getIdPermiso());
 
             if (filas > 0) {
-                Logger.info("Permiso actualizado correctamente (ID: " + permiso.getIdPermiso()
+                Logger.info(() -> "Permiso actualizado correctamente (ID: " + permiso.getIdPermiso()
                         + ") -> " + permiso.getNombre());
+                RolDAO.invalidarCaches();
                 return true;
             } else {
-                Logger.warning("No se actualizó ningún permiso. Verifica que exista el ID: " + permiso.getIdPermiso());
+                Logger.warning(() -> "No se actualizó ningún permiso. Verifica que exista el ID: " + permiso.getIdPermiso());
             }
 
         } catch (SQLException e) {
@@ -222,16 +183,15 @@ public class PermisoDAO {
     public boolean eliminarPermiso(int idPermiso) {
         String sql = "DELETE FROM permisos WHERE id_permiso = ?";
 
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setInt(1, idPermiso);
-            int filas = ps.executeUpdate();
+        try {
+            int filas = PlantillaJDBC.actualizar(sql, idPermiso);
 
             if (filas > 0) {
-                Logger.info("Permiso eliminado con ID: " + idPermiso);
+                Logger.info(() -> "Permiso eliminado con ID: " + idPermiso);
+                RolDAO.invalidarCaches();
                 return true;
             } else {
-                Logger.warning("No se encontró permiso con ID: " + idPermiso);
+                Logger.warning(() -> "No se encontró permiso con ID: " + idPermiso);
             }
 
         } catch (SQLException e) {
@@ -242,44 +202,29 @@ public class PermisoDAO {
     }
 
     // ============================================================
-    // VERIFICAR SI UN ROL TIENE UN PERMISO
+    // VERIFICAR SI UN ROL TIENE UN PERMISO (desde la caché, sin consulta)
     // ============================================================
     public boolean tienePermiso(int idRol, String nombrePermiso) {
-        String sql
-                = "SELECT COUNT(*) "
-                + "FROM roles_permisos rp "
-                + "INNER JOIN permisos p ON rp.id_permiso = p.id_permiso "
-                + "WHERE rp.id_rol = ? AND p.nombre = ?";  // 👈 sin rp.activo
-
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setInt(1, idRol);
-            ps.setString(2, nombrePermiso);
-
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    int count = rs.getInt(1);
-                    Logger.info("Permiso '" + nombrePermiso + "' encontrado para rol " + idRol + " = " + (count > 0));
-                    return count > 0;
-                }
-            }
-
-        } catch (SQLException e) {
-            Logger.exception("Error al verificar si el rol tiene el permiso '" + nombrePermiso + "'", e);
-        }
-
-        return false;
+        boolean tiene = CachePermisos.rolTienePermiso(idRol, nombrePermiso);
+        Logger.info(() -> "Permiso '" + nombrePermiso + "' encontrado para rol " + idRol + " = " + tiene);
+        return tiene;
     }
 
     // ============================================================
     // MAPEADOR DE RESULTSET A OBJETO PERMISO
     // ============================================================
-    private Permiso mapear(ResultSet rs) throws SQLException {
-        Permiso p = new Permiso();
-        p.setIdPermiso(rs.getInt("id_permiso"));
-        p.setNombre(rs.getString("nombre"));
-        p.setDescripcion(rs.getString("descripcion"));
-        p.setArea(rs.getString("area"));
-        return p;
-    }
+    private static final MapeadorFilas<Permiso> PERMISO = columnas -> {
+        int id = columnas.indice("id_permiso");
+        int nombre = columnas.indice("nombre");
+        int descripcion = columnas.indice("descripcion");
+        int area = columnas.indice("area");
+        return rs -> {
+            Permiso p = new Permiso();
+            p.setIdPermiso(rs.getInt(id));
+            p.setNombre(rs.getString(nombre));
+            p.setDescripcion(rs.getString(descripcion));
+            p.setArea(rs.getString(area));
+            return p;
+        };
+    };
 }
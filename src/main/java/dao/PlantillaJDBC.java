@@ -0,0 +1,201 @@
+package dao;
+
+import config.ConexionDB;
+import config.Metricas;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Consultas JDBC comunes a los DAOs: pedir la conexión al pool, preparar la
+ * sentencia, asignar los parámetros, recorrer el ResultSet con un
+ * MapeadorFilas y cerrarlo todo.
+ *
+ * - Las variantes sin Connection piden una conexión al pool y la devuelven al
+ *   terminar; las que la reciben la usan tal cual (dentro de una transacción)
+ *   y no la cierran.
+ * - Los errores se propagan como SQLException: cada DAO decide qué registrar
+ *   en el log y qué devolver, como hasta ahora.
+ * - Las sentencias se preparan con prepareStatement(sql), así que las sirve
+ *   la caché de sentencias de la conexión (ver config.CacheSentencias).
+ * - Cada conexión pedida con conexion() mide la operación del DAO que la
+ *   pidió: el pool marca los errores y rollbacks de la conexión y la cierra
+ *   al devolverla; aquí se suman las filas y se marcan los errores de las
+ *   sentencias.
+ *
+ * Los parámetros se asignan con setObject en orden; null se envía como NULL.
+ *
+ * @author Milanes
+ */
+final class PlantillaJDBC {
+
+    private PlantillaJDBC() {
+    }
+
+    /**
+     * Conexión del pool; a diferencia de ConexionDB.getConexion() nunca
+     * devuelve null. Mide la operación del DAO llamante hasta que se cierre.
+     */
+    static Connection conexion() throws SQLException {
+        Metricas.Medicion medicion = Metricas.iniciar(PlantillaJDBC::operacionLlamante);
+        Connection conn = ConexionDB.getConexion(medicion);
+        if (conn == null) {
+            medicion.error();
+            medicion.close();
+            throw new SQLException("No hay conexión con la base de datos.");
+        }
+        return conn;
+    }
+
+    /**
+     * "Clase.metodo" del DAO que llamó a PlantillaJDBC. Los métodos lambda
+     * (por ejemplo el cargador de una CacheLectura) cuentan como el método
+     * que los contiene. Solo se calcula con las métricas activas.
+     */
+    private static String operacionLlamante() {
+        return StackWalker.getInstance()
+                .walk(frames -> frames
+                .filter(f -> !f.getClassName().equals(PlantillaJDBC.class.getName())
+                && !f.getClassName().equals(Metricas.class.getName()))
+                .findFirst())
+                .map(f -> {
+                    String clase = f.getClassName();
+                    clase = clase.substring(clase.lastIndexOf('.') + 1);
+                    int interna = clase.indexOf('$');
+                    if (interna > 0) {
+                        clase = clase.substring(0, interna);
+                    }
+                    String metodo = f.getMethodName();
+                    if (metodo.startsWith("lambda$")) {
+                        int fin = metodo.indexOf('$', 7);
+                        metodo = metodo.substring(7, fin > 7 ? fin : metodo.length());
+                    }
+                    return clase + "." + metodo;
+                })
+                .orElse("desconocida");
+    }
+
+    // ============================================================
+    // CONSULTAS
+    // ============================================================
+    static <T> List<T> listar(String sql, MapeadorFilas<T> mapeador, Object... parametros) throws SQLException {
+        try (Connection conn = conexion()) {
+            return listar(conn, sql, mapeador, parametros);
+        }
+    }
+
+    static <T> List<T> listar(Connection conn, String sql, MapeadorFilas<T> mapeador, Object... parametros)
+            throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            asignar(ps, parametros);
+            try (ResultSet rs = ps.executeQuery()) {
+                return recorrer(rs, mapeador);
+            }
+        } catch (SQLException e) {
+            Metricas.error(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Primera fila de la consulta o null si no devuelve ninguna.
+     */
+    static <T> T primero(String sql, MapeadorFilas<T> mapeador, Object... parametros) throws SQLException {
+        try (Connection conn = conexion()) {
+            return primero(conn, sql, mapeador, parametros);
+        }
+    }
+
+    static <T> T primero(Connection conn, String sql, MapeadorFilas<T> mapeador, Object... parametros)
+            throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            asignar(ps, parametros);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                Metricas.filas(1);
+                return mapeador.preparar(new Columnas(rs.getMetaData())).mapear(rs);
+            }
+        } catch (SQLException e) {
+            Metricas.error(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Convierte todas las filas restantes del ResultSet (no lo cierra).
+     */
+    static <T> List<T> recorrer(ResultSet rs, MapeadorFilas<T> mapeador) throws SQLException {
+        List<T> lista = new ArrayList<>();
+        MapeadorFilas.Fila<T> fila = mapeador.preparar(new Columnas(rs.getMetaData()));
+        while (rs.next()) {
+            lista.add(fila.mapear(rs));
+        }
+        Metricas.filas(lista.size());
+        return lista;
+    }
+
+    // ============================================================
+    // ACTUALIZACIONES
+    // ============================================================
+    /**
+     * INSERT, UPDATE o DELETE.
+     *
+     * @return filas afectadas
+     */
+    static int actualizar(String sql, Object... parametros) throws SQLException {
+        try (Connection conn = conexion()) {
+            return actualizar(conn, sql, parametros);
+        }
+    }
+
+    static int actualizar(Connection conn, String sql, Object... parametros) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            asignar(ps, parametros);
+            int filas = ps.executeUpdate();
+            Metricas.filas(filas);
+            return filas;
+        } catch (SQLException e) {
+            Metricas.error(e);
+            throw e;
+        }
+    }
+
+    /**
+     * INSERT que devuelve la clave generada (AUTO_INCREMENT), o -1 si no se
+     * insertó nada.
+     */
+    static int insertar(String sql, Object... parametros) throws SQLException {
+        try (Connection conn = conexion()) {
+            return insertar(conn, sql, parametros);
+        }
+    }
+
+    static int insertar(Connection conn, String sql, Object... parametros) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            asignar(ps, parametros);
+            int filas = ps.executeUpdate();
+            Metricas.filas(filas);
+            if (filas == 0) {
+                return -1;
+            }
+            try (ResultSet claves = ps.getGeneratedKeys()) {
+                return claves.next() ? claves.getInt(1) : -1;
+            }
+        } catch (SQLException e) {
+            Metricas.error(e);
+            throw e;
+        }
+    }
+
+    static void asignar(PreparedStatement ps, Object... parametros) throws SQLException {
+        for (int i = 0; i < parametros.length; i++) {
+            ps.setObject(i + 1, parametros[i]);
+        }
+    }
+}
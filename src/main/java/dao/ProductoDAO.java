@@ -1,14 +1,17 @@
 package dao;
 
-import config.ConexionDB;
 import config.Logger;
+import config.Metricas;
 import config.Session;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import models.Producto;
 
 /**
@@ -19,26 +22,75 @@ import models.Producto;
  */
 public class ProductoDAO {
 
-    private Connection con;
-    private PreparedStatement ps;
-    private ResultSet rs;
-
-    /** Inserta un nuevo producto en la base de datos. */
+    private static final String SELECT_PRODUCTOS = "SELECT p.id_producto, p.nombre, p.descripcion, p.precio, "
+                                                 + "p.id_tienda, t.nombre AS nombre_tienda, "
+                                                 + "p.id_categoria, c.nombre AS nombre_categoria "
+                                                 + "FROM productos p "
+                                                 + "INNER JOIN tiendas t ON p.id_tienda = t.id_tienda "
+                                                 + "LEFT JOIN categorias c ON p.id_categoria = c.id_categoria ";
+
+    /** Producto con los nombres de su tienda y categoría (SELECT_PRODUCTOS). */
+    private static final MapeadorFilas<Producto> PRODUCTO = columnas -> {
+        int id = columnas.indice("id_producto");
+        int nombre = columnas.indice("nombre");
+        int descripcion = columnas.indice("descripcion");
+        int precio = columnas.indice("precio");
+        int idTienda = columnas.indice("id_tienda");
+        int tienda = columnas.indice("nombre_tienda");
+        int idCategoria = columnas.indice("id_categoria");
+        int categoria = columnas.indice("nombre_categoria");
+        return rs -> {
+            Producto p = new Producto(rs.getInt(id), rs.getString(nombre), rs.getString(descripcion),
+                    rs.getDouble(precio), rs.getInt(idTienda), rs.getInt(idCategoria));
+            p.setNombreTienda(rs.getString(tienda));
+            p.setNombreCategoria(rs.getString(categoria));
+            return p;
+        };
+    };
+
+    // Filas por sentencia en los INSERT de varias filas (5 parámetros cada una)
+    static final int FILAS_POR_INSERT = 200;
+
+    private static final String INSERT_COLUMNAS = "INSERT INTO productos (nombre, descripcion, precio, id_tienda, id_categoria) VALUES ";
+    private static final String INSERT_VARIAS = INSERT_COLUMNAS
+            + String.join(", ", Collections.nCopies(FILAS_POR_INSERT, "(?, ?, ?, ?, ?)"));
+
+    /** Solo lo que identifica al producto: ID, tienda y nombre. */
+    private static final MapeadorFilas<Producto> CLAVE_PRODUCTO = columnas -> {
+        int id = columnas.indice("id_producto");
+        int nombre = columnas.indice("nombre");
+        int idTienda = columnas.indice("id_tienda");
+        return rs -> {
+            Producto p = new Producto();
+            p.setIdProducto(rs.getInt(id));
+            p.setNombre(rs.getString(nombre));
+            p.setIdTienda(rs.getInt(idTienda));
+            return p;
+        };
+    };
+
+    /** ID y categoría actual (0 = sin categoría). */
+    private static final MapeadorFilas<Producto> CATEGORIA_PRODUCTO = columnas -> {
+        int id = columnas.indice("id_producto");
+        int idCategoria = columnas.indice("id_categoria");
+        return rs -> {
+            Producto p = new Producto();
+            p.setIdProducto(rs.getInt(id));
+            p.setIdCategoria(rs.getInt(idCategoria));
+            return p;
+        };
+    };
+
+    /** Inserta un nuevo producto en la base de datos y le asigna el ID generado. */
     public boolean insertar(Producto producto) {
         String sql = "INSERT INTO productos (nombre, descripcion, precio, id_tienda, id_categoria) VALUES (?, ?, ?, ?, ?)";
 
-        try (Connection con = ConexionDB.getConexion();
-             PreparedStatement ps = con.prepareStatement(sql)) {
-
-            ps.setString(1, producto.getNombre());
-            ps.setString(2, producto.getDescripcion());
-            ps.setDouble(3, producto.getPrecio());
-            ps.setInt(4, producto.getIdTienda());
-            ps.setInt(5, producto.getIdCategoria());
-
-            int filas = ps.executeUpdate();
-            if (filas > 0) {
-                Logger.info("Producto agregado: " + producto.getNombre()
+        try {
+            int id = PlantillaJDBC.insertar(sql, producto.getNombre(), producto.getDescripcion(),
+                    producto.getPrecio(), producto.getIdTienda(), producto.getIdCategoria());
+            if (id > 0) {
+                producto.setIdProducto(id);
+                Logger.info(() -> "Producto agregado: " + producto.getNombre()
                         + " | Tienda ID: " + producto.getIdTienda()
                         + " | Categoría ID: " + producto.getIdCategoria()
                         + " | Usuario: " + Session.getUsuarioId());
@@ -51,23 +103,21 @@ public class ProductoDAO {
         return false;
     }
 
-    /** Actualiza un producto existente. */
+    /**
+     * Actualiza un producto existente. Si cambia de categoría, su gasto pasa
+     * a la nueva en los resúmenes mensuales (en la misma transacción).
+     */
     public boolean actualizar(Producto producto) {
         String sql = "UPDATE productos SET nombre = ?, descripcion = ?, precio = ?, id_tienda = ?, id_categoria = ? WHERE id_producto = ?";
 
-        try (Connection con = ConexionDB.getConexion();
-             PreparedStatement ps = con.prepareStatement(sql)) {
-
-            ps.setString(1, producto.getNombre());
-            ps.setString(2, producto.getDescripcion());
-            ps.setDouble(3, producto.getPrecio());
-            ps.setInt(4, producto.getIdTienda());
-            ps.setInt(5, producto.getIdCategoria());
-            ps.setInt(6, producto.getIdProducto());
-
-            int filas = ps.executeUpdate();
+        try {
+            int filas = ResumenGastosDAO.actualizarProductos(
+                    "p.id_producto = ? AND COALESCE(p.id_categoria, 0) <> ?",
+                    new Object[]{producto.getIdProducto(), producto.getIdCategoria()},
+                    sql, producto.getNombre(), producto.getDescripcion(), producto.getPrecio(),
+                    producto.getIdTienda(), producto.getIdCategoria(), producto.getIdProducto());
             if (filas > 0) {
-                Logger.info("Producto actualizado: " + producto.getNombre()
+                Logger.info(() -> "Producto actualizado: " + producto.getNombre()
                         + " (ID: " + producto.getIdProducto() + ")");
                 return true;
             }
@@ -78,18 +128,18 @@ public class ProductoDAO {
         return false;
     }
 
-    /** Elimina un producto por su ID. */
+    /**
+     * Elimina un producto por su ID. Sus líneas de compra se borran en
+     * cascada, así que se descuentan de los resúmenes mensuales.
+     */
     public boolean eliminar(int idProducto) {
         String sql = "DELETE FROM productos WHERE id_producto = ?";
 
-        try (Connection con = ConexionDB.getConexion();
-             PreparedStatement ps = con.prepareStatement(sql)) {
-
-            ps.setInt(1, idProducto);
-            int filas = ps.executeUpdate();
-
+        try {
+            int filas = ResumenGastosDAO.actualizarProductos("p.id_producto = ?", new Object[]{idProducto},
+                    sql, idProducto);
             if (filas > 0) {
-                Logger.info("Producto eliminado correctamente (ID: " + idProducto + ")");
+                Logger.info(() -> "Producto eliminado correctamente (ID: " + idProducto + ")");
                 return true;
             }
 
@@ -99,126 +149,159 @@ public class ProductoDAO {
         return false;
     }
 
+    // ============================================================
+    // CARGA MASIVA (ver ImportadorProductos)
+    // ============================================================
+    /**
+     * ID, tienda y nombre de todos los productos, para saber cuáles de un
+     * archivo ya existen.
+     */
+    List<Producto> listarClaves(Connection conn) throws SQLException {
+        return PlantillaJDBC.listar(conn, "SELECT id_producto, id_tienda, nombre FROM productos", CLAVE_PRODUCTO);
+    }
+
+    /**
+     * Inserta los productos con INSERT de varias filas (FILAS_POR_INSERT por
+     * sentencia, en lote). No confirma la transacción.
+     */
+    void insertarVarios(Connection conn, List<Producto> productos) throws SQLException {
+        int completos = productos.size() / FILAS_POR_INSERT * FILAS_POR_INSERT;
+
+        if (completos > 0) {
+            try (PreparedStatement ps = conn.prepareStatement(INSERT_VARIAS)) {
+                for (int inicio = 0; inicio < completos; inicio += FILAS_POR_INSERT) {
+                    asignarFilas(ps, productos.subList(inicio, inicio + FILAS_POR_INSERT));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+
+        List<Producto> resto = productos.subList(completos, productos.size());
+        if (!resto.isEmpty()) {
+            String sql = INSERT_COLUMNAS + String.join(", ", Collections.nCopies(resto.size(), "(?, ?, ?, ?, ?)"));
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                asignarFilas(ps, resto);
+                ps.executeUpdate();
+            }
+        }
+        Metricas.filas(productos.size());
+    }
+
+    private static void asignarFilas(PreparedStatement ps, List<Producto> productos) throws SQLException {
+        int i = 1;
+        for (Producto p : productos) {
+            ps.setString(i++, p.getNombre());
+            ps.setString(i++, p.getDescripcion());
+            ps.setDouble(i++, p.getPrecio());
+            ps.setInt(i++, p.getIdTienda());
+            ps.setObject(i++, p.getIdCategoria() > 0 ? p.getIdCategoria() : null);
+        }
+    }
+
+    /**
+     * Actualiza por ID nombre y precio de los productos en un lote. La
+     * descripción y la categoría solo cambian si vienen informadas; los
+     * productos que cambian de categoría se recalculan en los resúmenes
+     * mensuales. No confirma la transacción.
+     */
+    void actualizarVarios(Connection conn, List<Producto> productos) throws SQLException {
+        String sql = "UPDATE productos SET nombre = ?, descripcion = COALESCE(?, descripcion), precio = ?, "
+                + "id_categoria = COALESCE(?, id_categoria) WHERE id_producto = ?";
+
+        Set<List<Integer>> meses = mesesConCambioDeCategoria(conn, productos);
+
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (Producto p : productos) {
+                PlantillaJDBC.asignar(ps, p.getNombre(), p.getDescripcion(), p.getPrecio(),
+                        p.getIdCategoria() > 0 ? p.getIdCategoria() : null, p.getIdProducto());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        ResumenGastosDAO.recalcularMeses(conn, meses);
+        Metricas.filas(productos.size());
+    }
+
+    /**
+     * Meses de resumen afectados por los productos del lote cuya categoría
+     * informada es distinta de la actual.
+     */
+    private static Set<List<Integer>> mesesConCambioDeCategoria(Connection conn, List<Producto> productos)
+            throws SQLException {
+        Map<Integer, Integer> nuevas = new HashMap<>();
+        for (Producto p : productos) {
+            if (p.getIdCategoria() > 0) {
+                nuevas.put(p.getIdProducto(), p.getIdCategoria());
+            }
+        }
+        if (nuevas.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        String marcas = String.join(", ", Collections.nCopies(nuevas.size(), "?"));
+        List<Producto> actuales = PlantillaJDBC.listar(conn,
+                "SELECT id_producto, COALESCE(id_categoria, 0) AS id_categoria FROM productos "
+                + "WHERE id_producto IN (" + marcas + ")", CATEGORIA_PRODUCTO, nuevas.keySet().toArray());
+        List<Object> cambiados = new ArrayList<>();
+        for (Producto p : actuales) {
+            if (p.getIdCategoria() != nuevas.get(p.getIdProducto())) {
+                cambiados.add(p.getIdProducto());
+            }
+        }
+        if (cambiados.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return ResumenGastosDAO.mesesAfectados(conn,
+                "p.id_producto IN (" + String.join(", ", Collections.nCopies(cambiados.size(), "?")) + ")",
+                cambiados.toArray());
+    }
+
     /** Lista todos los productos con su tienda y categoría (ordenados por ID). */
     public List<Producto> listarTodos() {
-        List<Producto> lista = new ArrayList<>();
-        String sql = "SELECT p.id_producto, p.nombre, p.descripcion, p.precio, "
-                   + "p.id_tienda, t.nombre AS nombre_tienda, "
-                   + "p.id_categoria, c.nombre AS nombre_categoria "
-                   + "FROM productos p "
-                   + "INNER JOIN tiendas t ON p.id_tienda = t.id_tienda "
-                   + "LEFT JOIN categorias c ON p.id_categoria = c.id_categoria "
-                   + "ORDER BY p.id_producto ASC";
-
-        try (Connection con = ConexionDB.getConexion();
-             PreparedStatement ps = con.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-
-            while (rs.next()) {
-                Producto p = new Producto();
-                p.setIdProducto(rs.getInt("id_producto"));
-                p.setNombre(rs.getString("nombre"));
-                p.setDescripcion(rs.getString("descripcion"));
-                p.setPrecio(rs.getDouble("precio"));
-                p.setIdTienda(rs.getInt("id_tienda"));
-                p.setNombreTienda(rs.getString("nombre_tienda"));
-                p.setIdCategoria(rs.getInt("id_categoria"));
-                p.setNombreCategoria(rs.getString("nombre_categoria"));
-                lista.add(p);
-            }
+        String sql = SELECT_PRODUCTOS + "ORDER BY p.id_producto ASC";
 
-            Logger.info("Productos listados (ordenados por ID): " + lista.size());
+        try {
+            List<Producto> lista = PlantillaJDBC.listar(sql, PRODUCTO);
+            Logger.info(() -> "Productos listados (ordenados por ID): " + lista.size());
+            return lista;
 
         } catch (SQLException e) {
             Logger.exception("Error al listar todos los productos", e);
-        } finally {
-            ConexionDB.cerrarConexion();
         }
 
-        return lista;
+        return new ArrayList<>();
     }
 
     /** Lista los productos por tienda específica (ordenados por ID). */
     public List<Producto> listarPorTienda(int idTienda) {
-        List<Producto> lista = new ArrayList<>();
-        String sql = "SELECT p.id_producto, p.nombre, p.descripcion, p.precio, "
-                   + "p.id_tienda, t.nombre AS nombre_tienda, "
-                   + "p.id_categoria, c.nombre AS nombre_categoria "
-                   + "FROM productos p "
-                   + "INNER JOIN tiendas t ON p.id_tienda = t.id_tienda "
-                   + "LEFT JOIN categorias c ON p.id_categoria = c.id_categoria "
-                   + "WHERE p.id_tienda = ? "
-                   + "ORDER BY p.id_producto ASC";
-
-        try (Connection con = ConexionDB.getConexion();
-             PreparedStatement ps = con.prepareStatement(sql)) {
-
-            ps.setInt(1, idTienda);
-            rs = ps.executeQuery();
-
-            while (rs.next()) {
-                Producto p = new Producto();
-                p.setIdProducto(rs.getInt("id_producto"));
-                p.setNombre(rs.getString("nombre"));
-                p.setDescripcion(rs.getString("descripcion"));
-                p.setPrecio(rs.getDouble("precio"));
-                p.setIdTienda(rs.getInt("id_tienda"));
-                p.setNombreTienda(rs.getString("nombre_tienda"));
-                p.setIdCategoria(rs.getInt("id_categoria"));
-                p.setNombreCategoria(rs.getString("nombre_categoria"));
-                lista.add(p);
-            }
+        String sql = SELECT_PRODUCTOS + "WHERE p.id_tienda = ? ORDER BY p.id_producto ASC";
 
-            Logger.info("Productos listados por tienda ID " + idTienda + " (ordenados por ID): " + lista.size());
+        try {
+            List<Producto> lista = PlantillaJDBC.listar(sql, PRODUCTO, idTienda);
+            Logger.info(() -> "Productos listados por tienda ID " + idTienda + " (ordenados por ID): " + lista.size());
+            return lista;
 
         } catch (SQLException e) {
             Logger.exception("Error al listar productos por tienda ID " + idTienda, e);
-        } finally {
-            ConexionDB.cerrarConexion();
         }
 
-        return lista;
+        return new ArrayList<>();
     }
 
     /** Obtiene productos por nombre de tienda (ordenados por ID). */
     public List<Producto> obtenerPorTiendaNombre(String nombreTienda) {
-        List<Producto> lista = new ArrayList<>();
-        String sql = "SELECT p.id_producto, p.nombre, p.descripcion, p.precio, "
-                   + "p.id_tienda, t.nombre AS nombre_tienda, "
-                   + "p.id_categoria, c.nombre AS nombre_categoria "
-                   + "FROM productos p "
-                   + "INNER JOIN tiendas t ON p.id_tienda = t.id_tienda "
-                   + "LEFT JOIN categorias c ON p.id_categoria = c.id_categoria "
-                   + "WHERE t.nombre = ? "
-                   + "ORDER BY p.id_producto ASC";
-
-        try (Connection con = ConexionDB.getConexion();
-             PreparedStatement ps = con.prepareStatement(sql)) {
-
-            ps.setString(1, nombreTienda);
-            rs = ps.executeQuery();
-
-            while (rs.next()) {
-                Producto p = new Producto();
-                p.setIdProducto(rs.getInt("id_producto"));
-                p.setNombre(rs.getString("nombre"));
-                p.setDescripcion(rs.getString("descripcion"));
-                p.setPrecio(rs.getDouble("precio"));
-                p.setIdTienda(rs.getInt("id_tienda"));
-                p.setNombreTienda(rs.getString("nombre_tienda"));
-                p.setIdCategoria(rs.getInt("id_categoria"));
-                p.setNombreCategoria(rs.getString("nombre_categoria"));
-                lista.add(p);
-            }
+        String sql = SELECT_PRODUCTOS + "WHERE t.nombre = ? ORDER BY p.id_producto ASC";
 
-            Logger.info("Productos obtenidos para tienda '" + nombreTienda + "' (ordenados por ID): " + lista.size());
+        try {
+            List<Producto> lista = PlantillaJDBC.listar(sql, PRODUCTO, nombreTienda);
+            Logger.info(() -> "Productos obtenidos para tienda '" + nombreTienda + "' (ordenados por ID): " + lista.size());
+            return lista;
 
         } catch (SQLException e) {
             Logger.exception("Error al obtener productos por tienda '" + nombreTienda + "'", e);
-        } finally {
-            ConexionDB.cerrarConexion();
         }
 
-        return lista;
+        return new ArrayList<>();
     }
 }
@@ -1,8 +1,7 @@
 package dao;
 
-import config.ConexionDB;
 import config.Logger;
-import java.sql.*;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import models.Repartidor;
@@ -15,22 +14,41 @@ import models.Repartidor;
  */
 public class RepartidorDAO {
 
+    // Caché compartida de listarTodos()
+    static final CacheLectura<Repartidor> CACHE = new CacheLectura<>("repartidores", CacheLectura.TTL_POR_DEFECTO,
+            r -> new Repartidor(r.getIdRepartidor(), r.getNombre(), r.getContacto(), r.getTelefono(),
+                    r.getEmail(), r.getDireccion(), r.getSitioWeb()));
+
+    private static final String SELECT_REPARTIDORES = "SELECT id_repartidor, nombre, contacto, telefono, email, direccion, sitio_web "
+                                                    + "FROM repartidores ";
+
+    private static final MapeadorFilas<Repartidor> REPARTIDOR = columnas -> {
+        int id = columnas.indice("id_repartidor");
+        int nombre = columnas.indice("nombre");
+        int contacto = columnas.indice("contacto");
+        int telefono = columnas.indice("telefono");
+        int email = columnas.indice("email");
+        int direccion = columnas.indice("direccion");
+        int sitioWeb = columnas.indice("sitio_web");
+        return rs -> new Repartidor(rs.getInt(id), rs.getString(nombre), rs.getString(contacto),
+                rs.getString(telefono), rs.getString(email), rs.getString(direccion), rs.getString(sitioWeb));
+    };
+
     // ===========================================================
     // 🔹 CREAR REPARTIDOR
     // ===========================================================
     public boolean insertar(Repartidor repartidor) {
-        String sql = "INSERT INTO repartidores (nombre, contacto, telefono, email, direccion, sitio_web) VALUES ("
-                + "'" + repartidor.getNombre() + "', "
-                + (repartidor.getContacto() != null ? "'" + repartidor.getContacto() + "'" : "NULL") + ", "
-                + (repartidor.getTelefono() != null ? "'" + repartidor.getTelefono() + "'" : "NULL") + ", "
-                + (repartidor.getEmail() != null ? "'" + repartidor.getEmail() + "'" : "NULL") + ", "
-                + (repartidor.getDireccion() != null ? "'" + repartidor.getDireccion() + "'" : "NULL") + ", "
-                + (repartidor.getSitioWeb() != null ? "'" + repartidor.getSitioWeb() + "'" : "NULL") + ");";
-
-        try (Connection conn = ConexionDB.getConexion(); Statement st = conn.createStatement()) {
-            Logger.info("Ejecutando SQL INSERT repartidor: " + sql);
-            int filas = st.executeUpdate(sql);
-            Logger.info("Repartidor insertado correctamente. Filas afectadas: " + filas);
+        String sql = "INSERT INTO repartidores (nombre, contacto, telefono, email, direccion, sitio_web) "
+                + "VALUES (?, ?, ?, ?, ?, ?)";
+
+        try {
+            Logger.info(() -> "Ejecutando SQL INSERT repartidor: " + repartidor.getNombre());
+            int filas = PlantillaJDBC.actualizar(sql, repartidor.getNombre(), repartidor.getContacto(),
+                    repartidor.getTelefono(), repartidor.getEmail(), repartidor.getDireccion(), repartidor.getSitioWeb());
+            Logger.info(() -> "Repartidor insertado correctamente. Filas afectadas: " + filas);
+            if (filas > 0) {
+                invalidarCaches();
+            }
             return filas > 0;
         } catch (SQLException e) {
             Logger.exception("Error al insertar repartidor en la base de datos.", e);
@@ -42,19 +60,18 @@ public class RepartidorDAO {
     // 🔹 ACTUALIZAR REPARTIDOR
     // ===========================================================
     public boolean actualizar(Repartidor repartidor) {
-        String sql = "UPDATE repartidores SET "
-                + "nombre = '" + repartidor.getNombre() + "', "
-                + "contacto = " + (repartidor.getContacto() != null ? "'" + repartidor.getContacto() + "'" : "NULL") + ", "
-                + "telefono = " + (repartidor.getTelefono() != null ? "'" + repartidor.getTelefono() + "'" : "NULL") + ", "
-                + "email = " + (repartidor.getEmail() != null ? "'" + repartidor.getEmail() + "'" : "NULL") + ", "
-                + "direccion = " + (repartidor.getDireccion() != null ? "'" + repartidor.getDireccion() + "'" : "NULL") + ", "
-                + "sitio_web = " + (repartidor.getSitioWeb() != null ? "'" + repartidor.getSitioWeb() + "'" : "NULL")
-                + " WHERE id_repartidor = " + repartidor.getIdRepartidor() + ";";
-
-        try (Connection conn = ConexionDB.getConexion(); Statement st = conn.createStatement()) {
-            Logger.info("Ejecutando SQL UPDATE repartidor: " + sql);
-            int filas = st.executeUpdate(sql);
-            Logger.info("Repartidor actualizado correctamente. Filas afectadas: " + filas);
+        String sql = "UPDATE repartidores SET nombre = ?, contacto = ?, telefono = ?, email = ?, direccion = ?, sitio_web = ? "
+                + "WHERE id_repartidor = ?";
+
+        try {
+            Logger.info(() -> "Ejecutando SQL UPDATE repartidor ID: " + repartidor.getIdRepartidor());
+            int filas = PlantillaJDBC.actualizar(sql, repartidor.getNombre(), repartidor.getContacto(),
+                    repartidor.getTelefono(), repartidor.getEmail(), repartidor.getDireccion(), repartidor.getSitioWeb(),
+                    repartidor.getIdRepartidor());
+            Logger.info(() -> "Repartidor actualizado correctamente. Filas afectadas: " + filas);
+            if (filas > 0) {
+                invalidarCaches();
+            }
             return filas > 0;
         } catch (SQLException e) {
             Logger.exception("Error al actualizar repartidor.", e);
@@ -66,11 +83,14 @@ public class RepartidorDAO {
     // 🔹 ELIMINAR REPARTIDOR
     // ===========================================================
     public boolean eliminar(int idRepartidor) {
-        String sql = "DELETE FROM repartidores WHERE id_repartidor = " + idRepartidor + ";";
-        try (Connection conn = ConexionDB.getConexion(); Statement st = conn.createStatement()) {
-            Logger.info("Ejecutando SQL DELETE repartidor: " + sql);
-            int filas = st.executeUpdate(sql);
-            Logger.info("Repartidor eliminado correctamente. Filas afectadas: " + filas);
+        String sql = "DELETE FROM repartidores WHERE id_repartidor = ?";
+        try {
+            Logger.info(() -> "Ejecutando SQL DELETE repartidor ID: " + idRepartidor);
+            int filas = PlantillaJDBC.actualizar(sql, idRepartidor);
+            Logger.info(() -> "Repartidor eliminado correctamente. Filas afectadas: " + filas);
+            if (filas > 0) {
+                invalidarCaches();
+            }
             return filas > 0;
         } catch (SQLException e) {
             Logger.exception("Error al eliminar repartidor con ID: " + idRepartidor, e);
@@ -82,62 +102,25 @@ public class RepartidorDAO {
     // 🔹 LISTAR TODOS LOS REPARTIDORES
     // ===========================================================
     public List<Repartidor> listarTodos() {
-        List<Repartidor> lista = new ArrayList<>();
-        String sql = "SELECT id_repartidor, nombre, contacto, telefono, email, direccion, sitio_web "
-                + "FROM repartidores ORDER BY nombre ASC;";
-
-        try (Connection conn = ConexionDB.getConexion();
-             Statement st = conn.createStatement();
-             ResultSet rs = st.executeQuery(sql)) {
-
-            Logger.info("Ejecutando SQL SELECT repartidores: " + sql);
-
-            while (rs.next()) {
-                Repartidor r = new Repartidor();
-                r.setIdRepartidor(rs.getInt("id_repartidor"));
-                r.setNombre(rs.getString("nombre"));
-                r.setContacto(rs.getString("contacto"));
-                r.setTelefono(rs.getString("telefono"));
-                r.setEmail(rs.getString("email"));
-                r.setDireccion(rs.getString("direccion"));
-                r.setSitioWeb(rs.getString("sitio_web"));
-                lista.add(r);
-            }
-
-            Logger.info("Consulta completada. Repartidores obtenidos: " + lista.size());
-
-        } catch (SQLException e) {
-            Logger.exception("Error al listar repartidores.", e);
-        }
-
-        return lista;
+        return CACHE.obtener(() -> {
+            String sql = SELECT_REPARTIDORES + "ORDER BY nombre ASC";
+            Logger.info(() -> "Ejecutando SQL SELECT repartidores: " + sql);
+
+            List<Repartidor> lista = PlantillaJDBC.listar(sql, REPARTIDOR);
+            Logger.info(() -> "Consulta completada. Repartidores obtenidos: " + lista.size());
+            return lista;
+        });
     }
 
     // ===========================================================
     // 🔹 OBTENER REPARTIDOR POR ID
     // ===========================================================
     public Repartidor obtenerPorId(int idRepartidor) {
-        String sql = "SELECT id_repartidor, nombre, contacto, telefono, email, direccion, sitio_web "
-                + "FROM repartidores WHERE id_repartidor = " + idRepartidor + ";";
-
-        try (Connection conn = ConexionDB.getConexion();
-             Statement st = conn.createStatement();
-             ResultSet rs = st.executeQuery(sql)) {
-
-            Logger.info("Ejecutando SQL SELECT repartidor por ID: " + sql);
-
-            if (rs.next()) {
-                Repartidor r = new Repartidor();
-                r.setIdRepartidor(rs.getInt("id_repartidor"));
-                r.setNombre(rs.getString("nombre"));
-                r.setContacto(rs.getString("contacto"));
-                r.setTelefono(rs.getString("telefono"));
-                r.setEmail(rs.getString("email"));
-                r.setDireccion(rs.getString("direccion"));
-                r.setSitioWeb(rs.getString("sitio_web"));
-                return r;
-            }
+        String sql = SELECT_REPARTIDORES + "WHERE id_repartidor = ?";
 
+        try {
+            Logger.info(() -> "Ejecutando SQL SELECT repartidor por ID: " + idRepartidor);
+            return PlantillaJDBC.primero(sql, REPARTIDOR, idRepartidor);
         } catch (SQLException e) {
             Logger.exception("Error al obtener repartidor con ID: " + idRepartidor, e);
         }
@@ -149,34 +132,30 @@ public class RepartidorDAO {
     // 🔹 BUSCAR REPARTIDORES POR NOMBRE (LIKE)
     // ===========================================================
     public List<Repartidor> buscarPorNombre(String nombre) {
-        List<Repartidor> lista = new ArrayList<>();
-        String sql = "SELECT id_repartidor, nombre, contacto, telefono, email, direccion, sitio_web "
-                + "FROM repartidores WHERE nombre LIKE '%" + nombre + "%' ORDER BY nombre ASC;";
-
-        try (Connection conn = ConexionDB.getConexion();
-             Statement st = conn.createStatement();
-             ResultSet rs = st.executeQuery(sql)) {
-
-            Logger.info("Ejecutando SQL búsqueda de repartidores: " + sql);
-
-            while (rs.next()) {
-                Repartidor r = new Repartidor();
-                r.setIdRepartidor(rs.getInt("id_repartidor"));
-                r.setNombre(rs.getString("nombre"));
-                r.setContacto(rs.getString("contacto"));
-                r.setTelefono(rs.getString("telefono"));
-                r.setEmail(rs.getString("email"));
-                r.setDireccion(rs.getString("direccion"));
-                r.setSitioWeb(rs.getString("sitio_web"));
-                lista.add(r);
-            }
+        String sql = SELECT_REPARTIDORES + "WHERE nombre LIKE ? ORDER BY nombre ASC";
 
-            Logger.info("Repartidores encontrados: " + lista.size());
+        try {
+            Logger.info(() -> "Ejecutando SQL búsqueda de repartidores: " + nombre);
+            List<Repartidor> lista = PlantillaJDBC.listar(sql, REPARTIDOR, "%" + nombre + "%");
+            Logger.info(() -> "Repartidores encontrados: " + lista.size());
+            return lista;
 
         } catch (SQLException e) {
             Logger.exception("Error al buscar repartidores por nombre.", e);
         }
 
-        return lista;
+        return new ArrayList<>();
+    }
+
+    // ===========================================================
+    // 🔹 CACHÉ
+    // ===========================================================
+    /**
+     * Los repartidores aparecen en el listado de tiendas (JOIN), así que
+     * cualquier cambio invalida también esa caché.
+     */
+    private static void invalidarCaches() {
+        CACHE.invalidar();
+        TiendaDAO.CACHE.invalidar();
     }
 }
@@ -0,0 +1,571 @@
+package dao;
+
+import config.ConexionDB;
+import config.Logger;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.temporal.WeekFields;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tablas de resumen de gastos (materializadas) para los informes por día,
+ * semana, mes y año.
+ *
+ * Antes cada informe era una vista que recalculaba el GROUP BY sobre todo el
+ * histórico de compras en cada lectura. Ahora los totales se guardan ya
+ * agrupados por usuario y periodo:
+ *
+ * - resumen_gasto_dia: usuario, año, mes y día de la semana (1 = lunes).
+ * - resumen_gasto_semana: usuario, año, mes y semana del mes, con la primera
+ *   y la última fecha con compras de esa semana.
+ * - resumen_gasto_mes: usuario, año, mes y categoría (0 = sin categoría),
+ *   sumando los subtotales de las líneas de cada compra.
+ * - resumen_gasto_anual: usuario y año.
+ *
+ * CompraDAO.registrarCompra y ListadoDeCompraDAO.actualizarDetalleCompra
+ * actualizan los resúmenes dentro de su propia transacción. Borrar productos,
+ * tiendas o categorías y cambiar la categoría de un producto (también desde
+ * la importación) recalculan, en la suya, los meses del gasto por categoría
+ * que tocan (ver actualizarProductos). reconstruir()
+ * vacía las tablas y las vuelve a calcular desde compras y
+ * listado_de_compras (es lo que hace el botón "Crear vista" de los informes).
+ * Las compras sin fecha (fecha_compra admite NULL) no cuentan en ningún
+ * resumen, igual que en las vistas agrupadas por fecha de antes.
+ *
+ * Las tablas se crean y se rellenan por primera vez en la migración 2 de
+ * MigracionesEsquema. Quien las actualiza llama antes a esperarMigraciones(),
+ * fuera de su transacción, para no colarse mientras esa migración las
+ * rellena. Si aun así no constan como aplicadas (la migración falló), las
+ * compras y los cambios se guardan igual sin tocar los resúmenes y, en la
+ * misma transacción, la migración 2 se quita de version_esquema: el próximo
+ * arranque la vuelve a aplicar y los reconstruye enteros.
+ *
+ * @author Milanes
+ */
+public class ResumenGastosDAO {
+
+    private static final String[] TABLAS = {
+        "resumen_gasto_dia", "resumen_gasto_semana", "resumen_gasto_mes", "resumen_gasto_anual"
+    };
+
+    private static final String[] SQL_CREAR = {
+        "CREATE TABLE IF NOT EXISTS resumen_gasto_dia ("
+        + "id_usuario INT NOT NULL, anio INT NOT NULL, mes INT NOT NULL, dia_semana INT NOT NULL, "
+        + "gasto_total DECIMAL(12,2) NOT NULL DEFAULT 0, "
+        + "PRIMARY KEY (id_usuario, anio, mes, dia_semana))",
+        "CREATE TABLE IF NOT EXISTS resumen_gasto_semana ("
+        + "id_usuario INT NOT NULL, anio INT NOT NULL, mes INT NOT NULL, semana_del_mes INT NOT NULL, "
+        + "inicio_semana DATE NOT NULL, fin_semana DATE NOT NULL, "
+        + "gasto_total DECIMAL(12,2) NOT NULL DEFAULT 0, "
+        + "PRIMARY KEY (id_usuario, anio, mes, semana_del_mes))",
+        "CREATE TABLE IF NOT EXISTS resumen_gasto_mes ("
+        + "id_usuario INT NOT NULL, anio INT NOT NULL, mes INT NOT NULL, id_categoria INT NOT NULL, "
+        + "gasto_total DECIMAL(12,2) NOT NULL DEFAULT 0, "
+        + "PRIMARY KEY (id_usuario, anio, mes, id_categoria))",
+        "CREATE TABLE IF NOT EXISTS resumen_gasto_anual ("
+        + "id_usuario INT NOT NULL, anio INT NOT NULL, "
+        + "gasto_total DECIMAL(12,2) NOT NULL DEFAULT 0, "
+        + "PRIMARY KEY (id_usuario, anio))"
+    };
+
+    // Sumas incrementales: si la fila ya existe se acumula el importe
+    private static final String SQL_SUMAR_DIA
+            = "INSERT INTO resumen_gasto_dia (id_usuario, anio, mes, dia_semana, gasto_total) "
+            + "VALUES (?, ?, ?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE gasto_total = gasto_total + VALUES(gasto_total)";
+
+    private static final String SQL_SUMAR_SEMANA
+            = "INSERT INTO resumen_gasto_semana "
+            + "(id_usuario, anio, mes, semana_del_mes, inicio_semana, fin_semana, gasto_total) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE gasto_total = gasto_total + VALUES(gasto_total), "
+            + "inicio_semana = LEAST(inicio_semana, VALUES(inicio_semana)), "
+            + "fin_semana = GREATEST(fin_semana, VALUES(fin_semana))";
+
+    private static final String SQL_SUMAR_MES
+            = "INSERT INTO resumen_gasto_mes (id_usuario, anio, mes, id_categoria, gasto_total) "
+            + "VALUES (?, ?, ?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE gasto_total = gasto_total + VALUES(gasto_total)";
+
+    private static final String SQL_SUMAR_ANUAL
+            = "INSERT INTO resumen_gasto_anual (id_usuario, anio, gasto_total) "
+            + "VALUES (?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE gasto_total = gasto_total + VALUES(gasto_total)";
+
+    // ============================================================
+    // PREPARAR TABLAS
+    // ============================================================
+    /**
+     * Garantiza que las tablas de resumen existen y están rellenas. Las crea
+     * la migración 2 de MigracionesEsquema: espera al intento de migrar de
+     * esta sesión (después es una lectura de un campo volatile).
+     *
+     * @return true si los resúmenes están listos para consultarse
+     */
+    public static boolean preparar() {
+        esperarMigraciones();
+        return disponibles();
+    }
+
+    /**
+     * Espera al intento de migrar de esta sesión. La llaman, antes de abrir
+     * su transacción, los DAO que actualizan los resúmenes: pasado este punto
+     * disponibles() ya no cambia en la sesión. No rechaza nada: si la
+     * migración falló, el cambio se guarda igual (ver disponiblesOAnotar).
+     */
+    static void esperarMigraciones() {
+        MigracionesEsquema.aplicar();
+    }
+
+    /**
+     * Indica, sin esperar ni tocar la base, si las tablas de resumen ya
+     * existen. Se puede consultar dentro de una transacción abierta.
+     */
+    static boolean disponibles() {
+        return MigracionesEsquema.aplicada(MigracionesEsquema.VERSION_RESUMENES);
+    }
+
+    /**
+     * Para los cambios que llegan sin resúmenes disponibles: deja la
+     * migración 2 pendiente en la transacción del cambio, así el próximo
+     * arranque reconstruye los resúmenes con él incluido (aunque otra
+     * instancia la hubiera aplicado mientras tanto).
+     *
+     * @return true si se pueden actualizar ya
+     */
+    private static boolean disponiblesOAnotar(Connection conn) throws SQLException {
+        if (disponibles()) {
+            return true;
+        }
+        MigracionesEsquema.marcarPendiente(conn, MigracionesEsquema.VERSION_RESUMENES);
+        return false;
+    }
+
+    static void crearTablas(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            for (String sql : SQL_CREAR) {
+                st.executeUpdate(sql);
+            }
+        }
+    }
+
+    // ============================================================
+    // RECONSTRUCCIÓN COMPLETA
+    // ============================================================
+    /**
+     * Vacía las tablas de resumen y las recalcula desde compras y
+     * listado_de_compras en una sola transacción.
+     *
+     * @return true si la reconstrucción terminó correctamente
+     */
+    public boolean reconstruir() {
+        Connection conn = ConexionDB.getConexion();
+        if (conn == null) {
+            return false;
+        }
+
+        try (conn) {
+            recalcular(conn);
+            return true;
+        } catch (SQLException e) {
+            Logger.exception("Error al reconstruir las tablas de resumen de gastos.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Crea las tablas si faltan y las recalcula en una transacción propia
+     * sobre la conexión dada (la usa también la migración que las crea).
+     */
+    static void recalcular(Connection conn) throws SQLException {
+        long inicio = System.currentTimeMillis();
+
+        // CREATE TABLE provoca un commit implícito en MySQL: va antes de la transacción
+        crearTablas(conn);
+        conn.setAutoCommit(false);
+
+        try {
+            Map<List<Integer>, Acumulado> dias = new HashMap<>();
+            Map<List<Integer>, Acumulado> semanas = new HashMap<>();
+            Map<List<Integer>, Acumulado> meses = new HashMap<>();
+            Map<List<Integer>, Acumulado> anios = new HashMap<>();
+
+            try (Statement st = conn.createStatement()) {
+                for (String tabla : TABLAS) {
+                    st.executeUpdate("DELETE FROM " + tabla);
+                }
+
+                String sqlCompras = "SELECT id_usuario, fecha_compra, total FROM compras "
+                        + "WHERE id_usuario IS NOT NULL AND fecha_compra IS NOT NULL";
+                try (ResultSet rs = st.executeQuery(sqlCompras)) {
+                    while (rs.next()) {
+                        int idUsuario = rs.getInt("id_usuario");
+                        LocalDate fecha = rs.getTimestamp("fecha_compra").toLocalDateTime().toLocalDate();
+                        double total = rs.getDouble("total");
+
+                        acumular(dias, total, fecha, idUsuario, fecha.getYear(), fecha.getMonthValue(),
+                                fecha.getDayOfWeek().getValue());
+                        acumular(semanas, total, fecha, idUsuario, fecha.getYear(), fecha.getMonthValue(),
+                                semanaDelMes(fecha));
+                        acumular(anios, total, fecha, idUsuario, fecha.getYear());
+                    }
+                }
+
+                String sqlLineas = "SELECT c.id_usuario, c.fecha_compra, p.id_categoria, ld.subtotal "
+                        + "FROM listado_de_compras ld "
+                        + "INNER JOIN compras c ON c.id_compra = ld.id_compra "
+                        + "LEFT JOIN productos p ON p.id_producto = ld.id_producto "
+                        + "WHERE c.id_usuario IS NOT NULL AND c.fecha_compra IS NOT NULL";
+                try (ResultSet rs = st.executeQuery(sqlLineas)) {
+                    while (rs.next()) {
+                        LocalDate fecha = rs.getTimestamp("fecha_compra").toLocalDateTime().toLocalDate();
+                        acumular(meses, rs.getDouble("subtotal"), fecha, rs.getInt("id_usuario"),
+                                fecha.getYear(), fecha.getMonthValue(), rs.getInt("id_categoria"));
+                    }
+                }
+            }
+
+            insertar(conn, SQL_SUMAR_DIA, dias, false);
+            insertar(conn, SQL_SUMAR_SEMANA, semanas, true);
+            insertar(conn, SQL_SUMAR_MES, meses, false);
+            insertar(conn, SQL_SUMAR_ANUAL, anios, false);
+
+            conn.commit();
+            AnaliticaGastos.invalidar();
+
+            long ms = System.currentTimeMillis() - inicio;
+            Logger.info(() -> "Resúmenes de gastos reconstruidos en " + ms + " ms ("
+                    + dias.size() + " días, " + semanas.size() + " semanas, "
+                    + meses.size() + " meses, " + anios.size() + " años).");
+
+        } catch (Throwable e) {
+            // Cualquier fallo: el finally haría commit de los DELETE sin las filas nuevas
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static void acumular(Map<List<Integer>, Acumulado> destino, double importe,
+            LocalDate fecha, Integer... clave) {
+        destino.computeIfAbsent(Arrays.asList(clave), k -> new Acumulado(fecha)).sumar(importe, fecha);
+    }
+
+    private static void insertar(Connection conn, String sql, Map<List<Integer>, Acumulado> filas,
+            boolean conFechas) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            int pendientes = 0;
+            for (Map.Entry<List<Integer>, Acumulado> fila : filas.entrySet()) {
+                int index = 1;
+                for (Integer valor : fila.getKey()) {
+                    ps.setInt(index++, valor);
+                }
+                Acumulado a = fila.getValue();
+                if (conFechas) {
+                    ps.setDate(index++, Date.valueOf(a.primera));
+                    ps.setDate(index++, Date.valueOf(a.ultima));
+                }
+                ps.setDouble(index, a.total);
+                ps.addBatch();
+
+                if (++pendientes % 500 == 0) {
+                    ps.executeBatch();
+                }
+            }
+            ps.executeBatch();
+        }
+    }
+
+    // ============================================================
+    // CAMBIOS EN PRODUCTOS, TIENDAS Y CATEGORÍAS
+    // ============================================================
+    /** (usuario, año, mes) de las compras con líneas afectadas por un cambio. */
+    private static final MapeadorFilas<List<Integer>> MES_USUARIO = columnas -> {
+        int usuario = columnas.indice("id_usuario");
+        int anio = columnas.indice("anio");
+        int mes = columnas.indice("mes");
+        return rs -> Arrays.asList(rs.getInt(usuario), rs.getInt(anio), rs.getInt(mes));
+    };
+
+    private static final String SQL_BORRAR_MES
+            = "DELETE FROM resumen_gasto_mes WHERE id_usuario = ? AND anio = ? AND mes = ?";
+
+    private static final String SQL_RECALCULAR_MES
+            = "INSERT INTO resumen_gasto_mes (id_usuario, anio, mes, id_categoria, gasto_total) "
+            + "SELECT c.id_usuario, ?, ?, COALESCE(p.id_categoria, 0), SUM(ld.subtotal) "
+            + "FROM compras c "
+            + "INNER JOIN listado_de_compras ld ON ld.id_compra = c.id_compra "
+            + "LEFT JOIN productos p ON p.id_producto = ld.id_producto "
+            + "WHERE c.id_usuario = ? AND c.fecha_compra >= ? AND c.fecha_compra < ? "
+            + "GROUP BY c.id_usuario, COALESCE(p.id_categoria, 0)";
+
+    /**
+     * Ejecuta un cambio sobre productos (borrar un producto o una tienda,
+     * cambiar categorías...) y, en la misma transacción, recalcula los meses
+     * de resumen_gasto_mes cuyas líneas toca. Los borrados en cascada de
+     * listado_de_compras y el SET NULL de la categoría no pasan por los DAO de
+     * compras, así que sin esto el gasto por categoría se quedaría con los
+     * importes antiguos. El día, la semana y el año salen de compras.total,
+     * que estos cambios no modifican.
+     *
+     * @param afectadas condición sobre el alias p (productos) que selecciona
+     * las líneas afectadas, evaluada antes del cambio
+     * @param parametrosAfectadas parámetros de esa condición
+     * @param sql sentencia del cambio
+     * @param parametros parámetros de la sentencia
+     * @return filas modificadas por la sentencia
+     */
+    static int actualizarProductos(String afectadas, Object[] parametrosAfectadas, String sql, Object... parametros)
+            throws SQLException {
+        esperarMigraciones();
+        try (Connection conn = PlantillaJDBC.conexion()) {
+            conn.setAutoCommit(false);
+            try {
+                Set<List<Integer>> meses = mesesAfectados(conn, afectadas, parametrosAfectadas);
+                int filas = PlantillaJDBC.actualizar(conn, sql, parametros);
+                recalcularMeses(conn, meses);
+                conn.commit();
+                if (!meses.isEmpty()) {
+                    AnaliticaGastos.invalidar();
+                }
+                return filas;
+            } catch (Throwable e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Meses (usuario, año, mes) con líneas de productos que cumplen la
+     * condición (alias p). Se consulta antes del cambio, en su transacción.
+     */
+    static Set<List<Integer>> mesesAfectados(Connection conn, String condicion, Object... parametros)
+            throws SQLException {
+        Set<List<Integer>> meses = new LinkedHashSet<>();
+        if (!disponiblesOAnotar(conn)) {
+            return meses;
+        }
+        String sql = "SELECT DISTINCT c.id_usuario, YEAR(c.fecha_compra) AS anio, MONTH(c.fecha_compra) AS mes "
+                + "FROM listado_de_compras ld "
+                + "INNER JOIN productos p ON p.id_producto = ld.id_producto "
+                + "INNER JOIN compras c ON c.id_compra = ld.id_compra "
+                + "WHERE c.id_usuario IS NOT NULL AND c.fecha_compra IS NOT NULL AND (" + condicion + ")";
+        meses.addAll(PlantillaJDBC.listar(conn, sql, MES_USUARIO, parametros));
+        return meses;
+    }
+
+    /**
+     * Vuelve a calcular desde las líneas las filas de resumen_gasto_mes de
+     * los meses indicados (todas sus categorías).
+     */
+    static void recalcularMeses(Connection conn, Set<List<Integer>> meses) throws SQLException {
+        if (meses.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement borrar = conn.prepareStatement(SQL_BORRAR_MES);
+                PreparedStatement insertar = conn.prepareStatement(SQL_RECALCULAR_MES)) {
+            for (List<Integer> mes : meses) {
+                int idUsuario = mes.get(0);
+                LocalDate inicio = LocalDate.of(mes.get(1), mes.get(2), 1);
+
+                PlantillaJDBC.asignar(borrar, idUsuario, mes.get(1), mes.get(2));
+                borrar.addBatch();
+                PlantillaJDBC.asignar(insertar, mes.get(1), mes.get(2), idUsuario,
+                        Timestamp.valueOf(inicio.atStartOfDay()),
+                        Timestamp.valueOf(inicio.plusMonths(1).atStartOfDay()));
+                insertar.addBatch();
+            }
+            borrar.executeBatch();
+            insertar.executeBatch();
+        }
+        Logger.info(() -> "Gasto por categoría recalculado en " + meses.size() + " meses.");
+    }
+
+    // ============================================================
+    // ACTUALIZACIÓN INCREMENTAL (dentro de la transacción del llamador)
+    // ============================================================
+    /**
+     * Suma a los resúmenes una compra recién insertada (con sus líneas). Lee
+     * la fecha y el total tal y como quedaron guardados.
+     *
+     * @param conn conexión con la transacción de la compra
+     * @param idCompra compra recién insertada
+     */
+    static void registrarCompra(Connection conn, int idCompra) throws SQLException {
+        if (!disponiblesOAnotar(conn)) {
+            return;
+        }
+        int idUsuario;
+        LocalDate dia;
+        double total;
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT id_usuario, fecha_compra, total FROM compras WHERE id_compra = ?")) {
+            ps.setInt(1, idCompra);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("No existe la compra " + idCompra + " para actualizar los resúmenes.");
+                }
+                Timestamp fecha = rs.getTimestamp("fecha_compra");
+                if (fecha == null) {
+                    return;
+                }
+                idUsuario = rs.getInt("id_usuario");
+                dia = fecha.toLocalDateTime().toLocalDate();
+                total = rs.getDouble("total");
+            }
+        }
+
+        String sqlCategorias = "SELECT COALESCE(p.id_categoria, 0) AS id_categoria, SUM(ld.subtotal) AS gasto "
+                + "FROM listado_de_compras ld "
+                + "LEFT JOIN productos p ON p.id_producto = ld.id_producto "
+                + "WHERE ld.id_compra = ? "
+                + "GROUP BY COALESCE(p.id_categoria, 0)";
+
+        Map<Integer, Double> gastoPorCategoria = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(sqlCategorias)) {
+            ps.setInt(1, idCompra);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    gastoPorCategoria.put(rs.getInt("id_categoria"), rs.getDouble("gasto"));
+                }
+            }
+        }
+
+        registrarCompra(conn, idUsuario, dia, total, gastoPorCategoria);
+    }
+
+    /**
+     * Suma a los resúmenes una compra de la que el llamador ya conoce el
+     * usuario, el día, el total y el gasto por categoría, sin volver a leerla.
+     *
+     * @param conn conexión con la transacción de la compra
+     * @param idUsuario usuario de la compra
+     * @param dia fecha de la compra
+     * @param total total de la compra
+     * @param gastoPorCategoria suma de subtotales por categoría (0 = sin categoría)
+     */
+    static void registrarCompra(Connection conn, int idUsuario, LocalDate dia, double total,
+            Map<Integer, Double> gastoPorCategoria) throws SQLException {
+        if (!disponiblesOAnotar(conn)) {
+            return;
+        }
+
+        sumarDiaSemanaAnio(conn, idUsuario, dia, total);
+
+        try (PreparedStatement psMes = conn.prepareStatement(SQL_SUMAR_MES)) {
+            for (Map.Entry<Integer, Double> gasto : gastoPorCategoria.entrySet()) {
+                psMes.setInt(1, idUsuario);
+                psMes.setInt(2, dia.getYear());
+                psMes.setInt(3, dia.getMonthValue());
+                psMes.setInt(4, gasto.getKey());
+                psMes.setDouble(5, gasto.getValue());
+                psMes.addBatch();
+            }
+            psMes.executeBatch();
+        }
+    }
+
+    /**
+     * Aplica a los resúmenes la diferencia de importe de una línea de compra
+     * modificada.
+     *
+     * @param conn conexión con la transacción de la modificación
+     * @param idUsuario usuario de la compra
+     * @param dia fecha de la compra
+     * @param idCategoria categoría del producto (0 = sin categoría)
+     * @param diferencia subtotal nuevo menos subtotal anterior
+     */
+    static void aplicarDiferencia(Connection conn, int idUsuario, LocalDate dia, int idCategoria,
+            double diferencia) throws SQLException {
+        if (!disponiblesOAnotar(conn)) {
+            return;
+        }
+
+        sumarDiaSemanaAnio(conn, idUsuario, dia, diferencia);
+
+        try (PreparedStatement ps = conn.prepareStatement(SQL_SUMAR_MES)) {
+            ps.setInt(1, idUsuario);
+            ps.setInt(2, dia.getYear());
+            ps.setInt(3, dia.getMonthValue());
+            ps.setInt(4, idCategoria);
+            ps.setDouble(5, diferencia);
+            ps.executeUpdate();
+        }
+    }
+
+    private static void sumarDiaSemanaAnio(Connection conn, int idUsuario, LocalDate dia, double importe)
+            throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(SQL_SUMAR_DIA)) {
+            ps.setInt(1, idUsuario);
+            ps.setInt(2, dia.getYear());
+            ps.setInt(3, dia.getMonthValue());
+            ps.setInt(4, dia.getDayOfWeek().getValue());
+            ps.setDouble(5, importe);
+            ps.executeUpdate();
+        }
+
+        try (PreparedStatement ps = conn.prepareStatement(SQL_SUMAR_SEMANA)) {
+            ps.setInt(1, idUsuario);
+            ps.setInt(2, dia.getYear());
+            ps.setInt(3, dia.getMonthValue());
+            ps.setInt(4, semanaDelMes(dia));
+            ps.setDate(5, Date.valueOf(dia));
+            ps.setDate(6, Date.valueOf(dia));
+            ps.setDouble(7, importe);
+            ps.executeUpdate();
+        }
+
+        try (PreparedStatement ps = conn.prepareStatement(SQL_SUMAR_ANUAL)) {
+            ps.setInt(1, idUsuario);
+            ps.setInt(2, dia.getYear());
+            ps.setDouble(3, importe);
+            ps.executeUpdate();
+        }
+    }
+
+    // ============================================================
+    // UTILIDADES DE FECHA
+    // ============================================================
+    /**
+     * Semana del mes con semanas que empiezan en lunes, igual que la vista
+     * anterior: WEEK(fecha, 1) - WEEK(primer día del mes, 1) + 1.
+     */
+    static int semanaDelMes(LocalDate fecha) {
+        WeekFields semanas = WeekFields.ISO;
+        return fecha.get(semanas.weekOfYear()) - fecha.withDayOfMonth(1).get(semanas.weekOfYear()) + 1;
+    }
+
+    /**
+     * Importe acumulado de una fila de resumen durante la reconstrucción.
+     */
+    private static final class Acumulado {
+
+        double total;
+        LocalDate primera;
+        LocalDate ultima;
+
+        Acumulado(LocalDate fecha) {
+            this.primera = fecha;
+            this.ultima = fecha;
+        }
+
+        void sumar(double importe, LocalDate fecha) {
+            total += importe;
+            if (fecha.isBefore(primera)) {
+                primera = fecha;
+            }
+            if (fecha.isAfter(ultima)) {
+                ultima = fecha;
+            }
+        }
+    }
+}
@@ -1,12 +1,13 @@
 package dao;
 
-import config.ConexionDB;
+import config.CachePermisos;
 import config.Logger;
 import models.Rol;
 import models.Permiso;
 import models.HistorialRol;
 
-import java.sql.*;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -18,6 +19,11 @@ import java.util.List;
  */
 public class RolDAO {
 
+    // Caché compartida de listarTodos() (roles con sus permisos)
+    static final CacheLectura<Rol> CACHE = new CacheLectura<>("roles", CacheLectura.TTL_POR_DEFECTO,
+            r -> new Rol(r.getIdRol(), r.getNombre(), r.getDescripcion(),
+                    r.getPermisos() != null ? new ArrayList<>(r.getPermisos()) : null));
+
     private final PermisoDAO permisoDAO = new PermisoDAO();
     private final HistorialRolDAO historialDAO = new HistorialRolDAO();
 
@@ -27,23 +33,16 @@ public class RolDAO {
     public boolean crearRol(Rol rol, String usuarioResponsable) {
         String sql = "INSERT INTO roles (nombre, descripcion_rol) VALUES (?, ?)";
 
-        try (Connection conn = ConexionDB.getConexion();
-             PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-
-            ps.setString(1, rol.getNombre());
-            ps.setString(2, rol.getDescripcion());
-
-            int filas = ps.executeUpdate();
-            if (filas > 0) {
-                ResultSet rs = ps.getGeneratedKeys();
-                if (rs.next()) {
-                    rol.setIdRol(rs.getInt(1));
-                }
+        try {
+            int idRol = PlantillaJDBC.insertar(sql, rol.getNombre(), rol.getDescripcion());
+            if (idRol > 0) {
+                rol.setIdRol(idRol);
 
-                Logger.info("Rol creado correctamente: " + rol.getNombre());
+                Logger.info(() -> "Rol creado correctamente: " + rol.getNombre());
                 historialDAO.registrarAccion(
                         new HistorialRol(rol.getIdRol(), "CREAR", usuarioResponsable)
                 );
+                invalidarCaches();
                 return true;
             }
 
@@ -60,18 +59,13 @@ public class RolDAO {
         String sql = "SELECT * FROM roles WHERE id_rol = ?";
         Rol rol = null;
 
-        try (Connection conn = ConexionDB.getConexion();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setInt(1, idRol);
-            ResultSet rs = ps.executeQuery();
-
-            if (rs.next()) {
-                rol = mapearRol(rs);
+        try {
+            rol = PlantillaJDBC.primero(sql, ROL, idRol);
+            if (rol != null) {
                 rol.setPermisos(permisoDAO.listarPorRol(idRol));
-                Logger.info("Rol encontrado con ID: " + idRol);
+                Logger.info(() -> "Rol encontrado con ID: " + idRol);
             } else {
-                Logger.warning("No se encontró rol con ID: " + idRol);
+                Logger.warning(() -> "No se encontró rol con ID: " + idRol);
             }
 
         } catch (SQLException e) {
@@ -85,35 +79,21 @@ public class RolDAO {
     // LISTAR TODOS LOS ROLES (corregido)
     // ============================================================
     public List<Rol> listarTodos() {
-        List<Rol> lista = new ArrayList<>();
-        String sql = "SELECT id_rol, nombre, descripcion_rol FROM roles ORDER BY id_rol ASC";
-
-        try (Connection conn = ConexionDB.getConexion();
-             PreparedStatement ps = conn.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-
-            // Guardamos primero todos los roles
-            List<Rol> rolesTemporales = new ArrayList<>();
-            while (rs.next()) {
-                Rol rol = mapearRol(rs);
-                rolesTemporales.add(rol);
-            }
-
-            // Luego cargamos sus permisos con otra conexión
-            try (Connection connPermisos = ConexionDB.getConexion()) {
-                for (Rol rol : rolesTemporales) {
-                    rol.setPermisos(permisoDAO.listarPorRol(rol.getIdRol(), connPermisos));
-                    lista.add(rol);
+        return CACHE.obtener(() -> {
+            String sql = "SELECT id_rol, nombre, descripcion_rol FROM roles ORDER BY id_rol ASC";
+
+            List<Rol> lista;
+            try (Connection conn = PlantillaJDBC.conexion()) {
+                // Primero todos los roles y luego sus permisos con la misma conexión
+                lista = PlantillaJDBC.listar(conn, sql, ROL);
+                for (Rol rol : lista) {
+                    rol.setPermisos(permisoDAO.listarPorRol(rol.getIdRol(), conn));
                 }
             }
 
-            Logger.info("Se obtuvieron todos los roles correctamente. Total: " + lista.size());
-
-        } catch (SQLException e) {
-            Logger.exception("Error al listar todos los roles.", e);
-        }
-
-        return lista;
+            Logger.info(() -> "Se obtuvieron todos los roles correctamente. Total: " + lista.size());
+            return lista;
+        });
     }
 
     public List<Rol> listarRoles() {
@@ -126,19 +106,14 @@ public class RolDAO {
     public boolean actualizarRol(Rol rol, String usuarioResponsable) {
         String sql = "UPDATE roles SET nombre = ?, descripcion_rol = ? WHERE id_rol = ?";
 
-        try (Connection conn = ConexionDB.getConexion();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setString(1, rol.getNombre());
-            ps.setString(2, rol.getDescripcion());
-            ps.setInt(3, rol.getIdRol());
-
-            int filas = ps.executeUpdate();
+        try {
+            int filas = PlantillaJDBC.actualizar(sql, rol.getNombre(), rol.getDescripcion(), rol.getIdRol());
             if (filas > 0) {
-                Logger.info("Rol actualizado correctamente: " + rol.getNombre());
+                Logger.info(() -> "Rol actualizado correctamente: " + rol.getNombre());
                 historialDAO.registrarAccion(
                         new HistorialRol(rol.getIdRol(), "MODIFICAR", usuarioResponsable)
                 );
+                invalidarCaches();
                 return true;
             }
 
@@ -155,20 +130,18 @@ public class RolDAO {
     public boolean eliminarRol(int idRol, String usuarioResponsable) {
         String sql = "DELETE FROM roles WHERE id_rol = ?";
 
-        try (Connection conn = ConexionDB.getConexion();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setInt(1, idRol);
-            int filas = ps.executeUpdate();
+        try {
+            int filas = PlantillaJDBC.actualizar(sql, idRol);
 
             if (filas > 0) {
-                Logger.info("Rol eliminado correctamente con ID: " + idRol);
+                Logger.info(() -> "Rol eliminado correctamente con ID: " + idRol);
                 historialDAO.registrarAccion(
                         new HistorialRol(idRol, "ELIMINAR", usuarioResponsable)
                 );
+                invalidarCaches();
                 return true;
             } else {
-                Logger.warning("No se encontró el rol con ID: " + idRol);
+                Logger.warning(() -> "No se encontró el rol con ID: " + idRol);
             }
 
         } catch (SQLException e) {
@@ -185,18 +158,13 @@ public class RolDAO {
         String sql = "SELECT * FROM roles WHERE nombre = ?";
         Rol rol = null;
 
-        try (Connection conn = ConexionDB.getConexion();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setString(1, nombre);
-            ResultSet rs = ps.executeQuery();
-
-            if (rs.next()) {
-                rol = mapearRol(rs);
+        try {
+            rol = PlantillaJDBC.primero(sql, ROL, nombre);
+            if (rol != null) {
                 rol.setPermisos(permisoDAO.listarPorRol(rol.getIdRol()));
-                Logger.info("Rol encontrado con nombre: " + nombre);
+                Logger.info(() -> "Rol encontrado con nombre: " + nombre);
             } else {
-                Logger.warning("No se encontró rol con nombre: " + nombre);
+                Logger.warning(() -> "No se encontró rol con nombre: " + nombre);
             }
 
         } catch (SQLException e) {
@@ -216,11 +184,27 @@ public class RolDAO {
     // ============================================================
     // MAPEADOR
     // ============================================================
-    private Rol mapearRol(ResultSet rs) throws SQLException {
-        Rol rol = new Rol();
-        rol.setIdRol(rs.getInt("id_rol"));
-        rol.setNombre(rs.getString("nombre"));
-        rol.setDescripcion(rs.getString("descripcion_rol"));
-        return rol;
+    private static final MapeadorFilas<Rol> ROL = columnas -> {
+        int id = columnas.indice("id_rol");
+        int nombre = columnas.indice("nombre");
+        int descripcion = columnas.indice("descripcion_rol");
+        return rs -> {
+            Rol rol = new Rol();
+            rol.setIdRol(rs.getInt(id));
+            rol.setNombre(rs.getString(nombre));
+            rol.setDescripcion(rs.getString(descripcion));
+            return rol;
+        };
+    };
+
+    // ============================================================
+    // CACHÉ
+    // ============================================================
+    /**
+     * Descarta los roles en memoria y los permisos efectivos.
+     */
+    static void invalidarCaches() {
+        CACHE.invalidar();
+        CachePermisos.invalidar();
     }
 }
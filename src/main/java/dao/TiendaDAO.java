@@ -1,56 +1,62 @@
 package dao;
 
-import config.ConexionDB;
 import config.Logger;
 import config.Session;
 import java.sql.*;
-import java.util.ArrayList;
 import java.util.List;
 import models.Tienda;
 
 /**
  * DAO para la gestión de tiendas en la base de datos 'compras_del_hogar'.
  * Incluye relación con la tabla 'repartidores' (JOIN).
- * 
+ *
  * @author Milanes
  */
 public class TiendaDAO {
 
+    // Caché compartida de listarTodas()
+    static final CacheLectura<Tienda> CACHE = new CacheLectura<>("tiendas", CacheLectura.TTL_POR_DEFECTO,
+            t -> new Tienda(t.getIdTienda(), t.getNombre(), t.getDireccion(), t.getTelefono(),
+                    t.getSitioWeb(), t.getIdRepartidor(), t.getNombreRepartidor()));
+
+    private static final String SELECT_TIENDAS = "SELECT t.*, r.nombre AS repartidor_nombre "
+                                               + "FROM tiendas t "
+                                               + "LEFT JOIN repartidores r ON t.id_repartidor = r.id_repartidor ";
+
+    /** Tienda con el nombre de su repartidor (SELECT_TIENDAS). */
+    private static final MapeadorFilas<Tienda> TIENDA = columnas -> {
+        int id = columnas.indice("id_tienda");
+        int nombre = columnas.indice("nombre");
+        int direccion = columnas.indice("direccion");
+        int telefono = columnas.indice("telefono");
+        int sitioWeb = columnas.indice("sitio_web");
+        int idRepartidor = columnas.indice("id_repartidor");
+        int repartidor = columnas.indice("repartidor_nombre");
+        return rs -> new Tienda(rs.getInt(id), rs.getString(nombre), rs.getString(direccion),
+                rs.getString(telefono), rs.getString(sitioWeb),
+                MapeadorFilas.enteroONulo(rs, idRepartidor), rs.getString(repartidor));
+    };
+
     /** Inserta una nueva tienda en la base de datos (con repartidor opcional). */
     public boolean insertar(Tienda tienda) {
         String checkSql = "SELECT COUNT(*) FROM tiendas WHERE nombre = ?";
         String insertSql = "INSERT INTO tiendas (nombre, direccion, telefono, sitio_web, id_repartidor) VALUES (?, ?, ?, ?, ?)";
 
-        try (Connection conn = ConexionDB.getConexion()) {
+        try (Connection conn = PlantillaJDBC.conexion()) {
             // Comprobar duplicado
-            try (PreparedStatement checkPs = conn.prepareStatement(checkSql)) {
-                checkPs.setString(1, tienda.getNombre());
-                ResultSet rs = checkPs.executeQuery();
-                if (rs.next() && rs.getInt(1) > 0) {
-                    Logger.warning("Intento de insertar tienda duplicada: " + tienda.getNombre());
-                    return false;
-                }
+            if (PlantillaJDBC.primero(conn, checkSql, MapeadorFilas.ENTERO, tienda.getNombre()) > 0) {
+                Logger.warning(() -> "Intento de insertar tienda duplicada: " + tienda.getNombre());
+                return false;
             }
 
             // Insertar si no existe
-            try (PreparedStatement ps = conn.prepareStatement(insertSql)) {
-                ps.setString(1, tienda.getNombre());
-                ps.setString(2, tienda.getDireccion());
-                ps.setString(3, tienda.getTelefono());
-                ps.setString(4, tienda.getSitioWeb());
-
-                if (tienda.getIdRepartidor() != null) {
-                    ps.setInt(5, tienda.getIdRepartidor());
-                } else {
-                    ps.setNull(5, Types.INTEGER);
-                }
-
-                int filas = ps.executeUpdate();
-                if (filas > 0) {
-                    Logger.info("Tienda insertada correctamente: " + tienda.getNombre()
-                            + " | Usuario: " + Session.getUsuarioId());
-                    return true;
-                }
+            int filas = PlantillaJDBC.actualizar(conn, insertSql, tienda.getNombre(), tienda.getDireccion(),
+                    tienda.getTelefono(), tienda.getSitioWeb(), tienda.getIdRepartidor());
+            if (filas > 0) {
+                Logger.info(() -> "Tienda insertada correctamente: " + tienda.getNombre()
+                        + " | Usuario: " + Session.getUsuarioId());
+                CACHE.invalidar();
+                return true;
             }
         } catch (SQLException e) {
             Logger.exception("Error al insertar tienda: " + tienda.getNombre(), e);
@@ -61,25 +67,13 @@ public class TiendaDAO {
     /** Actualiza los datos de una tienda existente (incluyendo el repartidor). */
     public boolean actualizar(Tienda tienda) {
         String sql = "UPDATE tiendas SET nombre = ?, direccion = ?, telefono = ?, sitio_web = ?, id_repartidor = ? WHERE id_tienda = ?";
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setString(1, tienda.getNombre());
-            ps.setString(2, tienda.getDireccion());
-            ps.setString(3, tienda.getTelefono());
-            ps.setString(4, tienda.getSitioWeb());
-
-            if (tienda.getIdRepartidor() != null) {
-                ps.setInt(5, tienda.getIdRepartidor());
-            } else {
-                ps.setNull(5, Types.INTEGER);
-            }
-
-            ps.setInt(6, tienda.getIdTienda());
-
-            int filas = ps.executeUpdate();
+        try {
+            int filas = PlantillaJDBC.actualizar(sql, tienda.getNombre(), tienda.getDireccion(),
+                    tienda.getTelefono(), tienda.getSitioWeb(), tienda.getIdRepartidor(), tienda.getIdTienda());
             if (filas > 0) {
-                Logger.info("Tienda actualizada correctamente: " + tienda.getNombre()
+                Logger.info(() -> "Tienda actualizada correctamente: " + tienda.getNombre()
                         + " | Usuario: " + Session.getUsuarioId());
+                CACHE.invalidar();
                 return true;
             }
         } catch (SQLException e) {
@@ -88,15 +82,18 @@ public class TiendaDAO {
         return false;
     }
 
-    /** Elimina una tienda por su ID. */
+    /**
+     * Elimina una tienda por su ID. Sus productos, y con ellos sus líneas de
+     * compra, se borran en cascada: se descuentan de los resúmenes mensuales.
+     */
     public boolean eliminar(int id) {
         String sql = "DELETE FROM tiendas WHERE id_tienda = ?";
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, id);
-            int filas = ps.executeUpdate();
+        try {
+            int filas = ResumenGastosDAO.actualizarProductos("p.id_tienda = ?", new Object[]{id}, sql, id);
             if (filas > 0) {
-                Logger.info("Tienda eliminada correctamente (ID: " + id
+                Logger.info(() -> "Tienda eliminada correctamente (ID: " + id
                         + ") | Usuario: " + Session.getUsuarioId());
+                CACHE.invalidar();
                 return true;
             }
         } catch (SQLException e) {
@@ -107,83 +104,27 @@ public class TiendaDAO {
 
     /** Busca una tienda por su ID (incluye nombre del repartidor si aplica). */
     public Tienda obtenerPorId(int id) {
-        String sql = "SELECT t.*, r.nombre AS repartidor_nombre "
-                   + "FROM tiendas t "
-                   + "LEFT JOIN repartidores r ON t.id_repartidor = r.id_repartidor "
-                   + "WHERE t.id_tienda = ?";
-
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, id);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                Tienda tienda = new Tienda();
-                tienda.setIdTienda(rs.getInt("id_tienda"));
-                tienda.setNombre(rs.getString("nombre"));
-                tienda.setDireccion(rs.getString("direccion"));
-                tienda.setTelefono(rs.getString("telefono"));
-                tienda.setSitioWeb(rs.getString("sitio_web"));
-                tienda.setIdRepartidor((Integer) rs.getObject("id_repartidor"));
-                tienda.setNombreRepartidor(rs.getString("repartidor_nombre"));
-                return tienda;
-            }
+        try {
+            return PlantillaJDBC.primero(SELECT_TIENDAS + "WHERE t.id_tienda = ?", TIENDA, id);
         } catch (SQLException e) {
             Logger.exception("Error al obtener la tienda con ID: " + id, e);
         }
         return null;
     }
 
-    /** Obtiene todas las tiendas registradas, con nombre del repartidor (JOIN). */
+    /** Obtiene todas las tiendas registradas, con nombre del repartidor (JOIN). Se sirve desde la caché. */
     public List<Tienda> listarTodas() {
-        List<Tienda> lista = new ArrayList<>();
-        String sql = "SELECT t.*, r.nombre AS repartidor_nombre "
-                   + "FROM tiendas t "
-                   + "LEFT JOIN repartidores r ON t.id_repartidor = r.id_repartidor "
-                   + "ORDER BY t.nombre ASC";
-
-        try (Connection conn = ConexionDB.getConexion();
-             Statement st = conn.createStatement();
-             ResultSet rs = st.executeQuery(sql)) {
-
-            while (rs.next()) {
-                Tienda t = new Tienda();
-                t.setIdTienda(rs.getInt("id_tienda"));
-                t.setNombre(rs.getString("nombre"));
-                t.setDireccion(rs.getString("direccion"));
-                t.setTelefono(rs.getString("telefono"));
-                t.setSitioWeb(rs.getString("sitio_web"));
-                t.setIdRepartidor((Integer) rs.getObject("id_repartidor"));
-                t.setNombreRepartidor(rs.getString("repartidor_nombre"));
-                lista.add(t);
-            }
-
-            Logger.info("Listado de tiendas cargado correctamente (orden ASC). Total: " + lista.size());
-        } catch (SQLException e) {
-            Logger.exception("Error al listar las tiendas.", e);
-        }
-        return lista;
+        return CACHE.obtener(() -> {
+            List<Tienda> lista = PlantillaJDBC.listar(SELECT_TIENDAS + "ORDER BY t.nombre ASC", TIENDA);
+            Logger.info(() -> "Listado de tiendas cargado correctamente (orden ASC). Total: " + lista.size());
+            return lista;
+        });
     }
 
     /** Busca una tienda por su nombre (exacto). */
     public Tienda obtenerPorNombre(String nombre) {
-        String sql = "SELECT t.*, r.nombre AS repartidor_nombre "
-                   + "FROM tiendas t "
-                   + "LEFT JOIN repartidores r ON t.id_repartidor = r.id_repartidor "
-                   + "WHERE t.nombre = ?";
-
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, nombre);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                Tienda tienda = new Tienda();
-                tienda.setIdTienda(rs.getInt("id_tienda"));
-                tienda.setNombre(rs.getString("nombre"));
-                tienda.setDireccion(rs.getString("direccion"));
-                tienda.setTelefono(rs.getString("telefono"));
-                tienda.setSitioWeb(rs.getString("sitio_web"));
-                tienda.setIdRepartidor((Integer) rs.getObject("id_repartidor"));
-                tienda.setNombreRepartidor(rs.getString("repartidor_nombre"));
-                return tienda;
-            }
+        try {
+            return PlantillaJDBC.primero(SELECT_TIENDAS + "WHERE t.nombre = ?", TIENDA, nombre);
         } catch (SQLException e) {
             Logger.exception("Error al obtener la tienda con nombre: " + nombre, e);
         }
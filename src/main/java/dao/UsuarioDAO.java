@@ -1,14 +1,18 @@
 package dao;
 
-import config.ConexionDB;
+import config.CachePermisos;
 import config.Logger;
 import models.Usuario;
 import models.Rol;
 import models.Permiso;
 
-import java.sql.*;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * DAO para la gestión de usuarios con soporte para roles y múltiples permisos.
@@ -27,22 +31,76 @@ public class UsuarioDAO {
     // ID del rol "Pendiente" por defecto
     private static final int ROL_PENDIENTE = 6;
 
+    private static final String SELECT_USUARIO_CON_ROL = "SELECT u.id_usuario, u.nombre, u.email, u.password, u.id_rol, "
+            + "r.nombre AS nombre_rol, r.descripcion_rol AS descripcion_rol "
+            + "FROM usuarios u "
+            + "LEFT JOIN roles r ON u.id_rol = r.id_rol ";
+
+    // ============================================================
+    // MAPEADORES
+    // ============================================================
+    /** Usuario con su rol (sin permisos). */
+    private static final MapeadorFilas<Usuario> USUARIO = columnas -> {
+        int id = columnas.indice("id_usuario");
+        int nombre = columnas.indice("nombre");
+        int email = columnas.indice("email");
+        int password = columnas.indice("password");
+        int idRol = columnas.indice("id_rol");
+        int nombreRol = columnas.indice("nombre_rol");
+        int descripcionRol = columnas.indice("descripcion_rol");
+        return rs -> {
+            Usuario usuario = new Usuario();
+            usuario.setIdUsuario(rs.getInt(id));
+            usuario.setNombre(rs.getString(nombre));
+            usuario.setEmail(rs.getString(email));
+            usuario.setPassword(rs.getString(password));
+            usuario.setIdRol(rs.getInt(idRol));
+            usuario.setRol(new Rol(rs.getInt(idRol), rs.getString(nombreRol), rs.getString(descripcionRol)));
+            return usuario;
+        };
+    };
+
+    /**
+     * Fila de la consulta usuarios + permisos: el usuario con una lista que
+     * contiene el permiso de la fila (o vacía si no tiene ninguno).
+     */
+    private static final MapeadorFilas<Usuario> USUARIO_CON_PERMISO = columnas -> {
+        MapeadorFilas.Fila<Usuario> usuario = USUARIO.preparar(columnas);
+        int idPermiso = columnas.indice("id_permiso");
+        int nombre = columnas.indice("nombre_permiso");
+        int descripcion = columnas.indice("descripcion_permiso");
+        int area = columnas.indice("area");
+        return rs -> {
+            Usuario u = usuario.mapear(rs);
+            u.setPermisos(new ArrayList<>());
+            int id = rs.getInt(idPermiso);
+            if (!rs.wasNull()) {
+                u.getPermisos().add(new Permiso(id, rs.getString(nombre), rs.getString(descripcion), rs.getString(area)));
+            }
+            return u;
+        };
+    };
+
+    private static final MapeadorFilas<Permiso> PERMISO = columnas -> {
+        int id = columnas.indice("id_permiso");
+        int nombre = columnas.indice("nombre");
+        int descripcion = columnas.indice("descripcion");
+        int area = columnas.indice("area");
+        return rs -> new Permiso(rs.getInt(id), rs.getString(nombre), rs.getString(descripcion), rs.getString(area));
+    };
+
     // ============================================================
     // CREAR USUARIO (SIMPLE)
     // ============================================================
     public boolean crearUsuario(Usuario usuario) {
         String sql = "INSERT INTO usuarios (nombre, email, password, id_rol) VALUES (?, ?, ?, ?)";
 
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setString(1, usuario.getNombre());
-            ps.setString(2, usuario.getEmail());
-            ps.setString(3, usuario.getPassword());
-            ps.setInt(4, ROL_PENDIENTE); // Asigna siempre el rol Pendiente (id=6)
-
-            int filas = ps.executeUpdate();
+        try {
+            // Asigna siempre el rol Pendiente (id=6)
+            int filas = PlantillaJDBC.actualizar(sql, usuario.getNombre(), usuario.getEmail(), usuario.getPassword(),
+                    ROL_PENDIENTE);
             if (filas > 0) {
-                Logger.info("Usuario creado correctamente con rol Pendiente (id_rol=6): " + usuario.getEmail());
+                Logger.info(() -> "Usuario creado correctamente con rol Pendiente (id_rol=6): " + usuario.getEmail());
                 return true;
             }
 
@@ -59,21 +117,13 @@ public class UsuarioDAO {
     public boolean crearUsuarioConPermisos(Usuario usuario) {
         String sqlInsertUsuario = "INSERT INTO usuarios (nombre, email, password, id_rol) VALUES (?, ?, ?, ?)";
 
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement psUsuario = conn.prepareStatement(sqlInsertUsuario, Statement.RETURN_GENERATED_KEYS)) {
+        try (Connection conn = PlantillaJDBC.conexion()) {
 
             conn.setAutoCommit(false);
 
-            psUsuario.setString(1, usuario.getNombre());
-            psUsuario.setString(2, usuario.getEmail());
-            psUsuario.setString(3, usuario.getPassword());
-            psUsuario.setInt(4, ROL_PENDIENTE); // También se registra como Pendiente
-            psUsuario.executeUpdate();
-
-            int idUsuario = 0;
-            ResultSet rs = psUsuario.getGeneratedKeys();
-            if (rs.next()) {
-                idUsuario = rs.getInt(1);
-            }
+            // También se registra como Pendiente
+            int idUsuario = Math.max(0, PlantillaJDBC.insertar(conn, sqlInsertUsuario, usuario.getNombre(),
+                    usuario.getEmail(), usuario.getPassword(), ROL_PENDIENTE));
 
             if (usuario.getPermisos() != null && !usuario.getPermisos().isEmpty()) {
                 String sqlPermisos = "INSERT INTO usuarios_permisos (id_usuario, id_permiso) VALUES (?, ?)";
@@ -88,7 +138,8 @@ public class UsuarioDAO {
             }
 
             conn.commit();
-            Logger.info("Usuario creado con múltiples permisos (rol Pendiente): " + usuario.getEmail());
+            CachePermisos.invalidar();
+            Logger.info(() -> "Usuario creado con múltiples permisos (rol Pendiente): " + usuario.getEmail());
             return true;
 
         } catch (SQLException e) {
@@ -104,23 +155,14 @@ public class UsuarioDAO {
     public boolean actualizarUsuarioConPermisos(Usuario usuario) {
         String sqlUpdateUsuario = "UPDATE usuarios SET nombre = ?, email = ?, password = ?, id_rol = ? WHERE id_usuario = ?";
 
-        try (Connection conn = ConexionDB.getConexion()) {
+        try (Connection conn = PlantillaJDBC.conexion()) {
             conn.setAutoCommit(false);
 
-            try (PreparedStatement psUpdate = conn.prepareStatement(sqlUpdateUsuario)) {
-                psUpdate.setString(1, usuario.getNombre());
-                psUpdate.setString(2, usuario.getEmail());
-                psUpdate.setString(3, usuario.getPassword());
-                psUpdate.setInt(4, usuario.getIdRol());
-                psUpdate.setInt(5, usuario.getIdUsuario());
-                psUpdate.executeUpdate();
-            }
+            PlantillaJDBC.actualizar(conn, sqlUpdateUsuario, usuario.getNombre(), usuario.getEmail(),
+                    usuario.getPassword(), usuario.getIdRol(), usuario.getIdUsuario());
 
             // 🔹 Eliminar permisos previos
-            try (PreparedStatement psDelete = conn.prepareStatement("DELETE FROM usuarios_permisos WHERE id_usuario = ?")) {
-                psDelete.setInt(1, usuario.getIdUsuario());
-                psDelete.executeUpdate();
-            }
+            PlantillaJDBC.actualizar(conn, "DELETE FROM usuarios_permisos WHERE id_usuario = ?", usuario.getIdUsuario());
 
             // 🔹 Insertar nuevos permisos
             if (usuario.getPermisos() != null && !usuario.getPermisos().isEmpty()) {
@@ -135,7 +177,9 @@ public class UsuarioDAO {
             }
 
             conn.commit();
-            Logger.info("Usuario actualizado correctamente con permisos: " + usuario.getEmail());
+            CachePermisos.invalidar();
+            AnaliticaGastos.invalidar();
+            Logger.info(() -> "Usuario actualizado correctamente con permisos: " + usuario.getEmail());
             return true;
 
         } catch (SQLException e) {
@@ -148,42 +192,34 @@ public class UsuarioDAO {
     // LISTAR USUARIOS CON ROLES Y PERMISOS
     // ============================================================
     public List<Usuario> listarUsuariosConPermisos() {
-        List<Usuario> lista = new ArrayList<>();
+        // Una sola consulta: cada usuario aparece una vez por permiso (o una
+        // vez con permiso nulo) y se agrupa en memoria manteniendo el orden.
+        Map<Integer, Usuario> usuarios = new LinkedHashMap<>();
 
         String sql = "SELECT u.id_usuario, u.nombre, u.email, u.password, u.id_rol, "
-                + "r.nombre AS nombre_rol, r.descripcion_rol AS descripcion_rol "
+                + "r.nombre AS nombre_rol, r.descripcion_rol AS descripcion_rol, "
+                + "p.id_permiso, p.nombre AS nombre_permiso, p.descripcion AS descripcion_permiso, p.area "
                 + "FROM usuarios u "
                 + "LEFT JOIN roles r ON u.id_rol = r.id_rol "
-                + "ORDER BY u.id_usuario ASC";
-
-        try (Connection conn = ConexionDB.getConexion(); Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                Usuario usuario = new Usuario();
-                usuario.setIdUsuario(rs.getInt("id_usuario"));
-                usuario.setNombre(rs.getString("nombre"));
-                usuario.setEmail(rs.getString("email"));
-                usuario.setPassword(rs.getString("password"));
-                usuario.setIdRol(rs.getInt("id_rol"));
-
-                Rol rol = new Rol(
-                        rs.getInt("id_rol"),
-                        rs.getString("nombre_rol"),
-                        rs.getString("descripcion_rol")
-                );
-                usuario.setRol(rol);
-
-                usuario.setPermisos(obtenerPermisosPorUsuario(usuario.getIdUsuario(), conn));
-                lista.add(usuario);
+                + "LEFT JOIN usuarios_permisos up ON up.id_usuario = u.id_usuario "
+                + "LEFT JOIN permisos p ON p.id_permiso = up.id_permiso "
+                + "ORDER BY u.id_usuario ASC, p.area, p.nombre";
+
+        try {
+            for (Usuario fila : PlantillaJDBC.listar(sql, USUARIO_CON_PERMISO)) {
+                usuarios.merge(fila.getIdUsuario(), fila, (usuario, otro) -> {
+                    usuario.getPermisos().addAll(otro.getPermisos());
+                    return usuario;
+                });
             }
 
-            Logger.info("Usuarios cargados correctamente: " + lista.size());
+            Logger.info(() -> "Usuarios cargados correctamente: " + usuarios.size());
 
         } catch (SQLException e) {
             Logger.exception("Error al listar usuarios con permisos.", e);
         }
 
-        return lista;
+        return new ArrayList<>(usuarios.values());
     }
 
     // ============================================================
@@ -192,32 +228,12 @@ public class UsuarioDAO {
     public Usuario obtenerUsuarioPorId(int idUsuario) {
         Usuario usuario = null;
 
-        String sql = "SELECT u.id_usuario, u.nombre, u.email, u.password, u.id_rol, "
-                + "r.nombre AS nombre_rol, r.descripcion_rol AS descripcion_rol "
-                + "FROM usuarios u "
-                + "LEFT JOIN roles r ON u.id_rol = r.id_rol "
-                + "WHERE u.id_usuario = ?";
-
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setInt(1, idUsuario);
-            ResultSet rs = ps.executeQuery();
-
-            if (rs.next()) {
-                usuario = new Usuario();
-                usuario.setIdUsuario(rs.getInt("id_usuario"));
-                usuario.setNombre(rs.getString("nombre"));
-                usuario.setEmail(rs.getString("email"));
-                usuario.setPassword(rs.getString("password"));
-                usuario.setIdRol(rs.getInt("id_rol"));
+        String sql = SELECT_USUARIO_CON_ROL + "WHERE u.id_usuario = ?";
 
-                Rol rol = new Rol(
-                        rs.getInt("id_rol"),
-                        rs.getString("nombre_rol"),
-                        rs.getString("descripcion_rol")
-                );
-                usuario.setRol(rol);
+        try (Connection conn = PlantillaJDBC.conexion()) {
 
+            usuario = PlantillaJDBC.primero(conn, sql, USUARIO, idUsuario);
+            if (usuario != null) {
                 usuario.setPermisos(obtenerPermisosPorUsuario(idUsuario, conn));
             }
 
@@ -232,30 +248,13 @@ public class UsuarioDAO {
     // OBTENER PERMISOS POR USUARIO
     // ============================================================
     private List<Permiso> obtenerPermisosPorUsuario(int idUsuario, Connection conn) throws SQLException {
-        List<Permiso> permisos = new ArrayList<>();
-
         String sql = "SELECT p.id_permiso, p.nombre, p.descripcion, p.area "
                 + "FROM usuarios_permisos up "
                 + "JOIN permisos p ON up.id_permiso = p.id_permiso "
                 + "WHERE up.id_usuario = ? "
                 + "ORDER BY p.area, p.nombre";
 
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, idUsuario);
-            ResultSet rs = ps.executeQuery();
-
-            while (rs.next()) {
-                Permiso permiso = new Permiso(
-                        rs.getInt("id_permiso"),
-                        rs.getString("nombre"),
-                        rs.getString("descripcion"),
-                        rs.getString("area")
-                );
-                permisos.add(permiso);
-            }
-        }
-
-        return permisos;
+        return PlantillaJDBC.listar(conn, sql, PERMISO, idUsuario);
     }
 
     // ============================================================
@@ -265,20 +264,16 @@ public class UsuarioDAO {
         String sqlPermisos = "DELETE FROM usuarios_permisos WHERE id_usuario = ?";
         String sqlUsuario = "DELETE FROM usuarios WHERE id_usuario = ?";
 
-        try (Connection conn = ConexionDB.getConexion()) {
+        try (Connection conn = PlantillaJDBC.conexion()) {
             conn.setAutoCommit(false);
 
-            try (PreparedStatement ps1 = conn.prepareStatement(sqlPermisos); PreparedStatement ps2 = conn.prepareStatement(sqlUsuario)) {
-
-                ps1.setInt(1, idUsuario);
-                ps1.executeUpdate();
+            PlantillaJDBC.actualizar(conn, sqlPermisos, idUsuario);
+            int filas = PlantillaJDBC.actualizar(conn, sqlUsuario, idUsuario);
 
-                ps2.setInt(1, idUsuario);
-                int filas = ps2.executeUpdate();
-
-                conn.commit();
-                return filas > 0;
-            }
+            conn.commit();
+            CachePermisos.invalidar();
+            AnaliticaGastos.invalidar();
+            return filas > 0;
 
         } catch (SQLException e) {
             Logger.exception("Error al eliminar usuario con ID: " + idUsuario, e);
@@ -293,38 +288,17 @@ public class UsuarioDAO {
     public Usuario autenticarUsuario(String nombre, String password) {
         Usuario usuario = null;
 
-        String sql = "SELECT u.id_usuario, u.nombre, u.email, u.password, u.id_rol, "
-                + "r.nombre AS nombre_rol, r.descripcion_rol AS descripcion_rol "
-                + "FROM usuarios u "
-                + "LEFT JOIN roles r ON u.id_rol = r.id_rol "
-                + "WHERE u.nombre = ? AND u.password = ?";
-
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql)) {
+        String sql = SELECT_USUARIO_CON_ROL + "WHERE u.nombre = ? AND u.password = ?";
 
-            ps.setString(1, nombre);
-            ps.setString(2, password);
-            ResultSet rs = ps.executeQuery();
-
-            if (rs.next()) {
-                usuario = new Usuario();
-                usuario.setIdUsuario(rs.getInt("id_usuario"));
-                usuario.setNombre(rs.getString("nombre"));
-                usuario.setEmail(rs.getString("email"));
-                usuario.setPassword(rs.getString("password"));
-                usuario.setIdRol(rs.getInt("id_rol"));
-
-                Rol rol = new Rol(
-                        rs.getInt("id_rol"),
-                        rs.getString("nombre_rol"),
-                        rs.getString("descripcion_rol")
-                );
-                usuario.setRol(rol);
+        try (Connection conn = PlantillaJDBC.conexion()) {
 
+            usuario = PlantillaJDBC.primero(conn, sql, USUARIO, nombre, password);
+            if (usuario != null) {
                 usuario.setPermisos(obtenerPermisosPorUsuario(usuario.getIdUsuario(), conn));
 
-                Logger.info("Usuario autenticado correctamente: " + nombre);
+                Logger.info(() -> "Usuario autenticado correctamente: " + nombre);
             } else {
-                Logger.warning("Credenciales incorrectas para usuario: " + nombre);
+                Logger.warning(() -> "Credenciales incorrectas para usuario: " + nombre);
             }
 
         } catch (SQLException e) {
@@ -340,12 +314,8 @@ public class UsuarioDAO {
     public boolean existeEmail(String email) {
         String sql = "SELECT COUNT(*) AS total FROM usuarios WHERE email = ?";
 
-        try (Connection conn = ConexionDB.getConexion(); PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setString(1, email);
-            ResultSet rs = ps.executeQuery();
-
-            return rs.next() && rs.getInt("total") > 0;
+        try {
+            return PlantillaJDBC.primero(sql, MapeadorFilas.ENTERO, email) > 0;
 
         } catch (SQLException e) {
             Logger.exception("Error al verificar existencia del email: " + email, e);
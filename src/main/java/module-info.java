@@ -3,6 +3,8 @@ module app_compras {
     requires javafx.controls;
     requires javafx.fxml;
     requires java.sql;
+    requires java.management;
+    requires itextpdf;
     requires java.base;
 
     // Apertura de paquetes a JavaFX (para carga FXML y reflexión)
@@ -18,4 +20,5 @@ module app_compras {
     exports config;
     exports dao;
     exports models;
+    exports reportes;
 }
@@ -0,0 +1,305 @@
+package reportes;
+
+import com.itextpdf.text.BaseColor;
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Element;
+import com.itextpdf.text.Font;
+import com.itextpdf.text.FontFactory;
+import com.itextpdf.text.PageSize;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.Phrase;
+import com.itextpdf.text.pdf.ColumnText;
+import com.itextpdf.text.pdf.PdfPCell;
+import com.itextpdf.text.pdf.PdfPTable;
+import com.itextpdf.text.pdf.PdfPageEventHelper;
+import com.itextpdf.text.pdf.PdfWriter;
+import config.Logger;
+import dao.ListadoDeCompraDAO;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import models.ListadoCompra;
+
+/**
+ * Exporta el listado de compras a PDF con iText.
+ *
+ * Las filas llegan de una en una desde el ResultSet (ver
+ * ListadoDeCompraDAO.recorrerComprasAgrupadasPorUsuario) y se escriben
+ * directamente en el documento: solo se guarda en memoria la compra que se
+ * está escribiendo y el total de cada usuario, así que el consumo no depende
+ * del tamaño del histórico.
+ *
+ * Formato (el mismo que tenía la impresión):
+ * - Una sección por usuario que empieza en página nueva, con las compras
+ *   agrupadas por nombre y tienda y el total del usuario.
+ * - Una página final con el resumen de totales.
+ * - Las tablas repiten la cabecera al saltar de página y cada página lleva
+ *   su número al pie.
+ *
+ * @author Milanes
+ */
+public class ExportadorComprasPDF {
+
+    private static final Font FUENTE_TITULO = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 14);
+    private static final Font FUENTE_NEGRITA = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 10);
+    private static final Font FUENTE_NORMAL = FontFactory.getFont(FontFactory.HELVETICA, 9);
+    private static final Font FUENTE_PIE = FontFactory.getFont(FontFactory.HELVETICA, 8, BaseColor.GRAY);
+
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    private final ListadoDeCompraDAO listadoCompraDAO = new ListadoDeCompraDAO();
+
+    /**
+     * Resultado de una exportación.
+     */
+    public static final class Resultado {
+
+        private final int filas;
+        private final int usuarios;
+        private final double totalGeneral;
+        private final long milisegundos;
+
+        Resultado(int filas, int usuarios, double totalGeneral, long milisegundos) {
+            this.filas = filas;
+            this.usuarios = usuarios;
+            this.totalGeneral = totalGeneral;
+            this.milisegundos = milisegundos;
+        }
+
+        public int getFilas() {
+            return filas;
+        }
+
+        public int getUsuarios() {
+            return usuarios;
+        }
+
+        public double getTotalGeneral() {
+            return totalGeneral;
+        }
+
+        public long getMilisegundos() {
+            return milisegundos;
+        }
+    }
+
+    /**
+     * Genera el PDF.
+     *
+     * @param idUsuario usuario a exportar o -1 para todos
+     * @param destino archivo PDF de salida (se sobrescribe)
+     * @param usuarioGenerador nombre que aparece en la cabecera
+     * @return resumen de lo exportado (0 filas si no había datos)
+     */
+    public Resultado exportar(int idUsuario, Path destino, String usuarioGenerador)
+            throws IOException, SQLException, DocumentException {
+
+        long inicio = System.currentTimeMillis();
+        String fecha = LocalDate.now().format(FORMATO_FECHA);
+
+        Document documento = new Document(PageSize.A4, 40, 40, 40, 50);
+        Escritor escritor = new Escritor(documento, usuarioGenerador, fecha);
+        int filas;
+
+        try (OutputStream salida = new BufferedOutputStream(Files.newOutputStream(destino), 64 * 1024)) {
+            PdfWriter writer = PdfWriter.getInstance(documento, salida);
+            writer.setPageEvent(new PiePagina());
+            documento.open();
+
+            filas = listadoCompraDAO.recorrerComprasAgrupadasPorUsuario(idUsuario, escritor::agregar);
+            escritor.terminar();
+
+            documento.close();
+
+        } catch (IOException | SQLException | DocumentException e) {
+            // No dejar un PDF a medias
+            Files.deleteIfExists(destino);
+            throw e;
+        }
+
+        Resultado resultado = new Resultado(filas, escritor.totales.size(), escritor.totalGeneral,
+                System.currentTimeMillis() - inicio);
+        Logger.info(() -> "PDF de compras generado en " + destino + ": " + resultado.getFilas()
+                + " líneas, " + resultado.getUsuarios() + " usuarios, " + resultado.getMilisegundos() + " ms.");
+        return resultado;
+    }
+
+    // ============================================================
+    // ESCRITURA POR FILAS
+    // ============================================================
+    /**
+     * Recibe las filas en orden (usuario, compra, detalle) y detecta los
+     * cambios de usuario y de compra para cerrar cada bloque.
+     */
+    private static final class Escritor {
+
+        private final Document documento;
+        private final String usuarioGenerador;
+        private final String fecha;
+
+        // Total por usuario para la página de resumen (una entrada por usuario)
+        private final Map<String, Double> totales = new LinkedHashMap<>();
+        private double totalGeneral;
+
+        private String usuarioActual;
+        private double totalUsuario;
+        private int idCompraActual = -1;
+        private PdfPTable tablaCompra;
+
+        Escritor(Document documento, String usuarioGenerador, String fecha) {
+            this.documento = documento;
+            this.usuarioGenerador = usuarioGenerador;
+            this.fecha = fecha;
+        }
+
+        void agregar(ListadoCompra fila) throws DocumentException {
+            if (!fila.getUsuarioNombre().equals(usuarioActual)) {
+                cerrarUsuario();
+                abrirUsuario(fila.getUsuarioNombre());
+            }
+            if (fila.getIdCompra() != idCompraActual) {
+                cerrarCompra();
+                abrirCompra(fila);
+            }
+
+            tablaCompra.addCell(celda(fila.getProductoNombre(), Element.ALIGN_LEFT));
+            tablaCompra.addCell(celda(String.format("%.2f €", fila.getPrecioUnitario()), Element.ALIGN_RIGHT));
+            tablaCompra.addCell(celda("x" + fila.getCantidad(), Element.ALIGN_RIGHT));
+            tablaCompra.addCell(celda(String.format("%.2f €", fila.getSubtotal()), Element.ALIGN_RIGHT));
+            totalUsuario += fila.getSubtotal();
+        }
+
+        void terminar() throws DocumentException {
+            cerrarUsuario();
+            if (totales.isEmpty()) {
+                documento.add(new Paragraph("No hay registros para exportar.", FUENTE_NORMAL));
+                return;
+            }
+            escribirResumen();
+        }
+
+        private void abrirUsuario(String usuario) throws DocumentException {
+            // Cada usuario empieza en página nueva (la primera ya está abierta)
+            if (!totales.isEmpty()) {
+                documento.newPage();
+            }
+            usuarioActual = usuario;
+            totalUsuario = 0.0;
+
+            documento.add(new Paragraph("LISTADO DE COMPRAS", FUENTE_TITULO));
+            documento.add(new Paragraph("Generado por: " + usuarioGenerador, FUENTE_NORMAL));
+            documento.add(new Paragraph("Usuario: " + usuario, FUENTE_NORMAL));
+            documento.add(new Paragraph("Fecha: " + fecha, FUENTE_NORMAL));
+            documento.add(separador());
+        }
+
+        private void cerrarUsuario() throws DocumentException {
+            if (usuarioActual == null) {
+                return;
+            }
+            cerrarCompra();
+
+            Paragraph total = new Paragraph(String.format("TOTAL USUARIO %s: %.2f €", usuarioActual, totalUsuario),
+                    FUENTE_NEGRITA);
+            total.setSpacingBefore(6);
+            documento.add(total);
+
+            totales.merge(usuarioActual, totalUsuario, Double::sum);
+            totalGeneral += totalUsuario;
+            usuarioActual = null;
+        }
+
+        private void abrirCompra(ListadoCompra fila) throws DocumentException {
+            idCompraActual = fila.getIdCompra();
+
+            Paragraph titulo = new Paragraph("Nombre de la compra: " + fila.getNombreCompra()
+                    + " (" + fila.getTiendaNombre() + ")", FUENTE_NEGRITA);
+            titulo.setSpacingBefore(8);
+            titulo.setSpacingAfter(3);
+            documento.add(titulo);
+
+            tablaCompra = new PdfPTable(new float[]{5f, 2f, 1.2f, 2f});
+            tablaCompra.setWidthPercentage(100);
+            tablaCompra.setHeaderRows(1);
+            tablaCompra.addCell(cabecera("Producto"));
+            tablaCompra.addCell(cabecera("Precio"));
+            tablaCompra.addCell(cabecera("Cantidad"));
+            tablaCompra.addCell(cabecera("Subtotal"));
+        }
+
+        private void cerrarCompra() throws DocumentException {
+            if (tablaCompra != null) {
+                documento.add(tablaCompra);
+                tablaCompra = null;
+            }
+            idCompraActual = -1;
+        }
+
+        private void escribirResumen() throws DocumentException {
+            documento.newPage();
+            documento.add(new Paragraph("RESUMEN GENERAL", FUENTE_TITULO));
+            documento.add(new Paragraph("Fecha: " + fecha, FUENTE_NORMAL));
+            documento.add(new Paragraph("Generado por: " + usuarioGenerador, FUENTE_NORMAL));
+            documento.add(separador());
+
+            PdfPTable tabla = new PdfPTable(new float[]{5f, 2f});
+            tabla.setWidthPercentage(70);
+            tabla.setHorizontalAlignment(Element.ALIGN_LEFT);
+            tabla.setHeaderRows(1);
+            tabla.addCell(cabecera("Usuario"));
+            tabla.addCell(cabecera("Total"));
+            for (Map.Entry<String, Double> t : totales.entrySet()) {
+                tabla.addCell(celda(t.getKey(), Element.ALIGN_LEFT));
+                tabla.addCell(celda(String.format("%.2f €", t.getValue()), Element.ALIGN_RIGHT));
+            }
+            documento.add(tabla);
+
+            Paragraph total = new Paragraph(String.format("TOTAL GENERAL DEL SISTEMA: %.2f €", totalGeneral),
+                    FUENTE_NEGRITA);
+            total.setSpacingBefore(8);
+            documento.add(total);
+        }
+    }
+
+    // ============================================================
+    // UTILIDADES DE FORMATO
+    // ============================================================
+    private static PdfPCell cabecera(String texto) {
+        PdfPCell celda = new PdfPCell(new Phrase(texto, FUENTE_NEGRITA));
+        celda.setBackgroundColor(BaseColor.LIGHT_GRAY);
+        return celda;
+    }
+
+    private static PdfPCell celda(String texto, int alineacion) {
+        PdfPCell celda = new PdfPCell(new Phrase(texto != null ? texto : "", FUENTE_NORMAL));
+        celda.setHorizontalAlignment(alineacion);
+        return celda;
+    }
+
+    private static Paragraph separador() {
+        Paragraph p = new Paragraph("==========================================", FUENTE_NORMAL);
+        p.setSpacingAfter(4);
+        return p;
+    }
+
+    /**
+     * Escribe el número de página al pie de cada hoja.
+     */
+    private static final class PiePagina extends PdfPageEventHelper {
+
+        @Override
+        public void onEndPage(PdfWriter writer, Document document) {
+            ColumnText.showTextAligned(writer.getDirectContent(), Element.ALIGN_CENTER,
+                    new Phrase("--- Página " + writer.getPageNumber() + " ---", FUENTE_PIE),
+                    (document.left() + document.right()) / 2, document.bottom() - 20, 0);
+        }
+    }
+}